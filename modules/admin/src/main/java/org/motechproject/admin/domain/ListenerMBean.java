@@ -0,0 +1,168 @@
+package org.motechproject.admin.domain;
+
+/**
+ * Represents an event listener registered in this MOTECH instance. Holds statistics about events
+ * dispatched to the listener. This information is retrieved using JMX, all latencies are expressed
+ * in microseconds.
+ */
+public class ListenerMBean {
+
+    private String identifier;
+    private long dispatchCount;
+    private long failureCount;
+    private double meanLatency;
+    private long medianLatency;
+    private long p95Latency;
+    private long p99Latency;
+    private long maxLatency;
+    private long broadcastsInFlight;
+    private long rejectedBroadcastCount;
+
+    /**
+     * @param identifier the identifier of the listener
+     */
+    public ListenerMBean(String identifier) {
+        this.identifier = identifier;
+    }
+
+    /**
+     * @return the identifier of the listener
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @param identifier the identifier of the listener
+     */
+    public void setIdentifier(String identifier) {
+        this.identifier = identifier;
+    }
+
+    /**
+     * @return the number of events dispatched to the listener since the last restart
+     */
+    public long getDispatchCount() {
+        return dispatchCount;
+    }
+
+    /**
+     * @param dispatchCount the number of events dispatched to the listener since the last restart
+     */
+    public void setDispatchCount(long dispatchCount) {
+        this.dispatchCount = dispatchCount;
+    }
+
+    /**
+     * @return the number of events the listener failed to handle since the last restart
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @param failureCount the number of events the listener failed to handle since the last restart
+     */
+    public void setFailureCount(long failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    /**
+     * @return the mean time it took the listener to handle an event
+     */
+    public double getMeanLatency() {
+        return meanLatency;
+    }
+
+    /**
+     * @param meanLatency the mean time it took the listener to handle an event
+     */
+    public void setMeanLatency(double meanLatency) {
+        this.meanLatency = meanLatency;
+    }
+
+    /**
+     * @return the median time it took the listener to handle an event
+     */
+    public long getMedianLatency() {
+        return medianLatency;
+    }
+
+    /**
+     * @param medianLatency the median time it took the listener to handle an event
+     */
+    public void setMedianLatency(long medianLatency) {
+        this.medianLatency = medianLatency;
+    }
+
+    /**
+     * @return the time in which the listener handled 95% of the events
+     */
+    public long getP95Latency() {
+        return p95Latency;
+    }
+
+    /**
+     * @param p95Latency the time in which the listener handled 95% of the events
+     */
+    public void setP95Latency(long p95Latency) {
+        this.p95Latency = p95Latency;
+    }
+
+    /**
+     * @return the time in which the listener handled 99% of the events
+     */
+    public long getP99Latency() {
+        return p99Latency;
+    }
+
+    /**
+     * @param p99Latency the time in which the listener handled 99% of the events
+     */
+    public void setP99Latency(long p99Latency) {
+        this.p99Latency = p99Latency;
+    }
+
+    /**
+     * @return the longest time it took the listener to handle an event
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * @param maxLatency the longest time it took the listener to handle an event
+     */
+    public void setMaxLatency(long maxLatency) {
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * @return the number of broadcast events queued for, or being handled by the listener
+     */
+    public long getBroadcastsInFlight() {
+        return broadcastsInFlight;
+    }
+
+    /**
+     * @param broadcastsInFlight the number of broadcast events queued for, or being handled by the listener
+     */
+    public void setBroadcastsInFlight(long broadcastsInFlight) {
+        this.broadcastsInFlight = broadcastsInFlight;
+    }
+
+    /**
+     * @return the number of broadcast events dropped since the last restart, because the queue of the listener was full
+     */
+    public long getRejectedBroadcastCount() {
+        return rejectedBroadcastCount;
+    }
+
+    /**
+     * @param rejectedBroadcastCount the number of broadcast events dropped since the last restart, because the queue
+     *                               of the listener was full
+     */
+    public void setRejectedBroadcastCount(long rejectedBroadcastCount) {
+        this.rejectedBroadcastCount = rejectedBroadcastCount;
+    }
+}
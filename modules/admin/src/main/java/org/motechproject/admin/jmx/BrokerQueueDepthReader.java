@@ -0,0 +1,35 @@
+package org.motechproject.admin.jmx;
+
+import org.apache.activemq.broker.jmx.QueueViewMBean;
+import org.motechproject.event.messaging.QueueDepthReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Reads the depth of ActiveMQ queues from the broker configured in the platform settings, through the
+ * {@link MotechMBeanServer}. Published as an OSGi service, so that the event module can adjust the consumers of
+ * the event queue also when the broker is not embedded in this MOTECH instance.
+ */
+@Component
+public class BrokerQueueDepthReader implements QueueDepthReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrokerQueueDepthReader.class);
+
+    @Autowired
+    private MotechMBeanServer mBeanServer;
+
+    @Override
+    public long getQueueDepth(String queueName) {
+        try {
+            QueueViewMBean queueView = mBeanServer.getQueueViewMBean(queueName);
+            return (queueView == null) ? -1 : queueView.getQueueSize();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unable to read the depth of queue {}", queueName, e);
+            return -1;
+        }
+    }
+}
@@ -2,12 +2,14 @@ package org.motechproject.admin.jmx;
 
 import org.apache.activemq.broker.jmx.QueueViewMBean;
 import org.apache.activemq.broker.jmx.TopicViewMBean;
+import org.motechproject.admin.domain.ListenerMBean;
 import org.motechproject.admin.domain.QueueMBean;
 import org.motechproject.admin.domain.QueueMessage;
 import org.motechproject.admin.domain.TopicMBean;
 import org.motechproject.admin.security.SecurityConstants;
 import org.motechproject.commons.api.MotechException;
 import org.motechproject.commons.date.util.DateUtil;
+import org.motechproject.event.metrics.ListenerStatistics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
@@ -16,6 +18,7 @@ import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.OpenDataException;
 import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -87,6 +90,33 @@ public class MBeanService {
         }
     }
 
+    /**
+     * Returns dispatch statistics for the event listeners registered in this MOTECH instance.
+     *
+     * @return {@link List} of {@link ListenerMBean}. One for each listener that handled an event.
+     */
+    @PreAuthorize(SecurityConstants.MANAGE_ACTIVEMQ)
+    public List<ListenerMBean> getListenerStatistics() {
+        try {
+            List<ListenerMBean> listeners = new ArrayList<>();
+            for (ListenerStatistics statistics : mBeanServer.getEventListenerStatisticsMBean().getListenerStatistics()) {
+                ListenerMBean listener = new ListenerMBean(statistics.getIdentifier());
+                listener.setDispatchCount(statistics.getDispatchCount());
+                listener.setFailureCount(statistics.getFailureCount());
+                listener.setMeanLatency(statistics.getMeanLatency());
+                listener.setMedianLatency(statistics.getMedianLatency());
+                listener.setP95Latency(statistics.getP95Latency());
+                listener.setP99Latency(statistics.getP99Latency());
+                listener.setMaxLatency(statistics.getMaxLatency());
+                listener.setBroadcastsInFlight(statistics.getBroadcastsInFlight());
+                listener.setRejectedBroadcastCount(statistics.getRejectedBroadcastCount());
+                listeners.add(listener);
+            }
+            return listeners;
+        } catch (UndeclaredThrowableException ex) {
+            throw new MotechException("Could not access event listener statistics MBean", ex);
+        }
+    }
 
     /**
      * Retrieves a list of messages for the given JMS queue.
@@ -5,11 +5,13 @@ import org.apache.activemq.broker.jmx.QueueViewMBean;
 import org.apache.activemq.broker.jmx.TopicViewMBean;
 import org.motechproject.commons.api.MotechException;
 import org.motechproject.config.service.ConfigurationService;
+import org.motechproject.event.metrics.EventListenerStatisticsMXBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.management.JMX;
 import javax.management.MBeanServerConnection;
 import javax.management.MBeanServerInvocationHandler;
 import javax.management.MalformedObjectNameException;
@@ -18,6 +20,7 @@ import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.UndeclaredThrowableException;
 
 import static org.apache.commons.lang.StringUtils.isNotBlank;
@@ -116,6 +119,20 @@ public class MotechMBeanServer {
         return MBeanServerInvocationHandler.newProxyInstance(openConnection(), name, QueueViewMBean.class, true);
     }
 
+    /**
+     * Retrieves the MBean with statistics of the event listeners registered in this MOTECH instance.
+     * Unlike the ActiveMQ MBeans, it is retrieved from the local platform MBean server.
+     * @return the {@link EventListenerStatisticsMXBean} allowing access to event listener statistics.
+     */
+    public EventListenerStatisticsMXBean getEventListenerStatisticsMBean() {
+        try {
+            ObjectName name = new ObjectName(EventListenerStatisticsMXBean.OBJECT_NAME);
+            return JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), name, EventListenerStatisticsMXBean.class);
+        } catch (MalformedObjectNameException ex) {
+            throw new MotechException(ex.getMessage(), ex);
+        }
+    }
+
     /**
      * Returns name of destination property, which can change depending on ActiveMQ version.
      * @return correct name of destination property for used ActiveMQ version
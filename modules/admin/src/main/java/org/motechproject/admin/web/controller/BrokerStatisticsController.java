@@ -1,5 +1,6 @@
 package org.motechproject.admin.web.controller;
 
+import org.motechproject.admin.domain.ListenerMBean;
 import org.motechproject.admin.domain.QueueMBean;
 import org.motechproject.admin.domain.QueueMessage;
 import org.motechproject.admin.domain.TopicMBean;
@@ -42,6 +43,16 @@ public class BrokerStatisticsController {
         return mBeanService.getQueueStatistics();
     }
 
+    /**
+     * Returns the event listener statistics.
+     * @return a list {@link org.motechproject.admin.domain.ListenerMBean} with the statistics, one for each listener
+     */
+    @RequestMapping(value = "/listeners")
+    @ResponseBody
+    public List<ListenerMBean> listeners() {
+        return mBeanService.getListenerStatistics();
+    }
+
     /**
      * Returns a list of messages for a given queue.
      * @param queueName the name of the queue
@@ -0,0 +1,52 @@
+package org.motechproject.admin.jmx;
+
+import org.apache.activemq.broker.jmx.QueueViewMBean;
+import org.hamcrest.core.Is;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class BrokerQueueDepthReaderTest {
+
+    @InjectMocks
+    BrokerQueueDepthReader queueDepthReader = new BrokerQueueDepthReader();
+
+    @Mock
+    MotechMBeanServer mBeanServer;
+
+    @Before
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void shouldReturnQueueSize() throws IOException {
+        QueueViewMBean queueViewMBean = mock(QueueViewMBean.class);
+        given(mBeanServer.getQueueViewMBean("foo_queue")).willReturn(queueViewMBean);
+        given(queueViewMBean.getQueueSize()).willReturn(42L);
+
+        assertThat(queueDepthReader.getQueueDepth("foo_queue"), Is.is(42L));
+    }
+
+    @Test
+    public void shouldReturnMinusOneForUnknownQueue() throws IOException {
+        given(mBeanServer.getQueueViewMBean("foo_queue")).willReturn(null);
+
+        assertThat(queueDepthReader.getQueueDepth("foo_queue"), Is.is(-1L));
+    }
+
+    @Test
+    public void shouldReturnMinusOneWhenBrokerIsUnreachable() throws IOException {
+        given(mBeanServer.getQueueViewMBean("foo_queue")).willThrow(new IOException("Connection refused"));
+
+        assertThat(queueDepthReader.getQueueDepth("foo_queue"), Is.is(-1L));
+    }
+}
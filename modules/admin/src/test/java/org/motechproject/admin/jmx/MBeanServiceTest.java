@@ -7,10 +7,14 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.motechproject.admin.domain.ListenerMBean;
 import org.motechproject.admin.domain.QueueMBean;
+import org.motechproject.event.metrics.EventListenerStatisticsMXBean;
+import org.motechproject.event.metrics.ListenerStatistics;
 
 import javax.management.ObjectName;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -48,4 +52,19 @@ public class MBeanServiceTest {
         assertThat(queueStatistics.get(0).getDestination(), Is.is("foo_queue"));
     }
 
+    @Test
+    public void shouldReturnListenerStatistics() {
+        EventListenerStatisticsMXBean statisticsMBean = mock(EventListenerStatisticsMXBean.class);
+        given(mBeanServer.getEventListenerStatisticsMBean()).willReturn(statisticsMBean);
+        given(statisticsMBean.getListenerStatistics()).willReturn(Arrays.asList(
+                new ListenerStatistics("foo_listener", 10, 1, 150.5, 120, 400, 900, 1000, 5, 2)));
+
+        List<ListenerMBean> listenerStatistics = mBeanService.getListenerStatistics();
+        assertThat(listenerStatistics.size(), Is.is(1));
+        assertThat(listenerStatistics.get(0).getIdentifier(), Is.is("foo_listener"));
+        assertThat(listenerStatistics.get(0).getDispatchCount(), Is.is(10L));
+        assertThat(listenerStatistics.get(0).getP99Latency(), Is.is(900L));
+        assertThat(listenerStatistics.get(0).getBroadcastsInFlight(), Is.is(5L));
+        assertThat(listenerStatistics.get(0).getRejectedBroadcastCount(), Is.is(2L));
+    }
 }
@@ -18,11 +18,14 @@ public final class EventDataKeys {
     public static final String TASK_FAIL_TRIGGER_DISABLED = "taskFailTriggerDisabled";
     public static final String TASK_FAIL_TASK_ID = "taskFailTaskID";
     public static final String TASK_FAIL_TASK_NAME = "taskFailTaskName";
+    public static final String TASK_FAIL_SUPPRESSED_COUNT = "taskFailSuppressedCount";
 
     public static final String CHANNEL_MODULE_NAME = "moduleName";
 
     public static final String DATA_PROVIDER_NAME = "name";
 
+    public static final String CACHE_INVALIDATION_ORIGIN = "origin";
+
     public static final String HANDLER_ERROR_PARAM = "taskError";
 
     public static final String REPEAT_COUNT = "repeatCount";
@@ -21,6 +21,8 @@ public final class EventSubjects {
     public static final String DATA_PROVIDER_SUBJECT = BASE_SUBJECT + "dataProvider.";
     public static final String DATA_PROVIDER_UPDATE_SUBJECT = DATA_PROVIDER_SUBJECT + "update";
 
+    public static final String TASK_CACHE_INVALIDATE_SUBJECT = BASE_SUBJECT + "cache.invalidate";
+
     public static final String SCHEDULE_REPEATING_JOB = "scheduleRepeatingJob";
 
     /**
@@ -37,6 +37,17 @@ public final class KeyInformation {
      */
     public static final String POST_ACTION_PARAMETER_PREFIX = "pa";
 
+    /**
+     * Pattern matching the string representations of dragged fields in a template, as described
+     * in {@link #parseAll(String)}. The first group holds the field without the enclosing braces.
+     */
+    public static final Pattern FIELD_PATTERN = Pattern.compile("\\{\\{((.*?))(\\}\\})(?![^(]*\\))");
+
+    private static final Pattern ADDITIONAL_DATA_PATTERN =
+            Pattern.compile("([a-zA-Z0-9\\-_]+)\\.([\\.a-zA-Z0-9\\-_]+)#([a-zA-Z0-9]+)\\.(.+)");
+    private static final Pattern POST_ACTION_PARAMETER_PATTERN = Pattern.compile("([a-zA-Z0-9\\-_]+)\\.(.+)");
+    private static final Pattern MANIPULATION_SEPARATOR = Pattern.compile("\\?");
+
     private static final int DATA_PROVIDER_NAME_IDX = 1;
     private static final int OBJECT_TYPE_IDX = 2;
     private static final int OBJECT_ID_IDX = 3;
@@ -110,7 +121,7 @@ public final class KeyInformation {
         String allManipulations = questionMarkIndex == -1 ? null : input.substring(questionMarkIndex + 1);
 
         if (allManipulations != null) {
-            manipulations.addAll(Arrays.asList(allManipulations.split("\\?")));
+            manipulations.addAll(Arrays.asList(MANIPULATION_SEPARATOR.split(allManipulations)));
         }
 
         int prefixIndex = withoutManipulation.indexOf('.');
@@ -121,8 +132,7 @@ public final class KeyInformation {
         if (prefix.equalsIgnoreCase(TRIGGER_PREFIX)) {
             key = new KeyInformation(input, prefix, withoutManipulation, manipulations);
         } else if (prefix.equalsIgnoreCase(ADDITIONAL_DATA_PREFIX)) {
-            Pattern pattern = Pattern.compile("([a-zA-Z0-9\\-_]+)\\.([\\.a-zA-Z0-9\\-_]+)#([a-zA-Z0-9]+)\\.(.+)");
-            Matcher matcher = pattern.matcher(withoutManipulation);
+            Matcher matcher = ADDITIONAL_DATA_PATTERN.matcher(withoutManipulation);
 
             if (matcher.matches()) {
                 String dataProviderName = matcher.group(DATA_PROVIDER_NAME_IDX);
@@ -135,8 +145,7 @@ public final class KeyInformation {
                 throw new IllegalArgumentException("Incorrect format for key from additional data");
             }
         } else if (prefix.equalsIgnoreCase(POST_ACTION_PARAMETER_PREFIX)) {
-            Pattern pattern = Pattern.compile("([a-zA-Z0-9\\-_]+)\\.(.+)");
-            Matcher matcher = pattern.matcher(withoutManipulation);
+            Matcher matcher = POST_ACTION_PARAMETER_PATTERN.matcher(withoutManipulation);
 
             if (matcher.matches()) {
                 Long objectId = Long.valueOf(matcher.group(POST_ACTION_PARAM_ID_IDX));
@@ -189,8 +198,7 @@ public final class KeyInformation {
      */
     public static List<KeyInformation> parseAll(String input) {
         List<KeyInformation> keys = new ArrayList<>();
-        Pattern pattern = Pattern.compile("\\{\\{((.*?))(\\}\\})(?![^(]*\\))");
-        Matcher matcher = pattern.matcher(isEmpty(input) ? "" : input);
+        Matcher matcher = FIELD_PATTERN.matcher(isEmpty(input) ? "" : input);
 
         while (matcher.find()) {
             keys.add(KeyInformation.parse(matcher.group(1)));
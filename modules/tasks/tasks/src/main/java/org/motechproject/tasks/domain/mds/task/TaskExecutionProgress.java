@@ -36,6 +36,10 @@ public class TaskExecutionProgress {
         return actionsSucceeded;
     }
 
+    public void setActionsSucceeded(int actionsSucceeded) {
+        this.actionsSucceeded = actionsSucceeded;
+    }
+
     public void addSuccess() {
         actionsSucceeded++;
     }
@@ -44,6 +48,10 @@ public class TaskExecutionProgress {
         return actionsFiltered;
     }
 
+    public void setActionsFiltered(int actionsFiltered) {
+        this.actionsFiltered = actionsFiltered;
+    }
+
     public void addActionFiltered() {
         actionsFiltered++;
     }
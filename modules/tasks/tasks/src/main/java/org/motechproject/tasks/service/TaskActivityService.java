@@ -90,7 +90,8 @@ public interface TaskActivityService {
     void deleteActivitiesForTask(Long taskId);
 
     /**
-     * Returns single TaskActivity with given activity ID.
+     * Returns single TaskActivity with given activity ID. The activity of a task which is being executed is returned
+     * from memory, together with the progress which might not have been written to the database yet.
      *
      * @param activityId the ID of activity instance to be retrieved
      * @return TaskActivity with the given ID
@@ -0,0 +1,54 @@
+package org.motechproject.tasks.service;
+
+/**
+ * JMX interface exposing statistics of the in-memory index of active tasks, used by the task trigger handler to find
+ * tasks for incoming trigger events without querying the database. It is registered in the platform MBean server
+ * under the {@link #OBJECT_NAME} name.
+ */
+public interface TaskCacheStatisticsMXBean {
+
+    /**
+     * The name under which the statistics are registered in the platform MBean server.
+     */
+    String OBJECT_NAME = "org.motechproject.tasks:type=TaskCacheStatistics";
+
+    /**
+     * @return the number of trigger subjects for which active tasks are cached
+     */
+    int getCachedSubjectCount();
+
+    /**
+     * @return the number of tasks cached for all trigger subjects
+     */
+    int getCachedTaskCount();
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups which had to query the database
+     */
+    long getMissCount();
+
+    /**
+     * @return the ratio of lookups answered from the cache to all lookups, or 0 if there were no lookups
+     */
+    double getHitRate();
+
+    /**
+     * @return the number of times cached tasks were updated or removed, due to tasks or channels being changed
+     */
+    long getInvalidationCount();
+
+    /**
+     * Clears all collected statistics.
+     */
+    void resetStatistics();
+
+    /**
+     * Removes all tasks from the cache, forcing them to be loaded from the database on the next lookups.
+     */
+    void clear();
+}
@@ -0,0 +1,55 @@
+package org.motechproject.tasks.service;
+
+/**
+ * JMX interface exposing statistics of task executions started by trigger events, including invocations which
+ * overlapped with a running execution of the same task. It is registered in the platform MBean server under the
+ * {@link #OBJECT_NAME} name.
+ */
+public interface TaskExecutionStatisticsMXBean {
+
+    /**
+     * The name under which the statistics are registered in the platform MBean server.
+     */
+    String OBJECT_NAME = "org.motechproject.tasks:type=TaskExecutionStatistics";
+
+    /**
+     * @return the policy applied to invocations of tasks which are already running
+     */
+    String getOverlapPolicy();
+
+    /**
+     * @return the number of worker threads executing tasks in parallel, 0 if tasks are executed by the threads
+     * receiving trigger events
+     */
+    int getWorkerThreads();
+
+    /**
+     * @return the number of tasks being executed at the moment
+     */
+    int getInFlightCount();
+
+    /**
+     * @return the number of finished task executions
+     */
+    long getExecutedCount();
+
+    /**
+     * @return the number of invocations skipped because the task was already running
+     */
+    long getSkippedCount();
+
+    /**
+     * @return the number of invocations queued until the running execution of the task finished
+     */
+    long getQueuedCount();
+
+    /**
+     * @return the number of invocations replaced by a later invocation of the same task before they were executed
+     */
+    long getCoalescedCount();
+
+    /**
+     * Clears all collected statistics.
+     */
+    void resetStatistics();
+}
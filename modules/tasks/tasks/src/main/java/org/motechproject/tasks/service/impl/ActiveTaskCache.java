@@ -0,0 +1,333 @@
+package org.motechproject.tasks.service.impl;
+
+import org.motechproject.commons.api.MBeanUtils;
+import org.motechproject.commons.date.util.DateUtil;
+import org.motechproject.config.SettingsFacade;
+import org.motechproject.tasks.domain.mds.task.Task;
+import org.motechproject.tasks.service.TaskCacheStatisticsMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory index from trigger subjects to the tasks which can be executed for them, that is tasks which are enabled
+ * or use a time window. Lookups are lock-free and hand out copies of the cached tasks, so that callers can change
+ * them freely, while changes of the cache itself are serialized and only made through {@link #update(Task)} and
+ * {@link #remove(Long)}. Tasks are loaded for a subject on the first lookup and then kept in sync by the {@link TaskServiceImpl}
+ * whenever a task is saved or deleted. A generation counter, increased on every change, prevents a load which raced
+ * with a change from caching stale tasks.
+ * <p/>
+ * Tasks changed without the {@link TaskServiceImpl}, for example in the data browser, are not noticed by the cache, so
+ * the tasks of a subject are loaded again once they have been cached for longer than the configured time to live.
+ */
+@Component
+public class ActiveTaskCache implements TaskCacheStatisticsMXBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActiveTaskCache.class);
+
+    private static final Comparator<Task> BY_ID = new Comparator<Task>() {
+        @Override
+        public int compare(Task first, Task second) {
+            return first.getId().compareTo(second.getId());
+        }
+    };
+
+    public static final String TIME_TO_LIVE_KEY = "task.cache.timeToLive";
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long DEFAULT_TIME_TO_LIVE = 60;
+
+    private final ConcurrentMap<String, CachedTasks> tasksBySubject = new ConcurrentHashMap<>();
+    private final Map<Long, String> subjectsByTask = new HashMap<>();
+    private final Object lock = new Object();
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private SettingsFacade settings;
+    private volatile long timeToLiveMillis = DEFAULT_TIME_TO_LIVE * MILLIS_PER_SECOND;
+
+    /**
+     * Returns copies of the cached tasks for the given trigger subject. Changing the returned tasks does not affect
+     * the cache, saving them does.
+     *
+     * @param subject the trigger subject
+     * @return the list of tasks, ordered by their ids, or null if the tasks have not been loaded yet or have expired
+     */
+    public List<Task> get(String subject) {
+        CachedTasks cached = tasksBySubject.get(subject);
+
+        if (cached != null && isExpired(cached)) {
+            expire(subject, cached);
+            cached = null;
+        }
+
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return copyAll(cached.tasks);
+    }
+
+    /**
+     * Returns the current generation of the cache. It must be retrieved before loading tasks from the database and
+     * passed to {@link #put(String, List, long)}.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    /**
+     * Caches the tasks loaded from the database for the given trigger subject. The tasks are not cached if the cache
+     * has changed since the given generation.
+     *
+     * @param subject the trigger subject
+     * @param tasks the detached tasks, ordered by their ids
+     * @param loadGeneration the generation retrieved before loading the tasks
+     */
+    public void put(String subject, List<Task> tasks, long loadGeneration) {
+        synchronized (lock) {
+            if (generation != loadGeneration) {
+                LOGGER.debug("Tasks for subject {} changed while being loaded, not caching them", subject);
+                return;
+            }
+
+            for (Task task : tasks) {
+                subjectsByTask.put(task.getId(), subject);
+            }
+            tasksBySubject.put(subject, new CachedTasks(new ArrayList<>(tasks), DateUtil.now().getMillis()));
+        }
+    }
+
+    /**
+     * Updates the cache with the given saved task. The task is removed from the subject it was previously cached for
+     * and, if it can be executed, added to the tasks of its current trigger subject, provided they are cached.
+     *
+     * @param task the detached copy of the saved task
+     */
+    public void update(Task task) {
+        synchronized (lock) {
+            generation++;
+            invalidations.increment();
+
+            removeTask(task.getId());
+
+            String subject = (task.getTrigger() == null) ? null : task.getTrigger().getSubject();
+            CachedTasks current = (subject == null) ? null : tasksBySubject.get(subject);
+
+            if (current != null && (task.isEnabled() || task.isUsingTimeWindow())) {
+                List<Task> updated = new ArrayList<>(current.tasks);
+                updated.add(task);
+                Collections.sort(updated, BY_ID);
+
+                subjectsByTask.put(task.getId(), subject);
+                tasksBySubject.put(subject, new CachedTasks(updated, current.loadTime));
+            }
+        }
+    }
+
+    /**
+     * Removes the task with the given id from the cache.
+     *
+     * @param taskId the id of the deleted task
+     */
+    public void remove(Long taskId) {
+        synchronized (lock) {
+            generation++;
+            invalidations.increment();
+
+            removeTask(taskId);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            generation++;
+            invalidations.increment();
+
+            tasksBySubject.clear();
+            subjectsByTask.clear();
+        }
+    }
+
+    @Override
+    public int getCachedSubjectCount() {
+        return tasksBySubject.size();
+    }
+
+    @Override
+    public int getCachedTaskCount() {
+        synchronized (lock) {
+            return subjectsByTask.size();
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+
+        return (lookups == 0) ? 0.0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        invalidations.reset();
+    }
+
+    /**
+     * Reads the time to live of cached tasks from the settings and registers this bean in the platform MBean server,
+     * replacing any instance left behind by a previous start of the tasks bundle.
+     */
+    @PostConstruct
+    public void registerMBean() {
+        String timeToLive = (settings == null) ? null : settings.getProperty(TIME_TO_LIVE_KEY);
+        if (timeToLive != null) {
+            timeToLiveMillis = Long.parseLong(timeToLive.trim()) * MILLIS_PER_SECOND;
+        }
+
+        MBeanUtils.registerMBean(this, OBJECT_NAME);
+    }
+
+    /**
+     * Sets the time for which tasks loaded for a subject are cached. Values below 1 disable the expiration.
+     *
+     * @param timeToLive the time to live, in seconds
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLiveMillis = timeToLive * MILLIS_PER_SECOND;
+    }
+
+    @Autowired(required = false)
+    @Qualifier("tasksSettings")
+    public void setSettings(SettingsFacade settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Removes this bean from the platform MBean server.
+     */
+    @PreDestroy
+    public void unregisterMBean() {
+        MBeanUtils.unregisterMBean(OBJECT_NAME);
+    }
+
+    /**
+     * Copies the given tasks, so that they can be handed out without exposing the cached ones.
+     *
+     * @param tasks the tasks to copy
+     * @return the list of copies
+     */
+    static List<Task> copyAll(List<Task> tasks) {
+        List<Task> copies = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            copies.add(copy(task));
+        }
+        return copies;
+    }
+
+    /**
+     * Copies the task itself, the trigger, the configuration and the actions are shared with the given task,
+     * since they are not changed in place while tasks are executed.
+     */
+    private static Task copy(Task task) {
+        List<String> days = (task.getDays() == null) ? null : new ArrayList<>(task.getDays());
+        Task copy = new Task(task.getName(), task.getTrigger(), new ArrayList<>(task.getActions()),
+                task.getTaskConfig(), task.isEnabled(), task.hasRegisteredChannel(), days);
+
+        copy.setId(task.getId());
+        copy.setDescription(task.getDescription());
+        copy.setFailuresInRow(task.getFailuresInRow());
+        copy.setValidationErrors(new HashSet<>(task.getValidationErrors()));
+        copy.setNumberOfRetries(task.getNumberOfRetries());
+        copy.setRetryIntervalInMilliseconds(task.getRetryIntervalInMilliseconds());
+        copy.setRetryTaskOnFailure(task.isRetryTaskOnFailure());
+        copy.setUseTimeWindow(task.isUsingTimeWindow());
+        copy.setStartTime(task.getStartTime());
+        copy.setEndTime(task.getEndTime());
+
+        return copy;
+    }
+
+    private void removeTask(Long taskId) {
+        String subject = subjectsByTask.remove(taskId);
+        CachedTasks current = (subject == null) ? null : tasksBySubject.get(subject);
+
+        if (current != null) {
+            List<Task> updated = new ArrayList<>(current.tasks.size());
+            for (Task task : current.tasks) {
+                if (!task.getId().equals(taskId)) {
+                    updated.add(task);
+                }
+            }
+            tasksBySubject.put(subject, new CachedTasks(updated, current.loadTime));
+        }
+    }
+
+    private boolean isExpired(CachedTasks cached) {
+        return timeToLiveMillis > 0 && DateUtil.now().getMillis() - cached.loadTime > timeToLiveMillis;
+    }
+
+    private void expire(String subject, CachedTasks cached) {
+        synchronized (lock) {
+            if (tasksBySubject.remove(subject, cached)) {
+                for (Task task : cached.tasks) {
+                    subjectsByTask.remove(task.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * The tasks cached for a single trigger subject, together with the time they were loaded from the database.
+     */
+    private static final class CachedTasks {
+        private final List<Task> tasks;
+        private final long loadTime;
+
+        private CachedTasks(List<Task> tasks, long loadTime) {
+            this.tasks = Collections.unmodifiableList(tasks);
+            this.loadTime = loadTime;
+        }
+    }
+}
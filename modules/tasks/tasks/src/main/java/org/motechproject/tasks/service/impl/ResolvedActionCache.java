@@ -0,0 +1,233 @@
+package org.motechproject.tasks.service.impl;
+
+import org.motechproject.tasks.domain.mds.channel.ActionEvent;
+import org.motechproject.tasks.domain.mds.task.TaskActionInformation;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of everything the {@link TaskActionExecutor} resolves before executing an action: the action events from
+ * the channels and, for actions calling OSGi services, the services together with method handles bound to them.
+ * Services are tracked with a {@link ServiceTracker} per service interface, so they are released and dropped from the
+ * cache as soon as they are unregistered, while action events are dropped when a channel is updated or unregistered.
+ * <p/>
+ * Service methods are resolved by the runtime types of their arguments, so a single action can be bound to more than
+ * one method handle.
+ */
+class ResolvedActionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResolvedActionCache.class);
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final ConcurrentMap<String, ActionEvent> actionEvents = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ServiceTracker<Object, BoundService>> trackers = new ConcurrentHashMap<>();
+
+    private BundleContext bundleContext;
+
+    /**
+     * Starts resolving services from the given bundle context, releasing the services resolved from the previous
+     * one.
+     *
+     * @param bundleContext the bundle context, null if services cannot be called
+     */
+    void setBundleContext(BundleContext bundleContext) {
+        clearServices();
+        this.bundleContext = bundleContext;
+    }
+
+    /**
+     * Returns the cached action event matching the given action information.
+     *
+     * @param info the action information
+     * @return the action event, or null if it has not been cached
+     */
+    ActionEvent getActionEvent(TaskActionInformation info) {
+        return actionEvents.get(keyOf(info));
+    }
+
+    /**
+     * Caches a copy of the given action event, resolved for the given action information.
+     *
+     * @param info the action information
+     * @param actionEvent the action event
+     * @return the cached copy
+     */
+    ActionEvent putActionEvent(TaskActionInformation info, ActionEvent actionEvent) {
+        ActionEvent copy = new ActionEvent(actionEvent);
+        actionEvents.put(keyOf(info), copy);
+        return copy;
+    }
+
+    /**
+     * Drops all cached action events.
+     */
+    void clearActionEvents() {
+        actionEvents.clear();
+    }
+
+    /**
+     * Returns the service registered under the given interface, resolving and caching it if needed.
+     *
+     * @param serviceInterface the name of the service interface
+     * @return the service, or null if no service is registered under the given interface
+     */
+    BoundService getService(String serviceInterface) {
+        ServiceTracker<Object, BoundService> tracker = trackers.get(serviceInterface);
+
+        if (tracker == null) {
+            tracker = openTracker(serviceInterface);
+        }
+
+        return (tracker == null) ? null : tracker.getService();
+    }
+
+    /**
+     * Stops tracking services and releases all of them.
+     */
+    void clearServices() {
+        synchronized (trackers) {
+            for (ServiceTracker<Object, BoundService> tracker : trackers.values()) {
+                try {
+                    tracker.close();
+                } catch (IllegalStateException e) {
+                    LOGGER.debug("Unable to release services, the bundle context is no longer valid", e);
+                }
+            }
+            trackers.clear();
+        }
+    }
+
+    private ServiceTracker<Object, BoundService> openTracker(String serviceInterface) {
+        synchronized (trackers) {
+            ServiceTracker<Object, BoundService> tracker = trackers.get(serviceInterface);
+
+            if (tracker == null && bundleContext != null) {
+                tracker = new ServiceTracker<>(bundleContext, serviceInterface, new BoundServiceCustomizer(bundleContext));
+                tracker.open();
+                trackers.put(serviceInterface, tracker);
+            }
+
+            return tracker;
+        }
+    }
+
+    private static String keyOf(TaskActionInformation info) {
+        return info.getModuleName() + '|' + info.getName() + '|' + info.getSubject() + '|'
+                + info.getServiceInterface() + '|' + info.getServiceMethod();
+    }
+
+    /**
+     * A cached service, together with the handles of its methods which have been called by task actions.
+     */
+    static final class BoundService {
+        private final Object service;
+        private final ConcurrentMap<MethodKey, MethodHandle> methods = new ConcurrentHashMap<>();
+
+        private BoundService(Object service) {
+            this.service = service;
+        }
+
+        /**
+         * Returns the handle of the public method of the service with the given name and parameter types, bound to
+         * the service. The handle takes the arguments as an array and returns the result of the method as an object.
+         *
+         * @param name the name of the method
+         * @param parameterTypes the parameter types
+         * @return the method handle
+         * @throws NoSuchMethodException if the service has no such method
+         * @throws IllegalAccessException if the method is not accessible
+         */
+        MethodHandle getMethod(String name, Class[] parameterTypes) throws NoSuchMethodException, IllegalAccessException {
+            MethodKey key = new MethodKey(name, parameterTypes);
+            MethodHandle handle = methods.get(key);
+
+            if (handle == null) {
+                Method method = service.getClass().getMethod(name, parameterTypes);
+
+                handle = MethodHandles.publicLookup().unreflect(method)
+                        .bindTo(service)
+                        .asSpreader(Object[].class, parameterTypes.length)
+                        .asType(INVOKER_TYPE);
+                methods.put(key, handle);
+            }
+
+            return handle;
+        }
+    }
+
+    /**
+     * Gets the services tracked for task actions and binds them, releasing them once they are unregistered.
+     */
+    private static final class BoundServiceCustomizer implements ServiceTrackerCustomizer<Object, BoundService> {
+        private final BundleContext bundleContext;
+
+        private BoundServiceCustomizer(BundleContext bundleContext) {
+            this.bundleContext = bundleContext;
+        }
+
+        @Override
+        public BoundService addingService(ServiceReference<Object> reference) {
+            Object service = bundleContext.getService(reference);
+            return (service == null) ? null : new BoundService(service);
+        }
+
+        @Override
+        public void modifiedService(ServiceReference<Object> reference, BoundService service) {
+            // the service object stays the same, so do its method handles
+        }
+
+        @Override
+        public void removedService(ServiceReference<Object> reference, BoundService service) {
+            LOGGER.debug("Service {} unregistered, dropping it from the cache of task actions", reference);
+
+            try {
+                bundleContext.ungetService(reference);
+            } catch (IllegalStateException e) {
+                LOGGER.debug("Unable to release service, the bundle context is no longer valid", e);
+            }
+        }
+    }
+
+    private static final class MethodKey {
+        private final String name;
+        private final Class[] parameterTypes;
+        private final int hash;
+
+        private MethodKey(String name, Class[] parameterTypes) {
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+            this.hash = 31 * name.hashCode() + Arrays.hashCode(parameterTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MethodKey)) {
+                return false;
+            }
+
+            MethodKey other = (MethodKey) obj;
+            return name.equals(other.name) && Arrays.equals(parameterTypes, other.parameterTypes);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.google.common.collect.Multimap;
 import org.motechproject.commons.api.MotechException;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
+import org.motechproject.event.listener.annotations.MotechListener;
 import org.motechproject.tasks.domain.KeyInformation;
 import org.motechproject.tasks.domain.enums.ParameterType;
 import org.motechproject.tasks.domain.mds.channel.ActionEvent;
@@ -17,15 +18,15 @@ import org.motechproject.tasks.service.TaskService;
 import org.motechproject.tasks.service.util.KeyEvaluator;
 import org.motechproject.tasks.service.util.TaskContext;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.ServiceReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PreDestroy;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -33,6 +34,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 
+import static org.motechproject.tasks.constants.EventDataKeys.CHANNEL_MODULE_NAME;
+import static org.motechproject.tasks.constants.EventSubjects.CHANNEL_DEREGISTER_SUBJECT;
+import static org.motechproject.tasks.constants.EventSubjects.CHANNEL_UPDATE_SUBJECT;
 import static org.motechproject.tasks.constants.TaskFailureCause.ACTION;
 import static org.motechproject.tasks.constants.TaskFailureCause.TRIGGER;
 import static org.motechproject.tasks.domain.enums.ParameterType.LIST;
@@ -53,6 +57,8 @@ public class TaskActionExecutor {
     private TaskActivityService activityService;
     private TasksPostExecutionHandler postExecutionHandler;
 
+    private final ResolvedActionCache actionCache = new ResolvedActionCache();
+
     /**
      * Executes the action for the given task.
      *
@@ -93,12 +99,14 @@ public class TaskActionExecutor {
 
     private ActionEvent getActionEvent(TaskActionInformation actionInformation)
             throws TaskHandlerException {
-        ActionEvent action;
+        ActionEvent action = actionCache.getActionEvent(actionInformation);
 
-        try {
-            action = taskService.getActionEventFor(actionInformation);
-        } catch (ActionNotFoundException e) {
-            throw new TaskHandlerException(TRIGGER, "task.error.actionNotFound", e);
+        if (action == null) {
+            try {
+                action = actionCache.putActionEvent(actionInformation, taskService.getActionEventFor(actionInformation));
+            } catch (ActionNotFoundException e) {
+                throw new TaskHandlerException(TRIGGER, "task.error.actionNotFound", e);
+            }
         }
 
         return action;
@@ -220,29 +228,23 @@ public class TaskActionExecutor {
 
     private boolean callActionServiceMethod(ActionEvent action, Integer actionIndex, Map<String, Object> parameters, TaskContext taskContext)
             throws TaskHandlerException {
-        ServiceReference reference = bundleContext.getServiceReference(
-                action.getServiceInterface()
-        );
-        boolean serviceAvailable = reference != null;
+        ResolvedActionCache.BoundService service = actionCache.getService(action.getServiceInterface());
+        boolean serviceAvailable = service != null;
         if (serviceAvailable) {
-            Object service = bundleContext.getService(reference);
             String serviceMethod = action.getServiceMethod();
             MethodHandler methodHandler = new MethodHandler(action, parameters);
             try {
-                Method method = service.getClass().getMethod(serviceMethod, methodHandler.getClasses());
-
-                try {
-                    Object object = method.invoke(service, methodHandler.getObjects());
+                MethodHandle method = service.getMethod(serviceMethod, methodHandler.getClasses());
+                Object object = invoke(method, methodHandler.getObjects());
 
-                    if (object != null) {
-                        addPostActionParametersToTaskContext(action, actionIndex, taskContext, object);
-                    }
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new TaskHandlerException(
-                            ACTION, "task.error.serviceMethodInvokeError", e,
-                            serviceMethod, action.getServiceInterface()
-                    );
+                if (object != null) {
+                    addPostActionParametersToTaskContext(action, actionIndex, taskContext, object);
                 }
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new TaskHandlerException(
+                        ACTION, "task.error.serviceMethodInvokeError", e,
+                        serviceMethod, action.getServiceInterface()
+                );
             } catch (NoSuchMethodException e) {
                 throw new TaskHandlerException(
                         ACTION, "task.error.notFoundMethodForService", e,
@@ -254,6 +256,27 @@ public class TaskActionExecutor {
         return serviceAvailable;
     }
 
+    private Object invoke(MethodHandle method, Object[] arguments) throws InvocationTargetException {
+        try {
+            return (Object) method.invokeExact(arguments);
+        } catch (Throwable e) {
+            // the handle throws whatever the service method throws, so it is wrapped like in a reflective call
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Drops the cached action events after a channel is updated, so actions are executed with their current
+     * definitions.
+     *
+     * @param event the channel update event
+     */
+    @MotechListener(subjects = { CHANNEL_UPDATE_SUBJECT, CHANNEL_DEREGISTER_SUBJECT })
+    public void clearActionEvents(MotechEvent event) {
+        LOGGER.debug("Channel {} changed, dropping cached task actions", event.getParameters().get(CHANNEL_MODULE_NAME));
+        actionCache.clearActionEvents();
+    }
+
     private void addTriggerParameters(Task task, ActionEvent action, Map<String, Object> parameters, Map<String, Object> triggerParameters) {
         if (task.isRetryTaskOnFailure() && !action.hasService()) {
             for (Map.Entry<String, Object> entry : triggerParameters.entrySet()) {
@@ -273,6 +296,15 @@ public class TaskActionExecutor {
 
     public void setBundleContext(BundleContext bundleContext) {
         this.bundleContext = bundleContext;
+        actionCache.setBundleContext(bundleContext);
+    }
+
+    /**
+     * Releases the services cached for task actions.
+     */
+    @PreDestroy
+    public void releaseServices() {
+        actionCache.setBundleContext(null);
     }
 
     @Autowired
@@ -34,10 +34,12 @@ public class TaskActivityServiceImpl implements TaskActivityService {
     private static final String TASK_FILTERED = "task.filtered";
 
     private TaskActivitiesDataService taskActivitiesDataService;
+    private TaskActivityWriter activityWriter;
 
     @Autowired
-    public TaskActivityServiceImpl(TaskActivitiesDataService taskActivitiesDataService) {
+    public TaskActivityServiceImpl(TaskActivitiesDataService taskActivitiesDataService, TaskActivityWriter activityWriter) {
         this.taskActivitiesDataService = taskActivitiesDataService;
+        this.activityWriter = activityWriter;
     }
 
     @Override
@@ -47,64 +49,77 @@ public class TaskActivityServiceImpl implements TaskActivityService {
         TaskActivity activity = taskActivitiesDataService.create(
                 new TaskActivity(TASK_IN_PROGRESS, Arrays.asList("0", String.valueOf(totalActions)), task.getId(), task.getTrigger().getDisplayName(),
                         TaskActivityType.IN_PROGRESS, null, parameters, new TaskExecutionProgress(totalActions)));
+        activityWriter.track(activity);
         return activity.getId();
     }
 
     @Override
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void addTaskFiltered(Long activityId) {
-        TaskActivity activity = taskActivitiesDataService.findById(activityId);
+        TaskActivity pending = activityWriter.get(activityId);
+        TaskActivity activity = (pending == null) ? taskActivitiesDataService.findById(activityId) : pending;
 
-        activity.setActivityType(TaskActivityType.FILTERED);
-        activity.setMessage(TASK_FILTERED);
-        taskActivitiesDataService.update(activity);
+        synchronized (activity) {
+            activity.setActivityType(TaskActivityType.FILTERED);
+            activity.setMessage(TASK_FILTERED);
+            updateActivity(activity, pending != null);
+        }
     }
 
     @Override
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public boolean addSuccessfulExecution(Long activityId) {
-        TaskActivity activity = taskActivitiesDataService.findById(activityId);
+        TaskActivity pending = activityWriter.get(activityId);
+        TaskActivity activity = (pending == null) ? taskActivitiesDataService.findById(activityId) : pending;
         if (activity == null) {
             return false;
         }
 
-        TaskExecutionProgress progress = activity.getTaskExecutionProgress();
-        progress.addSuccess();
+        synchronized (activity) {
+            TaskExecutionProgress progress = activity.getTaskExecutionProgress();
+            progress.addSuccess();
 
-        return updateTaskProgress(progress, activity);
+            return updateTaskProgress(progress, activity, pending != null);
+        }
     }
 
     @Override
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void addFilteredExecution(Long activityId) {
-        TaskActivity activity = taskActivitiesDataService.findById(activityId);
+        TaskActivity pending = activityWriter.get(activityId);
+        TaskActivity activity = (pending == null) ? taskActivitiesDataService.findById(activityId) : pending;
         if (activity != null) {
-            TaskExecutionProgress progress = activity.getTaskExecutionProgress();
-            progress.addActionFiltered();
+            synchronized (activity) {
+                TaskExecutionProgress progress = activity.getTaskExecutionProgress();
+                progress.addActionFiltered();
 
-            updateTaskProgress(progress, activity);
+                updateTaskProgress(progress, activity, pending != null);
+            }
         }
     }
 
     @Override
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void addFailedExecution(Long activityId, Throwable e) {
-        TaskActivity activity = taskActivitiesDataService.findById(activityId);
+        TaskActivity pending = activityWriter.get(activityId);
+        TaskActivity activity = (pending == null) ? taskActivitiesDataService.findById(activityId) : pending;
 
         if (activity == null){
             return;
         }
 
-        if (activity.getActivityType() != TaskActivityType.ERROR) {
-            activity.setMessage(e.getMessage());
-            activity.setActivityType(TaskActivityType.ERROR);
+        synchronized (activity) {
+            if (activity.getActivityType() != TaskActivityType.ERROR) {
+                activity.setMessage(e.getMessage());
+                activity.setActivityType(TaskActivityType.ERROR);
 
-            if (e instanceof TaskHandlerException) {
-                activity.setFields(((TaskHandlerException) e).getArgs());
-            }
+                if (e instanceof TaskHandlerException) {
+                    activity.setFields(((TaskHandlerException) e).getArgs());
+                }
 
-            activity.setStackTraceElement(ExceptionUtils.getStackTrace(e));
-            taskActivitiesDataService.update(activity);
+                activity.setStackTraceElement(ExceptionUtils.getStackTrace(e));
+                updateActivity(activity, pending != null);
+            }
         }
     }
 
@@ -130,6 +145,7 @@ public class TaskActivityServiceImpl implements TaskActivityService {
     @Override
     @Transactional
     public void deleteActivitiesForTask(Long taskId) {
+        activityWriter.removeForTask(taskId);
         for (TaskActivity msg : taskActivitiesDataService.byTask(taskId)) {
             taskActivitiesDataService.delete(msg);
         }
@@ -138,7 +154,8 @@ public class TaskActivityServiceImpl implements TaskActivityService {
     @Override
     @Transactional
     public TaskActivity getTaskActivityById(Long activityId) {
-        return taskActivitiesDataService.findById(activityId);
+        TaskActivity pending = activityWriter.getSnapshot(activityId);
+        return (pending == null) ? taskActivitiesDataService.findById(activityId) : pending;
     }
 
     @Override
@@ -203,7 +220,7 @@ public class TaskActivityServiceImpl implements TaskActivityService {
         return taskActivitiesDataService.countByActivityTypesAndDate(activityTypes, dateRange);
     }
 
-    private boolean updateTaskProgress(TaskExecutionProgress progress, TaskActivity activity) {
+    private boolean updateTaskProgress(TaskExecutionProgress progress, TaskActivity activity, boolean pending) {
         boolean taskFinished = (progress.getActionsSucceeded() + progress.getActionsFiltered()) == progress.getTotalActions();
 
         if (taskFinished) {
@@ -217,11 +234,19 @@ public class TaskActivityServiceImpl implements TaskActivityService {
         }
 
         updateTaskInProgressMessage(activity);
-        taskActivitiesDataService.update(activity);
+        updateActivity(activity, pending);
 
         return taskFinished;
     }
 
+    private void updateActivity(TaskActivity activity, boolean pending) {
+        if (pending) {
+            activityWriter.write(activity);
+        } else {
+            taskActivitiesDataService.update(activity);
+        }
+    }
+
     private void updateTaskInProgressMessage(TaskActivity activity) {
         if (TASK_IN_PROGRESS.equals(activity.getMessage())) {
             activity.getFields().set(0, String.valueOf(activity.getTaskExecutionProgress().getActionsSucceeded()));
@@ -0,0 +1,452 @@
+package org.motechproject.tasks.service.impl;
+
+import org.motechproject.config.SettingsFacade;
+import org.motechproject.tasks.domain.enums.TaskActivityType;
+import org.motechproject.tasks.domain.mds.task.TaskActivity;
+import org.motechproject.tasks.domain.mds.task.TaskExecutionProgress;
+import org.motechproject.tasks.repository.TaskActivitiesDataService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind store for the progress of task executions. The activity created when a task is started is kept in
+ * memory, so the progress of its actions can be recorded without reading it back from the database. Depending on the
+ * configured {@link Durability}, changes of the activity are either written right away or queued and written in
+ * batches by a background thread. Queued changes are flushed when the tasks bundle is stopped, for no longer than the
+ * configured shutdown timeout. Activities being written in a batch are not written directly until the batch commits,
+ * so that a batch can never overwrite the final state of an activity with its progress.
+ * <p/>
+ * Activities are written by copying the state of their in-memory copies to the persisted instances, so the in-memory
+ * copies must never be passed to the {@link TaskActivitiesDataService} directly.
+ */
+@Component
+public class TaskActivityWriter {
+
+    /**
+     * Controls when changes of task activities are written to the database.
+     */
+    public enum Durability {
+        /**
+         * Every change is written right away, as part of the transaction which made it.
+         */
+        SYNCHRONOUS,
+        /**
+         * Changes which finish the execution of a task are written right away, while the progress of actions is
+         * written in batches.
+         */
+        TERMINAL,
+        /**
+         * All changes are written in batches. Changes which have not been written yet are lost if the server fails.
+         */
+        WRITE_BEHIND
+    }
+
+    public static final String DURABILITY_KEY = "task.activity.durability";
+    public static final String BATCH_SIZE_KEY = "task.activity.batchSize";
+    public static final String FLUSH_INTERVAL_KEY = "task.activity.flushInterval";
+    public static final String SHUTDOWN_TIMEOUT_KEY = "task.activity.shutdownTimeout";
+
+    /**
+     * The maximum number of activities kept in memory. Activities started above this limit are read from and written
+     * to the database directly.
+     */
+    public static final int MAX_TRACKED_ACTIVITIES = 10000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskActivityWriter.class);
+
+    private static final Durability DEFAULT_DURABILITY = Durability.TERMINAL;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_FLUSH_INTERVAL = 250;
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT = 5000;
+
+    private final ConcurrentMap<Long, TaskActivity> activities = new ConcurrentHashMap<>();
+    private final BlockingQueue<Long> queue = new LinkedBlockingQueue<>();
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final Set<Long> flushing = ConcurrentHashMap.newKeySet();
+
+    private TaskActivitiesDataService taskActivitiesDataService;
+    private SettingsFacade settings;
+
+    private volatile Durability durability = DEFAULT_DURABILITY;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private long shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+
+    private volatile ScheduledExecutorService executor;
+
+    @Autowired
+    public TaskActivityWriter(TaskActivitiesDataService taskActivitiesDataService) {
+        this.taskActivitiesDataService = taskActivitiesDataService;
+    }
+
+    /**
+     * Reads the settings and starts the background thread writing queued changes.
+     */
+    @PostConstruct
+    public void start() {
+        if (settings != null) {
+            durability = parseDurability(getSetting(DURABILITY_KEY, DEFAULT_DURABILITY.name()));
+            batchSize = Integer.parseInt(getSetting(BATCH_SIZE_KEY, String.valueOf(DEFAULT_BATCH_SIZE)).trim());
+            flushInterval = Long.parseLong(getSetting(FLUSH_INTERVAL_KEY, String.valueOf(DEFAULT_FLUSH_INTERVAL)).trim());
+            shutdownTimeout = Long.parseLong(getSetting(SHUTDOWN_TIMEOUT_KEY, String.valueOf(DEFAULT_SHUTDOWN_TIMEOUT)).trim());
+        }
+
+        executor = new ScheduledThreadPoolExecutor(1, new WriterThreadFactory());
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushQueued();
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+
+        LOGGER.info("Task activities are written with {} durability, in batches of {}", durability, batchSize);
+    }
+
+    /**
+     * Stops the background thread and writes all queued changes, giving up once the shutdown timeout passes.
+     */
+    @PreDestroy
+    public void stop() {
+        long deadline = System.currentTimeMillis() + shutdownTimeout;
+
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+
+        try {
+            while (!queue.isEmpty() && System.currentTimeMillis() < deadline) {
+                flushBatch();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to write task activities", e);
+        }
+
+        if (!queue.isEmpty()) {
+            LOGGER.warn("Unable to write {} task activities before the shutdown timeout", queue.size());
+            queue.clear();
+            queued.clear();
+        }
+        activities.clear();
+    }
+
+    /**
+     * Keeps an in-memory copy of the given, newly created activity.
+     *
+     * @param activity the persisted activity
+     */
+    public void track(TaskActivity activity) {
+        if (activities.size() >= MAX_TRACKED_ACTIVITIES) {
+            evictWritten();
+        }
+        if (activities.size() < MAX_TRACKED_ACTIVITIES) {
+            activities.put(activity.getId(), copyOf(activity));
+        }
+    }
+
+    /**
+     * Returns the in-memory copy of the activity with the given id. Changes of the returned activity must be made
+     * while holding its monitor and then passed to {@link #write(TaskActivity)}. Callers which only read the activity
+     * should use {@link #getSnapshot(Long)} instead.
+     *
+     * @param activityId the id of the activity
+     * @return the in-memory copy, or null if the activity is not kept in memory
+     */
+    public TaskActivity get(Long activityId) {
+        return activityId == null ? null : activities.get(activityId);
+    }
+
+    /**
+     * Returns a snapshot of the in-memory copy of the activity with the given id. The snapshot is taken while holding
+     * the monitor of the in-memory copy, and it is not changed by later changes of the activity.
+     *
+     * @param activityId the id of the activity
+     * @return the snapshot, or null if the activity is not kept in memory
+     */
+    public TaskActivity getSnapshot(Long activityId) {
+        TaskActivity activity = get(activityId);
+
+        if (activity == null) {
+            return null;
+        }
+
+        synchronized (activity) {
+            return copyOf(activity);
+        }
+    }
+
+    /**
+     * Records a change of an in-memory copy returned by {@link #get(Long)}. The change is written right away or
+     * queued, depending on the configured durability. The in-memory copy is dropped once the execution of its task
+     * finishes and its final state is written.
+     *
+     * @param activity the changed in-memory copy
+     */
+    public void write(TaskActivity activity) {
+        synchronized (activity) {
+            boolean finished = isFinished(activity);
+
+            if (activities.get(activity.getId()) != activity || durability == Durability.SYNCHRONOUS
+                    || (durability == Durability.TERMINAL && finished)) {
+                awaitBatch(activity);
+                store(activity);
+            } else if (queued.add(activity.getId())) {
+                queue.add(activity.getId());
+            }
+        }
+
+        ScheduledExecutorService currentExecutor = executor;
+        if (queue.size() >= batchSize && currentExecutor != null && !currentExecutor.isShutdown()) {
+            currentExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushQueued();
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the in-memory copies of the activities of the given task. Their queued changes are discarded.
+     *
+     * @param taskId the id of the task
+     */
+    public void removeForTask(Long taskId) {
+        Iterator<TaskActivity> iterator = activities.values().iterator();
+
+        while (iterator.hasNext()) {
+            TaskActivity activity = iterator.next();
+            if (taskId.equals(activity.getTask())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the configured durability
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    @Autowired(required = false)
+    @Qualifier("tasksSettings")
+    public void setSettings(SettingsFacade settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Writes all queued changes, in batches.
+     */
+    void flushQueued() {
+        try {
+            while (!queue.isEmpty()) {
+                flushBatch();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to write task activities", e);
+        }
+    }
+
+    private void flushBatch() {
+        List<Long> ids = new ArrayList<>(batchSize);
+        queue.drainTo(ids, batchSize);
+
+        final List<TaskActivity> batch = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            TaskActivity activity = activities.get(id);
+            if (activity != null) {
+                synchronized (activity) {
+                    flushing.add(id);
+                    queued.remove(id);
+                }
+                batch.add(activity);
+            } else {
+                queued.remove(id);
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        boolean written = false;
+        try {
+            taskActivitiesDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (TaskActivity activity : batch) {
+                        synchronized (activity) {
+                            // the final state has already been written directly
+                            if (durability == Durability.WRITE_BEHIND || !isFinished(activity)) {
+                                store(activity);
+                            }
+                        }
+                    }
+                }
+            });
+            written = true;
+        } finally {
+            finishBatch(batch, written);
+        }
+
+        LOGGER.debug("Written {} task activities", batch.size());
+    }
+
+    /**
+     * Releases the activities of a batch, waking up direct writes waiting for it. The activities of a failed batch are
+     * queued again, unless their final state has been written directly in the meantime.
+     */
+    private void finishBatch(List<TaskActivity> batch, boolean written) {
+        int requeued = 0;
+
+        for (TaskActivity activity : batch) {
+            synchronized (activity) {
+                flushing.remove(activity.getId());
+
+                if (!written && activities.get(activity.getId()) == activity && queued.add(activity.getId())) {
+                    queue.add(activity.getId());
+                    requeued++;
+                }
+
+                activity.notifyAll();
+            }
+        }
+
+        if (requeued > 0) {
+            LOGGER.warn("Unable to write a batch of task activities, {} of them were queued again", requeued);
+        }
+    }
+
+    /**
+     * Waits, while holding the monitor of the given activity, until the batch it is being written in commits.
+     */
+    private void awaitBatch(TaskActivity activity) {
+        while (flushing.contains(activity.getId())) {
+            try {
+                activity.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.warn("Interrupted while waiting for the batch writing task activity {}", activity.getId());
+                return;
+            }
+        }
+    }
+
+    private void store(TaskActivity activity) {
+        TaskActivity persisted = taskActivitiesDataService.findById(activity.getId());
+
+        if (persisted == null) {
+            activities.remove(activity.getId());
+            return;
+        }
+
+        persisted.setMessage(activity.getMessage());
+        persisted.setActivityType(activity.getActivityType());
+        persisted.setFields(activity.getFields() == null ? null : new ArrayList<>(activity.getFields()));
+        persisted.setStackTraceElement(activity.getStackTraceElement());
+
+        TaskExecutionProgress progress = activity.getTaskExecutionProgress();
+        if (progress != null && persisted.getTaskExecutionProgress() != null) {
+            persisted.getTaskExecutionProgress().setActionsSucceeded(progress.getActionsSucceeded());
+            persisted.getTaskExecutionProgress().setActionsFiltered(progress.getActionsFiltered());
+        }
+
+        taskActivitiesDataService.update(persisted);
+
+        if (isFinished(activity)) {
+            activities.remove(activity.getId(), activity);
+        }
+    }
+
+    private void evictWritten() {
+        for (Map.Entry<Long, TaskActivity> entry : activities.entrySet()) {
+            TaskActivity activity = entry.getValue();
+
+            synchronized (activity) {
+                // activities still in progress, or with changes not written yet, must keep their in-memory copies
+                if (isFinished(activity) && !queued.contains(entry.getKey()) && !flushing.contains(entry.getKey())) {
+                    activities.remove(entry.getKey(), activity);
+                }
+            }
+        }
+    }
+
+    private boolean isFinished(TaskActivity activity) {
+        return activity.getActivityType() != TaskActivityType.IN_PROGRESS;
+    }
+
+    private TaskActivity copyOf(TaskActivity activity) {
+        TaskExecutionProgress progress = null;
+
+        if (activity.getTaskExecutionProgress() != null) {
+            progress = new TaskExecutionProgress(activity.getTaskExecutionProgress().getTotalActions());
+            progress.setActionsSucceeded(activity.getTaskExecutionProgress().getActionsSucceeded());
+            progress.setActionsFiltered(activity.getTaskExecutionProgress().getActionsFiltered());
+        }
+
+        List<String> fields = activity.getFields() == null ? new ArrayList<String>() : new ArrayList<>(activity.getFields());
+        Map<String, Object> parameters = activity.getParameters() == null ? null : new HashMap<>(activity.getParameters());
+        TaskActivity copy = new TaskActivity(activity.getMessage(), fields,
+                activity.getTask(), activity.getTriggerName(), activity.getActivityType(),
+                activity.getStackTraceElement(), parameters, progress);
+        copy.setId(activity.getId());
+        copy.setDate(activity.getDate());
+
+        return copy;
+    }
+
+    private Durability parseDurability(String value) {
+        try {
+            return Durability.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown task activity durability {}, using {} instead", value, DEFAULT_DURABILITY);
+            return DEFAULT_DURABILITY;
+        }
+    }
+
+    private String getSetting(String key, String defaultValue) {
+        String value = settings.getProperty(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static final class WriterThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "motech-task-activity-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package org.motechproject.tasks.service.impl;
+
+import org.motechproject.commons.api.MBeanUtils;
+import org.motechproject.commons.api.MotechException;
+import org.motechproject.config.SettingsFacade;
+import org.motechproject.tasks.domain.mds.task.Task;
+import org.motechproject.tasks.service.TaskExecutionStatisticsMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executes the tasks matching a trigger event, in parallel on a pool of worker threads if one is configured. The
+ * thread which received the event executes one of the tasks itself and waits until the others are finished, so the
+ * event is acknowledged only after all its tasks have been executed.
+ * <p/>
+ * A task is never executed by two threads at once. Every task has a lock-free gate counting its running execution
+ * and the invocations waiting for it, and the {@link OverlapPolicy} decides what happens to an invocation of a task
+ * which is already running. Waiting invocations are executed by the thread finishing the running one. If one of them
+ * fails, the remaining ones are still executed.
+ */
+@Component
+public class TaskExecutionEngine implements TaskExecutionStatisticsMXBean {
+
+    /**
+     * Controls what happens to an invocation of a task which is already being executed.
+     * <p/>
+     * Queued invocations are kept only in memory. The event which caused them is acknowledged right away, while they
+     * are executed by the thread handling the running invocation, so they are lost if the server stops before that
+     * thread gets to them.
+     */
+    public enum OverlapPolicy {
+        /**
+         * The invocation is dropped.
+         */
+        SKIP,
+        /**
+         * The invocation is executed after the running execution and all invocations queued before it.
+         */
+        QUEUE,
+        /**
+         * The invocation is executed after the running execution, unless another invocation of the task arrives in
+         * the meantime and replaces it.
+         */
+        COALESCE
+    }
+
+    /**
+     * Executes a single task for the given trigger parameters.
+     */
+    public interface TaskRunner {
+        void run(Task task, Map<String, Object> parameters);
+    }
+
+    public static final String WORKER_THREADS_KEY = "task.execution.threads";
+    public static final String OVERLAP_POLICY_KEY = "task.execution.overlapPolicy";
+
+    /**
+     * The maximum number of invocations queued for a single task. Invocations above this limit are skipped.
+     */
+    public static final int MAX_QUEUED_INVOCATIONS = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskExecutionEngine.class);
+
+    private final ConcurrentMap<Long, TaskGate> gates = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    private SettingsFacade settings;
+    private PlatformTransactionManager transactionManager;
+
+    private volatile OverlapPolicy overlapPolicy = OverlapPolicy.SKIP;
+    private volatile int workerThreads;
+    private volatile ExecutorService workers;
+
+    /**
+     * Reads the settings, starts the worker threads and registers the statistics in the MBean server.
+     */
+    @PostConstruct
+    public void start() {
+        if (settings != null) {
+            String policy = settings.getProperty(OVERLAP_POLICY_KEY);
+            if (policy != null) {
+                overlapPolicy = OverlapPolicy.valueOf(policy.trim().toUpperCase());
+            }
+
+            String threads = settings.getProperty(WORKER_THREADS_KEY);
+            if (threads != null) {
+                workerThreads = Integer.parseInt(threads.trim());
+            }
+        }
+
+        if (workerThreads > 1) {
+            workers = Executors.newFixedThreadPool(workerThreads, new WorkerThreadFactory());
+        }
+
+        MBeanUtils.registerMBean(this, OBJECT_NAME);
+
+        LOGGER.info("Tasks are executed by {} worker threads, overlapping invocations are handled with the {} policy",
+                workerThreads, overlapPolicy);
+    }
+
+    /**
+     * Stops the worker threads, letting them finish the executions in progress, and removes the statistics from the
+     * MBean server.
+     */
+    @PreDestroy
+    public void stop() {
+        ExecutorService current = workers;
+        workers = null;
+
+        if (current != null) {
+            current.shutdown();
+        }
+
+        MBeanUtils.unregisterMBean(OBJECT_NAME);
+    }
+
+    /**
+     * Executes the given tasks for the given trigger parameters and waits until they are finished. If there is more
+     * than one task, every task gets its own copy of the parameters. Invocations of tasks which are already running are handled according to the
+     * overlap policy.
+     *
+     * @param tasks the tasks to execute
+     * @param parameters the trigger parameters
+     * @param runner the runner executing a single task
+     * @throws MotechException if the thread is interrupted while waiting for the tasks executed by worker threads
+     */
+    public void execute(List<Task> tasks, Map<String, Object> parameters, final TaskRunner runner) {
+        ExecutorService pool = workers;
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < tasks.size(); i++) {
+            final Task task = tasks.get(i);
+            final Map<String, Object> taskParameters = (tasks.size() > 1) ? new HashMap<>(parameters) : parameters;
+
+            if (pool == null || i == tasks.size() - 1) {
+                dispatch(task, taskParameters, runner);
+            } else {
+                futures.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatchInTransaction(task, taskParameters, runner);
+                    }
+                }));
+            }
+        }
+
+        awaitAll(futures);
+    }
+
+    /**
+     * Marks the given task as running, if it is not running already.
+     *
+     * @param taskId the id of the task
+     * @return true if the task was marked as running, false if it is already running
+     */
+    boolean tryAcquire(Long taskId) {
+        return gateFor(taskId).runs.compareAndSet(0, 1);
+    }
+
+    /**
+     * Drops the gate of the given task, once the task is deleted. An execution which is still running finishes with
+     * the invocations waiting for it.
+     *
+     * @param taskId the id of the deleted task
+     */
+    public void taskDeleted(Long taskId) {
+        gates.remove(taskId);
+    }
+
+    @Override
+    public String getOverlapPolicy() {
+        return overlapPolicy.name();
+    }
+
+    @Override
+    public int getWorkerThreads() {
+        return workers == null ? 0 : workerThreads;
+    }
+
+    @Override
+    public int getInFlightCount() {
+        int count = 0;
+        for (TaskGate gate : gates.values()) {
+            if (gate.runs.get() > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    @Override
+    public long getQueuedCount() {
+        return queued.sum();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public void resetStatistics() {
+        executed.reset();
+        skipped.reset();
+        queued.reset();
+        coalesced.reset();
+    }
+
+    public void setOverlapPolicy(OverlapPolicy overlapPolicy) {
+        this.overlapPolicy = overlapPolicy;
+    }
+
+    @Autowired(required = false)
+    @Qualifier("tasksSettings")
+    public void setSettings(SettingsFacade settings) {
+        this.settings = settings;
+    }
+
+    @Autowired(required = false)
+    @Qualifier("transactionManager")
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    private void dispatch(Task task, Map<String, Object> parameters, TaskRunner runner) {
+        TaskGate gate = gateFor(task.getId());
+
+        if (gate.runs.compareAndSet(0, 1)) {
+            drain(gate, task, parameters, runner);
+            return;
+        }
+
+        switch (overlapPolicy) {
+            case QUEUE:
+                if (gate.runs.get() > MAX_QUEUED_INVOCATIONS) {
+                    skip(task);
+                } else {
+                    gate.queued.add(parameters);
+                    queued.increment();
+                    LOGGER.info("The task {} is still running, its next invocation was queued", task.getName());
+                    release(gate, task, runner);
+                }
+                break;
+            case COALESCE:
+                if (gate.latest.getAndSet(parameters) == null) {
+                    queued.increment();
+                    LOGGER.info("The task {} is still running, its next invocation was queued", task.getName());
+                    release(gate, task, runner);
+                } else {
+                    coalesced.increment();
+                    LOGGER.info("The task {} is still running, its queued invocation was replaced", task.getName());
+                }
+                break;
+            default:
+                skip(task);
+        }
+    }
+
+    private void dispatchInTransaction(final Task task, final Map<String, Object> parameters, final TaskRunner runner) {
+        if (transactionManager == null) {
+            dispatch(task, parameters, runner);
+            return;
+        }
+
+        new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                dispatch(task, parameters, runner);
+            }
+        });
+    }
+
+    private void release(TaskGate gate, Task task, TaskRunner runner) {
+        // the running execution might have finished before the invocation was counted, then it is executed here
+        if (gate.runs.getAndIncrement() == 0) {
+            drain(gate, task, gate.poll(), runner);
+        }
+    }
+
+    private void drain(TaskGate gate, Task task, Map<String, Object> parameters, TaskRunner runner) {
+        Map<String, Object> next = parameters;
+        RuntimeException failure = null;
+        boolean drained = false;
+
+        try {
+            while (true) {
+                if (next != null) {
+                    failure = run(task, next, runner, failure);
+                }
+
+                if (gate.runs.decrementAndGet() == 0) {
+                    drained = true;
+                    break;
+                }
+                next = gate.poll();
+            }
+        } finally {
+            if (!drained) {
+                abandon(gate, task);
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private RuntimeException run(Task task, Map<String, Object> parameters, TaskRunner runner,
+                                 RuntimeException failure) {
+        try {
+            runner.run(task, parameters);
+            return failure;
+        } catch (RuntimeException e) {
+            // the waiting invocations must still be executed, the first failure is rethrown once they are finished
+            if (failure != null) {
+                LOGGER.error("Execution of the task {} failed", task.getName(), e);
+                return failure;
+            }
+            return e;
+        } finally {
+            executed.increment();
+        }
+    }
+
+    private void abandon(TaskGate gate, Task task) {
+        // an error escaped the runner, the waiting invocations are dropped so that later ones aren't blocked forever
+        while (gate.runs.decrementAndGet() > 0) {
+            gate.poll();
+            skipped.increment();
+            LOGGER.warn("The task {} didn't execute, because the previous invocation failed with an error.",
+                    task.getName());
+        }
+    }
+
+    private void skip(Task task) {
+        skipped.increment();
+        LOGGER.warn("The task {} didn't execute, because the previous invocation is still running.", task.getName());
+    }
+
+    private TaskGate gateFor(Long taskId) {
+        TaskGate gate = gates.get(taskId);
+
+        if (gate == null) {
+            TaskGate created = new TaskGate();
+            gate = gates.putIfAbsent(taskId, created);
+            if (gate == null) {
+                gate = created;
+            }
+        }
+
+        return gate;
+    }
+
+    private void awaitAll(List<Future<?>> futures) {
+        RuntimeException failure = null;
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                // the remaining tasks might still be running, so the event must not be treated as handled
+                Thread.currentThread().interrupt();
+                throw new MotechException("Interrupted while waiting for the tasks of a trigger event to finish", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                if (failure == null) {
+                    failure = (e.getCause() instanceof RuntimeException)
+                            ? (RuntimeException) e.getCause()
+                            : new IllegalStateException(e.getCause());
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * The number of running and waiting invocations of a single task, together with the parameters of the waiting
+     * invocations. The number is increased only after the parameters are stored, so the thread which decreases it
+     * and finds it above zero will always find parameters to execute.
+     */
+    private static final class TaskGate {
+        private final AtomicInteger runs = new AtomicInteger();
+        private final Queue<Map<String, Object>> queued = new ConcurrentLinkedQueue<>();
+        private final AtomicReference<Map<String, Object>> latest = new AtomicReference<>();
+
+        private Map<String, Object> poll() {
+            Map<String, Object> next = latest.getAndSet(null);
+            return next == null ? queued.poll() : next;
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "motech-task-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
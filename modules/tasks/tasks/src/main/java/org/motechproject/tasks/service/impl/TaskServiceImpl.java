@@ -22,6 +22,7 @@ import org.motechproject.tasks.domain.mds.channel.ActionEvent;
 import org.motechproject.tasks.domain.mds.channel.Channel;
 import org.motechproject.tasks.domain.mds.channel.TriggerEvent;
 import org.motechproject.tasks.domain.mds.task.DataSource;
+import org.motechproject.tasks.domain.mds.task.Lookup;
 import org.motechproject.tasks.domain.mds.task.Task;
 import org.motechproject.tasks.domain.mds.task.TaskActionInformation;
 import org.motechproject.tasks.domain.mds.task.TaskDataProvider;
@@ -38,6 +39,7 @@ import org.motechproject.tasks.service.TaskDataProviderService;
 import org.motechproject.tasks.service.TaskService;
 import org.motechproject.tasks.service.TriggerEventService;
 import org.motechproject.tasks.service.TriggerHandler;
+import org.motechproject.tasks.service.util.CompiledTemplate;
 import org.motechproject.tasks.validation.TaskValidator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
@@ -47,6 +49,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.jdo.Query;
 import java.io.IOException;
@@ -61,20 +65,27 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.UUID;
 
 import static java.lang.String.format;
 import static org.apache.commons.collections.CollectionUtils.isEmpty;
 import static org.apache.commons.collections.CollectionUtils.isNotEmpty;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
+import static org.motechproject.tasks.constants.EventDataKeys.CACHE_INVALIDATION_ORIGIN;
 import static org.motechproject.tasks.constants.EventDataKeys.CHANNEL_MODULE_NAME;
 import static org.motechproject.tasks.constants.EventDataKeys.DATA_PROVIDER_NAME;
+import static org.motechproject.tasks.constants.EventSubjects.CHANNEL_DEREGISTER_SUBJECT;
 import static org.motechproject.tasks.constants.EventSubjects.CHANNEL_UPDATE_SUBJECT;
 import static org.motechproject.tasks.constants.EventSubjects.DATA_PROVIDER_UPDATE_SUBJECT;
+import static org.motechproject.tasks.constants.EventSubjects.TASK_CACHE_INVALIDATE_SUBJECT;
 import static org.motechproject.tasks.service.util.HandlerPredicates.tasksWithRegisteredChannel;
 
 /**
  * A {@link TaskService} that manages CRUD operations for a {@link Task}.
  * Expects channel registered,updated and deregistered events to be raised so that the associated tasks can be revalidated.
+ * Active tasks are looked up for trigger subjects through the {@link ActiveTaskCache}, which is kept in sync with every
+ * task saved or deleted by this service and cleared whenever a channel changes. Such changes are broadcast, so that the
+ * other MOTECH instances clear their caches as well.
  */
 @Service("taskService")
 public class TaskServiceImpl implements TaskService {
@@ -88,6 +99,11 @@ public class TaskServiceImpl implements TaskService {
     private EventRelay eventRelay;
     private BundleContext bundleContext;
     private TaskMigrationManager taskMigrationManager;
+    private ActiveTaskCache activeTaskCache;
+    private TasksPostExecutionHandler postExecutionHandler;
+    private TaskExecutionEngine executionEngine;
+
+    private final String cacheId = UUID.randomUUID().toString();
 
 
     private static final String[] TASK_TRIGGER_VALIDATION_ERRORS = new String[]{"task.validation.error.triggerNotExist",
@@ -136,6 +152,7 @@ public class TaskServiceImpl implements TaskService {
 
         addOrUpdate(task);
         registerHandler(task);
+        compileTemplates(task);
         LOGGER.info("Saved task: {} with ID: {}", task.getName(), task.getId());
         return errors;
     }
@@ -195,22 +212,12 @@ public class TaskServiceImpl implements TaskService {
         List<Task> list = null;
 
         if (isNotBlank(subject)) {
-            List enabledTasks = tasksDataService.executeQuery(new QueryExecution<List<Task>>() {
-                @Override
-                public List<Task> execute(Query query, InstanceSecurityRestriction restriction) {
-                    String byTriggerSubject = "trigger.subject == param";
-                    String isTaskActive = "enabled == true";
-                    String isUsingTimeWindow = "useTimeWindow == true";
-                    String filter = String.format("((%s) || (%s)) && (%s)", isTaskActive, isUsingTimeWindow, byTriggerSubject);
-
-                    query.setFilter(filter);
-                    query.declareParameters("java.lang.String param");
-                    query.setOrdering("id asc");
-
-                    return (List) QueryExecutor.execute(query, subject, restriction);
-                }
-            });
+            List<Task> enabledTasks = activeTaskCache.get(subject);
+            if (enabledTasks == null) {
+                enabledTasks = loadActiveTasksForTriggerSubject(subject);
+            }
             if (enabledTasks != null) {
+                // channels can go away at any time, so their availability is not taken from the cache
                 checkChannelAvailableInTasks(enabledTasks);
                 list = checkTimeWindowInTasks(enabledTasks);
                 CollectionUtils.filter(list, tasksWithRegisteredChannel());
@@ -220,6 +227,36 @@ public class TaskServiceImpl implements TaskService {
         return list == null ? new ArrayList<>() : list;
     }
 
+    private List<Task> loadActiveTasksForTriggerSubject(final String subject) {
+        long generation = activeTaskCache.getGeneration();
+
+        List enabledTasks = tasksDataService.executeQuery(new QueryExecution<List<Task>>() {
+            @Override
+            public List<Task> execute(Query query, InstanceSecurityRestriction restriction) {
+                String byTriggerSubject = "trigger.subject == param";
+                String isTaskActive = "enabled == true";
+                String isUsingTimeWindow = "useTimeWindow == true";
+                String filter = String.format("((%s) || (%s)) && (%s)", isTaskActive, isUsingTimeWindow, byTriggerSubject);
+
+                query.setFilter(filter);
+                query.declareParameters("java.lang.String param");
+                query.setOrdering("id asc");
+
+                return (List) QueryExecutor.execute(query, subject, restriction);
+            }
+        });
+
+        if (enabledTasks == null) {
+            return null;
+        }
+
+        checkChannelAvailableInTasks(enabledTasks);
+        List<Task> detached = tasksDataService.detachedCopyAll(enabledTasks);
+        activeTaskCache.put(subject, detached, generation);
+
+        return ActiveTaskCache.copyAll(detached);
+    }
+
     @Override
     public TasksEventParser findCustomParser(String name) {
         if (StringUtils.isEmpty(name)) {
@@ -256,7 +293,7 @@ public class TaskServiceImpl implements TaskService {
 
     @Override
     @Transactional
-    public void deleteTask(Long taskId) {
+    public void deleteTask(final Long taskId) {
         Task t = getTask(taskId);
 
         if (t == null) {
@@ -264,6 +301,16 @@ public class TaskServiceImpl implements TaskService {
         }
         LOGGER.info("Deleted task: {} with ID: {}", t.getName(), taskId);
         tasksDataService.delete(t);
+
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                activeTaskCache.remove(taskId);
+                postExecutionHandler.taskDeleted(taskId);
+                executionEngine.taskDeleted(taskId);
+                invalidateOtherCaches();
+            }
+        });
     }
 
     @MotechListener(subjects = CHANNEL_UPDATE_SUBJECT)
@@ -274,6 +321,9 @@ public class TaskServiceImpl implements TaskService {
 
         LOGGER.debug("Handling Channel update: {} for module: {}", channel.getDisplayName(), moduleName);
 
+        // the tasks of the channel are validated again, so they must be loaded again
+        clearTaskCache();
+
         List<Task> tasks = findTasksDependentOnModule(moduleName);
         for (Task task : tasks) {
             Set<TaskError> errors;
@@ -288,6 +338,26 @@ public class TaskServiceImpl implements TaskService {
         }
     }
 
+    @MotechListener(subjects = CHANNEL_DEREGISTER_SUBJECT)
+    public void clearTaskCacheAfterChannelDeregister(MotechEvent event) {
+        LOGGER.debug("Handling Channel deregister for module: {}", event.getParameters().get(CHANNEL_MODULE_NAME));
+
+        clearTaskCache();
+    }
+
+    /**
+     * Clears the cache of active tasks after tasks were changed by another MOTECH instance.
+     *
+     * @param event the event sent by the instance which changed the tasks
+     */
+    @MotechListener(subjects = TASK_CACHE_INVALIDATE_SUBJECT)
+    public void invalidateTaskCache(MotechEvent event) {
+        if (!cacheId.equals(event.getParameters().get(CACHE_INVALIDATION_ORIGIN))) {
+            LOGGER.debug("Tasks changed on another instance, clearing the cache of active tasks");
+            activeTaskCache.clear();
+        }
+    }
+
     @MotechListener(subjects = DATA_PROVIDER_UPDATE_SUBJECT)
     @Transactional
     public void validateTasksAfterTaskDataProviderUpdate(MotechEvent event) {
@@ -604,16 +674,87 @@ public class TaskServiceImpl implements TaskService {
             checkChannelAvailableInTask(existing);
 
             tasksDataService.update(existing);
+            updateTaskCache(existing);
         } else {
             LOGGER.debug("Creating task: {}", task.getName());
             checkChannelAvailableInTask(task);
 
             tasksDataService.create(task);
+            updateTaskCache(task);
         }
 
         LOGGER.info("Saved task: {}", task.getName());
     }
 
+    private void updateTaskCache(Task task) {
+        final Task detached = tasksDataService.detachedCopy(task);
+
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                activeTaskCache.update(detached);
+                invalidateOtherCaches();
+            }
+        });
+    }
+
+    private void clearTaskCache() {
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                activeTaskCache.clear();
+                invalidateOtherCaches();
+            }
+        });
+    }
+
+    private void invalidateOtherCaches() {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(CACHE_INVALIDATION_ORIGIN, cacheId);
+
+        eventRelay.broadcastEventMessage(new MotechEvent(TASK_CACHE_INVALIDATE_SUBJECT, parameters));
+    }
+
+    private void afterCommit(final Runnable action) {
+        // changes become visible to the cache only once they are visible in the database
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void compileTemplates(Task task) {
+        List<String> templates = new ArrayList<>();
+
+        for (TaskActionInformation action : task.getActions()) {
+            if (action.getValues() != null) {
+                templates.addAll(action.getValues().values());
+            }
+        }
+        for (DataSource dataSource : task.getTaskConfig().getDataSources()) {
+            if (dataSource.getLookup() != null) {
+                for (Lookup lookup : dataSource.getLookup()) {
+                    templates.add(lookup.getValue());
+                }
+            }
+        }
+
+        for (String template : templates) {
+            try {
+                CompiledTemplate.of(template);
+            } catch (IllegalArgumentException e) {
+                // the template will fail the same way when the task is executed
+                LOGGER.debug("Unable to compile template: {} in task: {}", template, task.getName(), e);
+            }
+        }
+    }
+
     private void registerHandler(Task task) {
         // We cannot simply autowire trigger handler bean, since that would create
         // circular dependency between TaskService and TriggerHandler
@@ -738,4 +879,19 @@ public class TaskServiceImpl implements TaskService {
     public void setTaskMigrationManager(TaskMigrationManager taskMigrationManager) {
         this.taskMigrationManager = taskMigrationManager;
     }
+
+    @Autowired
+    public void setActiveTaskCache(ActiveTaskCache activeTaskCache) {
+        this.activeTaskCache = activeTaskCache;
+    }
+
+    @Autowired
+    public void setPostExecutionHandler(TasksPostExecutionHandler postExecutionHandler) {
+        this.postExecutionHandler = postExecutionHandler;
+    }
+
+    @Autowired
+    public void setExecutionEngine(TaskExecutionEngine executionEngine) {
+        this.executionEngine = executionEngine;
+    }
 }
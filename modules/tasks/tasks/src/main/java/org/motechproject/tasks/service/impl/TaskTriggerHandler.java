@@ -29,11 +29,10 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import static org.motechproject.tasks.constants.EventDataKeys.TASK_ID;
 import static org.motechproject.tasks.constants.TaskFailureCause.TRIGGER;
@@ -65,9 +64,17 @@ public class TaskTriggerHandler implements TriggerHandler {
     @Autowired
     private TasksPostExecutionHandler postExecutionHandler;
 
+    @Autowired
+    private TaskExecutionEngine executionEngine;
+
     private Map<String, DataProvider> dataProviders;
 
-    private Set<Long> handledTasksId = new HashSet<>();
+    private final TaskExecutionEngine.TaskRunner taskRunner = new TaskExecutionEngine.TaskRunner() {
+        @Override
+        public void run(Task task, Map<String, Object> parameters) {
+            handleTask(task, parameters);
+        }
+    };
 
     @PostConstruct
     public void init() {
@@ -135,10 +142,8 @@ public class TaskTriggerHandler implements TriggerHandler {
 
         List<Task> tasks = taskService.findActiveTasksForTriggerSubject(triggerSubject);
 
-        // Handle all tasks one by one
-        for (Task task : tasks) {
-            checkAndHandleTask(task, parameters);
-        }
+        // Handle all tasks, in parallel if worker threads are configured
+        executionEngine.execute(tasks, parameters, taskRunner);
     }
 
     @Override
@@ -152,7 +157,7 @@ public class TaskTriggerHandler implements TriggerHandler {
         Task task = taskService.getTask((Long) eventMetadata.get(TASK_ID));
 
         if(task != null && task.isEnabled()) {
-            checkAndHandleTask(task, eventParams);
+            executionEngine.execute(Collections.singletonList(task), eventParams, taskRunner);
         }
     }
 
@@ -206,24 +211,6 @@ public class TaskTriggerHandler implements TriggerHandler {
         }
     }
 
-    /**
-     * Checks if the given task is still running. If not the task will be handled.
-     *
-     * @param task the given task.
-     * @param eventParameters parameters from the given event
-     */
-    private void checkAndHandleTask(Task task, Map<String, Object> eventParameters) {
-        if (!isTaskHandled(task)) {
-            addTaskHandled(task);
-
-            handleTask(task, eventParameters);
-
-            removeTaskHandled(task);
-        } else {
-            LOGGER.warn("The task {} didn't execute, because the previous invocation is still running.", task.getName());
-        }
-    }
-
     @Override
     public void addDataProvider(DataProvider provider) {
         if (dataProviders == null) {
@@ -248,10 +235,6 @@ public class TaskTriggerHandler implements TriggerHandler {
         this.dataProviders = dataProviders;
     }
 
-    void setHandledTasksId(Set<Long> handledTasksId) {
-        this.handledTasksId = handledTasksId;
-    }
-
     private Map<String, Object> prepareTaskMetadata(Long taskId, long activityId) {
         Map<String, Object> metadata = new HashMap<>();
         metadata.put(EventDataKeys.TASK_ID, taskId);
@@ -260,18 +243,6 @@ public class TaskTriggerHandler implements TriggerHandler {
         return metadata;
     }
 
-    private void addTaskHandled(Task task) {
-        this.handledTasksId.add(task.getId());
-    }
-
-    private void removeTaskHandled(Task task) {
-        this.handledTasksId.remove(task.getId());
-    }
-
-    private boolean isTaskHandled(Task task) {
-        return this.handledTasksId.contains(task.getId()) ? true : false;
-    }
-
     @Autowired
     public void setBundleContext(BundleContext bundleContext) {
         this.executor.setBundleContext(bundleContext);
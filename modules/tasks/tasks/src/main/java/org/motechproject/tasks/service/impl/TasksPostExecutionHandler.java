@@ -6,6 +6,7 @@ import org.motechproject.commons.api.MotechException;
 import org.motechproject.config.SettingsFacade;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
+import org.motechproject.event.listener.annotations.MotechListener;
 import org.motechproject.tasks.domain.mds.task.Task;
 import org.motechproject.tasks.exception.TaskHandlerException;
 import org.motechproject.tasks.service.TaskActivityService;
@@ -19,16 +20,24 @@ import org.springframework.stereotype.Component;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static org.motechproject.config.core.constants.ConfigurationConstants.BUNDLE_SETTINGS_CHANGED_EVENT_SUBJECT;
+import static org.motechproject.config.core.constants.ConfigurationConstants.FILE_CHANGED_EVENT_SUBJECT;
 import static org.motechproject.tasks.constants.EventDataKeys.HANDLER_ERROR_PARAM;
 import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_FAILURE_DATE;
 import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_FAILURE_NUMBER;
 import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_MESSAGE;
 import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_STACK_TRACE;
+import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_SUPPRESSED_COUNT;
 import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_TASK_ID;
 import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_TASK_NAME;
 import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_TRIGGER_DISABLED;
@@ -48,6 +57,9 @@ public class TasksPostExecutionHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(TasksPostExecutionHandler.class);
     private static final String TASK_POSSIBLE_ERRORS_KEY = "task.possible.errors";
     private static final String TASK_PROPERTIES_FILE_NAME = "settings.properties";
+    private static final String TASK_FAILURE_EVENT_INTERVAL_KEY = "task.failure.eventInterval";
+    private static final String TASK_FAILURE_STACK_TRACE_KEY = "task.failure.includeStackTrace";
+    private static final long SETTINGS_RELOAD_INTERVAL = 60000;
 
     @Autowired
     private TaskService taskService;
@@ -65,10 +77,14 @@ public class TasksPostExecutionHandler {
     @Qualifier("tasksSettings")
     private SettingsFacade settings;
 
+    private volatile FailureSettings loadedFailureSettings;
+
+    private final ConcurrentMap<Long, FailureEventThrottle> failureEventThrottles = new ConcurrentHashMap<>();
+
     /**
      * Handles successful execution of a single task action. If all actions of the task have been successfully executed,
-     * it sends an event with the message about successful execution, resets the task failures in row count and passes the
-     * info about successful execution to {@link TaskRetryHandler}.
+     * it sends an event with the message about successful execution and resets the task failures in row count. The task
+     * is saved only if it has failed before, so successful executions don't write to the database.
      *
      * @param params trigger event parameters that invoked the task
      * @param activityId the id of an activity
@@ -86,7 +102,8 @@ public class TasksPostExecutionHandler {
     /**
      * Handles task action failure. It sets the specified task activity as failed and raises the failures in a row count of
      * a task. If the failure threshold is reached, it disables the task and publishes an event. It passes the
-     * info about failed execution to {@link TaskRetryHandler}.
+     * info about failed execution to {@link TaskRetryHandler}. Failure events of a single task are published at most
+     * once per the configured interval, the number of failures suppressed in between is passed with the next event.
      *
      * @param params trigger event parameters that invoked the task
      * @param task the task that has failed
@@ -101,10 +118,10 @@ public class TasksPostExecutionHandler {
 
         LOGGER.info("The number of failures for task: {} is: {}", task.getName(), task.getFailuresInRow());
 
+        FailureSettings failureSettings = getFailureSettings();
         int failureNumber = task.getFailuresInRow();
-        int possibleErrorsNumber = getPossibleErrorsNumber();
 
-        if (failureNumber >= possibleErrorsNumber) {
+        if (failureNumber >= failureSettings.possibleErrors) {
             task.setEnabled(false);
 
             activityService.addTaskDisabledWarning(task);
@@ -113,14 +130,76 @@ public class TasksPostExecutionHandler {
 
         taskService.save(task);
 
+        publishFailureEvent(params, task, e, failureNumber, failureSettings);
+
+        int numberOfRetries = failureSettings.retryIntervals.size();
+        setRetryParameters(task, params, failureSettings.retryIntervals, numberOfRetries);
+
+        if(shouldScheduleRetry(params, numberOfRetries)) {
+            retryHandler.handleTaskRetries(task, params);
+        }
+    }
+
+    /**
+     * Drops the state used for limiting the failure events of the given task, once the task is deleted.
+     *
+     * @param taskId the id of the deleted task
+     */
+    public void taskDeleted(Long taskId) {
+        failureEventThrottles.remove(taskId);
+    }
+
+    /**
+     * Drops the parsed failure handling settings, so that they are read again on the next task failure.
+     */
+    @MotechListener(subjects = { BUNDLE_SETTINGS_CHANGED_EVENT_SUBJECT, FILE_CHANGED_EVENT_SUBJECT })
+    public void reloadSettings() {
+        loadedFailureSettings = null;
+    }
+
+    private void handleSuccess(Map<String, Object> params, Task task) {
+        LOGGER.debug("All actions from task: {} with ID: {} were successfully executed", task.getName(), task.getId());
+
+        if (task.getFailuresInRow() > 0) {
+            task.resetFailuresInRow();
+            taskService.save(task);
+        }
+
+        eventRelay.sendEventMessage(new MotechEvent(
+                createHandlerSuccessSubject(task.getName()),
+                params
+        ));
+    }
+
+    private void publishTaskDisabledMessage(String taskName) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("message", "Task disabled automatically: " + taskName);
+        params.put("level", "CRITICAL");
+        params.put("moduleName", settings.getBundleSymbolicName());
+
+        eventRelay.sendEventMessage(new MotechEvent("org.motechproject.message", params));
+    }
+
+    private void publishFailureEvent(Map<String, Object> params, Task task, TaskHandlerException e, int failureNumber,
+                                     FailureSettings failureSettings) {
+        int suppressed = acquireFailureEvent(task.getId(), failureSettings.eventInterval);
+
+        if (suppressed < 0) {
+            LOGGER.debug("Suppressed the failure event of task: {} with ID: {}", task.getName(), task.getId());
+            return;
+        }
+
         Map<String, Object> errorParam = new HashMap<>();
         errorParam.put(TASK_FAIL_MESSAGE, e.getMessage());
-        errorParam.put(TASK_FAIL_STACK_TRACE, ExceptionUtils.getStackTrace(e));
+        if (failureSettings.includeStackTrace) {
+            errorParam.put(TASK_FAIL_STACK_TRACE, ExceptionUtils.getStackTrace(e));
+        }
         errorParam.put(TASK_FAIL_FAILURE_DATE, DateTime.now());
         errorParam.put(TASK_FAIL_FAILURE_NUMBER, failureNumber);
         errorParam.put(TASK_FAIL_TRIGGER_DISABLED, task.isEnabled());
         errorParam.put(TASK_FAIL_TASK_ID, task.getId());
         errorParam.put(TASK_FAIL_TASK_NAME, task.getName());
+        errorParam.put(TASK_FAIL_SUPPRESSED_COUNT, suppressed);
 
         Map<String, Object> errorEventParam = new HashMap<>();
         errorEventParam.putAll(params);
@@ -130,59 +209,94 @@ public class TasksPostExecutionHandler {
                 createHandlerFailureSubject(task.getName(), e.getFailureCause()),
                 errorEventParam
         ));
+    }
 
-        int numberOfRetries = getRetriesFromSettings(task, params);
+    /**
+     * Decides whether a failure event of the given task can be published now.
+     *
+     * @return the number of failure events suppressed since the last published one, or -1 if the event should be
+     * suppressed
+     */
+    private int acquireFailureEvent(Long taskId, long eventInterval) {
+        if (taskId == null) {
+            return 0;
+        }
 
-        if(shouldScheduleRetry(params, numberOfRetries)) {
-            retryHandler.handleTaskRetries(task, params);
+        FailureEventThrottle throttle = failureEventThrottles.get(taskId);
+        if (eventInterval <= 0) {
+            return (throttle == null) ? 0 : throttle.suppressed.getAndSet(0);
+        } else if (throttle == null) {
+            FailureEventThrottle created = new FailureEventThrottle();
+            throttle = failureEventThrottles.putIfAbsent(taskId, created);
+            if (throttle == null) {
+                throttle = created;
+            }
         }
+
+        long now = System.currentTimeMillis();
+        long lastPublished = throttle.lastPublished.get();
+
+        if ((lastPublished != 0 && now - lastPublished < eventInterval)
+                || !throttle.lastPublished.compareAndSet(lastPublished, now)) {
+            throttle.suppressed.incrementAndGet();
+            return -1;
+        }
+
+        return throttle.suppressed.getAndSet(0);
     }
 
-    private void handleSuccess(Map<String, Object> params, Task task) {
-        LOGGER.debug("All actions from task: {} with ID: {} were successfully executed", task.getName(), task.getId());
+    private boolean shouldScheduleRetry(Map<String, Object> params, int numberOfRetries) {
+        return (Integer) params.get(TASK_RETRY_NUMBER) < numberOfRetries;
+    }
 
-        task.resetFailuresInRow();
-        taskService.save(task);
+    private FailureSettings getFailureSettings() {
+        FailureSettings current = loadedFailureSettings;
 
-        eventRelay.sendEventMessage(new MotechEvent(
-                createHandlerSuccessSubject(task.getName()),
-                params
-        ));
+        if (current == null || System.currentTimeMillis() - current.loadTime > SETTINGS_RELOAD_INTERVAL) {
+            current = loadFailureSettings();
+            loadedFailureSettings = current;
+        }
+
+        return current;
     }
 
-    private void publishTaskDisabledMessage(String taskName) {
-        Map<String, Object> params = new HashMap<>();
-        params.put("message", "Task disabled automatically: " + taskName);
-        params.put("level", "CRITICAL");
-        params.put("moduleName", settings.getBundleSymbolicName());
+    private FailureSettings loadFailureSettings() {
+        int possibleErrors = parseInt(settings.getProperty(TASK_POSSIBLE_ERRORS_KEY), TASK_POSSIBLE_ERRORS_KEY, 0);
+        long eventInterval = parseLong(settings.getProperty(TASK_FAILURE_EVENT_INTERVAL_KEY), TASK_FAILURE_EVENT_INTERVAL_KEY, 0);
+        String stackTrace = settings.getProperty(TASK_FAILURE_STACK_TRACE_KEY);
+        boolean includeStackTrace = stackTrace == null || Boolean.parseBoolean(stackTrace.trim());
 
-        eventRelay.sendEventMessage(new MotechEvent("org.motechproject.message", params));
+        return new FailureSettings(possibleErrors, getRetriesFromSettings(), eventInterval, includeStackTrace);
     }
 
-    private int getPossibleErrorsNumber() {
-        String property = settings.getProperty(TASK_POSSIBLE_ERRORS_KEY);
-        int number;
+    private int parseInt(String property, String key, int defaultValue) {
+        if (property == null) {
+            return defaultValue;
+        }
 
         try {
-            number = Integer.parseInt(property);
+            return Integer.parseInt(property.trim());
         } catch (NumberFormatException e) {
-            LOGGER.error(String.format(
-                    "The value of key: %s is not a number. Possible errors number is set to zero.",
-                    TASK_POSSIBLE_ERRORS_KEY
-            ));
-            number = 0;
+            LOGGER.error(String.format("The value of key: %s is not a number. It is set to %d.", key, defaultValue));
+            return defaultValue;
         }
-
-        return number;
     }
 
-    private boolean shouldScheduleRetry(Map<String, Object> params, int numberOfRetries) {
-        return (Integer) params.get(TASK_RETRY_NUMBER) < numberOfRetries;
+    private long parseLong(String property, String key, long defaultValue) {
+        if (property == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(property.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.error(String.format("The value of key: %s is not a number. It is set to %d.", key, defaultValue));
+            return defaultValue;
+        }
     }
 
-    private int getRetriesFromSettings(Task task, Map<String, Object> params) {
+    private List<Integer> getRetriesFromSettings() {
         List<Integer> retryInterval = new ArrayList<>();
-        int numberOfRetries;
 
         try (InputStream retries = settings.getRawConfig(TASK_PROPERTIES_FILE_NAME)){
             if(retries != null) {
@@ -191,16 +305,12 @@ public class TasksPostExecutionHandler {
                 for (Map.Entry<Object, Object> entry : props.entrySet()) {
                     retryInterval.add(0, Integer.valueOf(entry.getValue().toString()));
                 }
-                numberOfRetries = retryInterval.size();
-            } else {
-                numberOfRetries = 0;
             }
         } catch (IOException e) {
             throw new MotechException("Error loading raw file config to properties", e);
         }
 
-        setRetryParameters(task, params, retryInterval, numberOfRetries);
-        return numberOfRetries;
+        return Collections.unmodifiableList(retryInterval);
     }
 
     private void setRetryParameters(Task task, Map<String, Object> params, List<Integer> retryInterval, int numberOfRetries)
@@ -213,4 +323,28 @@ public class TasksPostExecutionHandler {
         }
     }
 
+    /**
+     * Parsed settings used on task failures. They are read again when the configuration changes or once the reload
+     * interval passes, so that they are not parsed on every failure.
+     */
+    private static final class FailureSettings {
+        private final int possibleErrors;
+        private final List<Integer> retryIntervals;
+        private final long eventInterval;
+        private final boolean includeStackTrace;
+        private final long loadTime = System.currentTimeMillis();
+
+        private FailureSettings(int possibleErrors, List<Integer> retryIntervals, long eventInterval,
+                                boolean includeStackTrace) {
+            this.possibleErrors = possibleErrors;
+            this.retryIntervals = retryIntervals;
+            this.eventInterval = eventInterval;
+            this.includeStackTrace = includeStackTrace;
+        }
+    }
+
+    private static final class FailureEventThrottle {
+        private final AtomicLong lastPublished = new AtomicLong();
+        private final AtomicInteger suppressed = new AtomicInteger();
+    }
 }
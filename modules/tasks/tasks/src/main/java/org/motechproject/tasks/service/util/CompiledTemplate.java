@@ -0,0 +1,155 @@
+package org.motechproject.tasks.service.util;
+
+import org.motechproject.tasks.domain.KeyInformation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+
+/**
+ * Immutable, compiled form of a template used in task actions and data source lookups, for example
+ * <b>Hello {{trigger.name?capitalize}}!</b>. The template is split into literal text and references to dragged
+ * fields, together with their compiled manipulations, so it can be evaluated by the {@link KeyEvaluator} in a single
+ * pass, without parsing it again.
+ * <p/>
+ * Compiled templates are cached, so every template is compiled only once, when the task using it is saved or when it
+ * is evaluated for the first time.
+ */
+public final class CompiledTemplate {
+
+    /**
+     * The maximum number of compiled templates kept in the cache. The cache is cleared once it is exceeded.
+     */
+    public static final int MAX_CACHED_TEMPLATES = 10000;
+
+    private static final CompiledTemplate NULL_TEMPLATE = new CompiledTemplate(null, Collections.<Segment>emptyList(), 0);
+    private static final ConcurrentMap<String, CompiledTemplate> CACHE = new ConcurrentHashMap<>();
+
+    private final String template;
+    private final List<Segment> segments;
+    private final int keyCount;
+
+    private CompiledTemplate(String template, List<Segment> segments, int keyCount) {
+        this.template = template;
+        this.segments = segments;
+        this.keyCount = keyCount;
+    }
+
+    /**
+     * Returns the compiled form of the given template, compiling it if it has not been compiled before.
+     *
+     * @param template  the template, null allowed
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template contains an incorrect field
+     */
+    public static CompiledTemplate of(String template) {
+        if (template == null) {
+            return NULL_TEMPLATE;
+        }
+
+        CompiledTemplate compiled = CACHE.get(template);
+
+        if (compiled == null) {
+            compiled = compile(template);
+
+            if (CACHE.size() >= MAX_CACHED_TEMPLATES) {
+                CACHE.clear();
+            }
+            CACHE.put(template, compiled);
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Compiles the given template, without caching it.
+     *
+     * @param template  the template, not null
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template contains an incorrect field
+     */
+    public static CompiledTemplate compile(String template) {
+        List<Segment> segments = new ArrayList<>();
+        Matcher matcher = KeyInformation.FIELD_PATTERN.matcher(template);
+        int keyCount = 0;
+        int end = 0;
+
+        while (matcher.find()) {
+            if (matcher.start() > end) {
+                segments.add(new Segment(template.substring(end, matcher.start())));
+            }
+
+            KeyInformation key = KeyInformation.parse(matcher.group(1));
+            segments.add(new Segment(key, Manipulation.compileAll(key.getManipulations())));
+
+            keyCount++;
+            end = matcher.end();
+        }
+
+        if (end < template.length()) {
+            segments.add(new Segment(template.substring(end)));
+        }
+
+        return new CompiledTemplate(template, Collections.unmodifiableList(segments), keyCount);
+    }
+
+    /**
+     * @return the source of this template
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return the number of field references in this template
+     */
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * A part of a compiled template, either literal text or a reference to a field.
+     */
+    static final class Segment {
+        private final String text;
+        private final KeyInformation key;
+        private final List<Manipulation> manipulations;
+
+        private Segment(String text) {
+            this(text, null, Collections.<Manipulation>emptyList());
+        }
+
+        private Segment(KeyInformation key, List<Manipulation> manipulations) {
+            this(null, key, manipulations);
+        }
+
+        private Segment(String text, KeyInformation key, List<Manipulation> manipulations) {
+            this.text = text;
+            this.key = key;
+            this.manipulations = manipulations;
+        }
+
+        boolean isLiteral() {
+            return key == null;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        KeyInformation getKey() {
+            return key;
+        }
+
+        List<Manipulation> getManipulations() {
+            return manipulations;
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package org.motechproject.tasks.service.util;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.WordUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DurationFieldType;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.motechproject.commons.api.MotechException;
+import org.motechproject.tasks.domain.KeyInformation;
+import org.motechproject.tasks.exception.TaskHandlerException;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * A manipulation of a field value, compiled from its string representation, for example <b>substring(5,7)</b>. The
+ * arguments of the manipulation are parsed, and patterns or date formats it uses are created, once, when it is
+ * compiled. A manipulation which can not be compiled is compiled again whenever it is applied, so it throws the same
+ * exception, as it would have thrown if it was parsed on application.
+ */
+abstract class Manipulation {
+
+    static final String WARNING = "task.warning.manipulation";
+
+    private static final int JOIN_PATTERN_BEGIN_INDEX = 5;
+    private static final int DATETIME_PATTERN_BEGIN_INDEX = 9;
+    private static final int FORMAT_PATTERN_BEGIN_INDEX = 7;
+    private static final int SUBSTRING_PATTERN_BEGIN_INDEX = 10;
+    private static final int SPLIT_PATTERN_BEGIN_INDEX = 6;
+    private static final int PLUS_MONTHS_PATTERN_BEGIN_INDEX = 11;
+    private static final int MINUS_MONTHS_PATTERN_BEGIN_INDEX = 12;
+    private static final int PLUS_DAYS_PATTERN_BEGIN_INDEX = 9;
+    private static final int MINUS_DAYS_PATTERN_BEGIN_INDEX = 10;
+    private static final int PLUS_HOURS_PATTERN_BEGIN_INDEX = 10;
+    private static final int MINUS_HOURS_PATTERN_BEGIN_INDEX = 11;
+    private static final int PLUS_MINUTES_PATTERN_BEGIN_INDEX = 12;
+    private static final int MINUS_MINUTES_PATTERN_BEGIN_INDEX = 13;
+    private static final int PARSE_DATE_PATTERN_BEGIN_INDEX = 10;
+    private static final int MONTHS_IN_QUARTER = 3;
+    private static final int LAST_HOUR = 23;
+    private static final int LAST_MINUTE = 59;
+    private static final int LAST_SECOND = 59;
+    private static final int LAST_MILLIS = 999;
+
+    private final String expression;
+
+    protected Manipulation(String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Applies this manipulation to the given value.
+     *
+     * @param evaluator  the evaluator used to retrieve values of fields referenced by the manipulation
+     * @param value  the value to manipulate
+     * @return the manipulated value
+     * @throws TaskHandlerException if a referenced field could not be retrieved
+     */
+    abstract String apply(KeyEvaluator evaluator, String value) throws TaskHandlerException;
+
+    /**
+     * @return the string representation of this manipulation
+     */
+    String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Compiles the given manipulations.
+     *
+     * @param expressions  the string representations of the manipulations
+     * @return the immutable list of compiled manipulations
+     */
+    static List<Manipulation> compileAll(List<String> expressions) {
+        if (expressions == null || expressions.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Manipulation> manipulations = new ArrayList<>(expressions.size());
+        for (String expression : expressions) {
+            manipulations.add(compile(expression));
+        }
+
+        return Collections.unmodifiableList(manipulations);
+    }
+
+    /**
+     * Compiles the given manipulation, including the <b>format</b> manipulation, which can reference other fields.
+     *
+     * @param expression  the string representation of the manipulation
+     * @return the compiled manipulation
+     */
+    static Manipulation compile(String expression) {
+        if (expression.contains("format")) {
+            try {
+                return compileFormat(expression);
+            } catch (RuntimeException e) {
+                return new Invalid(expression, true);
+            }
+        }
+
+        return compileValueManipulation(expression);
+    }
+
+    /**
+     * Compiles the given manipulation, which only depends on the manipulated value.
+     *
+     * @param expression  the string representation of the manipulation
+     * @return the compiled manipulation
+     */
+    static ValueManipulation compileValueManipulation(String expression) {
+        try {
+            return compileLowerCase(expression, expression.toLowerCase());
+        } catch (RuntimeException e) {
+            return new Invalid(expression, false);
+        }
+    }
+
+    private static Manipulation compileFormat(String expression) {
+        String formatElements = expression.substring(FORMAT_PATTERN_BEGIN_INDEX, expression.length() - 1);
+
+        if (isBlank(formatElements)) {
+            return new Identity(expression);
+        }
+
+        String[] items = formatElements.split(",");
+        KeyInformation[] keys = new KeyInformation[items.length];
+
+        for (int i = 0; i < items.length; ++i) {
+            String item = items[i];
+
+            if (item.startsWith("{{") && item.endsWith("}}")) {
+                keys[i] = KeyInformation.parse(item.substring(2, item.length() - 2));
+            }
+        }
+
+        return new Format(expression, items, keys);
+    }
+
+    private static ValueManipulation compileLowerCase(String expression, String lowerCase) {
+        if (lowerCase.contains("join")) {
+            return new Join(expression, argument(expression, JOIN_PATTERN_BEGIN_INDEX));
+        } else if (lowerCase.contains("datetime")) {
+            return compileFormatDateTime(expression);
+        } else if (lowerCase.contains("substring")) {
+            return compileSubstring(expression);
+        } else if (lowerCase.contains("split")) {
+            String[] splitValue = argument(expression, SPLIT_PATTERN_BEGIN_INDEX).split(",");
+            return new Split(expression, Pattern.compile(splitValue[0]), Integer.parseInt(splitValue[1]));
+        } else if (lowerCase.contains("parsedate")) {
+            String pattern = argument(expression, PARSE_DATE_PATTERN_BEGIN_INDEX);
+            return new ParseDate(expression, DateTimeFormat.forPattern(pattern));
+        } else if (isDateTimeChange(lowerCase)) {
+            return compileDateTimeChange(expression, lowerCase);
+        } else {
+            return compileSimple(expression, lowerCase.replace("()", ""));
+        }
+    }
+
+    private static boolean isDateTimeChange(String lowerCase) {
+        return lowerCase.contains("plus") || lowerCase.contains("minus") || lowerCase.contains("ofmonth")
+                || lowerCase.contains("quarter");
+    }
+
+    private static ValueManipulation compileFormatDateTime(String expression) {
+        String pattern = argument(expression, DATETIME_PATTERN_BEGIN_INDEX);
+
+        try {
+            return new FormatDateTime(expression, DateTimeFormat.forPattern(pattern));
+        } catch (IllegalArgumentException e) {
+            throw new MotechException("error.date.format", e);
+        }
+    }
+
+    private static ValueManipulation compileSubstring(String expression) {
+        String pattern = argument(expression, SUBSTRING_PATTERN_BEGIN_INDEX);
+        String[] splitValue = pattern.contains(",") ? pattern.split(",") : new String[]{pattern};
+        int[] indexes = new int[splitValue.length];
+
+        for (int i = 0; i < splitValue.length; ++i) {
+            indexes[i] = Integer.parseInt(splitValue[i]);
+        }
+
+        switch (indexes.length) {
+            case 1:
+                return new Substring(expression, indexes[0], -1);
+            case 2:
+                return new Substring(expression, indexes[0], indexes[1]);
+            default:
+                throw new IllegalArgumentException("Incorrect pattern for substring manipulation");
+        }
+    }
+
+    private static ValueManipulation compileDateTimeChange(String expression, String lowerCase) {
+        if (lowerCase.contains("month")) {
+            return compileMonthChange(expression, lowerCase);
+        } else if (lowerCase.contains("plusdays")) {
+            return new ShiftDateTime(expression, DurationFieldType.days(), amount(lowerCase, PLUS_DAYS_PATTERN_BEGIN_INDEX));
+        } else if (lowerCase.contains("minusdays")) {
+            return new ShiftDateTime(expression, DurationFieldType.days(), -amount(lowerCase, MINUS_DAYS_PATTERN_BEGIN_INDEX));
+        } else if (lowerCase.contains("plushours")) {
+            return new ShiftDateTime(expression, DurationFieldType.hours(), amount(lowerCase, PLUS_HOURS_PATTERN_BEGIN_INDEX));
+        } else if (lowerCase.contains("minushours")) {
+            return new ShiftDateTime(expression, DurationFieldType.hours(), -amount(lowerCase, MINUS_HOURS_PATTERN_BEGIN_INDEX));
+        } else if (lowerCase.contains("plusminutes")) {
+            return new ShiftDateTime(expression, DurationFieldType.minutes(), amount(lowerCase, PLUS_MINUTES_PATTERN_BEGIN_INDEX));
+        } else if (lowerCase.contains("minusminutes")) {
+            return new ShiftDateTime(expression, DurationFieldType.minutes(), -amount(lowerCase, MINUS_MINUTES_PATTERN_BEGIN_INDEX));
+        } else if (lowerCase.contains("quarter")) {
+            return new Quarter(expression);
+        } else {
+            throw new MotechException(WARNING);
+        }
+    }
+
+    private static ValueManipulation compileMonthChange(String expression, String lowerCase) {
+        if (lowerCase.contains("beginningofmonth")) {
+            return new MonthBoundary(expression, true);
+        } else if (lowerCase.contains("endofmonth")) {
+            return new MonthBoundary(expression, false);
+        } else if (lowerCase.contains("plusmonths")) {
+            return new ShiftDateTime(expression, DurationFieldType.months(), amount(lowerCase, PLUS_MONTHS_PATTERN_BEGIN_INDEX));
+        } else if (lowerCase.contains("minusmonths")) {
+            return new ShiftDateTime(expression, DurationFieldType.months(), -amount(lowerCase, MINUS_MONTHS_PATTERN_BEGIN_INDEX));
+        } else {
+            return new Identity(expression);
+        }
+    }
+
+    private static ValueManipulation compileSimple(String expression, String name) {
+        switch (name) {
+            case "toupper":
+            case "tolower":
+            case "capitalize":
+            case "urlencode":
+                return new Simple(expression, name);
+            default:
+                throw new MotechException(WARNING);
+        }
+    }
+
+    private static String argument(String expression, int beginIndex) {
+        return expression.substring(beginIndex, expression.length() - 1);
+    }
+
+    private static int amount(String expression, int beginIndex) {
+        return Integer.parseInt(argument(expression, beginIndex));
+    }
+
+    /**
+     * A manipulation which only depends on the manipulated value.
+     */
+    abstract static class ValueManipulation extends Manipulation {
+
+        protected ValueManipulation(String expression) {
+            super(expression);
+        }
+
+        /**
+         * Applies this manipulation to the given value.
+         *
+         * @param value  the value to manipulate
+         * @return the manipulated value
+         */
+        abstract String apply(String value);
+
+        @Override
+        String apply(KeyEvaluator evaluator, String value) {
+            return apply(value);
+        }
+    }
+
+    private static final class Invalid extends ValueManipulation {
+        private final boolean format;
+
+        Invalid(String expression, boolean format) {
+            super(expression);
+            this.format = format;
+        }
+
+        @Override
+        String apply(String value) {
+            // compiling again throws a new instance of the exception thrown when this manipulation was compiled
+            if (format) {
+                compileFormat(getExpression());
+            } else {
+                compileLowerCase(getExpression(), getExpression().toLowerCase());
+            }
+
+            throw new MotechException(WARNING);
+        }
+    }
+
+    private static final class Identity extends ValueManipulation {
+
+        Identity(String expression) {
+            super(expression);
+        }
+
+        @Override
+        String apply(String value) {
+            return value;
+        }
+    }
+
+    private static final class Format extends Manipulation {
+        private final String[] items;
+        private final KeyInformation[] keys;
+
+        Format(String expression, String[] items, KeyInformation[] keys) {
+            super(expression);
+            this.items = items;
+            this.keys = keys;
+        }
+
+        @Override
+        String apply(KeyEvaluator evaluator, String value) throws TaskHandlerException {
+            Object[] arguments = new Object[items.length];
+
+            for (int i = 0; i < items.length; ++i) {
+                if (keys[i] == null) {
+                    arguments[i] = items[i];
+                } else {
+                    Object subValue = evaluator.getValue(keys[i]);
+                    arguments[i] = subValue != null ? subValue.toString() : "";
+                }
+            }
+
+            return String.format(value, arguments);
+        }
+    }
+
+    private static final class Join extends ValueManipulation {
+        private final String separator;
+
+        Join(String expression, String separator) {
+            super(expression);
+            this.separator = separator;
+        }
+
+        @Override
+        String apply(String value) {
+            return StringUtils.join(value.split(" "), separator);
+        }
+    }
+
+    private static final class FormatDateTime extends ValueManipulation {
+        private final DateTimeFormatter formatter;
+
+        FormatDateTime(String expression, DateTimeFormatter formatter) {
+            super(expression);
+            this.formatter = formatter;
+        }
+
+        @Override
+        String apply(String value) {
+            try {
+                return formatter.print(new DateTime(value));
+            } catch (IllegalArgumentException e) {
+                throw new MotechException("error.date.format", e);
+            }
+        }
+    }
+
+    private static final class Substring extends ValueManipulation {
+        private final int beginIndex;
+        private final int endIndex;
+
+        Substring(String expression, int beginIndex, int endIndex) {
+            super(expression);
+            this.beginIndex = beginIndex;
+            this.endIndex = endIndex;
+        }
+
+        @Override
+        String apply(String value) {
+            return endIndex < 0 ? value.substring(beginIndex) : value.substring(beginIndex, endIndex);
+        }
+    }
+
+    private static final class Split extends ValueManipulation {
+        private final Pattern pattern;
+        private final int index;
+
+        Split(String expression, Pattern pattern, int index) {
+            super(expression);
+            this.pattern = pattern;
+            this.index = index;
+        }
+
+        @Override
+        String apply(String value) {
+            return pattern.split(value)[index];
+        }
+    }
+
+    private static final class ParseDate extends ValueManipulation {
+        private final DateTimeFormatter formatter;
+
+        ParseDate(String expression, DateTimeFormatter formatter) {
+            super(expression);
+            this.formatter = formatter;
+        }
+
+        @Override
+        String apply(String value) {
+            return formatter.parseDateTime(value).toString("yyyy-MM-dd HH:mm Z");
+        }
+    }
+
+    private static final class ShiftDateTime extends ValueManipulation {
+        private final DurationFieldType field;
+        private final int amount;
+
+        ShiftDateTime(String expression, DurationFieldType field, int amount) {
+            super(expression);
+            this.field = field;
+            this.amount = amount;
+        }
+
+        @Override
+        String apply(String value) {
+            return new DateTime(value).withFieldAdded(field, amount).toString();
+        }
+    }
+
+    private static final class MonthBoundary extends ValueManipulation {
+        private final boolean beginning;
+
+        MonthBoundary(String expression, boolean beginning) {
+            super(expression);
+            this.beginning = beginning;
+        }
+
+        @Override
+        String apply(String value) {
+            DateTime dateTime = new DateTime(value);
+
+            return beginning
+                    ? dateTime.dayOfMonth().withMinimumValue().withTime(0, 0, 0, 0).toString()
+                    : dateTime.dayOfMonth().withMaximumValue().withTime(LAST_HOUR, LAST_MINUTE, LAST_SECOND, LAST_MILLIS).toString();
+        }
+    }
+
+    private static final class Quarter extends ValueManipulation {
+
+        Quarter(String expression) {
+            super(expression);
+        }
+
+        @Override
+        String apply(String value) {
+            DateTime dateTime = new DateTime(value);
+            int numberOfMonth = dateTime.monthOfYear().get();
+
+            return "Q" + ((numberOfMonth / MONTHS_IN_QUARTER) + 1) + "-" + dateTime.year().getAsString();
+        }
+    }
+
+    private static final class Simple extends ValueManipulation {
+        private final String name;
+
+        Simple(String expression, String name) {
+            super(expression);
+            this.name = name;
+        }
+
+        @Override
+        String apply(String value) {
+            switch (name) {
+                case "toupper":
+                    return value.toUpperCase();
+                case "tolower":
+                    return value.toLowerCase();
+                case "capitalize":
+                    return WordUtils.capitalize(value);
+                default:
+                    try {
+                        return URLEncoder.encode(value, "UTF-8");
+                    } catch (UnsupportedEncodingException e) {
+                        throw new MotechException("URLEncode manipulator error.", e);
+                    }
+            }
+        }
+    }
+}
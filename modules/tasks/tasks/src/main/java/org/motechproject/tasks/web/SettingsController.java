@@ -3,6 +3,7 @@ package org.motechproject.tasks.web;
 import org.motechproject.commons.api.MotechException;
 import org.motechproject.config.SettingsFacade;
 import org.motechproject.tasks.constants.TasksRoles;
+import org.motechproject.tasks.service.impl.TasksPostExecutionHandler;
 import org.motechproject.tasks.web.domain.SettingsDto;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -31,6 +32,9 @@ public class SettingsController {
     @Autowired
     private SettingsFacade settingsFacade;
 
+    @Autowired
+    private TasksPostExecutionHandler postExecutionHandler;
+
     /**
      * Returns the Tasks module settings.
      *
@@ -60,6 +64,7 @@ public class SettingsController {
             if (settings.isValid()) {
                 settingsFacade.setProperty(TASK_POSSIBLE_ERRORS, taskPossibleErrors);
                 settingsFacade.saveRawConfig(TASK_PROPERTIES_FILE_NAME, new String(os.toString()));
+                postExecutionHandler.reloadSettings();
             } else {
                 throw new IllegalArgumentException("Settings are not valid");
             }
@@ -0,0 +1,111 @@
+package org.motechproject.tasks.service.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+import java.lang.invoke.MethodHandle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ResolvedActionCacheTest {
+
+    private static final String SERVICE_INTERFACE = "org.motechproject.sms.SmsService";
+
+    public class TestService {
+        public String send(String phone, Integer count) {
+            return phone + ":" + count;
+        }
+    }
+
+    @Mock
+    private BundleContext bundleContext;
+
+    @Mock
+    private ServiceReference serviceReference;
+
+    private ResolvedActionCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+
+        when(bundleContext.getServiceReferences(SERVICE_INTERFACE, null))
+                .thenReturn(new ServiceReference[]{serviceReference});
+        when(bundleContext.getService(serviceReference)).thenReturn(new TestService());
+        when(serviceReference.getProperty(Constants.OBJECTCLASS)).thenReturn(new String[]{SERVICE_INTERFACE});
+
+        cache = new ResolvedActionCache();
+        cache.setBundleContext(bundleContext);
+    }
+
+    @Test
+    public void shouldCacheServiceAndBoundMethod() throws Throwable {
+        ResolvedActionCache.BoundService service = cache.getService(SERVICE_INTERFACE);
+        MethodHandle method = service.getMethod("send", new Class[]{String.class, Integer.class});
+
+        assertSame(service, cache.getService(SERVICE_INTERFACE));
+        assertSame(method, service.getMethod("send", new Class[]{String.class, Integer.class}));
+        assertEquals("123:2", (Object) method.invokeExact(new Object[]{"123", 2}));
+
+        verify(bundleContext).getService(serviceReference);
+    }
+
+    @Test
+    public void shouldReleaseServiceWhenItIsUnregistered() {
+        ResolvedActionCache.BoundService service = cache.getService(SERVICE_INTERFACE);
+        ServiceListener listener = getTrackerListener();
+
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, serviceReference));
+
+        verify(bundleContext).ungetService(serviceReference);
+        assertNull(cache.getService(SERVICE_INTERFACE));
+
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, serviceReference));
+
+        assertNotSame(service, cache.getService(SERVICE_INTERFACE));
+        verify(bundleContext, times(2)).getService(serviceReference);
+    }
+
+    @Test
+    public void shouldResolveServiceRegisteredLater() throws Exception {
+        when(bundleContext.getServiceReferences(SERVICE_INTERFACE, null)).thenReturn(null);
+
+        assertNull(cache.getService(SERVICE_INTERFACE));
+
+        getTrackerListener().serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, serviceReference));
+
+        assertNotNull(cache.getService(SERVICE_INTERFACE));
+    }
+
+    @Test
+    public void shouldReleaseServicesWhenBundleContextChanges() {
+        cache.getService(SERVICE_INTERFACE);
+
+        cache.setBundleContext(null);
+
+        verify(bundleContext).ungetService(serviceReference);
+        assertNull(cache.getService(SERVICE_INTERFACE));
+    }
+
+    private ServiceListener getTrackerListener() {
+        ArgumentCaptor<ServiceListener> captor = ArgumentCaptor.forClass(ServiceListener.class);
+        verify(bundleContext).addServiceListener(captor.capture(), anyString());
+        return captor.getValue();
+    }
+}
@@ -4,29 +4,42 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.config.SettingsFacade;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.util.Order;
 import org.motechproject.tasks.domain.mds.task.Task;
+import org.motechproject.tasks.domain.mds.task.TaskActionInformation;
 import org.motechproject.tasks.domain.mds.task.TaskActivity;
 import org.motechproject.tasks.domain.enums.TaskActivityType;
 import org.motechproject.tasks.domain.mds.task.TaskExecutionProgress;
+import org.motechproject.tasks.domain.mds.task.TaskTriggerInformation;
 import org.motechproject.tasks.exception.TaskHandlerException;
 import org.motechproject.tasks.repository.TaskActivitiesDataService;
 import org.motechproject.tasks.service.TaskActivityService;
+import org.springframework.transaction.support.TransactionCallback;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.Arrays.asList;
 import static org.apache.commons.lang.exception.ExceptionUtils.getStackTrace;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -42,6 +55,7 @@ public class TaskActivityServiceImplTest {
     private static final Long TASK_ID = 12345l;
     private static final Long TASK_ACTIVITY_ID  = 11L;
     private static final List<String> ERROR_FIELD = asList("phone");
+    private static final String TASK_IN_PROGRESS = "task.inProgress";
 
     private List<TaskActivity> activities;
 
@@ -50,13 +64,16 @@ public class TaskActivityServiceImplTest {
 
     TaskActivityService activityService;
 
+    TaskActivityWriter activityWriter;
+
     Task task;
 
     @Before
     public void setup() throws Exception {
         initMocks(this);
 
-        activityService = new TaskActivityServiceImpl(taskActivitiesDataService);
+        activityWriter = new TaskActivityWriter(taskActivitiesDataService);
+        activityService = new TaskActivityServiceImpl(taskActivitiesDataService, activityWriter);
         activities = createTaskActivities();
 
         task = new Task();
@@ -112,6 +129,113 @@ public class TaskActivityServiceImplTest {
         assertActivity(messageKey, Collections.<String>emptyList(), TASK_ID, TaskActivityType.SUCCESS, null, null, activity);
     }
 
+    @Test
+    public void shouldRecordProgressOfStartedTaskWithoutReadingItBack() {
+        TaskActivity persisted = startTask(2);
+
+        assertFalse(activityService.addSuccessfulExecution(TASK_ACTIVITY_ID));
+        assertTrue(activityService.addSuccessfulExecution(TASK_ACTIVITY_ID));
+
+        verify(taskActivitiesDataService, times(1)).findById(TASK_ACTIVITY_ID);
+        verify(taskActivitiesDataService, times(1)).update(persisted);
+
+        assertEquals(2, persisted.getTaskExecutionProgress().getActionsSucceeded());
+        assertActivity("task.success.ok", Collections.<String>emptyList(), TASK_ID, TaskActivityType.SUCCESS, null, null, persisted);
+        assertNull(activityWriter.get(TASK_ACTIVITY_ID));
+    }
+
+    @Test
+    public void shouldWriteEveryChangeWithSynchronousDurability() {
+        activityWriter.setDurability(TaskActivityWriter.Durability.SYNCHRONOUS);
+        TaskActivity persisted = startTask(2);
+
+        activityService.addSuccessfulExecution(TASK_ACTIVITY_ID);
+
+        verify(taskActivitiesDataService).update(persisted);
+        assertEquals(1, persisted.getTaskExecutionProgress().getActionsSucceeded());
+        assertEquals(asList("1", "2"), persisted.getFields());
+    }
+
+    @Test
+    public void shouldWriteQueuedChangesInBatchesWithWriteBehindDurability() {
+        activityWriter.setDurability(TaskActivityWriter.Durability.WRITE_BEHIND);
+        TaskActivity persisted = startTask(1);
+
+        activityService.addSuccessfulExecution(TASK_ACTIVITY_ID);
+
+        verify(taskActivitiesDataService, never()).update(any(TaskActivity.class));
+        assertEquals(TaskActivityType.SUCCESS, activityService.getTaskActivityById(TASK_ACTIVITY_ID).getActivityType());
+
+        activityWriter.flushQueued();
+
+        verify(taskActivitiesDataService).doInTransaction(any(TransactionCallback.class));
+        verify(taskActivitiesDataService).update(persisted);
+        assertEquals(TaskActivityType.SUCCESS, persisted.getActivityType());
+        assertNull(activityWriter.get(TASK_ACTIVITY_ID));
+    }
+
+    @Test
+    public void shouldWaitForBatchBeforeWritingFinalState() throws InterruptedException {
+        activityWriter.setDurability(TaskActivityWriter.Durability.TERMINAL);
+        TaskActivity persisted = startTask(2);
+
+        activityService.addSuccessfulExecution(TASK_ACTIVITY_ID);
+
+        final Thread finishing = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                activityService.addSuccessfulExecution(TASK_ACTIVITY_ID);
+            }
+        });
+        final AtomicBoolean finishedDuringBatch = new AtomicBoolean();
+
+        when(taskActivitiesDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws InterruptedException {
+                Object result = ((TransactionCallback) invocation.getArguments()[0]).doInTransaction(null);
+
+                finishing.start();
+                finishing.join(200);
+                finishedDuringBatch.set(!finishing.isAlive());
+
+                return result;
+            }
+        });
+
+        activityWriter.flushQueued();
+        finishing.join();
+
+        assertFalse(finishedDuringBatch.get());
+        assertEquals(TaskActivityType.SUCCESS, persisted.getActivityType());
+        assertEquals(2, persisted.getTaskExecutionProgress().getActionsSucceeded());
+    }
+
+    @Test
+    public void shouldQueueActivitiesOfFailedBatchAgain() {
+        activityWriter.setDurability(TaskActivityWriter.Durability.WRITE_BEHIND);
+        TaskActivity persisted = startTask(2);
+
+        activityService.addSuccessfulExecution(TASK_ACTIVITY_ID);
+
+        when(taskActivitiesDataService.doInTransaction(any(TransactionCallback.class)))
+                .thenThrow(new IllegalStateException("Database unavailable"))
+                .thenAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) {
+                        return ((TransactionCallback) invocation.getArguments()[0]).doInTransaction(null);
+                    }
+                });
+
+        activityWriter.flushQueued();
+
+        verify(taskActivitiesDataService, never()).update(any(TaskActivity.class));
+
+        activityWriter.flushQueued();
+
+        verify(taskActivitiesDataService).update(persisted);
+        assertEquals(1, persisted.getTaskExecutionProgress().getActionsSucceeded());
+    }
+
     @Test
     public void shouldAddTaskWarningActivity() {
         String messageKey = "task.warning.taskDisabled";
@@ -215,6 +339,72 @@ public class TaskActivityServiceImplTest {
         return messages;
     }
 
+    @Test
+    public void shouldReturnSnapshotOfActivityInProgress() {
+        activityWriter.setDurability(TaskActivityWriter.Durability.WRITE_BEHIND);
+        startTask(2);
+
+        TaskActivity snapshot = activityService.getTaskActivityById(TASK_ACTIVITY_ID);
+        activityService.addSuccessfulExecution(TASK_ACTIVITY_ID);
+
+        assertNotSame(activityWriter.get(TASK_ACTIVITY_ID), snapshot);
+        assertEquals(0, snapshot.getTaskExecutionProgress().getActionsSucceeded());
+        assertEquals(1, activityService.getTaskActivityById(TASK_ACTIVITY_ID).getTaskExecutionProgress().getActionsSucceeded());
+    }
+
+    @Test
+    public void shouldNotEvictActivitiesInProgress() {
+        for (long id = 1; id <= TaskActivityWriter.MAX_TRACKED_ACTIVITIES + 1; id++) {
+            TaskActivity activity = new TaskActivity(TASK_IN_PROGRESS, new ArrayList<String>(), TASK_ID,
+                    TaskActivityType.IN_PROGRESS, new TaskExecutionProgress(1));
+            activity.setId(id);
+            activityWriter.track(activity);
+        }
+
+        assertNotNull(activityWriter.get(1L));
+        assertNull(activityWriter.get((long) TaskActivityWriter.MAX_TRACKED_ACTIVITIES + 1));
+    }
+
+    @Test
+    public void shouldUseDefaultDurabilityWhenSettingIsUnknown() {
+        SettingsFacade settings = mock(SettingsFacade.class);
+        when(settings.getProperty(TaskActivityWriter.DURABILITY_KEY)).thenReturn("unknown");
+        activityWriter.setSettings(settings);
+
+        activityWriter.start();
+        try {
+            assertEquals(TaskActivityWriter.Durability.TERMINAL, activityWriter.getDurability());
+        } finally {
+            activityWriter.stop();
+        }
+    }
+
+    private TaskActivity startTask(int totalActions) {
+        final TaskActivity persisted = new TaskActivity(TASK_IN_PROGRESS, new ArrayList<>(asList("0", String.valueOf(totalActions))),
+                TASK_ID, TaskActivityType.IN_PROGRESS, new TaskExecutionProgress(totalActions));
+        persisted.setId(TASK_ACTIVITY_ID);
+
+        when(taskActivitiesDataService.create(any(TaskActivity.class))).thenReturn(persisted);
+        when(taskActivitiesDataService.findById(TASK_ACTIVITY_ID)).thenReturn(persisted);
+        when(taskActivitiesDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return ((TransactionCallback) invocation.getArguments()[0]).doInTransaction(null);
+            }
+        });
+
+        Task started = new Task();
+        started.setId(TASK_ID);
+        started.setTrigger(new TaskTriggerInformation());
+        for (int i = 0; i < totalActions; i++) {
+            started.addAction(new TaskActionInformation());
+        }
+
+        activityService.addTaskStarted(started, new HashMap<String, Object>());
+
+        return persisted;
+    }
+
     private TaskActivity createInProgress() {
         return new TaskActivity("", new ArrayList<>(), TASK_ID, TaskActivityType.IN_PROGRESS, new TaskExecutionProgress(1));
     }
@@ -0,0 +1,255 @@
+package org.motechproject.tasks.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.commons.api.MotechException;
+import org.motechproject.config.SettingsFacade;
+import org.motechproject.tasks.domain.mds.task.Task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskExecutionEngineTest {
+
+    private TaskExecutionEngine engine;
+
+    private Task task;
+
+    private List<Object> executions;
+
+    @Before
+    public void setUp() {
+        engine = new TaskExecutionEngine();
+        executions = Collections.synchronizedList(new ArrayList<>());
+
+        task = new Task();
+        task.setId(1L);
+        task.setName("task");
+    }
+
+    @After
+    public void tearDown() {
+        engine.stop();
+    }
+
+    @Test
+    public void shouldSkipInvocationOfRunningTask() {
+        engine.start();
+
+        engine.execute(Arrays.asList(task), parameters(1), new TaskExecutionEngine.TaskRunner() {
+            @Override
+            public void run(Task task, Map<String, Object> parameters) {
+                executions.add(parameters.get("id"));
+                engine.execute(Arrays.asList(task), parameters(2), recordingRunner());
+            }
+        });
+
+        assertEquals(Arrays.<Object>asList(1), executions);
+        assertEquals(1, engine.getSkippedCount());
+        assertEquals(1, engine.getExecutedCount());
+        assertEquals(0, engine.getInFlightCount());
+    }
+
+    @Test
+    public void shouldQueueInvocationsOfRunningTask() {
+        engine.setOverlapPolicy(TaskExecutionEngine.OverlapPolicy.QUEUE);
+        engine.start();
+
+        engine.execute(Arrays.asList(task), parameters(1), new TaskExecutionEngine.TaskRunner() {
+            @Override
+            public void run(Task task, Map<String, Object> parameters) {
+                executions.add(parameters.get("id"));
+                engine.execute(Arrays.asList(task), parameters(2), recordingRunner());
+                engine.execute(Arrays.asList(task), parameters(3), recordingRunner());
+            }
+        });
+
+        assertEquals(Arrays.<Object>asList(1, 2, 3), executions);
+        assertEquals(2, engine.getQueuedCount());
+        assertEquals(3, engine.getExecutedCount());
+        assertEquals(0, engine.getInFlightCount());
+    }
+
+    @Test
+    public void shouldCoalesceInvocationsOfRunningTask() {
+        engine.setOverlapPolicy(TaskExecutionEngine.OverlapPolicy.COALESCE);
+        engine.start();
+
+        engine.execute(Arrays.asList(task), parameters(1), new TaskExecutionEngine.TaskRunner() {
+            @Override
+            public void run(Task task, Map<String, Object> parameters) {
+                executions.add(parameters.get("id"));
+                engine.execute(Arrays.asList(task), parameters(2), recordingRunner());
+                engine.execute(Arrays.asList(task), parameters(3), recordingRunner());
+            }
+        });
+
+        assertEquals(Arrays.<Object>asList(1, 3), executions);
+        assertEquals(1, engine.getQueuedCount());
+        assertEquals(1, engine.getCoalescedCount());
+        assertEquals(2, engine.getExecutedCount());
+    }
+
+    @Test
+    public void shouldExecuteTasksInParallelWithWorkerThreads() throws InterruptedException {
+        SettingsFacade settings = mock(SettingsFacade.class);
+        when(settings.getProperty(TaskExecutionEngine.WORKER_THREADS_KEY)).thenReturn("3");
+        engine.setSettings(settings);
+        engine.start();
+
+        final CountDownLatch allStarted = new CountDownLatch(3);
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        List<Task> tasks = Arrays.asList(createTask(1L), createTask(2L), createTask(3L));
+
+        engine.execute(tasks, parameters(1), new TaskExecutionEngine.TaskRunner() {
+            @Override
+            public void run(Task task, Map<String, Object> parameters) {
+                threads.add(Thread.currentThread().getName());
+                allStarted.countDown();
+                try {
+                    // every task waits for the others, which only finishes if they run at the same time
+                    assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        assertEquals(3, threads.size());
+        assertEquals(3, engine.getExecutedCount());
+        assertEquals(3, engine.getWorkerThreads());
+    }
+
+    @Test
+    public void shouldFailExecutionWhenInterruptedWhileWaitingForWorkerThreads() {
+        SettingsFacade settings = mock(SettingsFacade.class);
+        when(settings.getProperty(TaskExecutionEngine.WORKER_THREADS_KEY)).thenReturn("2");
+        engine.setSettings(settings);
+        engine.start();
+
+        final CountDownLatch released = new CountDownLatch(1);
+        final Task lastTask = createTask(2L);
+
+        try {
+            engine.execute(Arrays.asList(createTask(1L), lastTask), parameters(1), new TaskExecutionEngine.TaskRunner() {
+                @Override
+                public void run(Task task, Map<String, Object> parameters) {
+                    if (task == lastTask) {
+                        // the last task runs on the thread which then waits for the worker thread
+                        Thread.currentThread().interrupt();
+                    } else {
+                        try {
+                            released.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+            });
+            fail("The execution should fail when the waiting thread is interrupted");
+        } catch (MotechException e) {
+            assertTrue(Thread.interrupted());
+        } finally {
+            released.countDown();
+        }
+    }
+
+    @Test
+    public void shouldExecuteQueuedInvocationsWhenRunningInvocationFails() {
+        engine.setOverlapPolicy(TaskExecutionEngine.OverlapPolicy.QUEUE);
+        engine.start();
+
+        try {
+            engine.execute(Arrays.asList(task), parameters(1), new TaskExecutionEngine.TaskRunner() {
+                @Override
+                public void run(Task task, Map<String, Object> parameters) {
+                    executions.add(parameters.get("id"));
+                    engine.execute(Arrays.asList(task), parameters(2), recordingRunner());
+                    throw new IllegalStateException("failure");
+                }
+            });
+            fail("The failure of the running invocation should be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("failure", e.getMessage());
+        }
+
+        assertEquals(Arrays.<Object>asList(1, 2), executions);
+        assertEquals(0, engine.getInFlightCount());
+
+        engine.execute(Arrays.asList(task), parameters(3), recordingRunner());
+        assertEquals(Arrays.<Object>asList(1, 2, 3), executions);
+    }
+
+    @Test
+    public void shouldReleaseTaskWhenExecutionFailsWithError() {
+        engine.setOverlapPolicy(TaskExecutionEngine.OverlapPolicy.QUEUE);
+        engine.start();
+
+        try {
+            engine.execute(Arrays.asList(task), parameters(1), new TaskExecutionEngine.TaskRunner() {
+                @Override
+                public void run(Task task, Map<String, Object> parameters) {
+                    engine.execute(Arrays.asList(task), parameters(2), recordingRunner());
+                    throw new AssertionError("error");
+                }
+            });
+            fail("The error should be rethrown");
+        } catch (AssertionError e) {
+            assertEquals("error", e.getMessage());
+        }
+
+        assertEquals(1, engine.getSkippedCount());
+        assertEquals(0, engine.getInFlightCount());
+
+        engine.execute(Arrays.asList(task), parameters(3), recordingRunner());
+        assertEquals(Arrays.<Object>asList(3), executions);
+    }
+
+    @Test
+    public void shouldDropGateOfDeletedTask() {
+        engine.start();
+
+        assertTrue(engine.tryAcquire(task.getId()));
+        engine.taskDeleted(task.getId());
+
+        assertEquals(0, engine.getInFlightCount());
+        assertTrue(engine.tryAcquire(task.getId()));
+    }
+
+    private TaskExecutionEngine.TaskRunner recordingRunner() {
+        return new TaskExecutionEngine.TaskRunner() {
+            @Override
+            public void run(Task task, Map<String, Object> parameters) {
+                executions.add(parameters.get("id"));
+            }
+        };
+    }
+
+    private Map<String, Object> parameters(int id) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("id", id);
+        return parameters;
+    }
+
+    private Task createTask(Long id) {
+        Task created = new Task();
+        created.setId(id);
+        created.setName("task" + id);
+        return created;
+    }
+}
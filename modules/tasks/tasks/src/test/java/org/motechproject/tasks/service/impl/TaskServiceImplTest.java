@@ -6,6 +6,7 @@ import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.node.ObjectNode;
 import org.hamcrest.Description;
 import org.hamcrest.TypeSafeMatcher;
+import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -13,6 +14,8 @@ import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.mockito.verification.VerificationMode;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
@@ -52,6 +55,7 @@ import org.motechproject.tasks.service.TaskDataProviderService;
 import org.motechproject.tasks.service.TriggerEventService;
 import org.motechproject.tasks.service.TriggerHandler;
 import org.motechproject.tasks.validation.TaskValidator;
+import org.motechproject.testing.utils.TimeFaker;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -72,9 +76,11 @@ import static org.hamcrest.Matchers.hasProperty;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -84,10 +90,13 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.motechproject.tasks.domain.enums.ParameterType.UNICODE;
+import static org.motechproject.tasks.constants.EventDataKeys.CACHE_INVALIDATION_ORIGIN;
 import static org.motechproject.tasks.constants.EventDataKeys.CHANNEL_MODULE_NAME;
 import static org.motechproject.tasks.constants.EventDataKeys.DATA_PROVIDER_NAME;
+import static org.motechproject.tasks.constants.EventSubjects.CHANNEL_DEREGISTER_SUBJECT;
 import static org.motechproject.tasks.constants.EventSubjects.CHANNEL_UPDATE_SUBJECT;
 import static org.motechproject.tasks.constants.EventSubjects.DATA_PROVIDER_UPDATE_SUBJECT;
+import static org.motechproject.tasks.constants.EventSubjects.TASK_CACHE_INVALIDATE_SUBJECT;
 
 public class TaskServiceImplTest {
 
@@ -127,11 +136,19 @@ public class TaskServiceImplTest {
     @Mock
     TaskMigrationManager taskMigrationManager;
 
+    @Mock
+    TasksPostExecutionHandler postExecutionHandler;
+
+    @Mock
+    TaskExecutionEngine executionEngine;
+
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
 
     TaskServiceImpl taskService;
 
+    ActiveTaskCache activeTaskCache;
+
     @Before
     public void setup() throws Exception {
         initMocks(this);
@@ -147,6 +164,10 @@ public class TaskServiceImplTest {
         taskValidator.setTriggerEventService(triggerEventService);
         taskService.setTaskValidator(taskValidator);
         taskService.setTaskMigrationManager(taskMigrationManager);
+        activeTaskCache = new ActiveTaskCache();
+        taskService.setActiveTaskCache(activeTaskCache);
+        taskService.setPostExecutionHandler(postExecutionHandler);
+        taskService.setExecutionEngine(executionEngine);
 
         when(bundleContext.getBundles()).thenReturn(new Bundle[]{bundleTrigger, bundleAction});
         when(bundleTrigger.getSymbolicName()).thenReturn("test-trigger");
@@ -154,6 +175,19 @@ public class TaskServiceImplTest {
 
         when(bundleContext.getServiceReference(eq(TriggerHandler.class))).thenReturn(serviceReference);
         when(bundleContext.getService(eq(serviceReference))).thenReturn(triggerHandler);
+
+        when(tasksDataService.detachedCopy(any(Task.class))).thenAnswer(new Answer<Task>() {
+            @Override
+            public Task answer(InvocationOnMock invocation) {
+                return (Task) invocation.getArguments()[0];
+            }
+        });
+        when(tasksDataService.detachedCopyAll(anyList())).thenAnswer(new Answer<List<Task>>() {
+            @Override
+            public List<Task> answer(InvocationOnMock invocation) {
+                return new ArrayList<>((List<Task>) invocation.getArguments()[0]);
+            }
+        });
     }
 
     @Test(expected = ValidationException.class)
@@ -409,6 +443,148 @@ public class TaskServiceImplTest {
         assertEquals(asList(t), tasks);
     }
 
+    @Test
+    public void shouldFindTasksForGivenTriggerSubjectInCache() {
+        Task t = new Task("name", trigger, asList(action));
+        t.setId(1L);
+
+        when(tasksDataService.executeQuery(Matchers.<QueryExecution<Object>>any())).thenReturn(asList(t));
+
+        assertEquals(asList(t), taskService.findActiveTasksForTriggerSubject(trigger.getSubject()));
+        assertEquals(asList(t), taskService.findActiveTasksForTriggerSubject(trigger.getSubject()));
+
+        verify(tasksDataService, times(1)).executeQuery(Matchers.<QueryExecution<Object>>any());
+        assertEquals(1, activeTaskCache.getHitCount());
+        assertEquals(1, activeTaskCache.getMissCount());
+        assertEquals(1, activeTaskCache.getCachedTaskCount());
+    }
+
+    @Test
+    public void shouldNotChangeCachedTasksWhenReturnedTasksAreChanged() {
+        Task t = new Task("name", trigger, asList(action));
+        t.setId(1L);
+
+        when(tasksDataService.executeQuery(Matchers.<QueryExecution<Object>>any())).thenReturn(asList(t));
+
+        Task returned = taskService.findActiveTasksForTriggerSubject(trigger.getSubject()).get(0);
+        returned.incrementFailuresInRow();
+        returned.setEnabled(false);
+
+        Task cached = taskService.findActiveTasksForTriggerSubject(trigger.getSubject()).get(0);
+
+        assertNotSame(returned, cached);
+        assertTrue(cached.isEnabled());
+        assertEquals(0, cached.getFailuresInRow());
+    }
+
+    @Test
+    public void shouldRemoveDisabledAndDeletedTasksFromCache() {
+        Task first = new Task("first", trigger, asList(action));
+        first.setId(1L);
+        Task second = new Task("second", trigger, asList(action));
+        second.setId(2L);
+
+        when(tasksDataService.executeQuery(Matchers.<QueryExecution<Object>>any())).thenReturn(asList(first, second));
+        taskService.findActiveTasksForTriggerSubject(trigger.getSubject());
+
+        Task disabled = new Task("first", trigger, asList(action), null, false, true);
+        disabled.setId(1L);
+        when(tasksDataService.findById(1L)).thenReturn(first);
+        when(tasksDataService.findTasksByName("first")).thenReturn(asList(first));
+        taskService.save(disabled);
+
+        assertEquals(asList(second), taskService.findActiveTasksForTriggerSubject(trigger.getSubject()));
+
+        when(tasksDataService.findById(2L)).thenReturn(second);
+        taskService.deleteTask(2L);
+
+        assertTrue(taskService.findActiveTasksForTriggerSubject(trigger.getSubject()).isEmpty());
+        verify(tasksDataService, times(1)).executeQuery(Matchers.<QueryExecution<Object>>any());
+    }
+
+    @Test
+    public void shouldClearCacheAfterChannelDeregister() {
+        Task t = new Task("name", trigger, asList(action));
+        t.setId(1L);
+
+        when(tasksDataService.executeQuery(Matchers.<QueryExecution<Object>>any())).thenReturn(asList(t));
+        taskService.findActiveTasksForTriggerSubject(trigger.getSubject());
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(CHANNEL_MODULE_NAME, action.getModuleName());
+        taskService.clearTaskCacheAfterChannelDeregister(new MotechEvent(CHANNEL_DEREGISTER_SUBJECT, parameters));
+
+        taskService.findActiveTasksForTriggerSubject(trigger.getSubject());
+
+        verify(tasksDataService, times(2)).executeQuery(Matchers.<QueryExecution<Object>>any());
+        assertEquals(0, activeTaskCache.getHitCount());
+    }
+
+    @Test
+    public void shouldCheckChannelAvailabilityOfCachedTasks() {
+        Task t = new Task("name", trigger, asList(action));
+        t.setId(1L);
+
+        when(tasksDataService.executeQuery(Matchers.<QueryExecution<Object>>any())).thenReturn(asList(t));
+        assertEquals(1, taskService.findActiveTasksForTriggerSubject(trigger.getSubject()).size());
+
+        // the action bundle is stopped, without any event reaching the cache
+        when(bundleContext.getBundles()).thenReturn(new Bundle[]{bundleTrigger});
+
+        assertTrue(taskService.findActiveTasksForTriggerSubject(trigger.getSubject()).isEmpty());
+        assertEquals(1, activeTaskCache.getHitCount());
+    }
+
+    @Test
+    public void shouldClearCacheWhenTasksChangeOnAnotherInstance() {
+        Task t = new Task("name", trigger, asList(action));
+        t.setId(1L);
+
+        when(tasksDataService.executeQuery(Matchers.<QueryExecution<Object>>any())).thenReturn(asList(t));
+        taskService.findActiveTasksForTriggerSubject(trigger.getSubject());
+
+        when(tasksDataService.findById(1L)).thenReturn(t);
+        taskService.deleteTask(1L);
+
+        ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay).broadcastEventMessage(captor.capture());
+        assertEquals(TASK_CACHE_INVALIDATE_SUBJECT, captor.getValue().getSubject());
+
+        // the instance which deleted the task has already updated its cache
+        taskService.invalidateTaskCache(captor.getValue());
+        assertEquals(1, activeTaskCache.getCachedSubjectCount());
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(CACHE_INVALIDATION_ORIGIN, "other");
+        taskService.invalidateTaskCache(new MotechEvent(TASK_CACHE_INVALIDATE_SUBJECT, parameters));
+        assertEquals(0, activeTaskCache.getCachedSubjectCount());
+    }
+
+    @Test
+    public void shouldLoadTasksAgainAfterTimeToLive() {
+        Task t = new Task("name", trigger, asList(action));
+        t.setId(1L);
+        DateTime now = DateTime.now();
+
+        when(tasksDataService.executeQuery(Matchers.<QueryExecution<Object>>any())).thenReturn(asList(t));
+        activeTaskCache.setTimeToLive(60);
+
+        try {
+            TimeFaker.fakeNow(now);
+            taskService.findActiveTasksForTriggerSubject(trigger.getSubject());
+
+            TimeFaker.fakeNow(now.plusSeconds(59));
+            taskService.findActiveTasksForTriggerSubject(trigger.getSubject());
+            verify(tasksDataService, times(1)).executeQuery(Matchers.<QueryExecution<Object>>any());
+
+            TimeFaker.fakeNow(now.plusSeconds(61));
+            taskService.findActiveTasksForTriggerSubject(trigger.getSubject());
+            verify(tasksDataService, times(2)).executeQuery(Matchers.<QueryExecution<Object>>any());
+        } finally {
+            TimeFaker.stopFakingTime();
+        }
+    }
+
     @Test
     public void shouldGetTaskById() {
         long taskId = 12345L;
@@ -450,6 +626,8 @@ public class TaskServiceImplTest {
 
         verify(tasksDataService).findById(expected.getId());
         verify(tasksDataService).delete(expected);
+        verify(postExecutionHandler).taskDeleted(expected.getId());
+        verify(executionEngine).taskDeleted(expected.getId());
     }
 
     @Test(expected = TaskNotFoundException.class)
@@ -156,6 +156,9 @@ public class TaskTriggerHandlerTest extends TasksTestBase {
     @InjectMocks
     private TaskActionExecutor taskActionExecutor = new TaskActionExecutor();
 
+    @Spy
+    private TaskExecutionEngine executionEngine = new TaskExecutionEngine();
+
     @Captor
     private ArgumentCaptor<TaskHandlerException> exceptionCaptor;
 
@@ -914,7 +917,7 @@ public class TaskTriggerHandlerTest extends TasksTestBase {
 
         when(taskService.findActiveTasksForTriggerSubject(TRIGGER_SUBJECT)).thenReturn(tasks);
         when(taskService.getActionEventFor(task.getActions().get(0))).thenReturn(actionEvent);
-        when(bundleContext.getServiceReference(anyString())).thenReturn(null);
+        when(bundleContext.getServiceReferences("TestService", null)).thenReturn(null);
 
         handler.setBundleContext(bundleContext);
         handler.handle(createEvent());
@@ -935,7 +938,7 @@ public class TaskTriggerHandlerTest extends TasksTestBase {
 
         when(taskService.findActiveTasksForTriggerSubject(TRIGGER_SUBJECT)).thenReturn(tasks);
         when(taskService.getActionEventFor(task.getActions().get(0))).thenReturn(actionEvent);
-        when(bundleContext.getServiceReference("TestService")).thenReturn(serviceReference);
+        when(bundleContext.getServiceReferences("TestService", null)).thenReturn(new ServiceReference[]{serviceReference});
         when(bundleContext.getService(serviceReference)).thenReturn(testService);
 
         handler.setBundleContext(bundleContext);
@@ -956,7 +959,7 @@ public class TaskTriggerHandlerTest extends TasksTestBase {
 
         when(taskService.findActiveTasksForTriggerSubject(TRIGGER_SUBJECT)).thenReturn(tasks);
         when(taskService.getActionEventFor(task.getActions().get(0))).thenReturn(actionEvent);
-        when(bundleContext.getServiceReference("TestService")).thenReturn(serviceReference);
+        when(bundleContext.getServiceReferences("TestService", null)).thenReturn(new ServiceReference[]{serviceReference});
         when(bundleContext.getService(serviceReference)).thenReturn(testService);
 
         handler.setBundleContext(bundleContext);
@@ -977,7 +980,7 @@ public class TaskTriggerHandlerTest extends TasksTestBase {
 
         when(taskService.findActiveTasksForTriggerSubject(TRIGGER_SUBJECT)).thenReturn(tasks);
         when(taskService.getActionEventFor(task.getActions().get(0))).thenReturn(actionEvent);
-        when(bundleContext.getServiceReference("TestService")).thenReturn(serviceReference);
+        when(bundleContext.getServiceReferences("TestService", null)).thenReturn(new ServiceReference[]{serviceReference});
         when(bundleContext.getService(serviceReference)).thenReturn(testService);
 
         handler.setBundleContext(bundleContext);
@@ -988,6 +991,31 @@ public class TaskTriggerHandlerTest extends TasksTestBase {
         verify(postExecutionHandler).handleActionExecuted(anyMap(), anyMap(), eq(TASK_ACTIVITY_ID));
     }
 
+    @Test
+    public void shouldResolveServiceMethodOnce() throws Exception {
+        TestService testService = new TestService();
+        setTriggerEvent();
+        setActionEvent();
+
+        actionEvent.setServiceInterface("TestService");
+        actionEvent.setServiceMethod("execute");
+        actionEvent.setSubject(null);
+
+        when(taskService.findActiveTasksForTriggerSubject(TRIGGER_SUBJECT)).thenReturn(tasks);
+        when(taskService.getActionEventFor(task.getActions().get(0))).thenReturn(actionEvent);
+        when(bundleContext.getServiceReferences("TestService", null)).thenReturn(new ServiceReference[]{serviceReference});
+        when(bundleContext.getService(serviceReference)).thenReturn(testService);
+
+        handler.setBundleContext(bundleContext);
+        handler.handle(createEvent());
+        handler.handle(createEvent());
+
+        verify(taskService).getActionEventFor(task.getActions().get(0));
+        verify(bundleContext).getServiceReferences("TestService", null);
+        verify(bundleContext).getService(serviceReference);
+        verify(postExecutionHandler, times(2)).handleActionExecuted(anyMap(), anyMap(), eq(TASK_ACTIVITY_ID));
+    }
+
     @Test
     public void shouldSendEventIfAdditionalDataNotFound() throws Exception {
         setTriggerEvent();
@@ -999,7 +1027,7 @@ public class TaskTriggerHandlerTest extends TasksTestBase {
 
         when(taskService.findActiveTasksForTriggerSubject(TRIGGER_SUBJECT)).thenReturn(tasks);
         when(taskService.getActionEventFor(task.getActions().get(0))).thenReturn(actionEvent);
-        when(bundleContext.getServiceReference("TestService")).thenReturn(null);
+        when(bundleContext.getServiceReferences("TestService", null)).thenReturn(null);
 
         handler.setBundleContext(bundleContext);
         handler.handle(createEvent());
@@ -1025,7 +1053,7 @@ public class TaskTriggerHandlerTest extends TasksTestBase {
 
         when(taskService.findActiveTasksForTriggerSubject(TRIGGER_SUBJECT)).thenReturn(tasks);
         when(taskService.getActionEventFor(task.getActions().get(0))).thenReturn(actionEvent);
-        when(bundleContext.getServiceReference("TestService")).thenReturn(null);
+        when(bundleContext.getServiceReferences("TestService", null)).thenReturn(null);
 
         handler.setBundleContext(bundleContext);
         handler.handle(createEvent());
@@ -1227,9 +1255,7 @@ public class TaskTriggerHandlerTest extends TasksTestBase {
 
         handler.setBundleContext(bundleContext);
 
-        Set<Long> handledTasksId = new HashSet<>();
-        handledTasksId.add(9l);
-        handler.setHandledTasksId(handledTasksId);
+        executionEngine.tryAcquire(9l);
 
         handler.handle(createEvent());
 
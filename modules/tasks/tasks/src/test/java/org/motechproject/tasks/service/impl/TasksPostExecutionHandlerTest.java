@@ -33,6 +33,10 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static org.motechproject.tasks.constants.EventDataKeys.HANDLER_ERROR_PARAM;
+import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_FAILURE_NUMBER;
+import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_STACK_TRACE;
+import static org.motechproject.tasks.constants.EventDataKeys.TASK_FAIL_SUPPRESSED_COUNT;
 import static org.motechproject.tasks.constants.EventSubjects.createHandlerFailureSubject;
 import static org.motechproject.tasks.constants.TaskFailureCause.TRIGGER;
 import static org.motechproject.tasks.web.domain.SettingsDto.TASK_PROPERTIES_FILE_NAME;
@@ -178,6 +182,70 @@ public class TasksPostExecutionHandlerTest extends TasksTestBase {
         verify(retryHandler, never()).handleTaskRetries(task, params);
     }
 
+    @Test
+    public void shouldParseFailureSettingsOnceUntilTheyAreReloaded() {
+        when(settingsFacade.getRawConfig(TASK_PROPERTIES_FILE_NAME)).thenReturn(null);
+
+        postExecutionHandler.handleError(createEventParameters(), new HashMap<>(), task, taskHandlerException, TASK_ACTIVITY_ID);
+        postExecutionHandler.handleError(createEventParameters(), new HashMap<>(), task, taskHandlerException, TASK_ACTIVITY_ID);
+
+        verify(settingsFacade).getProperty("task.possible.errors");
+        verify(settingsFacade).getRawConfig(TASK_PROPERTIES_FILE_NAME);
+
+        postExecutionHandler.reloadSettings();
+        postExecutionHandler.handleError(createEventParameters(), new HashMap<>(), task, taskHandlerException, TASK_ACTIVITY_ID);
+
+        verify(settingsFacade, times(2)).getProperty("task.possible.errors");
+        verify(settingsFacade, times(2)).getRawConfig(TASK_PROPERTIES_FILE_NAME);
+    }
+
+    @Test
+    public void shouldSuppressFailureEventsOfTaskWithinInterval() {
+        when(settingsFacade.getProperty("task.failure.eventInterval")).thenReturn("60000");
+        when(settingsFacade.getProperty("task.failure.includeStackTrace")).thenReturn("false");
+
+        for (int i = 0; i < 3; i++) {
+            postExecutionHandler.handleError(createEventParameters(), new HashMap<>(), task, taskHandlerException, TASK_ACTIVITY_ID);
+        }
+
+        ArgumentCaptor<MotechEvent> captorEvent = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay).sendEventMessage(captorEvent.capture());
+
+        Map<String, Object> errorParam = (Map<String, Object>) captorEvent.getValue().getParameters().get(HANDLER_ERROR_PARAM);
+        assertEquals(0, errorParam.get(TASK_FAIL_SUPPRESSED_COUNT));
+        assertFalse(errorParam.containsKey(TASK_FAIL_STACK_TRACE));
+
+        when(settingsFacade.getProperty("task.failure.eventInterval")).thenReturn("0");
+        postExecutionHandler.reloadSettings();
+        postExecutionHandler.handleError(createEventParameters(), new HashMap<>(), task, taskHandlerException, TASK_ACTIVITY_ID);
+
+        verify(eventRelay, times(2)).sendEventMessage(captorEvent.capture());
+
+        errorParam = (Map<String, Object>) captorEvent.getValue().getParameters().get(HANDLER_ERROR_PARAM);
+        assertEquals(2, errorParam.get(TASK_FAIL_SUPPRESSED_COUNT));
+        assertEquals(4, errorParam.get(TASK_FAIL_FAILURE_NUMBER));
+    }
+
+    @Test
+    public void shouldPublishFailureEventOfRecreatedTaskAfterDeletion() {
+        // the interval does not fit in an int
+        when(settingsFacade.getProperty("task.failure.eventInterval")).thenReturn("3000000000");
+
+        postExecutionHandler.handleError(createEventParameters(), new HashMap<>(), task, taskHandlerException, TASK_ACTIVITY_ID);
+        postExecutionHandler.handleError(createEventParameters(), new HashMap<>(), task, taskHandlerException, TASK_ACTIVITY_ID);
+
+        verify(eventRelay, times(1)).sendEventMessage(any(MotechEvent.class));
+
+        postExecutionHandler.taskDeleted(task.getId());
+        postExecutionHandler.handleError(createEventParameters(), new HashMap<>(), task, taskHandlerException, TASK_ACTIVITY_ID);
+
+        ArgumentCaptor<MotechEvent> captorEvent = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay, times(2)).sendEventMessage(captorEvent.capture());
+
+        Map<String, Object> errorParam = (Map<String, Object>) captorEvent.getValue().getParameters().get(HANDLER_ERROR_PARAM);
+        assertEquals(0, errorParam.get(TASK_FAIL_SUPPRESSED_COUNT));
+    }
+
     private void initTaskActivity() {
         taskActivity = new TaskActivity();
         taskActivity.setId(TASK_ACTIVITY_ID);
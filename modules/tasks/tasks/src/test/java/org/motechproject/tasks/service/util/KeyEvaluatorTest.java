@@ -5,8 +5,13 @@ import org.junit.Test;
 import org.motechproject.commons.api.MotechException;
 import org.motechproject.commons.date.util.DateUtil;
 import org.motechproject.tasks.service.util.KeyEvaluator;
+import org.motechproject.tasks.service.util.TaskContext;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class KeyEvaluatorTest {
 
@@ -45,6 +50,43 @@ public class KeyEvaluatorTest {
         assertEquals(now.minusMinutes(20).toString(), keyEvaluator.manipulate("minusMinutes(20)", toString));
     }
 
+    @Test
+    public void shouldEvaluateTemplates() throws Exception {
+        TaskContext taskContext = mock(TaskContext.class);
+        when(taskContext.getTriggerValue("name")).thenReturn("john smith");
+        when(taskContext.getTriggerValue("greeting")).thenReturn("Hello %s and %s");
+        when(taskContext.getTriggerValue("friend")).thenReturn("ann");
+        when(taskContext.getTriggerValue("phone")).thenReturn("123-456-789");
+        KeyEvaluator keyEvaluator = new KeyEvaluator(taskContext);
+
+        assertEquals("Dear John Smith, call 456.", keyEvaluator.evaluateTemplateString(
+                "Dear {{trigger.name?capitalize}}, call {{trigger.phone?split(-,1)}}."));
+        assertEquals("Hello john smith and ann!", keyEvaluator.evaluateTemplateString(
+                "{{trigger.greeting?format({{trigger.name}},{{trigger.friend}})}}!"));
+        assertEquals("no fields", keyEvaluator.evaluateTemplateString("no fields"));
+        assertNull(keyEvaluator.evaluateTemplateString(null));
+    }
+
+    @Test
+    public void shouldEvaluateTemplateWithSingleMissingValueToNull() throws Exception {
+        TaskContext taskContext = mock(TaskContext.class);
+        when(taskContext.getTriggerValue("name")).thenReturn("john");
+        KeyEvaluator keyEvaluator = new KeyEvaluator(taskContext);
+
+        assertNull(keyEvaluator.evaluateTemplateString("Dear {{trigger.missing}}"));
+        assertEquals("Dear , john", keyEvaluator.evaluateTemplateString("Dear {{trigger.missing}}, {{trigger.name}}"));
+    }
+
+    @Test
+    public void shouldPublishWarningForUnknownManipulationInTemplate() throws Exception {
+        TaskContext taskContext = mock(TaskContext.class);
+        when(taskContext.getTriggerValue("name")).thenReturn("john");
+        KeyEvaluator keyEvaluator = new KeyEvaluator(taskContext);
+
+        assertEquals("JOHN", keyEvaluator.evaluateTemplateString("{{trigger.name?undefined?toUpper}}"));
+        verify(taskContext).publishWarningActivity("task.warning.manipulation", "undefined");
+    }
+
     @Test(expected = MotechException.class)
     public void shouldThrowExceptionWhenManipulationIsUnknown(){
         new KeyEvaluator(null).manipulate("undefined", "something");
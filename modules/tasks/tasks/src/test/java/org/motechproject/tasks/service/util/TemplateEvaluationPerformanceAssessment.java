@@ -0,0 +1,228 @@
+package org.motechproject.tasks.service.util;
+
+import org.apache.commons.lang.WordUtils;
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.junit.Test;
+import org.motechproject.commons.api.NanoStopWatch;
+import org.motechproject.tasks.domain.KeyInformation;
+import org.motechproject.tasks.domain.mds.task.Task;
+import org.motechproject.tasks.exception.TaskHandlerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+
+/**
+ * Compares the throughput of evaluating task templates which are parsed on every evaluation, as they were before
+ * templates were compiled, against evaluating their cached, compiled forms. The parsing evaluation is a copy of the
+ * code path used by {@link KeyEvaluator} before templates were compiled, limited to the manipulations used here.
+ * This is not a unit test, it is meant to be run by hand.
+ */
+public class TemplateEvaluationPerformanceAssessment {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TemplateEvaluationPerformanceAssessment.class);
+
+    private static final int ITERATIONS = 100000;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private static final List<String> TEMPLATES = Arrays.asList(
+            "Dear {{trigger.firstName?capitalize}} {{trigger.lastName?capitalize}}, your next visit is on "
+                    + "{{trigger.visitDate?datetime(dd-MM-yyyy)}} at {{trigger.facility}}.",
+            "{{trigger.message?format({{trigger.firstName}},{{trigger.visitDate}})}}",
+            "{{trigger.phone?split(-,1)}}",
+            "{{trigger.visitDate?plusDays(7)?datetime(yyyy-MM-dd)}}",
+            "{{trigger.externalId}}",
+            "Reminder for {{trigger.firstName?toUpper}} sent by MOTECH"
+    );
+
+    @Test
+    public void compareTemplateEvaluation() throws TaskHandlerException {
+        TaskContext taskContext = buildTaskContext();
+        KeyEvaluator keyEvaluator = new KeyEvaluator(taskContext);
+        ParsingEvaluator parsingEvaluator = new ParsingEvaluator(taskContext);
+
+        // warm up
+        runParsed(parsingEvaluator, ITERATIONS / 10);
+        runCompiled(keyEvaluator, ITERATIONS / 10);
+
+        NanoStopWatch stopWatch = new NanoStopWatch().start();
+        runParsed(parsingEvaluator, ITERATIONS);
+        logThroughput("Parsed on every evaluation", stopWatch.duration());
+
+        stopWatch.start();
+        runCompiled(keyEvaluator, ITERATIONS);
+        logThroughput("Compiled once", stopWatch.duration());
+    }
+
+    private void runParsed(ParsingEvaluator parsingEvaluator, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            for (String template : TEMPLATES) {
+                parsingEvaluator.evaluateTemplateString(template);
+            }
+        }
+    }
+
+    private void runCompiled(KeyEvaluator keyEvaluator, int iterations) throws TaskHandlerException {
+        for (int i = 0; i < iterations; i++) {
+            for (String template : TEMPLATES) {
+                keyEvaluator.evaluateTemplateString(template);
+            }
+        }
+    }
+
+    private TaskContext buildTaskContext() {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("firstName", "john");
+        parameters.put("lastName", "smith");
+        parameters.put("visitDate", new DateTime(2017, 5, 15, 10, 30).toString());
+        parameters.put("facility", "Main Street Clinic");
+        parameters.put("message", "Hello %s, see you on %s");
+        parameters.put("phone", "48-600-700-800");
+        parameters.put("externalId", "1234567890");
+
+        return new TaskContext(new Task(), parameters, new HashMap<String, Object>(), null);
+    }
+
+    private void logThroughput(String name, long durationNanos) {
+        long evaluations = (long) ITERATIONS * TEMPLATES.size();
+
+        LOGGER.info("{}: {} evaluations took {}ms, {} evaluations per second", name, evaluations,
+                durationNanos / NANOS_PER_MILLI, evaluations * NANOS_PER_SECOND / durationNanos);
+    }
+
+    /**
+     * The evaluation of templates as it was done before they were compiled: the fields are found with a pattern
+     * compiled on every call, replaced one by one in the template and their manipulations are parsed on every
+     * application.
+     */
+    private static class ParsingEvaluator {
+        private static final int DATETIME_PATTERN_BEGIN_INDEX = 9;
+        private static final int FORMAT_PATTERN_BEGIN_INDEX = 7;
+        private static final int SPLIT_PATTERN_BEGIN_INDEX = 6;
+        private static final int PLUS_DAYS_PATTERN_BEGIN_INDEX = 9;
+
+        private final TaskContext taskContext;
+
+        ParsingEvaluator(TaskContext taskContext) {
+            this.taskContext = taskContext;
+        }
+
+        String evaluateTemplateString(String template) {
+            String conversionTemplate = template;
+            List<KeyInformation> keysList = parseAll(template);
+
+            for (KeyInformation key : keysList) {
+                Object value = taskContext.getTriggerValue(key.getKey());
+
+                if (value == null && keysList.size() <= 1) {
+                    conversionTemplate = null;
+                } else {
+                    String stringValue = value != null ? value.toString() : "";
+
+                    stringValue = manipulateValue(key.getManipulations(), stringValue);
+
+                    conversionTemplate = conversionTemplate.replace(
+                            String.format("{{%s}}", key.getOriginalKey()), stringValue
+                    );
+                }
+            }
+
+            return conversionTemplate;
+        }
+
+        private List<KeyInformation> parseAll(String input) {
+            List<KeyInformation> keys = new ArrayList<>();
+            Pattern pattern = Pattern.compile("\\{\\{((.*?))(\\}\\})(?![^(]*\\))");
+            Matcher matcher = pattern.matcher(input);
+
+            while (matcher.find()) {
+                keys.add(KeyInformation.parse(matcher.group(1)));
+            }
+
+            return keys;
+        }
+
+        private String manipulateValue(List<String> manipulations, String value) {
+            String manipulateValue = value;
+
+            for (String manipulation : manipulations) {
+                if (manipulation.contains("format")) {
+                    String formatElements = manipulation.substring(FORMAT_PATTERN_BEGIN_INDEX, manipulation.length() - 1);
+
+                    if (isNotBlank(formatElements)) {
+                        String[] items = formatElements.split(",");
+
+                        for (int i = 0; i < items.length; ++i) {
+                            String item = items[i];
+
+                            if (item.startsWith("{{") && item.endsWith("}}")) {
+                                KeyInformation subKey = KeyInformation.parse(item.substring(2, item.length() - 2));
+                                Object subValue = taskContext.getTriggerValue(subKey.getKey());
+                                items[i] = subValue != null ? subValue.toString() : "";
+                            }
+                        }
+
+                        manipulateValue = String.format(manipulateValue, (Object[]) items);
+                    }
+                } else {
+                    manipulateValue = manipulate(manipulation, manipulateValue);
+                }
+            }
+
+            return manipulateValue;
+        }
+
+        private String manipulate(String manipulation, String value) {
+            String lowerCase = manipulation.toLowerCase();
+
+            if (lowerCase.contains("join")) {
+                throw new UnsupportedOperationException(manipulation);
+            } else if (lowerCase.contains("datetime")) {
+                String pattern = manipulation.substring(DATETIME_PATTERN_BEGIN_INDEX, manipulation.length() - 1);
+                return DateTimeFormat.forPattern(pattern).print(new DateTime(value));
+            } else if (lowerCase.contains("substring")) {
+                throw new UnsupportedOperationException(manipulation);
+            } else if (lowerCase.contains("split")) {
+                String[] splitValue = manipulation.substring(SPLIT_PATTERN_BEGIN_INDEX, manipulation.length() - 1)
+                        .split(",");
+                return value.split(splitValue[0])[Integer.parseInt(splitValue[1])];
+            } else if (lowerCase.contains("parsedate")) {
+                throw new UnsupportedOperationException(manipulation);
+            } else if (lowerCase.contains("plus") || lowerCase.contains("minus") || lowerCase.contains("ofmonth")
+                    || lowerCase.contains("quarter")) {
+                return plusDays(value, lowerCase);
+            } else {
+                return simpleManipulation(value, lowerCase.replace("()", ""));
+            }
+        }
+
+        private String plusDays(String value, String manipulation) {
+            if (manipulation.contains("month") || !manipulation.contains("plusdays")) {
+                throw new UnsupportedOperationException(manipulation);
+            }
+
+            String pattern = manipulation.substring(PLUS_DAYS_PATTERN_BEGIN_INDEX, manipulation.length() - 1);
+            return new DateTime(value).plusDays(Integer.parseInt(pattern)).toString();
+        }
+
+        private String simpleManipulation(String value, String manipulation) {
+            switch (manipulation) {
+                case "toupper":
+                    return value.toUpperCase();
+                case "capitalize":
+                    return WordUtils.capitalize(value);
+                default:
+                    throw new UnsupportedOperationException(manipulation);
+            }
+        }
+    }
+}
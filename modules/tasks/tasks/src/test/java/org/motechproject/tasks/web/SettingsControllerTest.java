@@ -6,6 +6,7 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.motechproject.config.SettingsFacade;
+import org.motechproject.tasks.service.impl.TasksPostExecutionHandler;
 import org.motechproject.tasks.web.domain.SettingsDto;
 import org.osgi.framework.BundleException;
 import org.powermock.modules.junit4.PowerMockRunner;
@@ -26,6 +27,9 @@ public class SettingsControllerTest {
     @Mock
     private SettingsFacade settingsFacade;
 
+    @Mock
+    private TasksPostExecutionHandler postExecutionHandler;
+
     @InjectMocks
     private SettingsController controller = new SettingsController();
 
@@ -52,6 +56,7 @@ public class SettingsControllerTest {
         controller.saveSettings(dto);
 
         verify(settingsFacade, times(1)).setProperty(anyString(), anyString());
+        verify(postExecutionHandler).reloadSettings();
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -0,0 +1,65 @@
+package org.motechproject.commons.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The <code>MBeanUtils</code> class contains methods for registering MOTECH beans in the platform MBean server.
+ * Failures are logged, since statistics and runtime controls exposed through JMX must never prevent a bundle
+ * from starting or stopping.
+ */
+public final class MBeanUtils {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MBeanUtils.class);
+
+    private MBeanUtils() {
+
+    }
+
+    /**
+     * Registers the given bean in the platform MBean server, replacing any bean registered under the same name,
+     * for example one left behind by a previous start of a bundle.
+     *
+     * @param mBean the bean to register
+     * @param objectName the object name under which the bean is registered
+     * @return true if the bean was registered, false otherwise
+     */
+    public static boolean registerMBean(Object mBean, String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mBean, name);
+            return true;
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register {} in the MBean server", objectName, e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes the bean registered under the given name from the platform MBean server, if there is one.
+     *
+     * @param objectName the object name under which the bean is registered
+     */
+    public static void unregisterMBean(String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Unable to unregister {} from the MBean server", objectName, e);
+        }
+    }
+}
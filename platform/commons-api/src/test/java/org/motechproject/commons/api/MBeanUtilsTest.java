@@ -0,0 +1,73 @@
+package org.motechproject.commons.api;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MBeanUtilsTest {
+    private static final String OBJECT_NAME = "org.motechproject.commons.api:type=MBeanUtilsTest";
+
+    @After
+    public void tearDown() {
+        MBeanUtils.unregisterMBean(OBJECT_NAME);
+    }
+
+    @Test
+    public void shouldRegisterAndUnregisterMBean() throws Exception {
+        assertTrue(MBeanUtils.registerMBean(new Sample(1), OBJECT_NAME));
+        assertTrue(isRegistered());
+
+        MBeanUtils.unregisterMBean(OBJECT_NAME);
+        assertFalse(isRegistered());
+    }
+
+    @Test
+    public void shouldReplaceRegisteredMBean() throws Exception {
+        assertTrue(MBeanUtils.registerMBean(new Sample(1), OBJECT_NAME));
+        assertTrue(MBeanUtils.registerMBean(new Sample(2), OBJECT_NAME));
+
+        Object value = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(OBJECT_NAME), "Value");
+        assertEquals(2, value);
+    }
+
+    @Test
+    public void shouldNotRegisterInvalidMBean() {
+        assertFalse(MBeanUtils.registerMBean(new Object(), OBJECT_NAME));
+        assertFalse(MBeanUtils.registerMBean(new Sample(1), "invalid name"));
+    }
+
+    @Test
+    public void shouldIgnoreMissingMBeanWhenUnregistering() throws Exception {
+        MBeanUtils.unregisterMBean(OBJECT_NAME);
+        MBeanUtils.unregisterMBean("invalid name");
+
+        assertFalse(isRegistered());
+    }
+
+    private boolean isRegistered() throws Exception {
+        return ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(OBJECT_NAME));
+    }
+
+    public interface SampleMBean {
+        int getValue();
+    }
+
+    public static class Sample implements SampleMBean {
+        private final int value;
+
+        public Sample(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int getValue() {
+            return value;
+        }
+    }
+}
@@ -22,6 +22,7 @@ public class MotechEvent implements Serializable {
     private boolean discarded;
     private boolean broadcast;
     private int redeliveryCount;
+    private long publishTime;
     private String subject;
     private String messageDestination;
     private String callbackName;
@@ -299,6 +300,25 @@ public class MotechEvent implements Serializable {
         redeliveryCount = value;
     }
 
+    /**
+     * Returns the time this event was last published by the event system. It is used for measuring the time
+     * events wait before being handled, and does not take part in comparing events.
+     *
+     * @return the time of publishing, in milliseconds since epoch, or 0 if the event has not been published
+     */
+    public long getPublishTime() {
+        return publishTime;
+    }
+
+    /**
+     * Sets the time this event was published.
+     *
+     * @param publishTime the time of publishing, in milliseconds since epoch
+     */
+    public void setPublishTime(long publishTime) {
+        this.publishTime = publishTime;
+    }
+
     /**
      * Increments the <code>redeliveryCount</code>.
      * It is invoked by the event system if the delivery fails. If it is null, sets the value to 0.
@@ -1,6 +1,7 @@
 package org.motechproject.event.config;
 
 import org.motechproject.event.messaging.MotechCachingConnectionFactory;
+import org.motechproject.event.messaging.impl.AdaptiveConsumerController;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
@@ -8,6 +9,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.jms.JMSException;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Handles changes in the ActiveMQ config.
@@ -16,22 +19,32 @@ public class ReloadBrokerConfigHandler implements EventHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(ReloadBrokerConfigHandler.class);
 
     private MotechCachingConnectionFactory connectionFactory;
+    private AdaptiveConsumerController adaptiveConsumerController;
 
     /**
      * @param connectionFactory the factory which inits connection to ActiveMQ.
+     * @param adaptiveConsumerController the controller adjusting the consumers of the event queue
      */
     @Autowired
-    public ReloadBrokerConfigHandler(MotechCachingConnectionFactory connectionFactory) {
+    public ReloadBrokerConfigHandler(MotechCachingConnectionFactory connectionFactory,
+                                     AdaptiveConsumerController adaptiveConsumerController) {
         this.connectionFactory = connectionFactory;
+        this.adaptiveConsumerController = adaptiveConsumerController;
     }
 
     /**
-     * Handles changes in the ActiveMQ broker.url variable.
+     * Handles changes in the ActiveMQ broker.url variable and in the settings of the event queue consumers.
      *
      * @param event the event that occurred.
      */
     @Override
     public void handleEvent(Event event) {
+        Map<String, Object> properties = new HashMap<>();
+        for (String name : event.getPropertyNames()) {
+            properties.put(name, event.getProperty(name));
+        }
+        adaptiveConsumerController.reload(properties);
+
         try {
             Object brokerURL = event.getProperty("jms.broker.url");
 
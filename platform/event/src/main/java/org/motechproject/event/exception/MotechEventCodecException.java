@@ -0,0 +1,25 @@
+package org.motechproject.event.exception;
+
+/**
+ * Signals that a {@link org.motechproject.event.MotechEvent} could not be encoded to or decoded from
+ * its binary representation.
+ */
+public class MotechEventCodecException extends RuntimeException {
+
+    private static final long serialVersionUID = 3402127125453513417L;
+
+    /**
+     * @param message the detail message
+     */
+    public MotechEventCodecException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param message the detail message
+     * @param cause the cause of the failure
+     */
+    public MotechEventCodecException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -36,4 +36,14 @@ public @interface MotechListener {
      * @return the value of a {@link MotechListenerType}
      */
     MotechListenerType type() default MotechListenerType.MOTECH_EVENT;
+
+    /**
+     * Sets whether events sent to this listener should be delivered within this MOTECH instance, through an
+     * in-memory work queue, instead of going through the ActiveMQ queue. Such events are not persisted, so they are
+     * lost if the instance goes down before they are handled. Failed events are redelivered the same way as events
+     * sent through ActiveMQ. By default events go through ActiveMQ.
+     *
+     * @return true if events should be delivered in process
+     */
+    boolean inProcess() default false;
 }
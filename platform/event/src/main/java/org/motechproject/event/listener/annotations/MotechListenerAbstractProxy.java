@@ -16,6 +16,7 @@ public abstract class MotechListenerAbstractProxy implements EventListener {
     private final String name;
     private final Object bean;
     private final Method method;
+    private boolean inProcess;
 
     /**
      *
@@ -63,4 +64,24 @@ public abstract class MotechListenerAbstractProxy implements EventListener {
     public Method getMethod() {
         return method;
     }
+
+    /**
+     * Returns whether events sent to this listener are delivered in process, bypassing ActiveMQ.
+     *
+     * @return true if events are delivered in process
+     * @see MotechListener#inProcess()
+     */
+    public boolean isInProcess() {
+        return inProcess;
+    }
+
+    /**
+     * Sets whether events sent to this listener are delivered in process, bypassing ActiveMQ.
+     *
+     * @param inProcess true if events should be delivered in process
+     * @see MotechListener#inProcess()
+     */
+    public void setInProcess(boolean inProcess) {
+        this.inProcess = inProcess;
+    }
 }
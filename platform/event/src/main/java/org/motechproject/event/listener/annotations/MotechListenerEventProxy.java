@@ -1,7 +1,6 @@
 package org.motechproject.event.listener.annotations;
 
 import org.motechproject.event.MotechEvent;
-import org.springframework.util.ReflectionUtils;
 
 import java.lang.reflect.Method;
 
@@ -13,16 +12,29 @@ import java.lang.reflect.Method;
  */
 public class MotechListenerEventProxy extends MotechListenerAbstractProxy {
 
+    private final MotechListenerInvoker invoker;
+
     /**
       * @see org.motechproject.event.listener.annotations.MotechListenerAbstractProxy#MotechListenerAbstractProxy(String, Object, java.lang.reflect.Method)
       */
     public MotechListenerEventProxy(String name, Object bean, Method method) {
+        this(name, bean, method, MotechListenerInvoker.forEvent(bean, method));
+    }
+
+    /**
+     * @param name the unique listener identifier/key
+     * @param bean the bean where handler exists
+     * @param method the method which will be invoked when the particular event will be fired
+     * @param invoker the invoker of the method, created with {@link MotechListenerInvoker#forEvent(Object, Method)}
+     */
+    public MotechListenerEventProxy(String name, Object bean, Method method, MotechListenerInvoker invoker) {
         super(name, bean, method);
+        this.invoker = invoker;
     }
 
     @Override
     public void callHandler(MotechEvent event) {
-        ReflectionUtils.invokeMethod(getMethod(), getBean(), event);
+        invoker.invoke(event);
     }
 
 }
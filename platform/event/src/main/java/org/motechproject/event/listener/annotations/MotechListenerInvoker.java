@@ -0,0 +1,148 @@
+package org.motechproject.event.listener.annotations;
+
+import org.motechproject.event.MotechEvent;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Invokes the handler method of a <code>MotechListener</code>. The way event data is bound to the method parameters
+ * is worked out once, when the invoker is created, and compiled into a single <code>MethodHandle</code> taking the
+ * event. Handling an event then needs neither reflection nor any allocation for the arguments.
+ */
+public final class MotechListenerInvoker {
+
+    private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, MotechEvent.class);
+    private static final MethodHandle EXTRACT_PARAMETER;
+
+    static {
+        try {
+            EXTRACT_PARAMETER = MethodHandles.lookup().findStatic(MotechListenerInvoker.class, "extractParameter",
+                    MethodType.methodType(Object.class, MotechEvent.class, String.class, int.class, Class.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final MethodHandle handler;
+    private final String bindingError;
+
+    private MotechListenerInvoker(MethodHandle handler, String bindingError) {
+        this.handler = handler;
+        this.bindingError = bindingError;
+    }
+
+    /**
+     * Creates an invoker passing the event itself to the handler method.
+     *
+     * @param bean the bean where handler exists
+     * @param method the handler method, taking the <code>MotechEvent</code> as its only parameter
+     * @return the invoker of the method
+     */
+    public static MotechListenerInvoker forEvent(Object bean, Method method) {
+        Class<?>[] paramTypes = method.getParameterTypes();
+        if (paramTypes.length != 1 || !paramTypes[0].isAssignableFrom(MotechEvent.class)) {
+            return new MotechListenerInvoker(null, "Handler method must take MotechEvent as its only parameter: "
+                    + method);
+        }
+
+        try {
+            MethodHandle handle = unreflect(bean, method);
+            return new MotechListenerInvoker(handle.asType(HANDLER_TYPE), null);
+        } catch (IllegalAccessException | WrongMethodTypeException | ClassCastException e) {
+            return new MotechListenerInvoker(null, e.getMessage());
+        }
+    }
+
+    /**
+     * Creates an invoker passing the event parameters named by the {@link MotechParam} annotations of the handler
+     * method parameters. If the method cannot be bound this way, the returned invoker fails on every event.
+     *
+     * @param bean the bean where handler exists
+     * @param method the handler method, with all parameters annotated with {@link MotechParam}
+     * @return the invoker of the method
+     */
+    public static MotechListenerInvoker forNamedParameters(Object bean, Method method) {
+        Class<?>[] paramTypes = method.getParameterTypes();
+        Annotation[][] paramAnnotations = method.getParameterAnnotations();
+        MethodHandle[] extractors = new MethodHandle[paramTypes.length];
+
+        for (int i = 0; i < paramTypes.length; i++) {
+            MotechParam annotation = findMotechParam(paramAnnotations[i]);
+            if (annotation == null) {
+                return new MotechListenerInvoker(null, "MotechParam(name) annotation is required for each parameter.");
+            }
+
+            Class<?> type = paramTypes[i];
+            extractors[i] = MethodHandles.insertArguments(EXTRACT_PARAMETER, 1, annotation.value(), i, type)
+                    .asType(MethodType.methodType(type, MotechEvent.class));
+        }
+
+        try {
+            MethodHandle handle = MethodHandles.filterArguments(unreflect(bean, method), 0, extractors);
+            // every parameter is extracted from the same event
+            handle = MethodHandles.permuteArguments(handle,
+                    MethodType.methodType(handle.type().returnType(), MotechEvent.class), new int[paramTypes.length]);
+            return new MotechListenerInvoker(handle.asType(HANDLER_TYPE), null);
+        } catch (IllegalAccessException | IllegalArgumentException | ClassCastException e) {
+            return new MotechListenerInvoker(null, e.getMessage());
+        }
+    }
+
+    /**
+     * Invokes the handler method for the given event. Runtime exceptions thrown by the method are rethrown as they
+     * are, checked ones are wrapped in an <code>UndeclaredThrowableException</code>.
+     *
+     * @param event the event to be handled
+     * @throws IllegalArgumentException if the event does not carry the parameters expected by the method
+     */
+    public void invoke(MotechEvent event) {
+        if (bindingError != null) {
+            throw new IllegalArgumentException(bindingError);
+        }
+
+        try {
+            handler.invokeExact(event);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    private static MethodHandle unreflect(Object bean, Method method) throws IllegalAccessException {
+        try {
+            method.setAccessible(true);
+        } catch (SecurityException e) {
+            // public methods of public classes can be accessed anyway
+        }
+        return MethodHandles.lookup().unreflect(method).bindTo(bean);
+    }
+
+    private static MotechParam findMotechParam(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof MotechParam) {
+                return (MotechParam) annotation;
+            }
+        }
+        return null;
+    }
+
+    private static Object extractParameter(MotechEvent event, String name, int index, Class<?> type) {
+        Object arg = event.getParameters().get(name);
+        if (arg == null) {
+            throw new IllegalArgumentException(String.format(
+                    "parameter #%d with name:\"%s\" not found or null parameter passed.", index, name));
+        }
+        if (!type.isAssignableFrom(arg.getClass())) {
+            throw new IllegalArgumentException(String.format("Parameter #%d expected subtypes of %s passed %s.",
+                    index, type.getName(), arg.getClass().getName()));
+        }
+        return arg;
+    }
+}
@@ -1,13 +1,8 @@
 package org.motechproject.event.listener.annotations;
 
 import org.motechproject.event.MotechEvent;
-import org.springframework.util.Assert;
-import org.springframework.util.ReflectionUtils;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Represents the type of <code>MotechListener</code> proxy where handler is a method with
@@ -18,34 +13,29 @@ import java.util.List;
  */
 public class MotechListenerNamedParametersProxy extends MotechListenerAbstractProxy {
 
+    private final MotechListenerInvoker invoker;
+
     /**
       * @see org.motechproject.event.listener.annotations.MotechListenerAbstractProxy#MotechListenerAbstractProxy(String, Object, java.lang.reflect.Method)
       */
     public MotechListenerNamedParametersProxy(String name, Object bean, Method method) {
+        this(name, bean, method, MotechListenerInvoker.forNamedParameters(bean, method));
+    }
+
+    /**
+     * @param name the unique listener identifier/key
+     * @param bean the bean where handler exists
+     * @param method the method which will be invoked when the particular event will be fired
+     * @param invoker the invoker of the method, created with
+     *                {@link MotechListenerInvoker#forNamedParameters(Object, Method)}
+     */
+    public MotechListenerNamedParametersProxy(String name, Object bean, Method method, MotechListenerInvoker invoker) {
         super(name, bean, method);
+        this.invoker = invoker;
     }
 
     @Override
     public void callHandler(MotechEvent event) {
-        ReflectionUtils.invokeMethod(getMethod(), getBean(), getParameters(event).toArray());
-    }
-
-    private List<Object> getParameters(MotechEvent event) {
-        List<Object> args = new ArrayList<Object>();
-        Class<?>[] paramTypes = getMethod().getParameterTypes();
-        Annotation[][] paramAnnotations = getMethod().getParameterAnnotations();
-        Assert.isTrue(paramTypes.length == paramAnnotations.length);
-        for (int i = 0; i < paramTypes.length; i++) {
-            Class<?> t = paramTypes[i];
-            Assert.notEmpty(paramAnnotations[i], "MotechParam(name) annotation is required for each parameter.");
-            //TODO now assuming only MotechParam annotation is present...
-            Assert.isAssignable(MotechParam.class, paramAnnotations[i][0].getClass());
-            MotechParam annotation = (MotechParam) paramAnnotations[i][0];
-            Object arg = event.getParameters().get(annotation.value());
-            Assert.notNull(arg, String.format("parameter #%d with name:\"%s\" not found or null parameter passed.", i, annotation.value()));
-            Assert.isAssignable(t, arg.getClass(), String.format("Parameter #%d expected subtypes of %s passed %s.", i, t.getName(), arg.getClass().getName()));
-            args.add(arg);
-        }
-        return args;
+        invoker.invoke(event);
     }
 }
@@ -0,0 +1,247 @@
+package org.motechproject.event.listener.impl;
+
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventListener;
+import org.motechproject.event.messaging.MotechEventConfig;
+import org.motechproject.event.metrics.impl.EventListenerMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers broadcast events to event listeners. If {@link MotechEventConfig#getBroadcastThreads()} is zero, events
+ * are handled on the calling thread, and failures are retried right away. Otherwise every listener gets its own
+ * bounded queue, drained by a shared pool of threads. Listeners then receive events in parallel, but each of them
+ * receives its events in order. Failed events are retried with an exponential backoff, without holding up other
+ * listeners and without blocking any thread while waiting.
+ */
+public class BroadcastEventDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BroadcastEventDispatcher.class);
+
+    /**
+     * The number of events delivered to a listener before its queue yields the thread to other listeners.
+     */
+    private static final int DRAIN_BATCH_SIZE = 32;
+
+    /**
+     * Prevents the backoff from overflowing with large retry counts.
+     */
+    private static final int MAX_BACKOFF_SHIFT = 20;
+
+    private final MotechEventConfig motechEventConfig;
+    private final EventListenerMetrics eventListenerMetrics;
+    private final BroadcastHandler handler;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<String, ListenerQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Handles a single delivery of a broadcast event to a listener.
+     */
+    public interface BroadcastHandler {
+
+        /**
+         * @param listener the listener handling the event
+         * @param event the event to be handled
+         */
+        void handle(EventListener listener, MotechEvent event);
+    }
+
+    /**
+     * @param motechEventConfig the configuration of the event system
+     * @param eventListenerMetrics the metrics keeping track of the events in flight
+     * @param handler the handler invoked for every delivery
+     */
+    public BroadcastEventDispatcher(MotechEventConfig motechEventConfig, EventListenerMetrics eventListenerMetrics,
+                                    BroadcastHandler handler) {
+        this.motechEventConfig = motechEventConfig;
+        this.eventListenerMetrics = eventListenerMetrics;
+        this.handler = handler;
+
+        int threads = motechEventConfig.getBroadcastThreads();
+        this.executor = (threads > 0) ? new ScheduledThreadPoolExecutor(threads, new BroadcastThreadFactory()) : null;
+    }
+
+    /**
+     * Delivers the event to the listener, either right away or by queueing it for the listener.
+     *
+     * @param listener the listener the event should be delivered to
+     * @param event the event to deliver
+     */
+    public void dispatch(EventListener listener, MotechEvent event) {
+        if (executor == null) {
+            deliverNow(listener, event);
+            return;
+        }
+
+        String identifier = listener.getIdentifier();
+        ListenerQueue queue = queues.get(identifier);
+        if (queue == null) {
+            ListenerQueue newQueue = new ListenerQueue(motechEventConfig.getBroadcastQueueCapacity());
+            queue = queues.putIfAbsent(identifier, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+
+        if (queue.offer(new Delivery(listener, event))) {
+            eventListenerMetrics.broadcastQueued(identifier);
+            queue.schedule(0);
+        } else {
+            eventListenerMetrics.broadcastRejected(identifier);
+            LOGGER.error("Dropping topic event {} for listener {}. The queue of the listener is full.",
+                    event, identifier);
+        }
+    }
+
+    /**
+     * @return {@code true} if events are delivered to listeners in parallel
+     */
+    public boolean isParallel() {
+        return executor != null;
+    }
+
+    /**
+     * Stops the delivery threads. Events still waiting in the queues are dropped.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            List<Runnable> pending = executor.shutdownNow();
+            if (!pending.isEmpty()) {
+                LOGGER.warn("Stopped broadcast delivery with {} listener queues not drained", pending.size());
+            }
+        }
+    }
+
+    private void deliverNow(EventListener listener, MotechEvent event) {
+        int maxRetryCount = motechEventConfig.getMessageMaxRedeliveryCount();
+        Delivery delivery = new Delivery(listener, event);
+
+        while (!deliver(delivery, maxRetryCount)) {
+            LOGGER.debug("Retrying topic event {} for listener {}", event, listener.getIdentifier());
+        }
+    }
+
+    /**
+     * Delivers the event once.
+     *
+     * @return {@code false} if the delivery failed and should be retried
+     */
+    private boolean deliver(Delivery delivery, int maxRetryCount) {
+        try {
+            handler.handle(delivery.listener, delivery.event);
+            return true;
+        } catch (RuntimeException e) {
+            if (delivery.failures++ < maxRetryCount) {
+                LOGGER.warn(String.format("An exception occurred when handling topic event %s by listener %s.",
+                        delivery.event.toString(), delivery.listener.getIdentifier()), e);
+                return false;
+            } else {
+                LOGGER.error(String.format("Discarding topic event %s for listener %s. Max retry count reached.",
+                        delivery.event.toString(), delivery.listener.getIdentifier()), e);
+                return true;
+            }
+        }
+    }
+
+    private long backoff(int failures) {
+        int shift = Math.min(failures - 1, MAX_BACKOFF_SHIFT);
+        return motechEventConfig.getBroadcastRetryDelay() << shift;
+    }
+
+    private static final class Delivery {
+        private final EventListener listener;
+        private final MotechEvent event;
+        private int failures;
+
+        private Delivery(EventListener listener, MotechEvent event) {
+            this.listener = listener;
+            this.event = event;
+        }
+    }
+
+    /**
+     * The queue of events waiting for a single listener. At most one thread drains the queue at any time,
+     * which keeps the events in order. While the head of the queue waits for a retry, the queue is not
+     * drained at all.
+     */
+    private final class ListenerQueue implements Runnable {
+        private final BlockingQueue<Delivery> deliveries;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private ListenerQueue(int capacity) {
+            this.deliveries = new LinkedBlockingQueue<>(capacity);
+        }
+
+        private boolean offer(Delivery delivery) {
+            return deliveries.offer(delivery);
+        }
+
+        private void schedule(long delay) {
+            if (scheduled.compareAndSet(false, true)) {
+                submit(delay);
+            }
+        }
+
+        private void submit(long delay) {
+            try {
+                executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Broadcast delivery has been shut down", e);
+            }
+        }
+
+        @Override
+        public void run() {
+            int maxRetryCount = motechEventConfig.getMessageMaxRedeliveryCount();
+            int delivered = 0;
+
+            Delivery delivery = deliveries.peek();
+            while (delivery != null) {
+                if (!deliver(delivery, maxRetryCount)) {
+                    // keep the event at the head of the queue, so the following ones wait for it
+                    submit(backoff(delivery.failures));
+                    return;
+                }
+
+                deliveries.poll();
+                eventListenerMetrics.broadcastCompleted(delivery.listener.getIdentifier());
+
+                if (++delivered == DRAIN_BATCH_SIZE) {
+                    // let other listeners use the thread, the queue stays scheduled
+                    submit(0);
+                    return;
+                }
+                delivery = deliveries.peek();
+            }
+
+            scheduled.set(false);
+            // an event might have been queued after the queue was seen empty, but before it was unscheduled
+            if (!deliveries.isEmpty()) {
+                schedule(0);
+            }
+        }
+    }
+
+    private static final class BroadcastThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "motech-broadcast-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
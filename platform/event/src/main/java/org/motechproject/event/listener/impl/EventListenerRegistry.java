@@ -4,10 +4,15 @@ import org.motechproject.event.listener.EventListener;
 import org.motechproject.event.listener.EventListenerRegistryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
- import org.springframework.stereotype.Service;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Implementation of the {@link EventListenerRegistryService} interface.
@@ -17,7 +22,44 @@ import java.util.Set;
 public class EventListenerRegistry implements EventListenerRegistryService {
     private static final Logger LOGGER = LoggerFactory.getLogger(EventListenerRegistry.class);
 
-    private EventListenerTree listenerTree = new EventListenerTree();
+    /**
+     * Name of the store keeping listeners in a mutable {@link EventListenerTree}.
+     */
+    public static final String TREE_STORE = "tree";
+
+    /**
+     * Name of the store keeping listeners in an immutable {@link EventListenerSnapshotTree}.
+     */
+    public static final String SNAPSHOT_STORE = "snapshot";
+
+    /**
+     * The maximum number of subjects, for which listeners are indexed by their identifiers.
+     */
+    private static final int MAX_INDEXED_SUBJECTS = 10000;
+
+    private EventListenerStore listenerTree = new EventListenerTree();
+
+    private volatile ConcurrentMap<String, Map<String, EventListener>> identifierIndex = new ConcurrentHashMap<>();
+
+    /**
+     * Selects the store used for keeping the listeners. This must be done before any listeners are registered,
+     * since the listeners are not copied between the stores.
+     *
+     * @param listenerStore the name of the store, either {@value #TREE_STORE} or {@value #SNAPSHOT_STORE}
+     * @throws IllegalArgumentException if the name of the store is not recognized
+     */
+    @Value("${motech.event.listener.store:" + TREE_STORE + "}")
+    public void setListenerStore(String listenerStore) {
+        if (SNAPSHOT_STORE.equals(listenerStore)) {
+            listenerTree = new EventListenerSnapshotTree();
+        } else if (TREE_STORE.equals(listenerStore)) {
+            listenerTree = new EventListenerTree();
+        } else {
+            throw new IllegalArgumentException("Unknown event listener store: " + listenerStore);
+        }
+        invalidateIdentifierIndex();
+        LOGGER.debug("Using {} event listener store", listenerStore);
+    }
 
     public void registerListener(EventListener listener, List<String> subjects) {
 
@@ -49,12 +91,40 @@ public class EventListenerRegistry implements EventListenerRegistryService {
         }
 
         listenerTree.addListener(listener, subject);
+        invalidateIdentifierIndex();
     }
 
     public Set<EventListener> getListeners(String subject) {
         return listenerTree.getListeners(subject);
     }
 
+    /**
+     * Returns the listener with the given identifier, that is registered for events with the given subject.
+     * Listeners are indexed by their identifiers for each subject, so that events dispatched to a single
+     * listener don't require scanning all listeners for the subject.
+     *
+     * @param subject the subject of the event
+     * @param identifier the identifier of the listener
+     * @return the matching listener, or {@code null} if there is no such listener
+     */
+    public EventListener getListener(String subject, String identifier) {
+        // read the index before the listeners, so that an index built from stale listeners never replaces a fresh one
+        ConcurrentMap<String, Map<String, EventListener>> index = identifierIndex;
+
+        Map<String, EventListener> listenersById = index.get(subject);
+        if (listenersById == null) {
+            listenersById = new HashMap<>();
+            for (EventListener listener : listenerTree.getListeners(subject)) {
+                listenersById.put(listener.getIdentifier(), listener);
+            }
+            if (index.size() < MAX_INDEXED_SUBJECTS) {
+                index.putIfAbsent(subject, listenersById);
+            }
+        }
+
+        return listenersById.get(identifier);
+    }
+
     public boolean hasListener(String subject) {
         return listenerTree.hasListener(subject);
     }
@@ -66,5 +136,10 @@ public class EventListenerRegistry implements EventListenerRegistryService {
     public void clearListenersForBean(String beanName) {
         LOGGER.debug("Clearing listeners for bean: {}", beanName);
         listenerTree.removeAllListeners(beanName);
+        invalidateIdentifierIndex();
+    }
+
+    private void invalidateIdentifierIndex() {
+        identifierIndex = new ConcurrentHashMap<>();
     }
 }
@@ -0,0 +1,299 @@
+package org.motechproject.event.listener.impl;
+
+import org.motechproject.event.listener.EventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Implementation of the {@link EventListenerStore} interface, that keeps listeners in an immutable tree.
+ * Every modification builds a new copy of the modified path and publishes it together with an empty
+ * result cache, so lookups never take locks and never see a partially modified tree. Results of lookups
+ * are memoized per subject until the next modification. The matching rules are the same as the ones
+ * used by the {@link EventListenerTree}.
+ */
+public class EventListenerSnapshotTree implements EventListenerStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventListenerSnapshotTree.class);
+
+    /**
+     * The maximum number of subjects, for which lookup results are memoized.
+     */
+    private static final int MAX_CACHED_SUBJECTS = 10000;
+
+    private static final String WILDCARD = "*";
+
+    private final Object writeLock = new Object();
+
+    private volatile Snapshot snapshot = new Snapshot(Node.EMPTY);
+
+    @Override
+    public void addListener(EventListener listener, String subject) {
+        if (subject == null) {
+            throw new IllegalArgumentException("Cannot add listener for null subject");
+        }
+
+        int asteriskLocation = subject.indexOf('*');
+        if (asteriskLocation != -1 && (asteriskLocation + 1) != subject.length()) {
+            throw new IllegalArgumentException("Wildcard must be last element of subject: " + subject);
+        }
+
+        if (subject.contains("..")) {
+            throw new IllegalArgumentException("Subject can not contain an empty path segment: " + subject);
+        }
+
+        String[] path = splitSubject(subject);
+
+        if (path[path.length - 1].contains(WILDCARD) && path[path.length - 1].length() > 1) {
+            throw new IllegalArgumentException("Wildcard must not be mixed with characters");
+        }
+
+        synchronized (writeLock) {
+            Node root = snapshot.root;
+            Node newRoot;
+
+            if (WILDCARD.equals(subject)) {
+                newRoot = addToNode(root, listener, false, subject);
+            } else {
+                newRoot = addListener(root, listener, path, 0, subject);
+            }
+
+            if (newRoot != root) {
+                snapshot = new Snapshot(newRoot);
+            }
+        }
+    }
+
+    @Override
+    public Set<EventListener> getListeners(String subject) {
+        // read the snapshot once, so that the cache and the tree are always consistent with each other
+        Snapshot current = snapshot;
+
+        Set<EventListener> listeners = current.cache.get(subject);
+        if (listeners == null) {
+            listeners = Collections.unmodifiableSet(collectListeners(current.root, splitSubject(subject)));
+            if (current.cache.size() < MAX_CACHED_SUBJECTS) {
+                current.cache.putIfAbsent(subject, listeners);
+            }
+        }
+
+        return listeners;
+    }
+
+    @Override
+    public boolean hasListener(String subject) {
+        return !getListeners(subject).isEmpty();
+    }
+
+    @Override
+    public int getListenerCount(String subject) {
+        return getListeners(subject).size();
+    }
+
+    @Override
+    public void removeAllListeners(String beanName) {
+        synchronized (writeLock) {
+            Node root = snapshot.root;
+            Node newRoot = removeListeners(root, beanName);
+
+            if (newRoot == null) {
+                newRoot = Node.EMPTY;
+            }
+
+            if (newRoot != root) {
+                snapshot = new Snapshot(newRoot);
+            }
+        }
+    }
+
+    private Node addListener(Node node, EventListener listener, String[] path, int pathLevel, String subject) {
+        Node child = node.children.get(path[pathLevel]);
+        if (child == null) {
+            child = Node.EMPTY;
+        }
+
+        Node newChild;
+        if ((pathLevel + 1) == path.length) {
+            // I've walked to the end of the path. Assign this listener to this node
+            newChild = addToNode(child, listener, false, subject);
+        } else if ((pathLevel + 2) == path.length && WILDCARD.equals(path[pathLevel + 1])) {
+            // If the next step is the end of the path and it's a wildcard save listener here
+            newChild = addToNode(child, listener, true, subject);
+        } else {
+            newChild = addListener(child, listener, path, pathLevel + 1, subject);
+        }
+
+        return (newChild == child) ? node : node.withChild(path[pathLevel], newChild);
+    }
+
+    private Node addToNode(Node node, EventListener listener, boolean wildcard, String subject) {
+        Set<EventListener> current = wildcard ? node.wildcardListeners : node.listeners;
+
+        // Don't allow duplicate listener registrations
+        if (current.contains(listener)) {
+            LOGGER.info("Ignoring second request to register listener {} for subject {}",
+                    listener.getIdentifier(), subject);
+            return node;
+        }
+
+        Set<EventListener> updated = new HashSet<>(current);
+        updated.add(listener);
+
+        return wildcard ? node.withWildcardListeners(updated) : node.withListeners(updated);
+    }
+
+    private Node removeListeners(Node node, String beanName) {
+        Set<EventListener> listeners = withoutBean(node.listeners, beanName);
+        Set<EventListener> wildcardListeners = withoutBean(node.wildcardListeners, beanName);
+        Map<String, Node> children = removeListenersFromChildren(node.children, beanName);
+
+        if (listeners.isEmpty() && wildcardListeners.isEmpty() && children.isEmpty()) {
+            // prune empty nodes
+            return null;
+        } else if (listeners == node.listeners && wildcardListeners == node.wildcardListeners
+                && children == node.children) {
+            return node;
+        } else {
+            return new Node(children, listeners, wildcardListeners);
+        }
+    }
+
+    private Map<String, Node> removeListenersFromChildren(Map<String, Node> children, String beanName) {
+        Map<String, Node> result = children;
+
+        for (Map.Entry<String, Node> entry : children.entrySet()) {
+            Node child = entry.getValue();
+            Node newChild = removeListeners(child, beanName);
+
+            if (newChild != child) {
+                if (result == children) {
+                    result = new HashMap<>(children);
+                }
+
+                if (newChild == null) {
+                    result.remove(entry.getKey());
+                } else {
+                    result.put(entry.getKey(), newChild);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private Set<EventListener> withoutBean(Set<EventListener> listeners, String beanName) {
+        Set<EventListener> result = null;
+
+        for (EventListener listener : listeners) {
+            if (listener.getIdentifier().equals(beanName)) {
+                if (result == null) {
+                    result = new HashSet<>(listeners);
+                }
+                result.remove(listener);
+            }
+        }
+
+        return (result == null) ? listeners : result;
+    }
+
+    private Set<EventListener> collectListeners(Node root, String[] path) {
+        Set<EventListener> result = new HashSet<>(root.listeners);
+
+        Node node = root.children.get(path[0]);
+        int pathLevel = 0;
+
+        while (node != null) {
+            result.addAll(node.wildcardListeners);
+
+            if ((pathLevel + 1) == path.length) {
+                result.addAll(node.listeners);
+                break;
+            }
+
+            pathLevel++;
+            node = node.children.get(path[pathLevel]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Splits the subject into its path elements, without compiling a regular expression.
+     *
+     * @param subject the subject to split
+     * @return the path elements of the subject
+     */
+    static String[] splitSubject(String subject) {
+        List<String> path = new ArrayList<>();
+
+        int start = 0;
+        int dotIndex = subject.indexOf('.');
+        while (dotIndex != -1) {
+            path.add(subject.substring(start, dotIndex));
+            start = dotIndex + 1;
+            dotIndex = subject.indexOf('.', start);
+        }
+        path.add(subject.substring(start));
+
+        // keep String.split semantics, which drop trailing empty elements
+        int size = path.size();
+        while (size > 1 && path.get(size - 1).isEmpty()) {
+            size--;
+        }
+
+        return path.subList(0, size).toArray(new String[size]);
+    }
+
+    /**
+     * The tree root together with the lookup results computed for it.
+     */
+    private static final class Snapshot {
+        private final Node root;
+        private final ConcurrentMap<String, Set<EventListener>> cache = new ConcurrentHashMap<>();
+
+        private Snapshot(Node root) {
+            this.root = root;
+        }
+    }
+
+    /**
+     * An immutable node of the tree. Listeners registered with a wildcard are kept in the node preceding the
+     * wildcard.
+     */
+    private static final class Node {
+        private static final Node EMPTY = new Node(Collections.<String, Node>emptyMap(),
+                Collections.<EventListener>emptySet(), Collections.<EventListener>emptySet());
+
+        private final Map<String, Node> children;
+        private final Set<EventListener> listeners;
+        private final Set<EventListener> wildcardListeners;
+
+        private Node(Map<String, Node> children, Set<EventListener> listeners, Set<EventListener> wildcardListeners) {
+            this.children = children;
+            this.listeners = listeners;
+            this.wildcardListeners = wildcardListeners;
+        }
+
+        private Node withChild(String pathElement, Node child) {
+            Map<String, Node> newChildren = new HashMap<>(children);
+            newChildren.put(pathElement, child);
+            return new Node(newChildren, listeners, wildcardListeners);
+        }
+
+        private Node withListeners(Set<EventListener> newListeners) {
+            return new Node(children, newListeners, wildcardListeners);
+        }
+
+        private Node withWildcardListeners(Set<EventListener> newWildcardListeners) {
+            return new Node(children, listeners, newWildcardListeners);
+        }
+    }
+}
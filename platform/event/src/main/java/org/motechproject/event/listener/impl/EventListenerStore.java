@@ -0,0 +1,41 @@
+package org.motechproject.event.listener.impl;
+
+import org.motechproject.event.listener.EventListener;
+
+import java.util.Set;
+
+/**
+ * Storage used by the {@link EventListenerRegistry} for keeping track of listeners and the subjects they
+ * subscribe to. Subjects are dot separated paths, the last element of a subject passed during registration
+ * can be a wildcard.
+ *
+ * @see EventListenerTree
+ * @see EventListenerSnapshotTree
+ */
+public interface EventListenerStore {
+
+    /**
+     * @see org.motechproject.event.listener.EventListenerRegistryService#registerListener(org.motechproject.event.listener.EventListener, String)
+     */
+    void addListener(EventListener listener, String subject);
+
+    /**
+     * @see org.motechproject.event.listener.EventListenerRegistryService#getListeners(String)
+     */
+    Set<EventListener> getListeners(String subject);
+
+    /**
+     * @see org.motechproject.event.listener.EventListenerRegistryService#hasListener(String)
+     */
+    boolean hasListener(String subject);
+
+    /**
+     * @see org.motechproject.event.listener.EventListenerRegistryService#getListenerCount(String)
+     */
+    int getListenerCount(String subject);
+
+    /**
+     * @see org.motechproject.event.listener.EventListenerRegistryService#clearListenersForBean(String)
+     */
+    void removeAllListeners(String beanName);
+}
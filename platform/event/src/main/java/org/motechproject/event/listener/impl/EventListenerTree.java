@@ -13,10 +13,11 @@ import java.util.Set;
 import static org.springframework.util.CollectionUtils.isEmpty;
 
 /**
- * Implementation of the {@link org.motechproject.event.listener.impl.EventListenerRegistry} interface.
- * Listeners are stored as a tree.
+ * Implementation of the {@link EventListenerStore} interface used by the
+ * {@link org.motechproject.event.listener.impl.EventListenerRegistry}.
+ * Listeners are stored as a mutable tree.
  */
-public class EventListenerTree {
+public class EventListenerTree implements EventListenerStore {
     private static final Logger LOGGER = LoggerFactory.getLogger(EventListenerTree.class);
 
     private static final String SPLIT_REGEX = "\\.";
@@ -69,6 +70,7 @@ public class EventListenerTree {
     /**
      * @see org.motechproject.event.listener.EventListenerRegistryService#registerListener(org.motechproject.event.listener.EventListener, String)
      */
+    @Override
     public void addListener(EventListener listener, String subject) {
         if (subject == null) {
             throw new IllegalArgumentException("Cannot add listener for null subject");
@@ -129,6 +131,7 @@ public class EventListenerTree {
     /**
      * @see org.motechproject.event.listener.EventListenerRegistryService#getListeners(String)
      */
+    @Override
     public Set<EventListener> getListeners(String subject) {
         // Split the subject into it's path components
         String[] path = subject.split(SPLIT_REGEX);
@@ -171,6 +174,7 @@ public class EventListenerTree {
     /**
      * @see org.motechproject.event.listener.EventListenerRegistryService#hasListener(String)
      */
+    @Override
     public boolean hasListener(String subject) {
         // Split the subject into it's path components
         String[] path = subject.split(SPLIT_REGEX);
@@ -200,6 +204,7 @@ public class EventListenerTree {
     /**
      * @see org.motechproject.event.listener.EventListenerRegistryService#getListenerCount(String)
      */
+    @Override
     public int getListenerCount(String subject) {
         // Split the subject into it's path components
         String[] path = subject.split(SPLIT_REGEX);
@@ -320,6 +325,7 @@ public class EventListenerTree {
     /**
      * @see org.motechproject.event.listener.EventListenerRegistryService#clearListenersForBean(String)
      */
+    @Override
     public void removeAllListeners(String beanName) {
 
         for (Iterator<EventListenerTree> listenerIterator = children.iterator(); listenerIterator.hasNext();) {
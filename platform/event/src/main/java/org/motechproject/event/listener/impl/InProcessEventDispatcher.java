@@ -0,0 +1,188 @@
+package org.motechproject.event.listener.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventListener;
+import org.motechproject.event.listener.annotations.MotechListenerAbstractProxy;
+import org.motechproject.event.messaging.MotechEventConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers events to listeners within this MOTECH instance, bypassing ActiveMQ. This is done for listeners
+ * annotated with {@link org.motechproject.event.listener.annotations.MotechListener#inProcess()} and for subjects
+ * listed in {@link MotechEventConfig#getInProcessSubjects()}. Events are handled by a pool of threads, with at most
+ * {@link MotechEventConfig#getInProcessQueueCapacity()} events waiting. Callers are expected to send events
+ * through ActiveMQ when the queue is full.
+ */
+public class InProcessEventDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InProcessEventDispatcher.class);
+
+    private static final String WILDCARD = "*";
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final InProcessHandler handler;
+    private final int capacity;
+    private final List<String> exactSubjects = new ArrayList<>();
+    private final List<String> subjectPrefixes = new ArrayList<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Handles a single delivery of an event to a listener.
+     */
+    public interface InProcessHandler {
+
+        /**
+         * @param listener the listener handling the event
+         * @param event the event to be handled
+         */
+        void handle(EventListener listener, MotechEvent event);
+    }
+
+    /**
+     * @param motechEventConfig the configuration of the event system
+     * @param handler the handler invoked for every delivery
+     */
+    public InProcessEventDispatcher(MotechEventConfig motechEventConfig, InProcessHandler handler) {
+        this.handler = handler;
+        this.capacity = motechEventConfig.getInProcessQueueCapacity();
+
+        int threads = motechEventConfig.getInProcessThreads();
+        this.executor = (threads > 0) ? new ScheduledThreadPoolExecutor(threads, new InProcessThreadFactory()) : null;
+
+        String subjects = motechEventConfig.getInProcessSubjects();
+        if (StringUtils.isNotBlank(subjects)) {
+            for (String subject : subjects.split(",")) {
+                String trimmed = subject.trim();
+                if (trimmed.endsWith(WILDCARD)) {
+                    subjectPrefixes.add(StringUtils.removeEnd(trimmed, WILDCARD));
+                } else if (!trimmed.isEmpty()) {
+                    exactSubjects.add(trimmed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether events of the given subject, sent to the given listener, should be delivered in process.
+     *
+     * @param listener the listener the event is sent to
+     * @param subject the subject of the event
+     * @return true if the event should be delivered in process
+     */
+    public boolean isInProcess(EventListener listener, String subject) {
+        if (executor == null) {
+            return false;
+        }
+        if (listener instanceof MotechListenerAbstractProxy && ((MotechListenerAbstractProxy) listener).isInProcess()) {
+            return true;
+        }
+        if (exactSubjects.contains(subject)) {
+            return true;
+        }
+        for (String prefix : subjectPrefixes) {
+            if (subject.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues the event for delivery to the listener.
+     *
+     * @param listener the listener the event is sent to
+     * @param event the event to deliver
+     * @return false if the work queue is full, and the event has not been queued
+     */
+    public boolean dispatch(EventListener listener, MotechEvent event) {
+        return schedule(listener, event, 0);
+    }
+
+    /**
+     * Queues a failed event for another delivery to the listener, after the given delay.
+     *
+     * @param listener the listener the event is sent to
+     * @param event the event to deliver
+     * @param delayMillis the delay, in milliseconds
+     * @return false if the work queue is full, and the event has not been queued
+     */
+    public boolean redeliver(EventListener listener, MotechEvent event, long delayMillis) {
+        return schedule(listener, event, delayMillis);
+    }
+
+    /**
+     * @return the number of events waiting for delivery, or being handled
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * Stops the delivery threads. Events still waiting in the queue are dropped.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            List<Runnable> pending = executor.shutdownNow();
+            if (!pending.isEmpty()) {
+                LOGGER.warn("Stopped in process event delivery with {} events not handled", pending.size());
+            }
+        }
+    }
+
+    private boolean schedule(final EventListener listener, final MotechEvent event, long delayMillis) {
+        if (executor == null || !acquire()) {
+            return false;
+        }
+
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handler.handle(listener, event);
+                    } catch (RuntimeException e) {
+                        // the handler has already logged the failure and scheduled a redelivery, if possible
+                        LOGGER.debug("In process delivery of {} to {} failed", event, listener.getIdentifier(), e);
+                    } finally {
+                        queued.decrementAndGet();
+                    }
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            return false;
+        }
+    }
+
+    private boolean acquire() {
+        int current = queued.get();
+        while (current < capacity) {
+            if (queued.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            current = queued.get();
+        }
+        return false;
+    }
+
+    private static final class InProcessThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "motech-inprocess-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
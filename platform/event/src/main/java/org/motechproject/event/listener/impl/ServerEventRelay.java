@@ -8,11 +8,14 @@ import org.motechproject.event.listener.EventListener;
 import org.motechproject.event.listener.EventRelay;
 import org.motechproject.event.messaging.MotechEventConfig;
 import org.motechproject.event.messaging.OutboundEventGateway;
+import org.motechproject.event.messaging.impl.MotechEventBatchPublisher;
+import org.motechproject.event.messaging.impl.MotechEventTransformer;
+import org.motechproject.event.metrics.impl.EventListenerMetrics;
+import org.motechproject.event.metrics.impl.EventSubjectMetrics;
+import org.motechproject.event.osgi.EventCallbackServiceTracker;
 import org.motechproject.event.utils.MotechProxyUtils;
 import org.motechproject.server.osgi.event.OsgiEventProxy;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.InvalidSyntaxException;
-import org.osgi.framework.ServiceReference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
 import org.osgi.service.event.EventHandler;
@@ -21,8 +24,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -35,27 +41,73 @@ public class ServerEventRelay implements EventRelay, EventHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(ServerEventRelay.class);
 
     private static final String PROXY_IN_OSGI = "proxy-in-osgi";
+    private static final long MILLIS_PER_SEC = 1000L;
 
     private EventListenerRegistry eventListenerRegistry;
     private OutboundEventGateway outboundEventGateway;
     private MotechEventConfig motechEventConfig;
     private EventAdmin osgiEventAdmin;
-    private BundleContext bundleContext;
+    private EventCallbackServiceTracker callbackServiceTracker;
+    private EventListenerMetrics eventListenerMetrics;
+    private EventSubjectMetrics eventSubjectMetrics;
+    private MotechEventBatchPublisher eventBatchPublisher;
+    private BroadcastEventDispatcher broadcastEventDispatcher;
+    private InProcessEventDispatcher inProcessEventDispatcher;
+    private final MotechEventTransformer eventTransformer = new MotechEventTransformer();
 
     @Autowired
-    public ServerEventRelay(OutboundEventGateway outboundEventGateway, EventListenerRegistry eventListenerRegistry, MotechEventConfig motechEventConfig,
-                            EventAdmin osgiEventAdmin, BundleContext bundleContext) {
+    public ServerEventRelay(OutboundEventGateway outboundEventGateway, MotechEventBatchPublisher eventBatchPublisher, // NO CHECKSTYLE ParameterNumber
+                            EventListenerRegistry eventListenerRegistry, MotechEventConfig motechEventConfig,
+                            EventAdmin osgiEventAdmin, BundleContext bundleContext, EventListenerMetrics eventListenerMetrics,
+                            EventSubjectMetrics eventSubjectMetrics) {
         this.outboundEventGateway = outboundEventGateway;
+        this.eventBatchPublisher = eventBatchPublisher;
         this.eventListenerRegistry = eventListenerRegistry;
         this.motechEventConfig = motechEventConfig;
         this.osgiEventAdmin = osgiEventAdmin;
-        this.bundleContext = bundleContext;
+        this.callbackServiceTracker = new EventCallbackServiceTracker(bundleContext);
+        this.eventListenerMetrics = eventListenerMetrics;
+        this.eventSubjectMetrics = eventSubjectMetrics;
+        this.broadcastEventDispatcher = new BroadcastEventDispatcher(motechEventConfig, eventListenerMetrics,
+                new BroadcastEventDispatcher.BroadcastHandler() {
+                    @Override
+                    public void handle(EventListener listener, MotechEvent event) {
+                        handleTopicEvent(listener, event);
+                    }
+                });
+        this.inProcessEventDispatcher = new InProcessEventDispatcher(motechEventConfig,
+                new InProcessEventDispatcher.InProcessHandler() {
+                    @Override
+                    public void handle(EventListener listener, MotechEvent event) {
+                        handleInProcessEvent(listener, event);
+                    }
+                });
+    }
+
+    /**
+     * Starts tracking the callback services published in the OSGi service registry.
+     */
+    @PostConstruct
+    public void start() {
+        callbackServiceTracker.open();
+    }
+
+    /**
+     * Stops the threads delivering broadcast and in process events, and stops tracking callback services.
+     */
+    @PreDestroy
+    public void shutdown() {
+        broadcastEventDispatcher.shutdown();
+        inProcessEventDispatcher.shutdown();
+        callbackServiceTracker.close();
     }
 
     // @TODO either relayQueueEvent should be made private, or this method moved out to it's own class.
     @Override
     public void sendEventMessage(MotechEvent event) {
         verifyEventNotNull(event);
+        // counted once, no matter how many listeners the event is split for or how many times it is redelivered
+        eventSubjectMetrics.recordPublished(event.getSubject());
         Set<EventListener> listeners = getEventListeners(event);
 
         if (!listeners.isEmpty()) {
@@ -69,6 +121,7 @@ public class ServerEventRelay implements EventRelay, EventHandler {
     @Override
     public void broadcastEventMessage(MotechEvent event) {
         verifyEventNotNull(event);
+        eventSubjectMetrics.recordPublished(event.getSubject());
         Set<EventListener> listeners = getEventListeners(event);
 
         // broadcast the event if there are listeners for it, or if it should get proxied as an OSGi event,
@@ -88,10 +141,10 @@ public class ServerEventRelay implements EventRelay, EventHandler {
         verifyEventNotNull(event);
         String messageDestination = event.getMessageDestination();
         if (null != messageDestination) {
-            EventListener listener = getEventListener(event, messageDestination);
+            EventListener listener = getEventListener(event.getSubject(), messageDestination);
             if (null != listener) {
                 MotechEvent e = copyMotechEvent(event);
-                handleQueueEvent(listener, e);
+                handleQueueEvent(listener, e, false);
             } else {
                 LOGGER.warn("Event listener with identifier {} not present to handle the event: {}", messageDestination, event);
             }
@@ -102,14 +155,17 @@ public class ServerEventRelay implements EventRelay, EventHandler {
 
     /**
      * Relays the event that were published in the message topic to all listeners of that event.
+     * Depending on the configuration, listeners are handed the event one after another or in parallel.
      *
      * @param event the event being relayed
      */
     public void relayTopicEvent(MotechEvent event) {
         verifyEventNotNull(event);
         Set<EventListener> listeners = getEventListeners(event);
+        boolean parallel = broadcastEventDispatcher.isParallel();
         for (EventListener listener : listeners) {
-            handleTopicEvent(listener, event);
+            // listeners handling the event at the same time must not share its parameters
+            broadcastEventDispatcher.dispatch(listener, parallel ? copyBroadcastEvent(event) : event);
         }
 
         // broadcast events can be also be additionally sent as OSGi events upon being received
@@ -154,14 +210,14 @@ public class ServerEventRelay implements EventRelay, EventHandler {
         }
     }
 
-    private void handleQueueEvent(EventListener listener, MotechEvent event) {
+    private void handleQueueEvent(EventListener listener, MotechEvent event, boolean inProcess) {
         EventCallbackService callbackService = findCallbackService(event.getCallbackName());
         ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
 
         try {
             Object target = MotechProxyUtils.getTargetIfProxied(listener);
             Thread.currentThread().setContextClassLoader(target.getClass().getClassLoader());
-            listener.handle(event);
+            handle(listener, event);
             if (callbackService != null) {
                 callbackService.successCallback(event);
             }
@@ -174,12 +230,14 @@ public class ServerEventRelay implements EventRelay, EventHandler {
 
                 if (event.getMessageRedeliveryCount() == motechEventConfig.getMessageMaxRedeliveryCount()) {
                     event.setDiscarded(true);
+                    eventSubjectMetrics.recordDiscard(event.getSubject());
                     LOGGER.error("Discarding Motech event {}. Max retry count reached.", event);
                     throw e;
                 }
 
                 event.incrementMessageRedeliveryCount();
-                outboundEventGateway.sendEventMessage(event);
+                eventSubjectMetrics.recordRedelivery(event.getSubject());
+                redeliver(listener, event, inProcess);
             } else {
                 LOGGER.info("Event failure callback service {} has prevented redelivery of failed event with subject {}.",
                         callbackService.getName(), event.getSubject());
@@ -190,23 +248,39 @@ public class ServerEventRelay implements EventRelay, EventHandler {
         }
     }
 
+    private void handleInProcessEvent(EventListener listener, MotechEvent event) {
+        try {
+            handleQueueEvent(listener, event, true);
+        } catch (CallbackServiceNotFoundException e) {
+            // the same as with events received from the queue, the event is left for the broker to redeliver,
+            // so that it is not lost before the callback service is registered
+            LOGGER.error("Callback service of event with subject {} not found, sending it through the broker",
+                    event.getSubject(), e);
+            outboundEventGateway.sendEventMessage(event);
+        }
+    }
+
+    private void redeliver(EventListener listener, MotechEvent event, boolean inProcess) {
+        if (inProcess) {
+            // the same delay, as the one set for ActiveMQ by the MotechEventHeaderMapper
+            long delay = (long) (motechEventConfig.getMessageRedeliveryDelay() * MILLIS_PER_SEC *
+                    Math.pow(2, event.getMessageRedeliveryCount() - 1));
+            if (inProcessEventDispatcher.redeliver(listener, event, delay)) {
+                return;
+            }
+        }
+
+        outboundEventGateway.sendEventMessage(event);
+    }
+
     private EventCallbackService findCallbackService(String callbackName) {
         if (StringUtils.isEmpty(callbackName)) {
             return null;
         }
 
-        try {
-            Collection<ServiceReference<EventCallbackService>> references = bundleContext.getServiceReferences(EventCallbackService.class, null);
-
-            for (ServiceReference<EventCallbackService> ref : references) {
-                EventCallbackService callback = bundleContext.getService(ref);
-                if (callback.getName().equals(callbackName)) {
-                    return callback;
-                }
-            }
-        } catch (InvalidSyntaxException e) {
-            //Should never happen
-            LOGGER.error("Passed filter expression is incorrect.", e);
+        EventCallbackService callbackService = callbackServiceTracker.getCallbackService(callbackName);
+        if (callbackService != null) {
+            return callbackService;
         }
 
         // If a non-null callback name has been provided, yet it cannot be found in
@@ -215,61 +289,80 @@ public class ServerEventRelay implements EventRelay, EventHandler {
     }
 
     private void handleTopicEvent(EventListener listener, MotechEvent event) {
-        int retryCount = 0;
-        int maxRetryCount = motechEventConfig.getMessageMaxRedeliveryCount();
         ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
 
-        do {
-            try {
-                Object target = MotechProxyUtils.getTargetIfProxied(listener);
-                Thread.currentThread().setContextClassLoader(target.getClass().getClassLoader());
-                listener.handle(event);
-                break;
-            } catch (RuntimeException e) {
-                if (retryCount < maxRetryCount) {
-                    LOGGER.warn(String.format("An exception occurred when handling topic event %s by listener %s.",
-                            event.toString(), listener.getIdentifier()), e);
-                } else {
-                    LOGGER.error(String.format("Discarding topic event %s for listener %s. Max retry count reached.",
-                            event.toString(), listener.getIdentifier()), e);
-                    break;
-                }
-            } finally {
-                Thread.currentThread().setContextClassLoader(contextClassLoader);
-            }
-        } while (retryCount++ < maxRetryCount);
+        try {
+            Object target = MotechProxyUtils.getTargetIfProxied(listener);
+            Thread.currentThread().setContextClassLoader(target.getClass().getClassLoader());
+            handle(listener, event);
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private void handle(EventListener listener, MotechEvent event) {
+        long queueLatency = (event.getPublishTime() > 0) ? System.currentTimeMillis() - event.getPublishTime() : -1;
+        long start = System.nanoTime();
+        boolean failed = true;
+
+        try {
+            listener.handle(event);
+            failed = false;
+        } finally {
+            long duration = System.nanoTime() - start;
+            eventListenerMetrics.recordDispatch(listener.getIdentifier(), duration, failed);
+            eventSubjectMetrics.recordHandled(event.getSubject(), queueLatency, duration, failed);
+        }
     }
 
     /**
      * Split a given message into multiple messages with specific message destination
      * parameters. Message destinations will route the message to the specific message
-     * listener.
+     * listener. Messages for listeners handling events in process are queued locally, all the
+     * other messages are published together, in a single JMS transaction.
      *
      * @param event     Event message to be split
      * @param listeners A list of listeners for this given message that will be used as message destinations
      */
     private void splitEvent(MotechEvent event, Set<EventListener> listeners) {
-        MotechEvent enrichedEventMessage;
-        Map<String, Object> parameters;
+        // The split messages share a single copy of the parameters, which is not modified
+        // afterwards. Every message gets serialized separately when it is sent.
+        Map<String, Object> parameters = new HashMap<>(event.getParameters());
+        List<MotechEvent> enrichedEventMessages = new ArrayList<>(listeners.size());
 
         for (EventListener listener : listeners) {
-            parameters = new HashMap<>();
-            parameters.putAll(event.getParameters());
-            enrichedEventMessage = new MotechEvent(event.getSubject(), parameters, event.getCallbackName());
-            enrichedEventMessage.setMetadata(event.getMetadata());
-            enrichedEventMessage.setMessageDestination(listener.getIdentifier());
-            outboundEventGateway.sendEventMessage(enrichedEventMessage);
+            if (inProcessEventDispatcher.isInProcess(listener, event.getSubject())) {
+                // in process events are not serialized, so each listener needs its own parameters
+                // in process events do not go through the gateway, so they get their id and publish time here
+                MotechEvent localEvent = enrichEvent(event, new HashMap<>(parameters), listener);
+                eventTransformer.transform(localEvent);
+                if (inProcessEventDispatcher.dispatch(listener, localEvent)) {
+                    continue;
+                }
+                LOGGER.debug("In process work queue full, sending {} through the broker", localEvent);
+            }
+
+            enrichedEventMessages.add(enrichEvent(event, parameters, listener));
+        }
+
+        if (!enrichedEventMessages.isEmpty()) {
+            eventBatchPublisher.sendEventMessages(enrichedEventMessages);
         }
     }
 
-    private EventListener getEventListener(MotechEvent event, String identifier) {
-        Set<EventListener> listeners = getEventListeners(event);
-        for (EventListener listener : listeners) {
-            if (listener.getIdentifier().equals(identifier)) {
-                return listener;
-            }
+    private MotechEvent enrichEvent(MotechEvent event, Map<String, Object> parameters, EventListener listener) {
+        MotechEvent enrichedEventMessage = new MotechEvent(event.getSubject(), parameters, event.getCallbackName());
+        enrichedEventMessage.setMetadata(event.getMetadata());
+        enrichedEventMessage.setMessageDestination(listener.getIdentifier());
+        return enrichedEventMessage;
+    }
+
+    private EventListener getEventListener(String subject, String identifier) {
+        if (eventListenerRegistry == null) {
+            throw new IllegalStateException("eventListenerRegistry is null");
         }
-        return null;
+
+        return eventListenerRegistry.getListener(subject, identifier);
     }
 
     private Set<EventListener> getEventListeners(MotechEvent event) {
@@ -295,9 +388,14 @@ public class ServerEventRelay implements EventRelay, EventHandler {
     }
 
     private MotechEvent copyMotechEvent(MotechEvent event) {
-        MotechEvent copy = new MotechEvent(event.getSubject(), event.getParameters());
+        return copyMotechEvent(event, event.getParameters());
+    }
+
+    private MotechEvent copyMotechEvent(MotechEvent event, Map<String, Object> parameters) {
+        MotechEvent copy = new MotechEvent(event.getSubject(), parameters);
         copy.setId(event.getId());
         copy.setMessageRedeliveryCount(event.getMessageRedeliveryCount());
+        copy.setPublishTime(event.getPublishTime());
         copy.setInvalid(event.isInvalid());
         copy.setDiscarded(event.isDiscarded());
         copy.setBroadcast(event.isBroadcast());
@@ -307,6 +405,10 @@ public class ServerEventRelay implements EventRelay, EventHandler {
         return copy;
     }
 
+    private MotechEvent copyBroadcastEvent(MotechEvent event) {
+        return copyMotechEvent(event, new HashMap<>(event.getParameters()));
+    }
+
     private void verifyEventNotNull(MotechEvent event) {
         if (event == null) {
             throw new IllegalArgumentException("Invalid request to relay null event");
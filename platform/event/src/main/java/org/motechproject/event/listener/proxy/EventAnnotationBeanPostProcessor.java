@@ -4,6 +4,7 @@ import org.motechproject.event.listener.EventListenerRegistryService;
 import org.motechproject.event.listener.annotations.MotechListener;
 import org.motechproject.event.listener.annotations.MotechListenerAbstractProxy;
 import org.motechproject.event.listener.annotations.MotechListenerEventProxy;
+import org.motechproject.event.listener.annotations.MotechListenerInvoker;
 import org.motechproject.event.listener.annotations.MotechListenerNamedParametersProxy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -78,16 +79,23 @@ public class EventAnnotationBeanPostProcessor implements DestructionAwareBeanPos
                 if (annotation != null) {
                     final List<String> subjects = Arrays.asList(annotation.subjects());
                     MotechListenerAbstractProxy proxy = null;
+                    // the binding of event data to the method is compiled here, once, instead of on every event
                     switch (annotation.type()) {
                         case MOTECH_EVENT:
-                            proxy = new MotechListenerEventProxy(getFullyQualifiedBeanName(bean.getClass(), beanName), bean, method);
+                            proxy = new MotechListenerEventProxy(getFullyQualifiedBeanName(bean.getClass(), beanName),
+                                    bean, method, MotechListenerInvoker.forEvent(bean, method));
                             break;
                         case NAMED_PARAMETERS:
-                            proxy = new MotechListenerNamedParametersProxy(getFullyQualifiedBeanName(bean.getClass(), beanName), bean, method);
+                            proxy = new MotechListenerNamedParametersProxy(getFullyQualifiedBeanName(bean.getClass(), beanName),
+                                    bean, method, MotechListenerInvoker.forNamedParameters(bean, method));
                             break;
                         default:
                     }
 
+                    if (proxy != null) {
+                        proxy.setInProcess(annotation.inProcess());
+                    }
+
                     LOGGER.info(String.format("Registering listener type(%20s) bean: %s, method: %s, for subjects: "
                             + "%s", annotation.type().toString() + ":" + beanName, bean.getClass().getName(),
                             method.toGenericString(), subjects));
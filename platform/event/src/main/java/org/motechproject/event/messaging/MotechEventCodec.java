@@ -0,0 +1,29 @@
+package org.motechproject.event.messaging;
+
+import org.motechproject.event.MotechEvent;
+
+/**
+ * Converts <code>MotechEvent</code>s to and from the binary representation used in JMS messages.
+ * The redelivery count and the invalid flag of an event are carried in JMS message properties,
+ * so codecs are not required to include them in the encoded form.
+ */
+public interface MotechEventCodec {
+
+    /**
+     * Encodes the given event.
+     *
+     * @param event the event to encode
+     * @return the binary representation of the event
+     * @throws org.motechproject.event.exception.MotechEventCodecException if the event cannot be encoded
+     */
+    byte[] encode(MotechEvent event);
+
+    /**
+     * Decodes an event from its binary representation.
+     *
+     * @param data the binary representation of the event
+     * @return the decoded event
+     * @throws org.motechproject.event.exception.MotechEventCodecException if the data cannot be decoded
+     */
+    MotechEvent decode(byte[] data);
+}
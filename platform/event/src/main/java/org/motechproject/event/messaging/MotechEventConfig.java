@@ -15,6 +15,39 @@ public class MotechEventConfig {
     @Value("${motech.message.redelivery.delay:1}")
     private long messageRedeliveryDelay;
 
+    @Value("${motech.event.broadcast.threads:0}")
+    private int broadcastThreads;
+
+    @Value("${motech.event.broadcast.queue.capacity:1000}")
+    private int broadcastQueueCapacity;
+
+    @Value("${motech.event.broadcast.retry.delay:100}")
+    private long broadcastRetryDelay;
+
+    @Value("${motech.event.inprocess.subjects:}")
+    private String inProcessSubjects;
+
+    @Value("${motech.event.inprocess.threads:4}")
+    private int inProcessThreads;
+
+    @Value("${motech.event.inprocess.queue.capacity:10000}")
+    private int inProcessQueueCapacity;
+
+    @Value("${motech.event.consumers.adaptive.interval:0}")
+    private long adaptiveConsumersInterval;
+
+    @Value("${motech.event.consumers.drain.time:10000}")
+    private long consumersDrainTime;
+
+    @Value("${motech.event.prefetch.min:1}")
+    private int prefetchMin;
+
+    @Value("${motech.event.prefetch.max:1000}")
+    private int prefetchMax;
+
+    @Value("${motech.event.prefetch.window:1000}")
+    private long prefetchWindow;
+
     /**
      * Returns maximum number of times a message would be re-delivered
      * in case of any exception.
@@ -36,4 +69,113 @@ public class MotechEventConfig {
     public long getMessageRedeliveryDelay() {
         return messageRedeliveryDelay;
     }
+
+    /**
+     * Returns the number of threads delivering broadcast events to listeners in parallel. If zero, broadcast
+     * events are delivered to listeners one after another, on the thread receiving them from the topic.
+     *
+     * @return the number of broadcast delivery threads
+     */
+    public int getBroadcastThreads() {
+        return broadcastThreads;
+    }
+
+    /**
+     * Returns the maximum number of broadcast events waiting for delivery to a single listener, when broadcast
+     * events are delivered in parallel. Events arriving for a listener with a full queue are dropped.
+     *
+     * @return the capacity of the broadcast queue of each listener
+     */
+    public int getBroadcastQueueCapacity() {
+        return broadcastQueueCapacity;
+    }
+
+    /**
+     * Returns the delay (in milliseconds) before the first retry of a failed broadcast event, when broadcast
+     * events are delivered in parallel. The delay doubles with each successive retry.
+     *
+     * @return the broadcast retry delay
+     */
+    public long getBroadcastRetryDelay() {
+        return broadcastRetryDelay;
+    }
+
+    /**
+     * Returns the comma separated list of subjects, for which events are delivered within this MOTECH instance
+     * instead of going through ActiveMQ. An entry ending with <code>*</code> matches all subjects starting with
+     * the preceding text.
+     *
+     * @return the subjects of events delivered in process
+     */
+    public String getInProcessSubjects() {
+        return inProcessSubjects;
+    }
+
+    /**
+     * Returns the number of threads handling events delivered in process. If zero, all events go through ActiveMQ.
+     *
+     * @return the number of in process delivery threads
+     */
+    public int getInProcessThreads() {
+        return inProcessThreads;
+    }
+
+    /**
+     * Returns the maximum number of events waiting for in process delivery. Events exceeding it are sent
+     * through ActiveMQ instead.
+     *
+     * @return the capacity of the in process work queue
+     */
+    public int getInProcessQueueCapacity() {
+        return inProcessQueueCapacity;
+    }
+
+    /**
+     * Returns the interval (in milliseconds) between successive adjustments of the number of event queue consumers
+     * and their prefetch. If zero, the consumers are not adjusted.
+     *
+     * @return the interval of consumer adjustments
+     */
+    public long getAdaptiveConsumersInterval() {
+        return adaptiveConsumersInterval;
+    }
+
+    /**
+     * Returns the time (in milliseconds) in which the event queue consumers should be able to handle all
+     * the events waiting in the queue. More consumers are started, if the measured handling time suggests
+     * it would take longer.
+     *
+     * @return the target time to drain the event queue
+     */
+    public long getConsumersDrainTime() {
+        return consumersDrainTime;
+    }
+
+    /**
+     * Returns the lowest number of events prefetched by a single event queue consumer.
+     *
+     * @return the minimum prefetch
+     */
+    public int getPrefetchMin() {
+        return prefetchMin;
+    }
+
+    /**
+     * Returns the highest number of events prefetched by a single event queue consumer.
+     *
+     * @return the maximum prefetch
+     */
+    public int getPrefetchMax() {
+        return prefetchMax;
+    }
+
+    /**
+     * Returns the amount of work (in milliseconds of measured handling time) prefetched by a single event queue
+     * consumer. Consumers prefetch many fast events, but only a few slow ones.
+     *
+     * @return the prefetch window
+     */
+    public long getPrefetchWindow() {
+        return prefetchWindow;
+    }
 }
@@ -0,0 +1,16 @@
+package org.motechproject.event.messaging;
+
+/**
+ * Reads the number of messages waiting in an ActiveMQ queue. The event module adjusts the consumers of the event
+ * queue to its depth. By default, the depth is read from a broker embedded in this MOTECH instance; a reader
+ * published as an OSGi service, such as the one of the admin module connecting to the broker configured in the
+ * platform settings, is used instead when available.
+ */
+public interface QueueDepthReader {
+
+    /**
+     * @param queueName the physical name of the queue
+     * @return the number of messages waiting in the queue, or -1 if it could not be read
+     */
+    long getQueueDepth(String queueName);
+}
@@ -0,0 +1,342 @@
+package org.motechproject.event.messaging.impl;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.motechproject.commons.api.MBeanUtils;
+import org.motechproject.event.messaging.MotechEventConfig;
+import org.motechproject.event.messaging.QueueDepthReader;
+import org.motechproject.event.metrics.EventConsumerControllerMXBean;
+import org.motechproject.event.metrics.impl.EventListenerMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the number of consumers of the event queue, and the number of events they prefetch, to the depth
+ * of the queue and the time it takes listeners to handle events. Every
+ * {@link MotechEventConfig#getAdaptiveConsumersInterval()} milliseconds the controller:
+ * <ul>
+ *     <li>starts as many consumers as needed to handle all waiting events within
+ *     {@link MotechEventConfig#getConsumersDrainTime()}, or stops one consumer if the queue is empty,</li>
+ *     <li>sets the prefetch, so that a consumer prefetches {@link MotechEventConfig#getPrefetchWindow()}
+ *     milliseconds of work.</li>
+ * </ul>
+ * The number of consumers stays within the concurrency configured for the listener container. The prefetch applies
+ * to consumers created after it has been changed. If the depth of the queue cannot be read, the container keeps
+ * scaling by itself. Settings can be changed at runtime through {@link #reload(Map)}.
+ */
+public class AdaptiveConsumerController implements EventConsumerControllerMXBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConsumerController.class);
+
+    public static final String INTERVAL = "motech.event.consumers.adaptive.interval";
+    public static final String DRAIN_TIME = "motech.event.consumers.drain.time";
+    public static final String PREFETCH_MIN = "motech.event.prefetch.min";
+    public static final String PREFETCH_MAX = "motech.event.prefetch.max";
+    public static final String PREFETCH_WINDOW = "motech.event.prefetch.window";
+
+    private static final String PREFETCH_OPTION = "?consumer.prefetchSize=";
+    private static final int DEFAULT_PREFETCH = -1;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final DefaultMessageListenerContainer container;
+    private final ActiveMQQueue queue;
+    private final EventListenerMetrics eventListenerMetrics;
+    private final QueueDepthReader queueDepthReader;
+    private final int minConsumers;
+    private final int maxConsumers;
+
+    private volatile Settings settings;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> adjustments;
+
+    private volatile int consumers;
+    private volatile int prefetch = DEFAULT_PREFETCH;
+    private volatile long queueDepth = -1;
+    private volatile double handlerLatencyMillis = -1;
+    private volatile long adjustmentCount;
+    private volatile String lastDecision = "none";
+
+    private long lastDispatchCount;
+    private long lastDispatchNanos;
+
+    /**
+     * @param container the listener container consuming the event queue
+     * @param queue the event queue
+     * @param eventListenerMetrics the metrics used for measuring the handling time of events
+     * @param motechEventConfig the configuration of the event system
+     * @param queueDepthReader the reader of the depth of the event queue
+     */
+    public AdaptiveConsumerController(DefaultMessageListenerContainer container, ActiveMQQueue queue,
+                                      EventListenerMetrics eventListenerMetrics, MotechEventConfig motechEventConfig,
+                                      QueueDepthReader queueDepthReader) {
+        this.container = container;
+        this.queue = queue;
+        this.eventListenerMetrics = eventListenerMetrics;
+        this.queueDepthReader = queueDepthReader;
+        this.minConsumers = container.getConcurrentConsumers();
+        this.maxConsumers = container.getMaxConcurrentConsumers();
+        this.consumers = minConsumers;
+        this.settings = new Settings(motechEventConfig);
+    }
+
+    /**
+     * Registers the controller in the platform MBean server and starts adjusting the consumers, if enabled.
+     */
+    public synchronized void start() {
+        executor = new ScheduledThreadPoolExecutor(1, new ControllerThreadFactory());
+        MBeanUtils.registerMBean(this, OBJECT_NAME);
+        schedule();
+    }
+
+    /**
+     * Stops adjusting the consumers and removes the controller from the platform MBean server.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        adjustments = null;
+        MBeanUtils.unregisterMBean(OBJECT_NAME);
+    }
+
+    /**
+     * Applies the changed settings. Properties not related to the controller are ignored. If the controller gets
+     * disabled, the listener container gets back its initial concurrency and prefetch.
+     *
+     * @param properties the changed settings
+     */
+    public synchronized void reload(Map<String, Object> properties) {
+        Settings previous = settings;
+        settings = new Settings(previous, properties);
+
+        if (previous.interval != settings.interval) {
+            schedule();
+        }
+    }
+
+    /**
+     * Adjusts the consumers once. Called periodically when the controller is enabled.
+     */
+    public synchronized void adjust() {
+        Settings current = settings;
+
+        long depth = queueDepthReader.getQueueDepth(queue.getPhysicalName());
+        double latency = measureLatency();
+
+        int newConsumers = (depth < 0) ? consumers : targetConsumers(current, depth, latency);
+        int newPrefetch = (latency < 0) ? prefetch : targetPrefetch(current, latency);
+
+        lastDecision = String.format("queue depth %d, handler latency %.3fms: consumers %d -> %d, prefetch %d -> %d",
+                depth, latency, consumers, newConsumers, prefetch, newPrefetch);
+        queueDepth = depth;
+        handlerLatencyMillis = latency;
+
+        if (newConsumers != consumers || newPrefetch != prefetch) {
+            LOGGER.info("Adjusting event queue consumers, {}", lastDecision);
+            applyConsumers(newConsumers);
+            applyPrefetch(newPrefetch);
+            adjustmentCount++;
+        } else {
+            LOGGER.debug("Keeping event queue consumers, {}", lastDecision);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return settings.interval > 0;
+    }
+
+    @Override
+    public int getMinConsumers() {
+        return minConsumers;
+    }
+
+    @Override
+    public int getMaxConsumers() {
+        return maxConsumers;
+    }
+
+    @Override
+    public int getConsumers() {
+        return consumers;
+    }
+
+    @Override
+    public int getActiveConsumers() {
+        return container.getActiveConsumerCount();
+    }
+
+    @Override
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    @Override
+    public double getHandlerLatencyMillis() {
+        return handlerLatencyMillis;
+    }
+
+    @Override
+    public long getAdjustmentCount() {
+        return adjustmentCount;
+    }
+
+    @Override
+    public String getLastDecision() {
+        return lastDecision;
+    }
+
+    private void schedule() {
+        if (adjustments != null) {
+            adjustments.cancel(false);
+            adjustments = null;
+        }
+
+        long interval = settings.interval;
+        if (interval > 0) {
+            if (executor != null) {
+                adjustments = executor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            adjust();
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Unable to adjust the event queue consumers", e);
+                        }
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+            }
+        } else {
+            restore();
+        }
+    }
+
+    private void restore() {
+        if (consumers != minConsumers || container.getMaxConcurrentConsumers() != maxConsumers) {
+            container.setConcurrentConsumers(minConsumers);
+            container.setMaxConcurrentConsumers(maxConsumers);
+            consumers = minConsumers;
+        }
+        if (prefetch != DEFAULT_PREFETCH) {
+            container.setDestination(queue);
+            prefetch = DEFAULT_PREFETCH;
+        }
+        lastDecision = "disabled";
+    }
+
+    private double measureLatency() {
+        long dispatchCount = eventListenerMetrics.getTotalDispatchCount();
+        long dispatchNanos = eventListenerMetrics.getTotalDispatchNanos();
+        long handled = dispatchCount - lastDispatchCount;
+        long spent = dispatchNanos - lastDispatchNanos;
+
+        lastDispatchCount = dispatchCount;
+        lastDispatchNanos = dispatchNanos;
+
+        // with nothing handled in this interval, the last measurement is the best guess
+        return (handled > 0) ? spent / NANOS_PER_MILLI / handled : handlerLatencyMillis;
+    }
+
+    private int targetConsumers(Settings current, long depth, double latency) {
+        if (depth == 0) {
+            // scale down slowly, a burst of events may be followed by another one
+            return Math.max(minConsumers, consumers - 1);
+        }
+
+        int needed;
+        if (latency < 0) {
+            needed = consumers + 1;
+        } else {
+            needed = (int) Math.min(Integer.MAX_VALUE, Math.ceil(depth * latency / Math.max(1, current.drainTime)));
+        }
+        needed = Math.max(minConsumers, Math.min(maxConsumers, needed));
+
+        if (needed > consumers) {
+            return needed;
+        }
+        return (needed < consumers) ? consumers - 1 : consumers;
+    }
+
+    private int targetPrefetch(Settings current, double latency) {
+        double target = (latency > 0) ? current.prefetchWindow / latency : current.prefetchMax;
+        return (int) Math.max(current.prefetchMin, Math.min(current.prefetchMax, Math.round(target)));
+    }
+
+    private void applyConsumers(int newConsumers) {
+        if (newConsumers != consumers) {
+            // the container scales on its own between the two values, so both are set to keep it at the target
+            container.setConcurrentConsumers(newConsumers);
+            container.setMaxConcurrentConsumers(newConsumers);
+            consumers = newConsumers;
+        }
+    }
+
+    private void applyPrefetch(int newPrefetch) {
+        if (newPrefetch != prefetch) {
+            container.setDestination(new ActiveMQQueue(queue.getPhysicalName() + PREFETCH_OPTION + newPrefetch));
+            prefetch = newPrefetch;
+        }
+    }
+
+    /**
+     * The settings of the controller, replaced as a whole when reloaded.
+     */
+    private static final class Settings {
+        private final long interval;
+        private final long drainTime;
+        private final int prefetchMin;
+        private final int prefetchMax;
+        private final long prefetchWindow;
+
+        private Settings(MotechEventConfig config) {
+            this.interval = config.getAdaptiveConsumersInterval();
+            this.drainTime = config.getConsumersDrainTime();
+            this.prefetchMin = config.getPrefetchMin();
+            this.prefetchMax = config.getPrefetchMax();
+            this.prefetchWindow = config.getPrefetchWindow();
+        }
+
+        private Settings(Settings previous, Map<String, Object> properties) {
+            this.interval = getLong(properties, INTERVAL, previous.interval);
+            this.drainTime = getLong(properties, DRAIN_TIME, previous.drainTime);
+            this.prefetchMin = (int) getLong(properties, PREFETCH_MIN, previous.prefetchMin);
+            this.prefetchMax = (int) getLong(properties, PREFETCH_MAX, previous.prefetchMax);
+            this.prefetchWindow = getLong(properties, PREFETCH_WINDOW, previous.prefetchWindow);
+        }
+
+        private static long getLong(Map<String, Object> properties, String key, long defaultValue) {
+            Object value = properties.get(key);
+            if (value == null) {
+                return defaultValue;
+            }
+
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Ignoring invalid value {} of {}", value, key);
+                return defaultValue;
+            }
+        }
+    }
+
+    private static final class ControllerThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "motech-consumer-controller");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
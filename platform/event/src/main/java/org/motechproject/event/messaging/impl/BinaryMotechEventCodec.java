@@ -0,0 +1,374 @@
+package org.motechproject.event.messaging.impl;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.joda.time.chrono.ISOChronology;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.exception.MotechEventCodecException;
+import org.motechproject.event.messaging.MotechEventCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A compact, versioned binary format for <code>MotechEvent</code>s. Every value is written with a one byte type tag
+ * followed by its content. Strings, numbers, booleans, dates, joda <code>DateTime</code>s and <code>LocalDate</code>s,
+ * UUIDs, as well as <code>ArrayList</code>s, <code>HashSet</code>s and <code>HashMap</code>s are written natively.
+ * Any other serializable value, including other collection types, falls back to Java serialization, so parameters
+ * are decoded with the same types they were sent with. The first byte of the encoded data is the version of the format.
+ */
+public class BinaryMotechEventCodec implements MotechEventCodec {
+
+    /**
+     * The version of the format written by this codec.
+     */
+    public static final byte VERSION = 1;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte SHORT = 6;
+    private static final byte BYTE = 7;
+    private static final byte BOOLEAN = 8;
+    private static final byte CHARACTER = 9;
+    private static final byte BIG_DECIMAL = 10;
+    private static final byte BIG_INTEGER = 11;
+    private static final byte DATE = 12;
+    private static final byte DATE_TIME = 13;
+    private static final byte LOCAL_DATE = 14;
+    private static final byte UUID_VALUE = 15;
+    private static final byte LIST = 16;
+    private static final byte SET = 17;
+    private static final byte MAP = 18;
+    private static final byte SERIALIZED = 19;
+
+    @Override
+    public byte[] encode(MotechEvent event) {
+        if (event.getSubject() == null) {
+            throw new MotechEventCodecException("Cannot encode an event without a subject: " + event);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeUuid(out, event.getId());
+            out.writeBoolean(event.isDiscarded());
+            out.writeBoolean(event.isBroadcast());
+            writeString(out, event.getSubject());
+            writeNullableString(out, event.getMessageDestination());
+            writeNullableString(out, event.getCallbackName());
+            writeMap(out, event.getMetadata());
+            writeMap(out, event.getParameters());
+        } catch (IOException e) {
+            throw new MotechEventCodecException("Unable to encode " + event, e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public MotechEvent decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new MotechEventCodecException("Unsupported event format version: " + version);
+            }
+
+            UUID id = readUuid(in);
+            boolean discarded = in.readBoolean();
+            boolean broadcast = in.readBoolean();
+            String subject = readString(in);
+            String messageDestination = readNullableString(in);
+            String callbackName = readNullableString(in);
+            Map<String, Object> metadata = (Map<String, Object>) (Map<?, ?>) readMap(in);
+            Map<String, Object> parameters = (Map<String, Object>) (Map<?, ?>) readMap(in);
+
+            MotechEvent event = new MotechEvent(subject, parameters, callbackName, metadata);
+            event.setId(id);
+            event.setDiscarded(discarded);
+            event.setBroadcast(broadcast);
+            event.setMessageDestination(messageDestination);
+
+            return event;
+        } catch (IOException | ClassNotFoundException e) {
+            throw new MotechEventCodecException("Unable to decode event", e);
+        }
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException { // NO CHECKSTYLE CyclomaticComplexity
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) value);
+        } else if (value.getClass() == BigDecimal.class) {
+            out.writeByte(BIG_DECIMAL);
+            writeString(out, value.toString());
+        } else if (value.getClass() == BigInteger.class) {
+            out.writeByte(BIG_INTEGER);
+            writeString(out, value.toString());
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (isIsoDateTime(value)) {
+            DateTime dateTime = (DateTime) value;
+            out.writeByte(DATE_TIME);
+            out.writeLong(dateTime.getMillis());
+            writeString(out, dateTime.getZone().getID());
+        } else if (value.getClass() == LocalDate.class) {
+            out.writeByte(LOCAL_DATE);
+            writeString(out, value.toString());
+        } else if (value instanceof UUID) {
+            out.writeByte(UUID_VALUE);
+            writeUuid(out, (UUID) value);
+        } else if (value.getClass() == ArrayList.class || value.getClass() == HashSet.class) {
+            out.writeByte(value instanceof List ? LIST : SET);
+            writeCollection(out, (Collection<?>) value);
+        } else if (value.getClass() == HashMap.class) {
+            out.writeByte(MAP);
+            writeMap(out, (Map<?, ?>) value);
+        } else if (value instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            writeSerialized(out, value);
+        } else {
+            throw new MotechEventCodecException("Cannot encode value of type " + value.getClass().getName());
+        }
+    }
+
+    private Object readValue(DataInputStream in) throws IOException, ClassNotFoundException { // NO CHECKSTYLE CyclomaticComplexity
+        byte type = in.readByte();
+
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case BOOLEAN:
+                return in.readBoolean();
+            case CHARACTER:
+                return in.readChar();
+            case BIG_DECIMAL:
+                return new BigDecimal(readString(in));
+            case BIG_INTEGER:
+                return new BigInteger(readString(in));
+            case DATE:
+                return new Date(in.readLong());
+            case DATE_TIME:
+                return readDateTime(in);
+            case LOCAL_DATE:
+                return LocalDate.parse(readString(in));
+            case UUID_VALUE:
+                return readUuid(in);
+            case LIST:
+                return readCollection(in, new ArrayList<>());
+            case SET:
+                return readCollection(in, new HashSet<>());
+            case MAP:
+                return readMap(in);
+            case SERIALIZED:
+                return readSerialized(in);
+            default:
+                throw new MotechEventCodecException("Unknown value type: " + type);
+        }
+    }
+
+    /**
+     * Only <code>DateTime</code>s in the ISO chronology can be restored from their millis and time zone,
+     * others are serialized.
+     */
+    private boolean isIsoDateTime(Object value) {
+        return value.getClass() == DateTime.class && ((DateTime) value).getChronology() instanceof ISOChronology;
+    }
+
+    private DateTime readDateTime(DataInputStream in) throws IOException {
+        long millis = in.readLong();
+        return new DateTime(millis, DateTimeZone.forID(readString(in)));
+    }
+
+    private void writeCollection(DataOutputStream out, Collection<?> collection) throws IOException {
+        out.writeInt(collection.size());
+        for (Object element : collection) {
+            writeValue(out, element);
+        }
+    }
+
+    private <T extends Collection<Object>> T readCollection(DataInputStream in, T collection)
+            throws IOException, ClassNotFoundException {
+        int size = readLength(in);
+        for (int i = 0; i < size; i++) {
+            collection.add(readValue(in));
+        }
+        return collection;
+    }
+
+    private void writeMap(DataOutputStream out, Map<?, ?> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private Map<Object, Object> readMap(DataInputStream in) throws IOException, ClassNotFoundException {
+        int size = readLength(in);
+        Map<Object, Object> map = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            Object key = readValue(in);
+            map.put(key, readValue(in));
+        }
+        return map;
+    }
+
+    private void writeSerialized(DataOutputStream out, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+            objectOut.writeObject(value);
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private Object readSerialized(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte[] data = new byte[readLength(in)];
+        in.readFully(data);
+        try (ObjectInputStream objectIn = new ClassLoaderAwareObjectInputStream(new ByteArrayInputStream(data))) {
+            return objectIn.readObject();
+        }
+    }
+
+    private void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeBoolean(uuid != null);
+        if (uuid != null) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private UUID readUuid(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+    }
+
+    private void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    private String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    /**
+     * Unlike {@link DataOutputStream#writeUTF(String)}, this is not limited to 64KB.
+     */
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Every element or byte takes at least one byte of the remaining data, so a larger length means the data
+     * is corrupted. Checking it up front avoids allocating huge arrays.
+     */
+    private int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Resolves classes of serialized values using the context class loader first, since in OSGi the classes of
+     * event parameters usually come from the bundle that sent or handles the event.
+     */
+    private static class ClassLoaderAwareObjectInputStream extends ObjectInputStream {
+
+        ClassLoaderAwareObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            if (contextClassLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, contextClassLoader);
+                } catch (ClassNotFoundException e) {
+                    // fall back to the class loader of the event bundle, which imports packages dynamically
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
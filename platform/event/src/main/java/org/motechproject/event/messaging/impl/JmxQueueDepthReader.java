@@ -0,0 +1,93 @@
+package org.motechproject.event.messaging.impl;
+
+import org.motechproject.event.messaging.QueueDepthReader;
+import org.osgi.framework.BundleContext;
+import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+/**
+ * Reads the number of messages waiting in an ActiveMQ queue. If a {@link QueueDepthReader} is published as an OSGi
+ * service, for example by the admin module, which connects to the broker configured in the platform settings, the
+ * depth is read through it. Otherwise it is read from the queue MBean in the platform MBean server, which works for
+ * a broker embedded in this MOTECH instance. Both the naming of ActiveMQ 5.8+ and of the earlier versions is
+ * supported.
+ */
+public class JmxQueueDepthReader implements QueueDepthReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmxQueueDepthReader.class);
+
+    private static final String[] QUEUE_NAME_PATTERNS = {
+        "org.apache.activemq:type=Broker,brokerName=*,destinationType=Queue,destinationName=%s",
+        "org.apache.activemq:BrokerName=*,Type=Queue,Destination=%s"
+    };
+
+    private static final String QUEUE_SIZE = "QueueSize";
+
+    private final ServiceTracker<QueueDepthReader, QueueDepthReader> readerTracker;
+    private ObjectName queueObjectName;
+    private String resolvedQueueName;
+
+    /**
+     * @param bundleContext the context used for tracking the readers published as OSGi services
+     */
+    public JmxQueueDepthReader(BundleContext bundleContext) {
+        this.readerTracker = new ServiceTracker<>(bundleContext, QueueDepthReader.class, null);
+    }
+
+    /**
+     * Starts tracking the readers published as OSGi services.
+     */
+    public void open() {
+        readerTracker.open();
+    }
+
+    /**
+     * Stops tracking the readers published as OSGi services.
+     */
+    public void close() {
+        readerTracker.close();
+    }
+
+    @Override
+    public long getQueueDepth(String queueName) {
+        QueueDepthReader publishedReader = readerTracker.getService();
+        return (publishedReader == null) ? getLocalQueueDepth(queueName) : publishedReader.getQueueDepth(queueName);
+    }
+
+    private synchronized long getLocalQueueDepth(String queueName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            if (queueObjectName == null || !queueName.equals(resolvedQueueName)) {
+                queueObjectName = findQueue(server, queueName);
+                resolvedQueueName = queueName;
+            }
+            if (queueObjectName == null) {
+                LOGGER.debug("No MBean found for queue {}", queueName);
+                return -1;
+            }
+
+            return ((Number) server.getAttribute(queueObjectName, QUEUE_SIZE)).longValue();
+        } catch (JMException | RuntimeException e) {
+            LOGGER.debug("Unable to read the depth of queue {}", queueName, e);
+            queueObjectName = null;
+            return -1;
+        }
+    }
+
+    private ObjectName findQueue(MBeanServer server, String queueName) throws JMException {
+        for (String pattern : QUEUE_NAME_PATTERNS) {
+            Set<ObjectName> names = server.queryNames(new ObjectName(String.format(pattern, queueName)), null);
+            if (!names.isEmpty()) {
+                return names.iterator().next();
+            }
+        }
+        return null;
+    }
+}
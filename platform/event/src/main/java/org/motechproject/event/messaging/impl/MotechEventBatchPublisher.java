@@ -0,0 +1,99 @@
+package org.motechproject.event.messaging.impl;
+
+import org.motechproject.event.MotechEvent;
+import org.springframework.jms.connection.ConnectionFactoryUtils;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.SessionCallback;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.List;
+
+/**
+ * Publishes multiple <code>MotechEvent</code>s to the event queue in a single transacted JMS session. All messages
+ * become visible to consumers at once, when the session is committed. This is used when an event is split between
+ * its listeners, instead of a round trip through the {@link org.motechproject.event.messaging.OutboundEventGateway}
+ * for every single listener. Messages are prepared the same way the gateway prepares them.
+ */
+public class MotechEventBatchPublisher {
+
+    private final ConnectionFactory connectionFactory;
+    private final Destination destination;
+    private final MotechEventTransformer eventTransformer;
+    private final MessageConverter eventMessageConverter;
+    private final MotechEventHeaderMapper eventHeaderMapper;
+    private final JmsTemplate jmsTemplate;
+
+    /**
+     * @param connectionFactory the factory of connections to the broker
+     * @param destination the destination to which events are sent
+     * @param eventTransformer the transformer applied to every event before it is sent
+     * @param eventMessageConverter the converter creating messages from events
+     * @param eventHeaderMapper the mapper setting headers of outgoing messages
+     */
+    public MotechEventBatchPublisher(ConnectionFactory connectionFactory, Destination destination,
+                                     MotechEventTransformer eventTransformer, MessageConverter eventMessageConverter,
+                                     MotechEventHeaderMapper eventHeaderMapper) {
+        this.connectionFactory = connectionFactory;
+        this.destination = destination;
+        this.eventTransformer = eventTransformer;
+        this.eventMessageConverter = eventMessageConverter;
+        this.eventHeaderMapper = eventHeaderMapper;
+
+        this.jmsTemplate = new JmsTemplate(connectionFactory);
+        this.jmsTemplate.setSessionTransacted(true);
+    }
+
+    /**
+     * Sends all the given events to the event queue and commits them together. If any of the events
+     * cannot be sent, none of them is delivered.
+     *
+     * @param events the events to be sent
+     * @throws org.springframework.jms.JmsException if the events could not be sent
+     */
+    public void sendEventMessages(final List<MotechEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        jmsTemplate.execute(new SessionCallback<Void>() {
+            @Override
+            public Void doInJms(Session session) throws JMSException {
+                send(session, events);
+                return null;
+            }
+        }, false);
+    }
+
+    private void send(Session session, List<MotechEvent> events) throws JMSException {
+        // if the session takes part in a transaction managed elsewhere, it will be committed there
+        boolean locallyTransacted = session.getTransacted() &&
+                !ConnectionFactoryUtils.isSessionTransactional(session, connectionFactory);
+
+        MessageProducer producer = session.createProducer(destination);
+        try {
+            for (MotechEvent event : events) {
+                Message message = eventMessageConverter.toMessage(eventTransformer.transform(event), session);
+                eventHeaderMapper.setRedeliveryDelay(message);
+                producer.send(message);
+            }
+
+            if (locallyTransacted) {
+                session.commit();
+            }
+        } catch (JMSException | RuntimeException e) {
+            if (locallyTransacted) {
+                JmsUtils.rollbackIfNecessary(session);
+            }
+            throw e;
+        } finally {
+            JmsUtils.closeMessageProducer(producer);
+        }
+    }
+}
@@ -1,9 +1,7 @@
 package org.motechproject.event.messaging.impl;
 
 import org.apache.activemq.ScheduledMessage;
-import org.apache.activemq.command.ActiveMQObjectMessage;
 import org.apache.log4j.Logger;
-import org.motechproject.event.MotechEvent;
 import org.motechproject.event.messaging.MotechEventConfig;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.integration.MessageHeaders;
@@ -33,17 +31,28 @@ public class MotechEventHeaderMapper extends DefaultJmsHeaderMapper {
     public void fromHeaders(MessageHeaders messageHeaders, Message message) {
         super.fromHeaders(messageHeaders, message);
         try {
-            MotechEvent motechEvent = (MotechEvent) ((ActiveMQObjectMessage) message).getObject();
-
-            if (motechEvent.isInvalid()) {
-                long redeliveryCount = motechEvent.getMessageRedeliveryCount();
-                Double delay = motechEventConfig.getMessageRedeliveryDelay() * MILLIS_PER_SEC *
-                        ((Math.pow(2, redeliveryCount - 1)));
-                LOGGER.debug("Redelivering " + motechEvent + " after " + delay + " millis.");
-                message.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, delay.longValue());
-            }
+            setRedeliveryDelay(message);
         } catch (JMSException e) {
             LOGGER.error("Failed to set header", e);
         }
     }
+
+    /**
+     * Sets <code>AMQ_SCHEDULED_DELAY</code> of the message, if the event it carries is being redelivered after
+     * a failure. The redelivery count and the invalid flag are read from the message properties set by the
+     * {@link MotechEventMessageConverter}, so the body of the message is never deserialized.
+     *
+     * @param message the message to be sent
+     * @throws JMSException if the header could not be set
+     */
+    public void setRedeliveryDelay(Message message) throws JMSException {
+        if (message.propertyExists(MotechEventMessageConverter.INVALID_PROPERTY) &&
+                message.getBooleanProperty(MotechEventMessageConverter.INVALID_PROPERTY)) {
+            long redeliveryCount = message.getIntProperty(MotechEventMessageConverter.REDELIVERY_COUNT_PROPERTY);
+            Double delay = motechEventConfig.getMessageRedeliveryDelay() * MILLIS_PER_SEC *
+                    ((Math.pow(2, redeliveryCount - 1)));
+            LOGGER.debug("Redelivering event for the " + redeliveryCount + " time after " + delay + " millis.");
+            message.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, delay.longValue());
+        }
+    }
 }
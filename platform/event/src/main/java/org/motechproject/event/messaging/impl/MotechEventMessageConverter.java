@@ -0,0 +1,133 @@
+package org.motechproject.event.messaging.impl;
+
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.messaging.MotechEventCodec;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+/**
+ * Converts <code>MotechEvent</code>s to and from JMS messages. Events are sent either as <code>ObjectMessage</code>s
+ * using Java serialization, or as <code>BytesMessage</code>s encoded with a {@link MotechEventCodec}. In both cases
+ * the redelivery count and the invalid flag of the event are also set as message properties, so they can be read
+ * without deserializing the body. Both kinds of messages are always accepted on the way in, which allows
+ * switching the codec while messages of the other kind are still waiting in the queue.
+ */
+public class MotechEventMessageConverter implements MessageConverter {
+
+    /**
+     * Name of the codec sending events as serialized <code>ObjectMessage</code>s.
+     */
+    public static final String SERIALIZABLE_CODEC = "serializable";
+
+    /**
+     * Name of the codec sending events as <code>BytesMessage</code>s, using the {@link BinaryMotechEventCodec}.
+     */
+    public static final String BINARY_CODEC = "binary";
+
+    /**
+     * The message property holding the redelivery count of the event.
+     */
+    public static final String REDELIVERY_COUNT_PROPERTY = "motech_redelivery_count";
+
+    /**
+     * The message property holding the invalid flag of the event.
+     */
+    public static final String INVALID_PROPERTY = "motech_invalid";
+
+    /**
+     * The message property holding the time the event was published.
+     */
+    public static final String PUBLISH_TIME_PROPERTY = "motech_publish_time";
+
+    private final SimpleMessageConverter simpleMessageConverter = new SimpleMessageConverter();
+    private final MotechEventCodec defaultCodec = new BinaryMotechEventCodec();
+
+    private MotechEventCodec codec;
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException {
+        if (!(object instanceof MotechEvent)) {
+            return simpleMessageConverter.toMessage(object, session);
+        }
+
+        MotechEvent event = (MotechEvent) object;
+        Message message;
+
+        if (codec == null) {
+            message = session.createObjectMessage(event);
+        } else {
+            BytesMessage bytesMessage = session.createBytesMessage();
+            bytesMessage.writeBytes(codec.encode(event));
+            message = bytesMessage;
+        }
+
+        message.setIntProperty(REDELIVERY_COUNT_PROPERTY, event.getMessageRedeliveryCount());
+        message.setBooleanProperty(INVALID_PROPERTY, event.isInvalid());
+        message.setLongProperty(PUBLISH_TIME_PROPERTY, event.getPublishTime());
+
+        return message;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException {
+        if (!(message instanceof BytesMessage)) {
+            return simpleMessageConverter.fromMessage(message);
+        }
+
+        BytesMessage bytesMessage = (BytesMessage) message;
+        if (bytesMessage.getBodyLength() > Integer.MAX_VALUE) {
+            throw new MessageConversionException("Message too large to contain an event: " + message.getJMSMessageID());
+        }
+
+        byte[] data = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(data);
+
+        MotechEvent event = (codec == null) ? defaultCodec.decode(data) : codec.decode(data);
+        if (message.propertyExists(REDELIVERY_COUNT_PROPERTY)) {
+            event.setMessageRedeliveryCount(message.getIntProperty(REDELIVERY_COUNT_PROPERTY));
+        }
+        if (message.propertyExists(INVALID_PROPERTY)) {
+            event.setInvalid(message.getBooleanProperty(INVALID_PROPERTY));
+        }
+        if (message.propertyExists(PUBLISH_TIME_PROPERTY)) {
+            event.setPublishTime(message.getLongProperty(PUBLISH_TIME_PROPERTY));
+        }
+
+        return event;
+    }
+
+    /**
+     * Selects one of the built-in codecs by its name.
+     *
+     * @param codecName either {@link #SERIALIZABLE_CODEC} or {@link #BINARY_CODEC}
+     * @throws IllegalArgumentException if the name does not match any of the built-in codecs
+     */
+    public void setCodecName(String codecName) {
+        if (SERIALIZABLE_CODEC.equals(codecName)) {
+            codec = null;
+        } else if (BINARY_CODEC.equals(codecName)) {
+            codec = defaultCodec;
+        } else {
+            throw new IllegalArgumentException("Unknown event codec: " + codecName);
+        }
+    }
+
+    /**
+     * Sets a custom codec, used both for sending and receiving events as <code>BytesMessage</code>s.
+     *
+     * @param codec the codec to use, or null to send events as serialized <code>ObjectMessage</code>s
+     */
+    public void setCodec(MotechEventCodec codec) {
+        this.codec = codec;
+    }
+
+    public MotechEventCodec getCodec() {
+        return codec;
+    }
+}
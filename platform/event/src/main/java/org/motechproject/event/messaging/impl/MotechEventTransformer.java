@@ -5,13 +5,15 @@ import org.motechproject.event.MotechEvent;
 import java.util.UUID;
 
 /**
- * Transforms <code>MotechEvent</code> by settings its UUID.
+ * Transforms <code>MotechEvent</code> by settings its UUID and the time it is published.
  */
 public class MotechEventTransformer {
 
     /**
      * Updates the motechEvent's {@code UUID} with a random value
-     * if it is null, otherwise it does not change it.
+     * if it is null, otherwise it does not change it. The publish time
+     * of the event is always set to the current time, so redelivered
+     * events are stamped again.
      *
      * @param motechEvent the motechEvent to be updated
      * @return the motechEvent after being updated
@@ -21,6 +23,7 @@ public class MotechEventTransformer {
         if (motechEvent.getId() == null) {
             motechEvent.setId(UUID.randomUUID());
         }
+        motechEvent.setPublishTime(System.currentTimeMillis());
         return motechEvent;
     }
 }
@@ -0,0 +1,43 @@
+package org.motechproject.event.metrics;
+
+/**
+ * JMX interface exposing statistics about lookups of {@link org.motechproject.event.listener.EventCallbackService}s
+ * done while handling events. It is registered in the platform MBean server under the {@link #OBJECT_NAME} name.
+ */
+public interface EventCallbackStatisticsMXBean {
+
+    /**
+     * The name under which the statistics are registered in the platform MBean server.
+     */
+    String OBJECT_NAME = "org.motechproject.event:type=EventCallbackStatistics";
+
+    /**
+     * @return the number of callback service names currently known
+     */
+    int getCallbackServiceCount();
+
+    /**
+     * @return the number of lookups of callback services
+     */
+    long getLookupCount();
+
+    /**
+     * @return the number of lookups which have found the callback service
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups which have not found the callback service
+     */
+    long getFailedLookupCount();
+
+    /**
+     * @return the ratio of lookups which have found the callback service, or 0 if there were no lookups
+     */
+    double getHitRate();
+
+    /**
+     * Clears the lookup counters.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,65 @@
+package org.motechproject.event.metrics;
+
+/**
+ * JMX interface exposing the decisions of the controller adjusting the number of event queue consumers and their
+ * prefetch. It is registered in the platform MBean server under the {@link #OBJECT_NAME} name.
+ */
+public interface EventConsumerControllerMXBean {
+
+    /**
+     * The name under which the controller is registered in the platform MBean server.
+     */
+    String OBJECT_NAME = "org.motechproject.event:type=EventConsumerController";
+
+    /**
+     * @return true if the consumers are being adjusted
+     */
+    boolean isEnabled();
+
+    /**
+     * @return the lowest number of consumers the controller may set
+     */
+    int getMinConsumers();
+
+    /**
+     * @return the highest number of consumers the controller may set
+     */
+    int getMaxConsumers();
+
+    /**
+     * @return the number of consumers set by the controller
+     */
+    int getConsumers();
+
+    /**
+     * @return the number of consumers currently receiving events
+     */
+    int getActiveConsumers();
+
+    /**
+     * @return the prefetch set by the controller for new consumers, or -1 if the default of the connection factory
+     * is used
+     */
+    int getPrefetch();
+
+    /**
+     * @return the last observed depth of the event queue, or -1 if it could not be read
+     */
+    long getQueueDepth();
+
+    /**
+     * @return the mean handling time of events measured during the last interval, in milliseconds, or -1 if
+     * no events have been handled yet
+     */
+    double getHandlerLatencyMillis();
+
+    /**
+     * @return the number of adjustments which have changed the number of consumers or their prefetch
+     */
+    long getAdjustmentCount();
+
+    /**
+     * @return the description of the last decision made by the controller
+     */
+    String getLastDecision();
+}
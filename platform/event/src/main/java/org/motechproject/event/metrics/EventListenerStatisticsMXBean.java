@@ -0,0 +1,27 @@
+package org.motechproject.event.metrics;
+
+import java.util.List;
+
+/**
+ * JMX interface exposing statistics about events dispatched to the event listeners registered in this
+ * MOTECH instance. It is registered in the platform MBean server under the {@link #OBJECT_NAME} name.
+ */
+public interface EventListenerStatisticsMXBean {
+
+    /**
+     * The name under which the statistics are registered in the platform MBean server.
+     */
+    String OBJECT_NAME = "org.motechproject.event:type=EventListenerStatistics";
+
+    /**
+     * Returns the statistics for all listeners that have been dispatched at least one event.
+     *
+     * @return the list of statistics, one for each listener
+     */
+    List<ListenerStatistics> getListenerStatistics();
+
+    /**
+     * Clears all collected statistics. The number of broadcast events in flight is not affected.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,28 @@
+package org.motechproject.event.metrics;
+
+import java.util.List;
+
+/**
+ * JMX interface exposing statistics about events published and handled in this MOTECH instance, broken down by
+ * subject. It is registered in the platform MBean server under the {@link #OBJECT_NAME} name, and published
+ * as an OSGi service.
+ */
+public interface EventSubjectStatisticsMXBean {
+
+    /**
+     * The name under which the statistics are registered in the platform MBean server.
+     */
+    String OBJECT_NAME = "org.motechproject.event:type=EventSubjectStatistics";
+
+    /**
+     * Returns the statistics for all subjects of events published or handled at least once.
+     *
+     * @return the list of statistics, one for each subject
+     */
+    List<SubjectStatistics> getSubjectStatistics();
+
+    /**
+     * Clears all collected statistics.
+     */
+    void resetStatistics();
+}
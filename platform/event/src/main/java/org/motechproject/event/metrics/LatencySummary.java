@@ -0,0 +1,59 @@
+package org.motechproject.event.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Summarizes a distribution of latencies. All values are expressed in microseconds.
+ */
+public class LatencySummary {
+
+    private final double mean;
+    private final long median;
+    private final long p95;
+    private final long p99;
+    private final long max;
+
+    @ConstructorProperties({"mean", "median", "p95", "p99", "max"})
+    public LatencySummary(double mean, long median, long p95, long p99, long max) {
+        this.mean = mean;
+        this.median = median;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    /**
+     * @return the mean latency
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return the median latency
+     */
+    public long getMedian() {
+        return median;
+    }
+
+    /**
+     * @return the latency below which 95% of the values fall
+     */
+    public long getP95() {
+        return p95;
+    }
+
+    /**
+     * @return the latency below which 99% of the values fall
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * @return the highest latency
+     */
+    public long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,108 @@
+package org.motechproject.event.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Represents statistics of events dispatched to a single event listener. All latencies are expressed
+ * in microseconds.
+ */
+public class ListenerStatistics {
+
+    private final String identifier;
+    private final long dispatchCount;
+    private final long failureCount;
+    private final double meanLatency;
+    private final long medianLatency;
+    private final long p95Latency;
+    private final long p99Latency;
+    private final long maxLatency;
+    private final long broadcastsInFlight;
+    private final long rejectedBroadcastCount;
+
+    @ConstructorProperties({"identifier", "dispatchCount", "failureCount", "meanLatency", "medianLatency",
+            "p95Latency", "p99Latency", "maxLatency", "broadcastsInFlight", "rejectedBroadcastCount"})
+    public ListenerStatistics(String identifier, long dispatchCount, long failureCount, double meanLatency, // NO CHECKSTYLE ParameterNumber
+                              long medianLatency, long p95Latency, long p99Latency, long maxLatency,
+                              long broadcastsInFlight, long rejectedBroadcastCount) {
+        this.identifier = identifier;
+        this.dispatchCount = dispatchCount;
+        this.failureCount = failureCount;
+        this.meanLatency = meanLatency;
+        this.medianLatency = medianLatency;
+        this.p95Latency = p95Latency;
+        this.p99Latency = p99Latency;
+        this.maxLatency = maxLatency;
+        this.broadcastsInFlight = broadcastsInFlight;
+        this.rejectedBroadcastCount = rejectedBroadcastCount;
+    }
+
+    /**
+     * @return the identifier of the listener
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return the number of events dispatched to the listener
+     */
+    public long getDispatchCount() {
+        return dispatchCount;
+    }
+
+    /**
+     * @return the number of events the listener failed to handle
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return the mean time it took the listener to handle an event
+     */
+    public double getMeanLatency() {
+        return meanLatency;
+    }
+
+    /**
+     * @return the median time it took the listener to handle an event
+     */
+    public long getMedianLatency() {
+        return medianLatency;
+    }
+
+    /**
+     * @return the time in which the listener handled 95% of the events
+     */
+    public long getP95Latency() {
+        return p95Latency;
+    }
+
+    /**
+     * @return the time in which the listener handled 99% of the events
+     */
+    public long getP99Latency() {
+        return p99Latency;
+    }
+
+    /**
+     * @return the longest time it took the listener to handle an event
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * @return the number of broadcast events queued for, or being handled by the listener
+     */
+    public long getBroadcastsInFlight() {
+        return broadcastsInFlight;
+    }
+
+    /**
+     * @return the number of broadcast events dropped, because the queue of the listener was full
+     */
+    public long getRejectedBroadcastCount() {
+        return rejectedBroadcastCount;
+    }
+}
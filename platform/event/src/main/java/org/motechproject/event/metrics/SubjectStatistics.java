@@ -0,0 +1,99 @@
+package org.motechproject.event.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Represents statistics of events of a single subject. An event handled by more than one listener is counted
+ * once for every listener.
+ */
+public class SubjectStatistics {
+
+    private final String subject;
+    private final long publishCount;
+    private final double publishRate;
+    private final long handledCount;
+    private final long failureCount;
+    private final long redeliveryCount;
+    private final long discardCount;
+    private final LatencySummary queueLatency;
+    private final LatencySummary handlerTime;
+
+    @ConstructorProperties({"subject", "publishCount", "publishRate", "handledCount", "failureCount",
+            "redeliveryCount", "discardCount", "queueLatency", "handlerTime"})
+    public SubjectStatistics(String subject, long publishCount, double publishRate, long handledCount, // NO CHECKSTYLE ParameterNumber
+                             long failureCount, long redeliveryCount, long discardCount, LatencySummary queueLatency,
+                             LatencySummary handlerTime) {
+        this.subject = subject;
+        this.publishCount = publishCount;
+        this.publishRate = publishRate;
+        this.handledCount = handledCount;
+        this.failureCount = failureCount;
+        this.redeliveryCount = redeliveryCount;
+        this.discardCount = discardCount;
+        this.queueLatency = queueLatency;
+        this.handlerTime = handlerTime;
+    }
+
+    /**
+     * @return the subject of the events
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * @return the number of events published by this MOTECH instance
+     */
+    public long getPublishCount() {
+        return publishCount;
+    }
+
+    /**
+     * @return the number of events published by this MOTECH instance per second, averaged over the last minute
+     */
+    public double getPublishRate() {
+        return publishRate;
+    }
+
+    /**
+     * @return the number of events handled by listeners in this MOTECH instance
+     */
+    public long getHandledCount() {
+        return handledCount;
+    }
+
+    /**
+     * @return the number of events listeners failed to handle
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return the number of failed events sent for another delivery
+     */
+    public long getRedeliveryCount() {
+        return redeliveryCount;
+    }
+
+    /**
+     * @return the number of failed events discarded after reaching the maximum redelivery count
+     */
+    public long getDiscardCount() {
+        return discardCount;
+    }
+
+    /**
+     * @return the time between publishing events and listeners starting to handle them
+     */
+    public LatencySummary getQueueLatency() {
+        return queueLatency;
+    }
+
+    /**
+     * @return the time it took listeners to handle events
+     */
+    public LatencySummary getHandlerTime() {
+        return handlerTime;
+    }
+}
@@ -0,0 +1,164 @@
+package org.motechproject.event.metrics.impl;
+
+import org.motechproject.commons.api.MBeanUtils;
+import org.motechproject.event.metrics.EventListenerStatisticsMXBean;
+import org.motechproject.event.metrics.ListenerStatistics;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects statistics about events dispatched to event listeners and exposes them through JMX.
+ * Recording is lock-free, so it can be done on the event handling path.
+ */
+@Component
+public class EventListenerMetrics implements EventListenerStatisticsMXBean {
+    private static final double MEDIAN = 50.0;
+    private static final double P95 = 95.0;
+    private static final double P99 = 99.0;
+
+    private final ConcurrentMap<String, ListenerMetric> metrics = new ConcurrentHashMap<>();
+
+    // running totals over all listeners, never reset, so that readers can compute rates from deltas
+    private final LongAdder totalDispatches = new LongAdder();
+    private final LongAdder totalDispatchNanos = new LongAdder();
+
+    /**
+     * Records a single dispatch of an event to a listener.
+     *
+     * @param identifier the identifier of the listener
+     * @param durationNanos the time it took the listener to handle the event, in nanoseconds
+     * @param failed {@code true} if the listener has thrown an exception
+     */
+    public void recordDispatch(String identifier, long durationNanos, boolean failed) {
+        ListenerMetric metric = getMetric(identifier);
+
+        metric.dispatches.increment();
+        if (failed) {
+            metric.failures.increment();
+        }
+        metric.latency.recordNanos(durationNanos);
+
+        totalDispatches.increment();
+        totalDispatchNanos.add(durationNanos);
+    }
+
+    /**
+     * Returns the number of dispatches to all listeners since this instance was created. Unlike the per-listener
+     * statistics, it is not affected by {@link #resetStatistics()}.
+     *
+     * @return the total number of dispatches
+     */
+    public long getTotalDispatchCount() {
+        return totalDispatches.sum();
+    }
+
+    /**
+     * Returns the time spent by all listeners handling events since this instance was created. Unlike the
+     * per-listener statistics, it is not affected by {@link #resetStatistics()}.
+     *
+     * @return the total handling time, in nanoseconds
+     */
+    public long getTotalDispatchNanos() {
+        return totalDispatchNanos.sum();
+    }
+
+    /**
+     * Records a broadcast event being queued for the listener.
+     *
+     * @param identifier the identifier of the listener
+     */
+    public void broadcastQueued(String identifier) {
+        getMetric(identifier).broadcastsInFlight.increment();
+    }
+
+    /**
+     * Records a broadcast event queued for the listener being handled, or discarded after failing.
+     *
+     * @param identifier the identifier of the listener
+     */
+    public void broadcastCompleted(String identifier) {
+        getMetric(identifier).broadcastsInFlight.decrement();
+    }
+
+    /**
+     * Records a broadcast event dropped, because the queue of the listener was full.
+     *
+     * @param identifier the identifier of the listener
+     */
+    public void broadcastRejected(String identifier) {
+        getMetric(identifier).rejectedBroadcasts.increment();
+    }
+
+    @Override
+    public List<ListenerStatistics> getListenerStatistics() {
+        List<ListenerStatistics> statistics = new ArrayList<>();
+
+        for (Map.Entry<String, ListenerMetric> entry : metrics.entrySet()) {
+            ListenerMetric metric = entry.getValue();
+            LatencyHistogram latency = metric.latency;
+
+            statistics.add(new ListenerStatistics(entry.getKey(), metric.dispatches.sum(), metric.failures.sum(),
+                    latency.getMean(), latency.getValueAtPercentile(MEDIAN), latency.getValueAtPercentile(P95),
+                    latency.getValueAtPercentile(P99), latency.getMax(), metric.broadcastsInFlight.sum(),
+                    metric.rejectedBroadcasts.sum()));
+        }
+
+        return statistics;
+    }
+
+    @Override
+    public void resetStatistics() {
+        // the number of broadcasts in flight is a gauge, not a statistic, so it is kept
+        for (ListenerMetric metric : metrics.values()) {
+            metric.dispatches.reset();
+            metric.failures.reset();
+            metric.rejectedBroadcasts.reset();
+            metric.latency.reset();
+        }
+    }
+
+    /**
+     * Registers this bean in the platform MBean server, replacing any instance left behind by
+     * a previous start of the event bundle.
+     */
+    @PostConstruct
+    public void registerMBean() {
+        MBeanUtils.registerMBean(this, OBJECT_NAME);
+    }
+
+    /**
+     * Removes this bean from the platform MBean server.
+     */
+    @PreDestroy
+    public void unregisterMBean() {
+        MBeanUtils.unregisterMBean(OBJECT_NAME);
+    }
+
+    private ListenerMetric getMetric(String identifier) {
+        ListenerMetric metric = metrics.get(identifier);
+        if (metric == null) {
+            ListenerMetric newMetric = new ListenerMetric();
+            metric = metrics.putIfAbsent(identifier, newMetric);
+            if (metric == null) {
+                metric = newMetric;
+            }
+        }
+        return metric;
+    }
+
+    private static final class ListenerMetric {
+        private final LongAdder dispatches = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder broadcastsInFlight = new LongAdder();
+        private final LongAdder rejectedBroadcasts = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
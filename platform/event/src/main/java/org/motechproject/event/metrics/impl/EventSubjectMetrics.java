@@ -0,0 +1,169 @@
+package org.motechproject.event.metrics.impl;
+
+import org.motechproject.commons.api.MBeanUtils;
+import org.motechproject.event.metrics.EventSubjectStatisticsMXBean;
+import org.motechproject.event.metrics.LatencySummary;
+import org.motechproject.event.metrics.SubjectStatistics;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects statistics about events published and handled in this MOTECH instance, broken down by subject, and
+ * exposes them through JMX. Recording is lock-free, so it can be done on the publishing and handling paths.
+ * In order to bound the memory used, subjects seen after {@link #MAX_SUBJECTS} others are recorded together,
+ * under the {@link #OTHER_SUBJECTS} subject.
+ */
+@Component
+public class EventSubjectMetrics implements EventSubjectStatisticsMXBean {
+    /**
+     * The maximum number of subjects recorded separately.
+     */
+    public static final int MAX_SUBJECTS = 1000;
+
+    /**
+     * The subject under which events of subjects exceeding {@link #MAX_SUBJECTS} are recorded.
+     */
+    public static final String OTHER_SUBJECTS = "*";
+
+    private static final long MICROS_PER_MILLI = 1000L;
+    private static final double MEDIAN = 50.0;
+    private static final double P95 = 95.0;
+    private static final double P99 = 99.0;
+
+    private final ConcurrentMap<String, SubjectMetric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Records an event published by this instance.
+     *
+     * @param subject the subject of the event
+     */
+    public void recordPublished(String subject) {
+        SubjectMetric metric = getMetric(subject);
+
+        metric.published.increment();
+        metric.publishRate.mark();
+    }
+
+    /**
+     * Records an event handled by a listener.
+     *
+     * @param subject the subject of the event
+     * @param queueLatencyMillis the time between publishing the event and the listener starting to handle it,
+     *                           in milliseconds, or a negative value if it is not known
+     * @param handlerNanos the time it took the listener to handle the event, in nanoseconds
+     * @param failed {@code true} if the listener has thrown an exception
+     */
+    public void recordHandled(String subject, long queueLatencyMillis, long handlerNanos, boolean failed) {
+        SubjectMetric metric = getMetric(subject);
+
+        metric.handled.increment();
+        if (failed) {
+            metric.failures.increment();
+        }
+        if (queueLatencyMillis >= 0) {
+            metric.queueLatency.record(queueLatencyMillis * MICROS_PER_MILLI);
+        }
+        metric.handlerTime.recordNanos(handlerNanos);
+    }
+
+    /**
+     * Records a failed event sent for another delivery.
+     *
+     * @param subject the subject of the event
+     */
+    public void recordRedelivery(String subject) {
+        getMetric(subject).redeliveries.increment();
+    }
+
+    /**
+     * Records a failed event discarded after reaching the maximum redelivery count.
+     *
+     * @param subject the subject of the event
+     */
+    public void recordDiscard(String subject) {
+        getMetric(subject).discards.increment();
+    }
+
+    @Override
+    public List<SubjectStatistics> getSubjectStatistics() {
+        List<SubjectStatistics> statistics = new ArrayList<>();
+
+        for (Map.Entry<String, SubjectMetric> entry : metrics.entrySet()) {
+            SubjectMetric metric = entry.getValue();
+
+            statistics.add(new SubjectStatistics(entry.getKey(), metric.published.sum(), metric.publishRate.getRate(),
+                    metric.handled.sum(), metric.failures.sum(), metric.redeliveries.sum(), metric.discards.sum(),
+                    summarize(metric.queueLatency), summarize(metric.handlerTime)));
+        }
+
+        return statistics;
+    }
+
+    @Override
+    public void resetStatistics() {
+        for (SubjectMetric metric : metrics.values()) {
+            metric.published.reset();
+            metric.publishRate.reset();
+            metric.handled.reset();
+            metric.failures.reset();
+            metric.redeliveries.reset();
+            metric.discards.reset();
+            metric.queueLatency.reset();
+            metric.handlerTime.reset();
+        }
+    }
+
+    /**
+     * Registers this bean in the platform MBean server, replacing any instance left behind by
+     * a previous start of the event bundle.
+     */
+    @PostConstruct
+    public void registerMBean() {
+        MBeanUtils.registerMBean(this, OBJECT_NAME);
+    }
+
+    /**
+     * Removes this bean from the platform MBean server.
+     */
+    @PreDestroy
+    public void unregisterMBean() {
+        MBeanUtils.unregisterMBean(OBJECT_NAME);
+    }
+
+    private LatencySummary summarize(LatencyHistogram histogram) {
+        return new LatencySummary(histogram.getMean(), histogram.getValueAtPercentile(MEDIAN),
+                histogram.getValueAtPercentile(P95), histogram.getValueAtPercentile(P99), histogram.getMax());
+    }
+
+    private SubjectMetric getMetric(String subject) {
+        SubjectMetric metric = metrics.get(subject);
+        if (metric == null) {
+            String key = (metrics.size() < MAX_SUBJECTS) ? subject : OTHER_SUBJECTS;
+            SubjectMetric newMetric = new SubjectMetric();
+            metric = metrics.putIfAbsent(key, newMetric);
+            if (metric == null) {
+                metric = newMetric;
+            }
+        }
+        return metric;
+    }
+
+    private static final class SubjectMetric {
+        private final LongAdder published = new LongAdder();
+        private final RateMeter publishRate = new RateMeter();
+        private final LongAdder handled = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder redeliveries = new LongAdder();
+        private final LongAdder discards = new LongAdder();
+        private final LatencyHistogram queueLatency = new LatencyHistogram();
+        private final LatencyHistogram handlerTime = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,152 @@
+package org.motechproject.event.metrics.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies with log-linear buckets, in the spirit of HdrHistogram. Every power of two
+ * range is divided into a fixed number of linear sub buckets, which keeps the relative error of reported
+ * percentiles below 12.5% while using a fixed, small amount of memory. Values are recorded in microseconds.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKET_COUNT = SUB_BUCKET_COUNT * 2;
+    private static final int LINEAR_MAGNITUDE = SUB_BUCKET_BITS + 1;
+
+    /**
+     * Values above 2^40 microseconds (around 12 days) are recorded in the last bucket.
+     */
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKET_COUNT = LINEAR_BUCKET_COUNT + (MAX_MAGNITUDE - LINEAR_MAGNITUDE + 1) * SUB_BUCKET_COUNT;
+
+    private static final long NANOS_PER_MICRO = 1000L;
+    private static final double PERCENT = 100.0;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the given duration.
+     *
+     * @param durationNanos the duration in nanoseconds
+     */
+    public void recordNanos(long durationNanos) {
+        record(durationNanos / NANOS_PER_MICRO);
+    }
+
+    /**
+     * Records the given value.
+     *
+     * @param micros the value in microseconds
+     */
+    public void record(long micros) {
+        long value = Math.max(0L, micros);
+
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the largest recorded value, in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of recorded values, in microseconds
+     */
+    public double getMean() {
+        long currentCount = count.sum();
+        return (currentCount == 0) ? 0.0 : (double) sum.sum() / currentCount;
+    }
+
+    /**
+     * Returns the value below which the given percentage of recorded values falls. The returned value is the
+     * upper bound of the bucket containing the percentile, capped by the largest recorded value.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, in microseconds
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long threshold = Math.max(1L, (long) Math.ceil(total * Math.min(percentile, PERCENT) / PERCENT));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= threshold) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0L);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0L);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+
+        return LINEAR_BUCKET_COUNT + (magnitude - LINEAR_MAGNITUDE) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKET_COUNT) {
+            return index;
+        }
+
+        int magnitude = (index - LINEAR_BUCKET_COUNT) / SUB_BUCKET_COUNT + LINEAR_MAGNITUDE;
+        int subBucket = (index - LINEAR_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        int shift = magnitude - SUB_BUCKET_BITS;
+
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+}
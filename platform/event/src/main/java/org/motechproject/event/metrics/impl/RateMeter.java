@@ -0,0 +1,64 @@
+package org.motechproject.event.metrics.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the rate of events as an exponentially weighted moving average over one minute, the same way the Unix
+ * load average is computed. The average is updated in five second ticks, lazily, by the threads marking or reading
+ * the meter, so no timer thread is needed.
+ */
+public class RateMeter {
+
+    private static final int TICK_SECONDS = 5;
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(TICK_SECONDS);
+    private static final double DECAY = Math.exp(-(double) TICK_SECONDS / TimeUnit.MINUTES.toSeconds(1));
+
+    private final LongAdder uncounted = new LongAdder();
+    private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+    private volatile double rate;
+    private volatile boolean initialized;
+
+    /**
+     * Records a single event.
+     */
+    public void mark() {
+        tickIfNecessary();
+        uncounted.increment();
+    }
+
+    /**
+     * @return the rate of events per second, averaged over the last minute
+     */
+    public double getRate() {
+        tickIfNecessary();
+        return rate;
+    }
+
+    /**
+     * Forgets all recorded events.
+     */
+    public void reset() {
+        uncounted.reset();
+        rate = 0.0;
+        initialized = false;
+    }
+
+    private void tickIfNecessary() {
+        long oldTick = lastTick.get();
+        long age = System.nanoTime() - oldTick;
+
+        if (age > TICK_NANOS) {
+            long ticks = age / TICK_NANOS;
+            // only the thread moving the tick forward updates the average
+            if (lastTick.compareAndSet(oldTick, oldTick + ticks * TICK_NANOS)) {
+                double instantRate = (double) uncounted.sumThenReset() / TICK_SECONDS;
+                double current = initialized ? rate + (1 - DECAY) * (instantRate - rate) : instantRate;
+                // every further tick without events decays the average
+                rate = current * Math.pow(DECAY, ticks - 1);
+                initialized = true;
+            }
+        }
+    }
+}
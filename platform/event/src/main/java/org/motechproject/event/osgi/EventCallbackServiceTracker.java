@@ -0,0 +1,149 @@
+package org.motechproject.event.osgi;
+
+import org.motechproject.commons.api.MBeanUtils;
+import org.motechproject.event.listener.EventCallbackService;
+import org.motechproject.event.metrics.EventCallbackStatisticsMXBean;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the {@link EventCallbackService}s published in the OSGi service registry and indexes them by their names.
+ * The index is updated as services come and go, so looking up a callback service while handling an event does not
+ * query the service registry. When a service is unregistered, another service of the same name takes its place.
+ * Lookups are counted and exposed through JMX, see {@link EventCallbackStatisticsMXBean}.
+ */
+public class EventCallbackServiceTracker extends ServiceTracker<EventCallbackService, EventCallbackService>
+        implements EventCallbackStatisticsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventCallbackServiceTracker.class);
+
+    private final ConcurrentMap<String, EventCallbackService> callbackServices = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder failedLookups = new LongAdder();
+
+    /**
+     * @param bundleContext the bundle's execution context within the Framework
+     */
+    public EventCallbackServiceTracker(BundleContext bundleContext) {
+        super(bundleContext, EventCallbackService.class, null);
+    }
+
+    /**
+     * Returns the callback service of the given name.
+     *
+     * @param callbackName the name of the callback service
+     * @return the callback service, or null if no service of this name is registered
+     */
+    public EventCallbackService getCallbackService(String callbackName) {
+        EventCallbackService callbackService = callbackServices.get(callbackName);
+
+        if (callbackService == null) {
+            failedLookups.increment();
+        } else {
+            hits.increment();
+        }
+        return callbackService;
+    }
+
+    /**
+     * {@inheritDoc}. Additionally, it registers the lookup statistics in the platform MBean server.
+     */
+    @Override
+    public void open() {
+        super.open();
+        MBeanUtils.registerMBean(this, OBJECT_NAME);
+    }
+
+    /**
+     * {@inheritDoc}. Additionally, it removes the lookup statistics from the platform MBean server.
+     */
+    @Override
+    public void close() {
+        MBeanUtils.unregisterMBean(OBJECT_NAME);
+        super.close();
+    }
+
+    /**
+     * {@inheritDoc}. Additionally, it adds the service to the index, unless another service of the same name
+     * is there already.
+     */
+    @Override
+    public EventCallbackService addingService(ServiceReference<EventCallbackService> reference) {
+        EventCallbackService callbackService = super.addingService(reference);
+
+        if (callbackService != null) {
+            String name = callbackService.getName();
+            EventCallbackService existing = callbackServices.putIfAbsent(name, callbackService);
+            if (existing != null && existing != callbackService) {
+                LOGGER.warn("More than one event callback service named {} is registered", name);
+            }
+            LOGGER.debug("Tracking event callback service {}", name);
+        }
+
+        return callbackService;
+    }
+
+    /**
+     * {@inheritDoc}. Additionally, it removes the service from the index, and puts another tracked service
+     * of the same name in its place, if there is one.
+     */
+    @Override
+    public void removedService(ServiceReference<EventCallbackService> reference, EventCallbackService service) {
+        String name = service.getName();
+
+        if (callbackServices.remove(name, service)) {
+            // the removed service is no longer returned by getTracked()
+            for (EventCallbackService tracked : getTracked().values()) {
+                if (name.equals(tracked.getName())) {
+                    callbackServices.putIfAbsent(name, tracked);
+                    break;
+                }
+            }
+        }
+        LOGGER.debug("Stopped tracking event callback service {}", name);
+
+        super.removedService(reference, service);
+    }
+
+    @Override
+    public int getCallbackServiceCount() {
+        return callbackServices.size();
+    }
+
+    @Override
+    public long getLookupCount() {
+        return hits.sum() + failedLookups.sum();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getFailedLookupCount() {
+        return failedLookups.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long lookupCount = hitCount + failedLookups.sum();
+        return (lookupCount == 0) ? 0 : (double) hitCount / lookupCount;
+    }
+
+    @Override
+    public void resetStatistics() {
+        hits.reset();
+        failedLookups.reset();
+    }
+}
@@ -0,0 +1,124 @@
+package org.motechproject.event.listener.annotations;
+
+import org.junit.Test;
+import org.motechproject.event.MotechEvent;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class MotechListenerInvokerTest {
+
+    private static final String SUBJECT = "org.motechproject.invoker";
+
+    private TestHandler handler = new TestHandler();
+
+    @Test
+    public void shouldPassEventToHandler() throws NoSuchMethodException {
+        MotechEvent event = new MotechEvent(SUBJECT);
+
+        invokerFor("handleEvent", MotechEvent.class).invoke(event);
+
+        assertSame(event, handler.event);
+    }
+
+    @Test
+    public void shouldPassNamedParametersToHandler() throws NoSuchMethodException {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("name", "John");
+        parameters.put("age", 42);
+
+        namedInvokerFor("handleParameters", String.class, Integer.class).invoke(new MotechEvent(SUBJECT, parameters));
+
+        assertEquals("John", handler.name);
+        assertEquals(Integer.valueOf(42), handler.age);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWhenParameterIsMissing() throws NoSuchMethodException {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("name", "John");
+
+        namedInvokerFor("handleParameters", String.class, Integer.class).invoke(new MotechEvent(SUBJECT, parameters));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWhenParameterHasWrongType() throws NoSuchMethodException {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("name", "John");
+        parameters.put("age", "forty two");
+
+        namedInvokerFor("handleParameters", String.class, Integer.class).invoke(new MotechEvent(SUBJECT, parameters));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWhenParameterIsNotAnnotated() throws NoSuchMethodException {
+        namedInvokerFor("handleNotAnnotated", String.class).invoke(new MotechEvent(SUBJECT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWhenHandlerDoesNotTakeEvent() throws NoSuchMethodException {
+        invokerFor("handleNotAnnotated", String.class).invoke(new MotechEvent(SUBJECT));
+    }
+
+    @Test
+    public void shouldRethrowHandlerExceptions() throws NoSuchMethodException {
+        try {
+            invokerFor("handleWithFailure", MotechEvent.class).invoke(new MotechEvent(SUBJECT));
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("failure", e.getMessage());
+        }
+
+        try {
+            invokerFor("handleWithCheckedFailure", MotechEvent.class).invoke(new MotechEvent(SUBJECT));
+            fail("Exception expected");
+        } catch (UndeclaredThrowableException e) {
+            assertEquals(IOException.class, e.getCause().getClass());
+        }
+    }
+
+    private MotechListenerInvoker invokerFor(String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        Method method = TestHandler.class.getDeclaredMethod(name, parameterTypes);
+        return MotechListenerInvoker.forEvent(handler, method);
+    }
+
+    private MotechListenerInvoker namedInvokerFor(String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        Method method = TestHandler.class.getDeclaredMethod(name, parameterTypes);
+        return MotechListenerInvoker.forNamedParameters(handler, method);
+    }
+
+    private static class TestHandler {
+        private MotechEvent event;
+        private String name;
+        private Integer age;
+
+        private void handleEvent(MotechEvent event) {
+            this.event = event;
+        }
+
+        public String handleParameters(@MotechParam("name") String name, @MotechParam("age") Integer age) {
+            this.name = name;
+            this.age = age;
+            return name;
+        }
+
+        public void handleNotAnnotated(String name) {
+            this.name = name;
+        }
+
+        public void handleWithFailure(MotechEvent event) {
+            throw new IllegalStateException("failure");
+        }
+
+        public void handleWithCheckedFailure(MotechEvent event) throws IOException {
+            throw new IOException("failure");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.motechproject.event.listener.annotations;
+
+import org.junit.Test;
+import org.motechproject.commons.api.NanoStopWatch;
+import org.motechproject.event.MotechEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares handling events by <code>MotechListener</code> proxies, which invoke compiled method handles,
+ * with the reflective invocation the proxies used before.
+ * This is not a unit test, it is meant to be run by hand.
+ */
+public class MotechListenerProxyPerformanceAssessment {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MotechListenerProxyPerformanceAssessment.class);
+
+    private static final int ITERATIONS = 5000000;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private Handler handler = new Handler();
+
+    @Test
+    public void compareEventProxies() throws NoSuchMethodException {
+        final Method method = Handler.class.getMethod("handle", MotechEvent.class);
+        final MotechListenerEventProxy proxy = new MotechListenerEventProxy("eventProxy", handler, method);
+        final MotechEvent event = new MotechEvent("org.motechproject.assessment");
+
+        compare("Event proxy", new Runnable() {
+            @Override
+            public void run() {
+                ReflectionUtils.invokeMethod(method, handler, event);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                proxy.handle(event);
+            }
+        });
+    }
+
+    @Test
+    public void compareNamedParametersProxies() throws NoSuchMethodException {
+        final Method method = Handler.class.getMethod("handle", String.class, Integer.class, Long.class);
+        final MotechListenerNamedParametersProxy proxy = new MotechListenerNamedParametersProxy("namedProxy", handler,
+                method);
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("name", "value");
+        parameters.put("number", 1);
+        parameters.put("id", 2L);
+        final MotechEvent event = new MotechEvent("org.motechproject.assessment", parameters);
+
+        compare("Named parameters proxy", new Runnable() {
+            @Override
+            public void run() {
+                ReflectionUtils.invokeMethod(method, handler, getParametersReflectively(method, event).toArray());
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                proxy.handle(event);
+            }
+        });
+    }
+
+    private void compare(String name, Runnable reflective, Runnable compiled) {
+        // warm up
+        run(reflective, ITERATIONS / 10);
+        run(compiled, ITERATIONS / 10);
+
+        NanoStopWatch stopWatch = new NanoStopWatch().start();
+        run(reflective, ITERATIONS);
+        LOGGER.info("{}, reflection: {} events handled in {}ms", name, ITERATIONS,
+                stopWatch.duration() / NANOS_PER_MILLI);
+
+        stopWatch.start();
+        run(compiled, ITERATIONS);
+        LOGGER.info("{}, method handles: {} events handled in {}ms", name, ITERATIONS,
+                stopWatch.duration() / NANOS_PER_MILLI);
+    }
+
+    private void run(Runnable runnable, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            runnable.run();
+        }
+    }
+
+    /**
+     * The binding of event parameters previously done on every event.
+     */
+    private List<Object> getParametersReflectively(Method method, MotechEvent event) {
+        List<Object> args = new ArrayList<>();
+        Class<?>[] paramTypes = method.getParameterTypes();
+        Annotation[][] paramAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < paramTypes.length; i++) {
+            MotechParam annotation = (MotechParam) paramAnnotations[i][0];
+            Object arg = event.getParameters().get(annotation.value());
+            if (arg == null || !paramTypes[i].isAssignableFrom(arg.getClass())) {
+                throw new IllegalArgumentException("Invalid parameter " + annotation.value());
+            }
+            args.add(arg);
+        }
+        return args;
+    }
+
+    public static class Handler {
+        private long handled;
+
+        public void handle(MotechEvent event) {
+            handled++;
+        }
+
+        public void handle(@MotechParam("name") String name, @MotechParam("number") Integer number,
+                           @MotechParam("id") Long id) {
+            handled += number;
+        }
+    }
+}
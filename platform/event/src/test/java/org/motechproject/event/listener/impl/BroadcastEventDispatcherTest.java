@@ -0,0 +1,183 @@
+package org.motechproject.event.listener.impl;
+
+import junitx.util.PrivateAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.EventListener;
+import org.motechproject.event.messaging.MotechEventConfig;
+import org.motechproject.event.metrics.ListenerStatistics;
+import org.motechproject.event.metrics.impl.EventListenerMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BroadcastEventDispatcherTest {
+
+    private static final long TIMEOUT = 5;
+    private static final String SUBJECT = "org.motechproject.broadcast";
+
+    private MotechEventConfig motechEventConfig;
+
+    private EventListener slowListener = new TestListener("slow");
+
+    private EventListener fastListener = new TestListener("fast");
+
+    private EventListenerMetrics metrics;
+
+    private BroadcastEventDispatcher dispatcher;
+
+    private TestHandler handler;
+
+    @Before
+    public void setUp() throws NoSuchFieldException {
+        // the configuration is read from the delivery threads, so a real object is used instead of a mock
+        motechEventConfig = new MotechEventConfig();
+        PrivateAccessor.setField(motechEventConfig, "broadcastThreads", 2);
+        PrivateAccessor.setField(motechEventConfig, "broadcastQueueCapacity", 3);
+        PrivateAccessor.setField(motechEventConfig, "broadcastRetryDelay", 10L);
+        PrivateAccessor.setField(motechEventConfig, "messageMaxRedeliveryCount", 2);
+
+        metrics = new EventListenerMetrics();
+        handler = new TestHandler();
+        dispatcher = new BroadcastEventDispatcher(motechEventConfig, metrics, handler);
+    }
+
+    @After
+    public void tearDown() {
+        handler.release.countDown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void shouldNotHoldUpOtherListeners() throws InterruptedException {
+        handler.blocked = slowListener;
+
+        dispatcher.dispatch(slowListener, event(0));
+        dispatcher.dispatch(fastListener, event(0));
+
+        assertTrue(handler.fastHandled.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(1, statistics("slow").getBroadcastsInFlight());
+    }
+
+    @Test
+    public void shouldKeepOrderOfEventsForListener() throws InterruptedException {
+        handler.expected = 3;
+        handler.failures = 1;
+
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(fastListener, event(i));
+        }
+
+        assertTrue(handler.fastHandled.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(1, statistics("fast").getFailureCount());
+        // the first event failed once, the others waited for its retry
+        assertEquals(4, handler.attempts.size());
+        assertEquals(0, handler.order.get(0).intValue());
+        assertEquals(1, handler.order.get(1).intValue());
+        assertEquals(2, handler.order.get(2).intValue());
+    }
+
+    @Test
+    public void shouldRejectEventsWhenQueueIsFull() {
+        handler.blocked = slowListener;
+
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(slowListener, event(i));
+        }
+
+        // the event being handled stays at the head of the queue until it is done
+        ListenerStatistics statistics = statistics("slow");
+        assertEquals(3, statistics.getBroadcastsInFlight());
+        assertEquals(2, statistics.getRejectedBroadcastCount());
+    }
+
+    @Test
+    public void shouldDeliverOnCallingThreadWhenNotParallel() throws NoSuchFieldException {
+        PrivateAccessor.setField(motechEventConfig, "broadcastThreads", 0);
+        handler.failures = 5;
+        BroadcastEventDispatcher synchronousDispatcher = new BroadcastEventDispatcher(motechEventConfig, metrics,
+                handler);
+
+        synchronousDispatcher.dispatch(fastListener, event(0));
+
+        assertFalse(synchronousDispatcher.isParallel());
+        assertEquals(3, handler.attempts.size());
+        assertTrue(handler.order.isEmpty());
+    }
+
+    private MotechEvent event(int number) {
+        MotechEvent event = new MotechEvent(SUBJECT);
+        event.getParameters().put("number", number);
+        return event;
+    }
+
+    private ListenerStatistics statistics(String identifier) {
+        for (ListenerStatistics statistics : metrics.getListenerStatistics()) {
+            if (identifier.equals(statistics.getIdentifier())) {
+                return statistics;
+            }
+        }
+        throw new IllegalStateException("No statistics for " + identifier);
+    }
+
+    private class TestHandler implements BroadcastEventDispatcher.BroadcastHandler {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<Integer> attempts = Collections.synchronizedList(new ArrayList<Integer>());
+        private final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        private final CountDownLatch fastHandled = new CountDownLatch(1);
+        private volatile EventListener blocked;
+        private volatile int failures;
+        private volatile int expected = 1;
+
+        @Override
+        public void handle(EventListener listener, MotechEvent event) {
+            if (listener == blocked) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+
+            Integer number = (Integer) event.getParameters().get("number");
+            attempts.add(number);
+            if (failures > 0) {
+                failures--;
+                metrics.recordDispatch(listener.getIdentifier(), 0, true);
+                throw new IllegalStateException("failure");
+            }
+
+            order.add(number);
+            if (order.size() == expected) {
+                fastHandled.countDown();
+            }
+        }
+    }
+
+    private static class TestListener implements EventListener {
+        private final String identifier;
+
+        TestListener(String identifier) {
+            this.identifier = identifier;
+        }
+
+        @Override
+        public void handle(MotechEvent event) {
+        }
+
+        @Override
+        public String getIdentifier() {
+            return identifier;
+        }
+    }
+}
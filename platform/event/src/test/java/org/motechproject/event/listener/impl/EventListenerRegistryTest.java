@@ -18,6 +18,7 @@ import java.util.Set;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -249,6 +250,45 @@ public class EventListenerRegistryTest {
         assertEquals(0, el.size());
     }
 
+    @Test
+    public void testGetListenerByIdentifier() {
+        EventListener sel = new SampleEventListener();
+        EventListener sel2 = new OtherSampleEventListener();
+        registry.registerListener(sel, "org.motechproject.server.someevent");
+        registry.registerListener(sel2, "org.motechproject.server.*");
+
+        assertEquals(sel, registry.getListener("org.motechproject.server.someevent", "TestEventListener"));
+        assertEquals(sel2, registry.getListener("org.motechproject.server.someevent", "TestEventListener2"));
+        assertNull(registry.getListener("org.motechproject.server.someevent", "FooEventListener"));
+
+        registry.clearListenersForBean("TestEventListener");
+        assertNull(registry.getListener("org.motechproject.server.someevent", "TestEventListener"));
+
+        EventListener foo = new FooEventListener();
+        registry.registerListener(foo, "org.motechproject.server.someevent");
+        assertEquals(foo, registry.getListener("org.motechproject.server.someevent", "FooEventListener"));
+    }
+
+    @Test
+    public void testSnapshotStore() {
+        registry.setListenerStore(EventListenerRegistry.SNAPSHOT_STORE);
+
+        EventListener sel = new SampleEventListener();
+        registry.registerListener(sel, "org.motechproject.server.*");
+
+        assertTrue(registry.hasListener("org.motechproject.server.someevent"));
+        assertEquals(1, registry.getListenerCount("org.motechproject.server.someevent"));
+
+        registry.clearListenersForBean("TestEventListener");
+
+        assertFalse(registry.hasListener("org.motechproject.server.someevent"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStore() {
+        registry.setListenerStore("unknown");
+    }
+
     class FooEventListener implements EventListener {
 
         @Override
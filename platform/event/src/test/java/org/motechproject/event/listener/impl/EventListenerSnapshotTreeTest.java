@@ -0,0 +1,142 @@
+package org.motechproject.event.listener.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.event.listener.EventListener;
+import org.motechproject.event.listener.OtherSampleEventListener;
+import org.motechproject.event.listener.SampleEventListener;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EventListenerSnapshotTreeTest {
+
+    private static final String SUBJECT_0 = "org.motechproject.server";
+    private static final String SUBJECT_1 = "org.motechproject.server.some-event";
+    private static final String SUBJECT_2 = "org.motechproject.server.some-other-event";
+    private static final String WILDCARD_SUBJECT = "org.motechproject.server.*";
+
+    private EventListenerSnapshotTree tree;
+    private EventListener listener = new SampleEventListener();
+    private EventListener otherListener = new OtherSampleEventListener();
+
+    @Before
+    public void setUp() {
+        tree = new EventListenerSnapshotTree();
+    }
+
+    @Test
+    public void shouldFindListenersForExactSubject() {
+        tree.addListener(listener, SUBJECT_1);
+
+        assertTrue(tree.hasListener(SUBJECT_1));
+        assertFalse(tree.hasListener(SUBJECT_2));
+        assertFalse(tree.hasListener(SUBJECT_0));
+
+        Set<EventListener> listeners = tree.getListeners(SUBJECT_1);
+        assertEquals(1, listeners.size());
+        assertTrue(listeners.contains(listener));
+    }
+
+    @Test
+    public void shouldFindWildcardListeners() {
+        tree.addListener(listener, WILDCARD_SUBJECT);
+        tree.addListener(otherListener, SUBJECT_1);
+
+        assertEquals(2, tree.getListenerCount(SUBJECT_1));
+        assertEquals(1, tree.getListenerCount(SUBJECT_2));
+        assertEquals(1, tree.getListenerCount(SUBJECT_0));
+        assertEquals(1, tree.getListenerCount(SUBJECT_1 + ".nested"));
+        assertEquals(0, tree.getListenerCount("org.motechproject"));
+    }
+
+    @Test
+    public void shouldFindUniversalListeners() {
+        tree.addListener(listener, "*");
+        tree.addListener(otherListener, "org.test");
+
+        assertEquals(1, tree.getListenerCount("*"));
+        assertEquals(2, tree.getListenerCount("org.test"));
+        assertEquals(1, tree.getListenerCount("com.pqr.xyz"));
+    }
+
+    @Test
+    public void shouldIgnoreDuplicateRegistrations() {
+        tree.addListener(listener, SUBJECT_1);
+        tree.addListener(listener, SUBJECT_1);
+
+        assertEquals(1, tree.getListenerCount(SUBJECT_1));
+    }
+
+    @Test
+    public void shouldInvalidateCachedResultsWhenListenersChange() {
+        tree.addListener(listener, SUBJECT_1);
+
+        Set<EventListener> listeners = tree.getListeners(SUBJECT_1);
+        assertSame(listeners, tree.getListeners(SUBJECT_1));
+
+        tree.addListener(otherListener, WILDCARD_SUBJECT);
+
+        assertEquals(1, listeners.size());
+        assertEquals(2, tree.getListeners(SUBJECT_1).size());
+
+        tree.removeAllListeners("TestEventListener");
+
+        Set<EventListener> afterRemoval = tree.getListeners(SUBJECT_1);
+        assertEquals(1, afterRemoval.size());
+        assertTrue(afterRemoval.contains(otherListener));
+
+        tree.removeAllListeners("TestEventListener2");
+
+        assertFalse(tree.hasListener(SUBJECT_1));
+        assertFalse(tree.hasListener(SUBJECT_0));
+    }
+
+    @Test
+    public void shouldRemoveUniversalListeners() {
+        tree.addListener(listener, "*");
+        tree.removeAllListeners("TestEventListener");
+
+        assertFalse(tree.hasListener(SUBJECT_1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotAllowModifyingReturnedListeners() {
+        tree.addListener(listener, SUBJECT_1);
+        tree.getListeners(SUBJECT_1).add(otherListener);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowWildcardInTheMiddle() {
+        tree.addListener(listener, "org.motechproject.*.event");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowEmptyPathElements() {
+        tree.addListener(listener, "org.motechproject..event");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowWildcardMixedWithCharacters() {
+        tree.addListener(listener, "org.motechproject.event*");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowNullSubject() {
+        tree.addListener(listener, null);
+    }
+
+    @Test
+    public void shouldSplitSubjectLikeStringSplit() {
+        assertArrayEquals(new String[]{"org", "motechproject", "event"},
+                EventListenerSnapshotTree.splitSubject("org.motechproject.event"));
+        assertArrayEquals(new String[]{"org"}, EventListenerSnapshotTree.splitSubject("org"));
+        assertArrayEquals(new String[]{"org"}, EventListenerSnapshotTree.splitSubject("org."));
+        assertArrayEquals(new String[]{""}, EventListenerSnapshotTree.splitSubject(""));
+    }
+}
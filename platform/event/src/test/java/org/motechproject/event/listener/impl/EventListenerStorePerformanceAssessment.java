@@ -0,0 +1,78 @@
+package org.motechproject.event.listener.impl;
+
+import org.junit.Test;
+import org.motechproject.commons.api.NanoStopWatch;
+import org.motechproject.event.listener.EventListener;
+import org.motechproject.event.listener.SampleEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares subject resolution in the {@link EventListenerTree} and the {@link EventListenerSnapshotTree}.
+ * This is not a unit test, it is meant to be run by hand.
+ */
+public class EventListenerStorePerformanceAssessment {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventListenerStorePerformanceAssessment.class);
+
+    private static final int MODULES = 20;
+    private static final int SUBJECTS_PER_MODULE = 25;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 2000;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    @Test
+    public void compareStores() {
+        List<String> subjects = buildSubjects();
+
+        long treeTime = measure(new EventListenerTree(), subjects);
+        long snapshotTime = measure(new EventListenerSnapshotTree(), subjects);
+
+        int lookups = MEASURED_ROUNDS * subjects.size();
+        LOGGER.info("EventListenerTree: {} lookups took {}ms, {}ns per lookup",
+                lookups, treeTime / NANOS_PER_MILLI, treeTime / lookups);
+        LOGGER.info("EventListenerSnapshotTree: {} lookups took {}ms, {}ns per lookup",
+                lookups, snapshotTime / NANOS_PER_MILLI, snapshotTime / lookups);
+    }
+
+    private long measure(EventListenerStore store, List<String> subjects) {
+        for (int i = 0; i < MODULES; i++) {
+            store.addListener(new SampleEventListener("wildcard" + i), "org.motechproject.module" + i + ".*");
+        }
+        for (String subject : subjects) {
+            store.addListener(new SampleEventListener(subject), subject);
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            lookupAll(store, subjects);
+        }
+
+        NanoStopWatch stopWatch = new NanoStopWatch().start();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            lookupAll(store, subjects);
+        }
+        return stopWatch.duration();
+    }
+
+    private void lookupAll(EventListenerStore store, List<String> subjects) {
+        for (String subject : subjects) {
+            Set<EventListener> listeners = store.getListeners(subject);
+            assertEquals(2, listeners.size());
+        }
+    }
+
+    private List<String> buildSubjects() {
+        List<String> subjects = new ArrayList<>();
+        for (int i = 0; i < MODULES; i++) {
+            for (int j = 0; j < SUBJECTS_PER_MODULE; j++) {
+                subjects.add("org.motechproject.module" + i + ".event" + j);
+            }
+        }
+        return subjects;
+    }
+}
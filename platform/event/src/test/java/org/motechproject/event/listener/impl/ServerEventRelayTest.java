@@ -1,5 +1,6 @@
 package org.motechproject.event.listener.impl;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -15,7 +16,13 @@ import org.motechproject.event.listener.EventCallbackService;
 import org.motechproject.event.listener.EventListener;
 import org.motechproject.event.messaging.MotechEventConfig;
 import org.motechproject.event.messaging.OutboundEventGateway;
+import org.motechproject.event.messaging.impl.MotechEventBatchPublisher;
+import org.motechproject.event.metrics.ListenerStatistics;
+import org.motechproject.event.metrics.SubjectStatistics;
+import org.motechproject.event.metrics.impl.EventListenerMetrics;
+import org.motechproject.event.metrics.impl.EventSubjectMetrics;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
@@ -23,15 +30,20 @@ import org.osgi.service.event.EventAdmin;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -46,10 +58,14 @@ public class ServerEventRelayTest {
     public static final String SUBJECT = "org.motechproject.server.someevent";
 
     private static final String TEST_SERVICE_CALLBACK = "TestServiceCallback";
+    private static final long TIMEOUT = 5000;
 
     @Mock
     private OutboundEventGateway outboundEventGateway;
 
+    @Mock
+    private MotechEventBatchPublisher eventBatchPublisher;
+
     @Mock
     private MotechEventConfig motechEventConfig;
 
@@ -74,16 +90,27 @@ public class ServerEventRelayTest {
     @Mock
     private EventCallbackService callbackService;
 
+    private EventListenerMetrics eventListenerMetrics;
+    private EventSubjectMetrics eventSubjectMetrics;
+
     private ServerEventRelay eventRelay;
 
     @Before
     public void setUp() throws Exception {
-        eventRelay = new ServerEventRelay(outboundEventGateway, registry, motechEventConfig, eventAdmin, bundleContext);
+        eventListenerMetrics = new EventListenerMetrics();
+        eventSubjectMetrics = new EventSubjectMetrics();
+        eventRelay = new ServerEventRelay(outboundEventGateway, eventBatchPublisher, registry, motechEventConfig,
+                eventAdmin, bundleContext, eventListenerMetrics, eventSubjectMetrics);
 
         when(eventListener.getIdentifier()).thenReturn(LISTENER_IDENTIFIER);
         when(secondaryEventListener.getIdentifier()).thenReturn(SECONDARY_LISTENER_IDENTIFIER);
     }
 
+    @After
+    public void tearDown() {
+        eventRelay.shutdown();
+    }
+
     @Test
     public void testRelayToSingleListenerWithMessageDestination() throws Exception {
         MotechEvent motechEvent = createEvent(LISTENER_IDENTIFIER);
@@ -98,9 +125,7 @@ public class ServerEventRelayTest {
         motechEvent.setCallbackName(TEST_SERVICE_CALLBACK);
         setUpListeners(SUBJECT, eventListener);
 
-        when(bundleContext.getServiceReferences(EventCallbackService.class, null)).thenReturn(Arrays.asList(serviceReference));
-        when(bundleContext.getService(serviceReference)).thenReturn(callbackService);
-        when(callbackService.getName()).thenReturn(TEST_SERVICE_CALLBACK);
+        setUpCallbackService();
 
         eventRelay.relayQueueEvent(motechEvent);
 
@@ -126,9 +151,7 @@ public class ServerEventRelayTest {
         motechEvent.setCallbackName(TEST_SERVICE_CALLBACK);
         setUpListeners(SUBJECT, eventListener);
 
-        when(bundleContext.getServiceReferences(EventCallbackService.class, null)).thenReturn(Arrays.asList(serviceReference));
-        when(bundleContext.getService(serviceReference)).thenReturn(callbackService);
-        when(callbackService.getName()).thenReturn(TEST_SERVICE_CALLBACK);
+        setUpCallbackService();
         RuntimeException initCause = new RuntimeException();
         doThrow(new RuntimeException("Failed", initCause)).when(eventListener).handle(any(MotechEvent.class));
 
@@ -152,15 +175,96 @@ public class ServerEventRelayTest {
         setUpListeners(SUBJECT, eventListener, secondaryEventListener);
         eventRelay.sendEventMessage(motechEvent);
 
-        ArgumentCaptor<MotechEvent> argumentCaptor = ArgumentCaptor.forClass(MotechEvent.class);
-        verify(outboundEventGateway, times(2)).sendEventMessage(argumentCaptor.capture());
+        ArgumentCaptor<List> argumentCaptor = ArgumentCaptor.forClass(List.class);
+        verify(eventBatchPublisher).sendEventMessages(argumentCaptor.capture());
+        verify(outboundEventGateway, never()).sendEventMessage(any(MotechEvent.class));
+
+        List<MotechEvent> capturedEvents = argumentCaptor.getValue();
+        assertEquals(2, capturedEvents.size());
+
         MotechEvent capturedEvent;
 
-        capturedEvent = argumentCaptor.getAllValues().get(0);
+        capturedEvent = capturedEvents.get(0);
         assertEquals(capturedEvent.getMessageDestination(), LISTENER_IDENTIFIER);
+        assertEquals("value", capturedEvent.getParameters().get("test"));
 
-        capturedEvent = argumentCaptor.getAllValues().get(1);
+        capturedEvent = capturedEvents.get(1);
         assertEquals(capturedEvent.getMessageDestination(), SECONDARY_LISTENER_IDENTIFIER);
+        assertEquals("value", capturedEvent.getParameters().get("test"));
+    }
+
+    @Test
+    public void shouldDeliverEventsInProcessForConfiguredSubjects() throws Exception {
+        when(motechEventConfig.getInProcessThreads()).thenReturn(1);
+        when(motechEventConfig.getInProcessQueueCapacity()).thenReturn(10);
+        when(motechEventConfig.getInProcessSubjects()).thenReturn("org.motechproject.server.*");
+        ServerEventRelay inProcessRelay = new ServerEventRelay(outboundEventGateway, eventBatchPublisher, registry,
+                motechEventConfig, eventAdmin, bundleContext, eventListenerMetrics, eventSubjectMetrics);
+
+        try {
+            final CountDownLatch handled = new CountDownLatch(1);
+            doAnswer(countDown(handled, false)).when(eventListener).handle(any(MotechEvent.class));
+            setUpListeners(SUBJECT, eventListener);
+            inProcessRelay.sendEventMessage(createEvent());
+
+            assertTrue(handled.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            ArgumentCaptor<MotechEvent> captor = ArgumentCaptor.forClass(MotechEvent.class);
+            verify(eventListener).handle(captor.capture());
+            assertEquals(LISTENER_IDENTIFIER, captor.getValue().getMessageDestination());
+            assertEquals("value", captor.getValue().getParameters().get("test"));
+            assertNotNull(captor.getValue().getId());
+            verify(eventBatchPublisher, never()).sendEventMessages(any(List.class));
+        } finally {
+            inProcessRelay.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldRedeliverFailedEventsInProcess() throws Exception {
+        when(motechEventConfig.getInProcessThreads()).thenReturn(1);
+        when(motechEventConfig.getInProcessQueueCapacity()).thenReturn(10);
+        when(motechEventConfig.getInProcessSubjects()).thenReturn(SUBJECT);
+        when(motechEventConfig.getMessageMaxRedeliveryCount()).thenReturn(2);
+        ServerEventRelay inProcessRelay = new ServerEventRelay(outboundEventGateway, eventBatchPublisher, registry,
+                motechEventConfig, eventAdmin, bundleContext, eventListenerMetrics, eventSubjectMetrics);
+
+        try {
+            final CountDownLatch handled = new CountDownLatch(3);
+            doAnswer(countDown(handled, true)).when(eventListener).handle(any(MotechEvent.class));
+            setUpListeners(SUBJECT, eventListener);
+            inProcessRelay.sendEventMessage(createEvent());
+
+            // the first delivery and two redeliveries, all without going through the broker
+            assertTrue(handled.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            verify(outboundEventGateway, never()).sendEventMessage(any(MotechEvent.class));
+            verify(eventBatchPublisher, never()).sendEventMessages(any(List.class));
+        } finally {
+            inProcessRelay.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldSendEventThroughBrokerWhenCallbackServiceIsNotFoundInProcess() throws Exception {
+        when(motechEventConfig.getInProcessThreads()).thenReturn(1);
+        when(motechEventConfig.getInProcessQueueCapacity()).thenReturn(10);
+        when(motechEventConfig.getInProcessSubjects()).thenReturn(SUBJECT);
+        ServerEventRelay inProcessRelay = new ServerEventRelay(outboundEventGateway, eventBatchPublisher, registry,
+                motechEventConfig, eventAdmin, bundleContext, eventListenerMetrics, eventSubjectMetrics);
+
+        try {
+            final CountDownLatch sent = new CountDownLatch(1);
+            doAnswer(countDown(sent, false)).when(outboundEventGateway).sendEventMessage(any(MotechEvent.class));
+            setUpListeners(SUBJECT, eventListener);
+            MotechEvent motechEvent = createEvent();
+            motechEvent.setCallbackName(TEST_SERVICE_CALLBACK);
+
+            inProcessRelay.sendEventMessage(motechEvent);
+
+            assertTrue(sent.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            verify(eventListener, never()).handle(any(MotechEvent.class));
+        } finally {
+            inProcessRelay.shutdown();
+        }
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -196,6 +300,54 @@ public class ServerEventRelayTest {
         verify(secondaryEventListener, never()).handle(any(MotechEvent.class));
     }
 
+    @Test
+    public void shouldRecordListenerDispatchStatistics() {
+        setUpListeners(SUBJECT, eventListener, secondaryEventListener);
+
+        eventRelay.relayQueueEvent(createEvent(LISTENER_IDENTIFIER));
+        eventRelay.relayQueueEvent(createEvent(LISTENER_IDENTIFIER));
+
+        List<ListenerStatistics> statistics = eventListenerMetrics.getListenerStatistics();
+
+        assertEquals(1, statistics.size());
+        assertEquals(LISTENER_IDENTIFIER, statistics.get(0).getIdentifier());
+        assertEquals(2, statistics.get(0).getDispatchCount());
+        assertEquals(0, statistics.get(0).getFailureCount());
+    }
+
+    @Test
+    public void shouldRecordSubjectStatistics() {
+        when(motechEventConfig.getMessageMaxRedeliveryCount()).thenReturn(2);
+        BuggyListener buggyListener = new BuggyListener(1);
+        setUpListeners(SUBJECT, buggyListener);
+        MotechEvent event = createEvent(buggyListener.getIdentifier());
+        event.setPublishTime(System.currentTimeMillis());
+
+        eventRelay.relayQueueEvent(event);
+
+        List<SubjectStatistics> statistics = eventSubjectMetrics.getSubjectStatistics();
+
+        assertEquals(1, statistics.size());
+        assertEquals(SUBJECT, statistics.get(0).getSubject());
+        assertEquals(1, statistics.get(0).getHandledCount());
+        assertEquals(1, statistics.get(0).getFailureCount());
+        assertEquals(1, statistics.get(0).getRedeliveryCount());
+        assertEquals(0, statistics.get(0).getDiscardCount());
+    }
+
+    @Test
+    public void shouldRecordPublishedEventOnceForAllListeners() {
+        setUpListeners(SUBJECT, eventListener, secondaryEventListener);
+
+        eventRelay.sendEventMessage(createEvent());
+        eventRelay.broadcastEventMessage(createEvent());
+
+        List<SubjectStatistics> statistics = eventSubjectMetrics.getSubjectStatistics();
+
+        assertEquals(1, statistics.size());
+        assertEquals(2, statistics.get(0).getPublishCount());
+    }
+
     @Test
     public void shouldRetryEventHandlingWhenRelyingTopicEvent() {
         final BooleanValue handled = new BooleanValue(false);
@@ -270,8 +422,34 @@ public class ServerEventRelayTest {
         return new MotechEvent(SUBJECT, parameters);
     }
 
+    private void setUpCallbackService() throws InvalidSyntaxException {
+        when(bundleContext.getServiceReferences(EventCallbackService.class.getName(), null))
+                .thenReturn(new ServiceReference[] {serviceReference});
+        when(bundleContext.getService(serviceReference)).thenReturn(callbackService);
+        when(callbackService.getName()).thenReturn(TEST_SERVICE_CALLBACK);
+        // the callback services are tracked from the start of the relay
+        eventRelay.start();
+    }
+
+    private Answer<Void> countDown(final CountDownLatch latch, final boolean fail) {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                latch.countDown();
+                if (fail) {
+                    throw new IllegalStateException("failure");
+                }
+                return null;
+            }
+        };
+    }
+
     private void setUpListeners(String subject, EventListener... listeners) {
         when(registry.getListeners(eq(subject))).thenReturn(new LinkedHashSet<>(Arrays.asList(listeners)));
+        for (EventListener listener : listeners) {
+            String identifier = listener.getIdentifier();
+            when(registry.getListener(subject, identifier)).thenReturn(listener);
+        }
     }
 
     private class BooleanValue {
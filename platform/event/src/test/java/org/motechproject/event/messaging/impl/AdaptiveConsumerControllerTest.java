@@ -0,0 +1,168 @@
+package org.motechproject.event.messaging.impl;
+
+import junitx.util.PrivateAccessor;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.event.messaging.MotechEventConfig;
+import org.motechproject.event.messaging.QueueDepthReader;
+import org.motechproject.event.metrics.impl.EventListenerMetrics;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdaptiveConsumerControllerTest {
+
+    private static final String QUEUE_NAME = "QueueForEvents";
+    private static final long HANDLING_NANOS = 100000000L;
+    private static final double DELTA = 0.001;
+
+    @Mock
+    private DefaultMessageListenerContainer container;
+
+    @Mock
+    private QueueDepthReader queueDepthReader;
+
+    private ActiveMQQueue queue = new ActiveMQQueue(QUEUE_NAME);
+
+    private EventListenerMetrics eventListenerMetrics;
+
+    private AdaptiveConsumerController controller;
+
+    @Before
+    public void setUp() throws NoSuchFieldException {
+        MotechEventConfig motechEventConfig = new MotechEventConfig();
+        PrivateAccessor.setField(motechEventConfig, "adaptiveConsumersInterval", 60000L);
+        PrivateAccessor.setField(motechEventConfig, "consumersDrainTime", 1000L);
+        PrivateAccessor.setField(motechEventConfig, "prefetchMin", 1);
+        PrivateAccessor.setField(motechEventConfig, "prefetchMax", 1000);
+        PrivateAccessor.setField(motechEventConfig, "prefetchWindow", 1000L);
+
+        when(container.getConcurrentConsumers()).thenReturn(1);
+        when(container.getMaxConcurrentConsumers()).thenReturn(10);
+
+        eventListenerMetrics = new EventListenerMetrics();
+        controller = new AdaptiveConsumerController(container, queue, eventListenerMetrics, motechEventConfig,
+                queueDepthReader);
+    }
+
+    @Test
+    public void shouldStartConsumersNeededToDrainQueue() {
+        handleEvents(10);
+        when(queueDepthReader.getQueueDepth(QUEUE_NAME)).thenReturn(50L);
+
+        controller.adjust();
+
+        // 50 events taking 100ms each, drained in 1s
+        verify(container).setConcurrentConsumers(5);
+        verify(container).setMaxConcurrentConsumers(5);
+        assertEquals(5, controller.getConsumers());
+        assertEquals(50, controller.getQueueDepth());
+        assertEquals(100.0, controller.getHandlerLatencyMillis(), DELTA);
+
+        // a consumer prefetches 1s of work
+        ArgumentCaptor<ActiveMQQueue> destinationCaptor = ArgumentCaptor.forClass(ActiveMQQueue.class);
+        verify(container).setDestination(destinationCaptor.capture());
+        assertEquals(QUEUE_NAME, destinationCaptor.getValue().getPhysicalName());
+        assertEquals("10", destinationCaptor.getValue().getOptions().get("consumer.prefetchSize"));
+        assertEquals(10, controller.getPrefetch());
+        assertEquals(1, controller.getAdjustmentCount());
+    }
+
+    @Test
+    public void shouldNotExceedMaxConsumers() {
+        handleEvents(10);
+        when(queueDepthReader.getQueueDepth(QUEUE_NAME)).thenReturn(100000L);
+
+        controller.adjust();
+
+        verify(container).setConcurrentConsumers(10);
+        assertEquals(10, controller.getConsumers());
+    }
+
+    @Test
+    public void shouldStopOneConsumerWhenQueueIsEmpty() {
+        handleEvents(10);
+        when(queueDepthReader.getQueueDepth(QUEUE_NAME)).thenReturn(50L);
+        controller.adjust();
+
+        when(queueDepthReader.getQueueDepth(QUEUE_NAME)).thenReturn(0L);
+        controller.adjust();
+
+        verify(container).setConcurrentConsumers(4);
+        verify(container).setMaxConcurrentConsumers(4);
+        assertEquals(4, controller.getConsumers());
+    }
+
+    @Test
+    public void shouldLeaveConsumersAloneWhenQueueDepthIsUnknown() {
+        handleEvents(10);
+        when(queueDepthReader.getQueueDepth(anyString())).thenReturn(-1L);
+
+        controller.adjust();
+
+        verify(container, never()).setConcurrentConsumers(anyInt());
+        verify(container, never()).setMaxConcurrentConsumers(anyInt());
+        assertEquals(1, controller.getConsumers());
+    }
+
+    @Test
+    public void shouldRestoreContainerWhenDisabled() {
+        handleEvents(10);
+        when(queueDepthReader.getQueueDepth(QUEUE_NAME)).thenReturn(50L);
+        controller.adjust();
+        assertTrue(controller.isEnabled());
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(AdaptiveConsumerController.INTERVAL, "0");
+        properties.put("jms.broker.url", "tcp://localhost:61616");
+        controller.reload(properties);
+
+        assertFalse(controller.isEnabled());
+        verify(container).setConcurrentConsumers(1);
+        verify(container).setMaxConcurrentConsumers(10);
+        ArgumentCaptor<ActiveMQQueue> destinationCaptor = ArgumentCaptor.forClass(ActiveMQQueue.class);
+        verify(container, times(2)).setDestination(destinationCaptor.capture());
+        assertSame(queue, destinationCaptor.getValue());
+        assertEquals(1, controller.getConsumers());
+        assertEquals(-1, controller.getPrefetch());
+    }
+
+    @Test
+    public void shouldApplyReloadedSettings() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(AdaptiveConsumerController.PREFETCH_MAX, "5");
+        controller.reload(properties);
+
+        handleEvents(10);
+        when(queueDepthReader.getQueueDepth(QUEUE_NAME)).thenReturn(0L);
+        controller.adjust();
+
+        verify(container).setDestination(any(ActiveMQQueue.class));
+        assertEquals(5, controller.getPrefetch());
+    }
+
+    private void handleEvents(int count) {
+        for (int i = 0; i < count; i++) {
+            eventListenerMetrics.recordDispatch("listener", HANDLING_NANOS, false);
+        }
+    }
+}
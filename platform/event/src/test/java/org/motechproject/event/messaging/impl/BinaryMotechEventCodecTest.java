@@ -0,0 +1,143 @@
+package org.motechproject.event.messaging.impl;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.exception.MotechEventCodecException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryMotechEventCodecTest {
+
+    private BinaryMotechEventCodec codec = new BinaryMotechEventCodec();
+
+    @Test
+    public void shouldEncodeAndDecodeEvent() {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("origin", "test");
+
+        MotechEvent event = new MotechEvent("org.motechproject.test", buildParameters(), "callback", metadata);
+        event.setId(UUID.randomUUID());
+        event.setMessageDestination("listener");
+        event.setBroadcast(true);
+        event.setDiscarded(true);
+
+        MotechEvent decoded = codec.decode(codec.encode(event));
+
+        assertEquals(event, decoded);
+        assertEquals(event.getId(), decoded.getId());
+        assertEquals("listener", decoded.getMessageDestination());
+        assertEquals("callback", decoded.getCallbackName());
+        assertTrue(decoded.isBroadcast());
+        assertTrue(decoded.isDiscarded());
+    }
+
+    @Test
+    public void shouldPreserveParameterTypes() {
+        Map<String, Object> parameters = buildParameters();
+
+        MotechEvent decoded = codec.decode(codec.encode(new MotechEvent("subject", parameters)));
+
+        for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+            Object value = decoded.getParameters().get(entry.getKey());
+            if (entry.getValue() == null) {
+                assertNull(value);
+            } else {
+                assertEquals(entry.getKey(), entry.getValue().getClass(), value.getClass());
+            }
+        }
+        assertEquals(((DateTime) parameters.get("dateTime")).getZone(),
+                ((DateTime) decoded.getParameters().get("dateTime")).getZone());
+    }
+
+    @Test
+    public void shouldNotRequireOptionalFields() {
+        MotechEvent event = new MotechEvent("subject");
+
+        MotechEvent decoded = codec.decode(codec.encode(event));
+
+        assertEquals(event, decoded);
+        assertNull(decoded.getId());
+        assertNull(decoded.getMessageDestination());
+        assertNull(decoded.getCallbackName());
+        assertFalse(decoded.isBroadcast());
+    }
+
+    @Test
+    public void shouldHandleLongStrings() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < Short.MAX_VALUE; i++) {
+            value.append("ab");
+        }
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("long", value.toString());
+
+        MotechEvent decoded = codec.decode(codec.encode(new MotechEvent("subject", parameters)));
+
+        assertEquals(value.toString(), decoded.getParameters().get("long"));
+    }
+
+    @Test(expected = MotechEventCodecException.class)
+    public void shouldRejectUnknownVersion() {
+        byte[] data = codec.encode(new MotechEvent("subject"));
+        data[0] = BinaryMotechEventCodec.VERSION + 1;
+
+        codec.decode(data);
+    }
+
+    @Test(expected = MotechEventCodecException.class)
+    public void shouldRejectTruncatedData() {
+        byte[] data = codec.encode(new MotechEvent("subject", buildParameters()));
+
+        codec.decode(Arrays.copyOf(data, data.length / 2));
+    }
+
+    private Map<String, Object> buildParameters() {
+        List<Object> list = new ArrayList<>();
+        list.add("element");
+        list.add(1);
+
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("key", list);
+
+        Map<String, Object> sorted = new TreeMap<>();
+        sorted.put("b", 2L);
+        sorted.put("a", 1L);
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("string", "value");
+        parameters.put("integer", 1);
+        parameters.put("long", 2L);
+        parameters.put("double", 3.0);
+        parameters.put("boolean", true);
+        parameters.put("decimal", new BigDecimal("10.50"));
+        parameters.put("date", new Date());
+        parameters.put("dateTime", new DateTime(DateTimeZone.forID("Africa/Nairobi")));
+        parameters.put("localDate", new LocalDate());
+        parameters.put("uuid", UUID.randomUUID());
+        parameters.put("list", list);
+        parameters.put("set", new HashSet<>(list));
+        parameters.put("map", nested);
+        parameters.put("linkedList", new LinkedList<>(list));
+        parameters.put("treeMap", sorted);
+        parameters.put("null", null);
+        return parameters;
+    }
+}
@@ -0,0 +1,107 @@
+package org.motechproject.event.messaging.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.event.MotechEvent;
+import org.springframework.jms.JmsException;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MotechEventBatchPublisherTest {
+
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private MessageProducer producer;
+
+    @Mock
+    private ObjectMessage message;
+
+    @Mock
+    private Destination destination;
+
+    @Mock
+    private MotechEventHeaderMapper eventHeaderMapper;
+
+    private MotechEventBatchPublisher publisher;
+
+    @Before
+    public void setUp() throws JMSException {
+        when(connectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createSession(true, Session.AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.getTransacted()).thenReturn(true);
+        when(session.createProducer(destination)).thenReturn(producer);
+        when(session.createObjectMessage(any(MotechEvent.class))).thenReturn(message);
+
+        publisher = new MotechEventBatchPublisher(connectionFactory, destination, new MotechEventTransformer(),
+                new MotechEventMessageConverter(), eventHeaderMapper);
+    }
+
+    @Test
+    public void shouldSendAllEventsInOneTransaction() throws JMSException {
+        List<MotechEvent> events = Arrays.asList(new MotechEvent("subject"), new MotechEvent("subject"));
+
+        publisher.sendEventMessages(events);
+
+        verify(producer, times(2)).send(message);
+        verify(session).commit();
+        verify(session, never()).rollback();
+        verify(producer).close();
+
+        verify(eventHeaderMapper, times(2)).setRedeliveryDelay(message);
+        for (MotechEvent event : events) {
+            assertNotNull(event.getId());
+        }
+    }
+
+    @Test
+    public void shouldRollbackWhenSendingFails() throws JMSException {
+        doThrow(new JMSException("failure")).when(producer).send(message);
+
+        try {
+            publisher.sendEventMessages(Arrays.asList(new MotechEvent("subject"), new MotechEvent("subject")));
+            fail("JmsException expected");
+        } catch (JmsException e) {
+            verify(session).rollback();
+            verify(session, never()).commit();
+            verify(producer).close();
+        }
+    }
+
+    @Test
+    public void shouldNotConnectWhenThereIsNothingToSend() {
+        publisher.sendEventMessages(new ArrayList<MotechEvent>());
+
+        verifyZeroInteractions(connectionFactory);
+    }
+}
@@ -0,0 +1,103 @@
+package org.motechproject.event.messaging.impl;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.motechproject.commons.api.NanoStopWatch;
+import org.motechproject.event.MotechEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compares the size and the encoding/decoding throughput of events written with Java serialization, as carried
+ * by object messages, against the {@link BinaryMotechEventCodec}.
+ * This is not a unit test, it is meant to be run by hand.
+ */
+public class MotechEventCodecPerformanceAssessment {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MotechEventCodecPerformanceAssessment.class);
+
+    private static final int ITERATIONS = 100000;
+    private static final int PARAMETERS = 10;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    @Test
+    public void compareCodecs() throws IOException, ClassNotFoundException {
+        MotechEvent event = buildEvent();
+        BinaryMotechEventCodec codec = new BinaryMotechEventCodec();
+
+        LOGGER.info("Serialized event size: {} bytes, binary event size: {} bytes",
+                serialize(event).length, codec.encode(event).length);
+
+        // warm up
+        runSerialization(event, ITERATIONS / 10);
+        runBinary(codec, event, ITERATIONS / 10);
+
+        NanoStopWatch stopWatch = new NanoStopWatch().start();
+        runSerialization(event, ITERATIONS);
+        logThroughput("Java serialization", stopWatch.duration());
+
+        stopWatch.start();
+        runBinary(codec, event, ITERATIONS);
+        logThroughput("Binary codec", stopWatch.duration());
+    }
+
+    private void runSerialization(MotechEvent event, int iterations) throws IOException, ClassNotFoundException {
+        for (int i = 0; i < iterations; i++) {
+            deserialize(serialize(event));
+        }
+    }
+
+    private void runBinary(BinaryMotechEventCodec codec, MotechEvent event, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            codec.decode(codec.encode(event));
+        }
+    }
+
+    private byte[] serialize(MotechEvent event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(event);
+        }
+        return bytes.toByteArray();
+    }
+
+    private MotechEvent deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (MotechEvent) in.readObject();
+        }
+    }
+
+    private MotechEvent buildEvent() {
+        List<Object> values = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+
+        for (int i = 0; i < PARAMETERS; i++) {
+            parameters.put("string" + i, "value of parameter " + i);
+            parameters.put("number" + i, (long) i);
+            values.add(i);
+        }
+        parameters.put("dateTime", DateTime.now());
+        parameters.put("list", values);
+
+        MotechEvent event = new MotechEvent("org.motechproject.assessment", parameters);
+        event.setId(UUID.randomUUID());
+        event.setMessageDestination("listener");
+        return event;
+    }
+
+    private void logThroughput(String name, long durationNanos) {
+        LOGGER.info("{}: {} round trips took {}ms, {} round trips per second", name, ITERATIONS,
+                durationNanos / NANOS_PER_MILLI, ITERATIONS * NANOS_PER_SECOND / durationNanos);
+    }
+}
@@ -0,0 +1,118 @@
+package org.motechproject.event.messaging.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.motechproject.event.MotechEvent;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MotechEventMessageConverterTest {
+
+    private static final long PUBLISH_TIME = 1500000000000L;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private ObjectMessage objectMessage;
+
+    @Mock
+    private BytesMessage bytesMessage;
+
+    private MotechEventMessageConverter converter;
+
+    private MotechEvent event;
+
+    @Before
+    public void setUp() throws JMSException {
+        when(session.createObjectMessage(any(MotechEvent.class))).thenReturn(objectMessage);
+        when(session.createBytesMessage()).thenReturn(bytesMessage);
+
+        converter = new MotechEventMessageConverter();
+
+        event = new MotechEvent("subject");
+        event.setInvalid(true);
+        event.setMessageRedeliveryCount(2);
+        event.setPublishTime(PUBLISH_TIME);
+    }
+
+    @Test
+    public void shouldSendObjectMessagesWithSerializableCodec() throws JMSException {
+        converter.setCodecName(MotechEventMessageConverter.SERIALIZABLE_CODEC);
+
+        assertEquals(objectMessage, converter.toMessage(event, session));
+
+        verify(session).createObjectMessage(event);
+        verify(objectMessage).setIntProperty(MotechEventMessageConverter.REDELIVERY_COUNT_PROPERTY, 2);
+        verify(objectMessage).setBooleanProperty(MotechEventMessageConverter.INVALID_PROPERTY, true);
+    }
+
+    @Test
+    public void shouldSendBytesMessagesWithBinaryCodec() throws JMSException {
+        converter.setCodecName(MotechEventMessageConverter.BINARY_CODEC);
+
+        assertEquals(bytesMessage, converter.toMessage(event, session));
+
+        verify(session, never()).createObjectMessage(any(MotechEvent.class));
+        verify(bytesMessage).writeBytes(new BinaryMotechEventCodec().encode(event));
+        verify(bytesMessage).setIntProperty(MotechEventMessageConverter.REDELIVERY_COUNT_PROPERTY, 2);
+        verify(bytesMessage).setBooleanProperty(MotechEventMessageConverter.INVALID_PROPERTY, true);
+        verify(bytesMessage).setLongProperty(MotechEventMessageConverter.PUBLISH_TIME_PROPERTY, PUBLISH_TIME);
+    }
+
+    @Test
+    public void shouldRestoreRedeliveryStateFromProperties() throws JMSException {
+        final byte[] data = new BinaryMotechEventCodec().encode(event);
+
+        when(bytesMessage.getBodyLength()).thenReturn((long) data.length);
+        when(bytesMessage.propertyExists(anyString())).thenReturn(true);
+        when(bytesMessage.getIntProperty(MotechEventMessageConverter.REDELIVERY_COUNT_PROPERTY)).thenReturn(2);
+        when(bytesMessage.getBooleanProperty(MotechEventMessageConverter.INVALID_PROPERTY)).thenReturn(true);
+        when(bytesMessage.getLongProperty(MotechEventMessageConverter.PUBLISH_TIME_PROPERTY)).thenReturn(PUBLISH_TIME);
+        when(bytesMessage.readBytes(any(byte[].class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                byte[] buffer = (byte[]) invocation.getArguments()[0];
+                System.arraycopy(data, 0, buffer, 0, data.length);
+                return data.length;
+            }
+        });
+
+        MotechEvent decoded = (MotechEvent) converter.fromMessage(bytesMessage);
+
+        assertEquals(event, decoded);
+        assertTrue(decoded.isInvalid());
+        assertEquals(2, decoded.getMessageRedeliveryCount());
+        assertEquals(PUBLISH_TIME, decoded.getPublishTime());
+    }
+
+    @Test
+    public void shouldReadObjectMessagesWithAnyCodec() throws JMSException {
+        converter.setCodecName(MotechEventMessageConverter.BINARY_CODEC);
+        when(objectMessage.getObject()).thenReturn(event);
+
+        assertEquals(event, converter.fromMessage(objectMessage));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownCodec() {
+        converter.setCodecName("xml");
+    }
+}
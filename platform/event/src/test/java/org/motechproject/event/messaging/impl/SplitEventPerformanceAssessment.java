@@ -0,0 +1,124 @@
+package org.motechproject.event.messaging.impl;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.commons.api.NanoStopWatch;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.messaging.MotechCachingConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the throughput of publishing events split between many listeners against an embedded ActiveMQ broker,
+ * comparing one send per listener with the batched, single transaction publishing.
+ * This is not a unit test, it is meant to be run by hand.
+ */
+public class SplitEventPerformanceAssessment {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SplitEventPerformanceAssessment.class);
+
+    private static final String BROKER_URL = "vm://fanout-assessment?broker.persistent=false&broker.useJmx=false";
+
+    private static final int EVENTS = 1000;
+    private static final int LISTENERS = 20;
+    private static final int PARAMETERS = 10;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private MotechCachingConnectionFactory connectionFactory;
+    private ActiveMQQueue queue;
+
+    @Before
+    public void setUp() {
+        connectionFactory = new MotechCachingConnectionFactory();
+        connectionFactory.setTargetConnectionFactory(new ActiveMQConnectionFactory(BROKER_URL));
+        connectionFactory.setSessionCacheSize(10);
+        queue = new ActiveMQQueue("SplitEventPerformanceAssessment");
+    }
+
+    @After
+    public void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    public void compareFanOutPublishing() {
+        Map<String, Object> parameters = buildParameters();
+
+        // warm up the broker and the connection
+        sendOnePerListener(parameters, EVENTS / 10);
+        sendBatched(parameters, EVENTS / 10);
+
+        NanoStopWatch stopWatch = new NanoStopWatch().start();
+        sendOnePerListener(parameters, EVENTS);
+        logThroughput("One send per listener", stopWatch.duration());
+
+        stopWatch.start();
+        sendBatched(parameters, EVENTS);
+        logThroughput("Batched publishing", stopWatch.duration());
+    }
+
+    private void sendOnePerListener(Map<String, Object> parameters, int events) {
+        JmsTemplate jmsTemplate = new JmsTemplate(connectionFactory);
+        MotechEventTransformer transformer = new MotechEventTransformer();
+
+        for (int i = 0; i < events; i++) {
+            for (int j = 0; j < LISTENERS; j++) {
+                final MotechEvent event = transformer.transform(
+                        new MotechEvent("org.motechproject.assessment", new HashMap<>(parameters)));
+                event.setMessageDestination("listener" + j);
+
+                jmsTemplate.send(queue, new MessageCreator() {
+                    @Override
+                    public Message createMessage(Session session) throws JMSException {
+                        return session.createObjectMessage(event);
+                    }
+                });
+            }
+        }
+    }
+
+    private void sendBatched(Map<String, Object> parameters, int events) {
+        MotechEventBatchPublisher publisher = new MotechEventBatchPublisher(connectionFactory, queue,
+                new MotechEventTransformer(), new MotechEventMessageConverter(), new MotechEventHeaderMapper());
+
+        for (int i = 0; i < events; i++) {
+            Map<String, Object> sharedParameters = new HashMap<>(parameters);
+            List<MotechEvent> split = new ArrayList<>(LISTENERS);
+
+            for (int j = 0; j < LISTENERS; j++) {
+                MotechEvent event = new MotechEvent("org.motechproject.assessment", sharedParameters);
+                event.setMessageDestination("listener" + j);
+                split.add(event);
+            }
+
+            publisher.sendEventMessages(split);
+        }
+    }
+
+    private Map<String, Object> buildParameters() {
+        Map<String, Object> parameters = new HashMap<>();
+        for (int i = 0; i < PARAMETERS; i++) {
+            parameters.put("parameter" + i, "value of parameter " + i);
+        }
+        return parameters;
+    }
+
+    private void logThroughput(String name, long durationNanos) {
+        long messages = (long) EVENTS * LISTENERS;
+        LOGGER.info("{}: sending {} messages took {}ms, {} messages per second", name, messages,
+                durationNanos / NANOS_PER_MILLI, messages * NANOS_PER_SECOND / durationNanos);
+    }
+}
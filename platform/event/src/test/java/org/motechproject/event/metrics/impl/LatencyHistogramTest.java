@@ -0,0 +1,74 @@
+package org.motechproject.event.metrics.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldReturnZerosWhenEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0.0, histogram.getMean(), 0.0);
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void shouldRecordValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50500.0, histogram.getMean(), 0.001);
+
+        assertWithinPrecision(50000, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(95000, histogram.getValueAtPercentile(95));
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void shouldRecordNanos() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.recordNanos(5000);
+
+        assertEquals(5, histogram.getMax());
+        assertEquals(5, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void shouldReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void shouldKeepBucketBoundsConsistent() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 123456, 1L << 40, Long.MAX_VALUE};
+
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(value <= LatencyHistogram.bucketUpperBound(index) || index == LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+            if (index > 0) {
+                assertTrue(value > LatencyHistogram.bucketUpperBound(index - 1));
+            }
+        }
+    }
+
+    private void assertWithinPrecision(long expected, long actual) {
+        assertTrue(String.format("Expected %d to be within 12.5%% of %d", actual, expected),
+                Math.abs(actual - expected) <= expected / 8);
+    }
+}
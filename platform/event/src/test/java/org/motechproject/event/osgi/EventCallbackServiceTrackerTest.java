@@ -0,0 +1,97 @@
+package org.motechproject.event.osgi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.event.listener.EventCallbackService;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EventCallbackServiceTrackerTest {
+
+    private static final String CALLBACK_NAME = "TestCallback";
+    private static final double DELTA = 0.0001;
+
+    @Mock
+    private BundleContext bundleContext;
+
+    @Mock
+    private ServiceReference<EventCallbackService> firstReference;
+
+    @Mock
+    private ServiceReference<EventCallbackService> secondReference;
+
+    @Mock
+    private EventCallbackService firstCallbackService;
+
+    @Mock
+    private EventCallbackService secondCallbackService;
+
+    private EventCallbackServiceTracker tracker;
+
+    @Before
+    public void setUp() throws Exception {
+        when(bundleContext.getServiceReferences(EventCallbackService.class.getName(), null))
+                .thenReturn(new ServiceReference[] {firstReference, secondReference});
+        when(bundleContext.getService(firstReference)).thenReturn(firstCallbackService);
+        when(bundleContext.getService(secondReference)).thenReturn(secondCallbackService);
+        when(firstCallbackService.getName()).thenReturn(CALLBACK_NAME);
+        when(secondCallbackService.getName()).thenReturn(CALLBACK_NAME);
+
+        tracker = new EventCallbackServiceTracker(bundleContext);
+        tracker.open();
+    }
+
+    @After
+    public void tearDown() {
+        tracker.close();
+    }
+
+    @Test
+    public void shouldFindCallbackServiceByName() {
+        assertSame(firstCallbackService, tracker.getCallbackService(CALLBACK_NAME));
+        assertNull(tracker.getCallbackService("UnknownCallback"));
+
+        assertEquals(1, tracker.getCallbackServiceCount());
+        assertEquals(2, tracker.getLookupCount());
+        assertEquals(1, tracker.getHitCount());
+        assertEquals(1, tracker.getFailedLookupCount());
+        assertEquals(0.5, tracker.getHitRate(), DELTA);
+    }
+
+    @Test
+    public void shouldReplaceUnregisteredServiceWithAnotherOfTheSameName() {
+        ArgumentCaptor<ServiceListener> listenerCaptor = ArgumentCaptor.forClass(ServiceListener.class);
+        verify(bundleContext).addServiceListener(listenerCaptor.capture(), anyString());
+
+        listenerCaptor.getValue().serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, firstReference));
+        assertSame(secondCallbackService, tracker.getCallbackService(CALLBACK_NAME));
+
+        listenerCaptor.getValue().serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, secondReference));
+        assertNull(tracker.getCallbackService(CALLBACK_NAME));
+        assertEquals(0, tracker.getCallbackServiceCount());
+    }
+
+    @Test
+    public void shouldResetStatistics() {
+        tracker.getCallbackService(CALLBACK_NAME);
+        tracker.resetStatistics();
+
+        assertEquals(0, tracker.getLookupCount());
+        assertEquals(0, tracker.getHitRate(), DELTA);
+    }
+}
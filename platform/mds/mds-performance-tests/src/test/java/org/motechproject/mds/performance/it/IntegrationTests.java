@@ -4,6 +4,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.motechproject.mds.performance.osgi.MdsDiskSpaceUsageIT;
 import org.motechproject.mds.performance.osgi.MdsDummyDataGeneratorIT;
+import org.motechproject.mds.performance.osgi.MdsHistoryStressIT;
 import org.motechproject.mds.performance.osgi.MdsStressIT;
 
 /**
@@ -11,6 +12,7 @@ import org.motechproject.mds.performance.osgi.MdsStressIT;
  * Instead, they are run with profile "MDSP"
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({MdsDummyDataGeneratorIT.class, MdsStressIT.class, MdsDiskSpaceUsageIT.class})
+@Suite.SuiteClasses({MdsDummyDataGeneratorIT.class, MdsStressIT.class, MdsHistoryStressIT.class,
+        MdsDiskSpaceUsageIT.class})
 public class IntegrationTests {
 }
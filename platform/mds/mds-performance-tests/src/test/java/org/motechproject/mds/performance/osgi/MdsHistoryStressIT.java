@@ -0,0 +1,181 @@
+package org.motechproject.mds.performance.osgi;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.eclipse.gemini.blueprint.util.OsgiBundleUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.motechproject.mds.dto.EntityDto;
+import org.motechproject.mds.dto.FieldDto;
+import org.motechproject.mds.dto.TrackingDto;
+import org.motechproject.mds.performance.service.MdsDummyDataGenerator;
+import org.motechproject.mds.performance.service.impl.MdsDummyDataGeneratorImpl;
+import org.motechproject.mds.service.EntityService;
+import org.motechproject.mds.service.JarGeneratorService;
+import org.motechproject.mds.service.MotechDataService;
+import org.motechproject.mds.util.Constants;
+import org.motechproject.mds.util.PropertyUtil;
+import org.motechproject.testing.osgi.container.MotechNativeTestContainerFactory;
+import org.ops4j.pax.exam.ExamFactory;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerSuite;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.motechproject.mds.util.Constants.BundleNames.MDS_ENTITIES_SYMBOLIC_NAME;
+import static org.motechproject.mds.util.Constants.Util.GENERATED_FIELD_NAMES;
+
+/**
+ * Compares the write throughput of an entity which records history with the one of an identical
+ * entity which doesn't.
+ */
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerSuite.class)
+@ExamFactory(MotechNativeTestContainerFactory.class)
+public class MdsHistoryStressIT extends LoggingPerformanceIT {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MdsHistoryStressIT.class);
+
+    private static final int ENTITIES = 2;
+    private static final int FIELDS = 5;
+    private static final int LOOKUPS = 0;
+    private static final int TEST_INSTANCES = Integer.parseInt(System.getProperty("mds.performance.quantity"));
+
+    private MdsDummyDataGenerator generator;
+    @Inject
+    private BundleContext bundleContext;
+    @Inject
+    private EntityService entityService;
+    @Inject
+    private JarGeneratorService jarGeneratorService;
+
+    private EntityDto withoutHistory;
+    private EntityDto withHistory;
+
+    @Before
+    public void setUp() throws IOException {
+        setUpSecurityContext("motech_bot", "motech", "mdsSchemaAccess");
+
+        generator = new MdsDummyDataGeneratorImpl(entityService, jarGeneratorService, bundleContext);
+        generator.clearEntities();
+        generator.setEntityPrefix("HistoryStressITEntity");
+
+        generator.generateDummyEntities(ENTITIES, FIELDS, LOOKUPS, false);
+
+        withoutHistory = getEntity(0);
+        withHistory = getEntity(1);
+
+        entityService.updateTracking(withoutHistory.getId(), new TrackingDto(false, false, false, false, false, false));
+        entityService.updateTracking(withHistory.getId(), new TrackingDto(true, false, false, false, false, false));
+
+        jarGeneratorService.regenerateMdsDataBundle(entityService.getSchema());
+    }
+
+    @After
+    public void tearDown() {
+        generator.clearEntities();
+    }
+
+    @Test
+    public void testHistoryPerformance() throws IllegalAccessException, InstantiationException, ClassNotFoundException {
+        Bundle entitiesBundle = OsgiBundleUtils.findBundleBySymbolicName(bundleContext, MDS_ENTITIES_SYMBOLIC_NAME);
+        assertNotNull(entitiesBundle);
+
+        MotechDataService serviceWithoutHistory = generator.getService(entitiesBundle.getBundleContext(),
+                withoutHistory.getClassName());
+        MotechDataService serviceWithHistory = generator.getService(entitiesBundle.getBundleContext(),
+                withHistory.getClassName());
+
+        stressTestCreatingWithoutHistory(serviceWithoutHistory);
+        stressTestCreatingWithHistory(serviceWithHistory);
+        stressTestUpdatingWithoutHistory(serviceWithoutHistory);
+        stressTestUpdatingWithHistory(serviceWithHistory);
+
+        serviceWithoutHistory.deleteAll();
+        serviceWithHistory.deleteAll();
+    }
+
+    private void stressTestCreatingWithoutHistory(MotechDataService service)
+            throws IllegalAccessException, InstantiationException, ClassNotFoundException {
+        long time = create(service, withoutHistory);
+
+        LOGGER.info("MDS Service: Creating " + TEST_INSTANCES + " instances without history took " + time + "ms.");
+        logToFile((double) time);
+    }
+
+    private void stressTestCreatingWithHistory(MotechDataService service)
+            throws IllegalAccessException, InstantiationException, ClassNotFoundException {
+        long time = create(service, withHistory);
+
+        LOGGER.info("MDS Service: Creating " + TEST_INSTANCES + " instances with history took " + time + "ms.");
+        logToFile((double) time);
+    }
+
+    private void stressTestUpdatingWithoutHistory(MotechDataService service)
+            throws IllegalAccessException, InstantiationException, ClassNotFoundException {
+        long time = update(service, withoutHistory);
+
+        LOGGER.info("MDS Service: Updating " + TEST_INSTANCES + " instances without history took " + time + "ms.");
+        logToFile((double) time);
+    }
+
+    private void stressTestUpdatingWithHistory(MotechDataService service)
+            throws IllegalAccessException, InstantiationException, ClassNotFoundException {
+        long time = update(service, withHistory);
+
+        LOGGER.info("MDS Service: Updating " + TEST_INSTANCES + " instances with history took " + time + "ms.");
+        logToFile((double) time);
+    }
+
+    private long create(MotechDataService service, EntityDto entityDto)
+            throws IllegalAccessException, InstantiationException, ClassNotFoundException {
+        List<Object> instances = new ArrayList<>();
+        for (int i = 0; i < TEST_INSTANCES; i++) {
+            instances.add(generator.makeDummyInstance(entityDto.getId()));
+        }
+
+        long startTime = System.nanoTime();
+        for (Object instance : instances) {
+            service.create(instance);
+        }
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    private long update(MotechDataService service, EntityDto entityDto)
+            throws IllegalAccessException, InstantiationException, ClassNotFoundException {
+        List<Object> instances = service.retrieveAll();
+        List<FieldDto> fields = entityService.getEntityFields(entityDto.getId());
+
+        // every update has to change the instance, otherwise no history would be recorded
+        for (Object instance : instances) {
+            Object values = generator.makeDummyInstance(entityDto.getId());
+
+            for (FieldDto field : fields) {
+                String fieldName = field.getBasic().getName();
+                if (!ArrayUtils.contains(GENERATED_FIELD_NAMES, fieldName)) {
+                    PropertyUtil.safeSetProperty(instance, fieldName, PropertyUtil.safeGetProperty(values, fieldName));
+                }
+            }
+        }
+
+        long startTime = System.nanoTime();
+        for (Object instance : instances) {
+            service.update(instance);
+        }
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    private EntityDto getEntity(int number) {
+        return entityService.getEntityByClassName(String.format("%s.%s%d", Constants.PackagesGenerated.ENTITY,
+                generator.getEntityPrefix(), number));
+    }
+}
@@ -872,6 +872,31 @@ public class MdsDdeBundleIT extends BasePaxIT {
         assertEquals(asList("txBook1", "txBook2"), extract(allBooks, on(Book.class).getTitle()));
     }
 
+    @Test
+    public void shouldCreateUpdateAndDeleteBooksInBatches() {
+        List<Book> created = bookDataService.createAll(asList(new Book("batchBook1"), new Book("batchBook2"),
+                new Book("batchBook3")));
+        assertEquals(3, created.size());
+
+        List<Book> allBooks = bookDataService.retrieveAll();
+        assertEquals(asList("batchBook1", "batchBook2", "batchBook3"), extract(allBooks, on(Book.class).getTitle()));
+
+        Book transientBook = new Book("batchBook2-updated");
+        transientBook.setId(allBooks.get(1).getId());
+        allBooks.get(0).setTitle("batchBook1-updated");
+
+        List<Book> updated = bookDataService.updateAll(asList(allBooks.get(0), transientBook, new Book("batchBook4")));
+        assertEquals(asList("batchBook1-updated", "batchBook2-updated", "batchBook4"),
+                extract(updated, on(Book.class).getTitle()));
+        assertEquals(4, bookDataService.count());
+
+        long deleted = bookDataService.deleteByIds(asList(allBooks.get(0).getId(), allBooks.get(2).getId(), -1L));
+        assertEquals(2, deleted);
+
+        allBooks = bookDataService.retrieveAll();
+        assertEquals(asList("batchBook2-updated", "batchBook4"), extract(allBooks, on(Book.class).getTitle()));
+    }
+
     @Test
     public void shouldRollbackTransactions() {
         boolean exCaught = false;
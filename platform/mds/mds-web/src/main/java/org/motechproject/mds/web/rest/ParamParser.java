@@ -1,10 +1,13 @@
 package org.motechproject.mds.web.rest;
 
 import org.apache.commons.lang.StringUtils;
+import org.motechproject.mds.query.QueryCursor;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.util.Order;
 import org.motechproject.mds.web.exception.InvalidParameterException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -20,6 +23,7 @@ public final class ParamParser {
     public static final String LOOKUP_NAME = "lookup";
     public static final String ID = "id";
     public static final String INCLUDE_BLOB = "includeBlob";
+    public static final String PAGE_TOKEN = "pageToken";
 
     public static QueryParams buildQueryParams(Map<String, String> requestParams) {
         Integer page;
@@ -45,7 +49,12 @@ public final class ParamParser {
 
         order = buildOrder(sortBy, orderDir);
 
-        return new QueryParams(page, pageSize, order);
+        List<Order> orderList = new ArrayList<>();
+        if (order != null) {
+            orderList.add(order);
+        }
+
+        return new QueryParams(page, pageSize, orderList, getCursor(requestParams));
     }
 
     public static String getLookupName(Map<String, String> requestParams) {
@@ -85,6 +94,16 @@ public final class ParamParser {
         return includeBlob;
     }
 
+    private static QueryCursor getCursor(Map<String, String> requestParams) {
+        String token = requestParams.get(PAGE_TOKEN);
+
+        try {
+            return StringUtils.isBlank(token) ? null : QueryCursor.fromToken(token);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParameterException("Given page token is not valid!", e);
+        }
+    }
+
     private static Integer getInteger(Map<String, String> requestParams, String key, Integer defaultVal) {
         return requestParams.containsKey(key) ? Integer.valueOf(requestParams.get(key)) : defaultVal;
     }
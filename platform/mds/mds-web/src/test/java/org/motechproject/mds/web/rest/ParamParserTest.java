@@ -1,9 +1,12 @@
 package org.motechproject.mds.web.rest;
 
 import org.junit.Test;
+import org.motechproject.mds.query.QueryCursor;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.util.Order;
+import org.motechproject.mds.web.exception.InvalidParameterException;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -52,6 +55,30 @@ public class ParamParserTest {
         assertEquals(Order.Direction.ASC, queryParams.getOrderList().get(0).getDirection());
     }
 
+    @Test
+    public void shouldBuildQueryParamsWithPageToken() {
+        QueryCursor cursor = new QueryCursor(21L, Arrays.<Object>asList("name"));
+
+        Map<String, String> requestParams = new HashMap<>();
+        requestParams.put("pageSize", "5");
+        requestParams.put("sort", "someColumn");
+        requestParams.put("pageToken", cursor.toToken());
+
+        QueryParams queryParams = ParamParser.buildQueryParams(requestParams);
+
+        assertTrue(queryParams.isCursorSet());
+        assertEquals(cursor, queryParams.getCursor());
+        assertEquals(Integer.valueOf(5), queryParams.getPageSize());
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void shouldThrowExceptionForInvalidPageToken() {
+        Map<String, String> requestParams = new HashMap<>();
+        requestParams.put("pageToken", "invalid");
+
+        ParamParser.buildQueryParams(requestParams);
+    }
+
     @Test
     public void shouldGetLookupName() {
         Map<String, String> requestParams = new HashMap<>();
@@ -141,21 +141,7 @@ public class EntityInfrastructureBuilderImpl implements EntityInfrastructureBuil
 
             CtClass interfaceClass = createOrRetrieveInterface(interfaceClassName, superInterface);
 
-            List<CtMethod> methods = new ArrayList<>();
-
-            // for each lookup we generate three methods - normal lookup, lookup with query params and
-            // a count method for the lookup
-            if (null != entity) {
-                List<LookupDto> lookups = schemaHolder.getLookups(entity);
-
-                for (LookupDto lookup : lookups) {
-                    for (LookupType lookupType : LookupType.values()) {
-                        LookupBuilder lookupBuilder = new LookupBuilder(entity, lookup, interfaceClass,
-                                lookupType, schemaHolder);
-                        methods.add(lookupBuilder.buildSignature());
-                    }
-                }
-            }
+            List<CtMethod> methods = buildLookupMethods(entity, interfaceClass, schemaHolder, false);
 
             // clear lookup methods before adding the new ones
             removeExistingMethods(interfaceClass);
@@ -185,21 +171,7 @@ public class EntityInfrastructureBuilderImpl implements EntityInfrastructureBuil
                 serviceClass.addInterface(serviceInterface);
             }
 
-            List<CtMethod> methods = new ArrayList<>();
-
-            // for each lookup we generate three methods - normal lookup, lookup with query params and
-            // a count method for the lookup
-            if (null != entity) {
-                List<LookupDto> lookups = schemaHolder.getLookups(entity);
-
-                for (LookupDto lookup : lookups) {
-                    for (LookupType lookupType : LookupType.values()) {
-                        LookupBuilder lookupBuilder = new LookupBuilder(entity, lookup, serviceClass,
-                                lookupType, schemaHolder);
-                        methods.add(lookupBuilder.buildMethod());
-                    }
-                }
-            }
+            List<CtMethod> methods = buildLookupMethods(entity, serviceClass, schemaHolder, true);
 
             // clear lookup methods before adding the new ones
             removeExistingMethods(serviceClass);
@@ -214,6 +186,29 @@ public class EntityInfrastructureBuilderImpl implements EntityInfrastructureBuil
         }
     }
 
+    private List<CtMethod> buildLookupMethods(EntityDto entity, CtClass declaring, SchemaHolder schemaHolder,
+                                              boolean withBody) throws CannotCompileException, NotFoundException {
+        List<CtMethod> methods = new ArrayList<>();
+
+        // for each lookup we generate four methods - normal lookup, lookup with query params,
+        // a count method and, for multi-return lookups, a method streaming the results to a callback
+        if (null != entity) {
+            List<LookupDto> lookups = schemaHolder.getLookups(entity);
+
+            for (LookupDto lookup : lookups) {
+                for (LookupType lookupType : LookupType.values()) {
+                    if (lookupType.isGeneratedFor(lookup)) {
+                        LookupBuilder lookupBuilder = new LookupBuilder(entity, lookup, declaring, lookupType,
+                                schemaHolder);
+                        methods.add(withBody ? lookupBuilder.buildMethod() : lookupBuilder.buildSignature());
+                    }
+                }
+            }
+        }
+
+        return methods;
+    }
+
     private static String getGenericSignature(String typeName) {
         ClassType classType = new ClassType(typeName);
         TypeParameter parameter = new TypeParameter("T", classType, null);
@@ -11,6 +11,7 @@ import org.motechproject.mds.domain.ClassData;
 import org.motechproject.mds.domain.ComboboxHolder;
 import org.motechproject.mds.domain.EntityType;
 import org.motechproject.mds.domain.RelationshipHolder;
+import org.motechproject.mds.dto.AdvancedSettingsDto;
 import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.dto.MetadataDto;
@@ -110,6 +111,7 @@ public class EntityMetadataBuilderImpl implements EntityMetadataBuilder {
         cmd.setDetachable(true);
         cmd.setIdentityType(IdentityType.APPLICATION);
         cmd.setPersistenceModifier(ClassPersistenceModifier.PERSISTENCE_CAPABLE);
+        cmd.setCacheable(isCacheable(entity, schemaHolder));
 
         addInheritanceMetadata(cmd, definition);
 
@@ -138,6 +140,8 @@ public class EntityMetadataBuilderImpl implements EntityMetadataBuilder {
         cmd.setDetachable(true);
         cmd.setIdentityType(IdentityType.APPLICATION);
         cmd.setPersistenceModifier(ClassPersistenceModifier.PERSISTENCE_CAPABLE);
+        // history and trash instances are never read often enough to be worth caching
+        cmd.setCacheable(false);
 
         InheritanceMetadata imd = cmd.newInheritanceMetadata();
         imd.setCustomStrategy("complete-table");
@@ -244,6 +248,11 @@ public class EntityMetadataBuilderImpl implements EntityMetadataBuilder {
         }
     }
 
+    private boolean isCacheable(EntityDto entity, SchemaHolder schemaHolder) {
+        AdvancedSettingsDto advancedSettings = schemaHolder.getAdvancedSettings(entity.getClassName());
+        return advancedSettings != null && advancedSettings.getCache().isEnabled();
+    }
+
     private void addInheritanceMetadata(ClassMetadata cmd, Class<?> definition) {
         Class<Inheritance> ann = ReflectionsUtil.getAnnotationClass(definition, Inheritance.class);
         Inheritance annotation = AnnotationUtils.findAnnotation(definition, ann);
@@ -17,6 +17,7 @@ import org.motechproject.mds.dto.LookupFieldType;
 import org.motechproject.mds.dto.SchemaHolder;
 import org.motechproject.mds.dto.TypeDto;
 import org.motechproject.mds.query.CollectionProperty;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.PropertyBuilder;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.util.JavassistUtil;
@@ -33,6 +34,7 @@ import java.util.Set;
 
 import static org.motechproject.mds.builder.impl.LookupType.COUNT;
 import static org.motechproject.mds.builder.impl.LookupType.SIMPLE;
+import static org.motechproject.mds.builder.impl.LookupType.STREAM;
 import static org.motechproject.mds.builder.impl.LookupType.WITH_QUERY_PARAMS;
 
 /**
@@ -103,12 +105,17 @@ class LookupBuilder {
         }
 
         // query params at the end for ordering/paging
-        if (WITH_QUERY_PARAMS == lookupType) {
+        if (WITH_QUERY_PARAMS == lookupType || STREAM == lookupType) {
             String queryParam = String.format("%s queryParams", QueryParams.class.getName());
 
             paramCollection.add(queryParam);
         }
 
+        // the callback receiving streamed results goes last
+        if (STREAM == lookupType) {
+            paramCollection.add(String.format("%s callback", InstanceCallback.class.getName()));
+        }
+
         String params = StringUtils.join(paramCollection, ", ");
         String signature = String.format("public %s %s(%s)", returnType(), lookupName, params);
         String methodAsString = body
@@ -253,6 +260,8 @@ class LookupBuilder {
         StringBuilder sb = new StringBuilder();
         if (COUNT == lookupType) {
             sb.append("return count(properties);");
+        } else if (STREAM == lookupType) {
+            sb.append("return forEach(properties, queryParams, callback);");
         } else {
             if (lookup.isSingleObjectReturn()) {
                 sb.append("Object result = retrieveUnique(properties");
@@ -284,7 +293,7 @@ class LookupBuilder {
     }
 
     private String returnType() {
-        if (lookupType == LookupType.COUNT) {
+        if (lookupType == LookupType.COUNT || lookupType == LookupType.STREAM) {
             return "long";
         } else if (lookup.isSingleObjectReturn()) {
             return className;
@@ -388,9 +397,15 @@ class LookupBuilder {
                 sb.append(JavassistUtil.genericSignature(paramType, genericType));
             }
         }
+        if (STREAM == lookupType) {
+            sb.append(JavassistUtil.toGenericParam(QueryParams.class.getName()));
+            sb.append(JavassistUtil.genericSignature(InstanceCallback.class.getName(), className));
+        }
         sb.append(')');
 
-        if (lookup.isSingleObjectReturn()) {
+        if (STREAM == lookupType) {
+            sb.append('J');
+        } else if (lookup.isSingleObjectReturn()) {
             sb.append(JavassistUtil.toGenericParam(className));
         } else {
             sb.append(JavassistUtil.genericSignature(List.class.getName(), className));
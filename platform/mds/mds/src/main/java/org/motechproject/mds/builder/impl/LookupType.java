@@ -1,7 +1,9 @@
 package org.motechproject.mds.builder.impl;
 
+import org.motechproject.mds.dto.LookupDto;
+
 /**
- * Represents the three lookup methods generated.
+ * Represents the lookup methods generated.
  */
 enum LookupType {
     /**
@@ -15,5 +17,13 @@ enum LookupType {
     /**
      * result count lookup.
      */
-    COUNT
+    COUNT,
+    /**
+     * Paged/ordered lookup streaming its results to a callback, generated only for multi-return lookups.
+     */
+    STREAM;
+
+    boolean isGeneratedFor(LookupDto lookup) {
+        return this != STREAM || !lookup.isSingleObjectReturn();
+    }
 }
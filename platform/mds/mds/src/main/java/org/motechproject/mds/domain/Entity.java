@@ -3,12 +3,14 @@ package org.motechproject.mds.domain;
 import org.apache.commons.lang.StringUtils;
 import org.motechproject.mds.dto.AdvancedSettingsDto;
 import org.motechproject.mds.dto.BrowsingSettingsDto;
+import org.motechproject.mds.dto.CacheSettingsDto;
 import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.dto.LookupDto;
 import org.motechproject.mds.dto.LookupFieldDto;
 import org.motechproject.mds.dto.RestOptionsDto;
 import org.motechproject.mds.dto.TrackingDto;
+import org.motechproject.mds.util.CacheMode;
 import org.motechproject.mds.util.ClassName;
 import org.motechproject.mds.util.LookupName;
 import org.motechproject.mds.util.SecurityMode;
@@ -88,6 +90,15 @@ public class Entity {
     @Persistent
     private Integer maxFetchDepth;
 
+    @Persistent
+    private CacheMode cacheMode;
+
+    @Persistent
+    private Integer cacheMaxSize;
+
+    @Persistent
+    private Integer cacheTimeToLive;
+
     @Persistent(mappedBy = ENTITY)
     @Element(dependent = TRUE)
     private List<Lookup> lookups;
@@ -526,6 +537,8 @@ public class Entity {
             tracking.setEntity(this);
         }
 
+        updateCacheSettings(draft.getCacheSettings());
+
         incrementVersion();
 
         securityMode = draft.getSecurityMode();
@@ -574,6 +587,7 @@ public class Entity {
         advancedSettingsDto.setBrowsing(getBrowsingSettings().toDto());
         advancedSettingsDto.setRestOptions(restDto);
         advancedSettingsDto.setTracking(trackingDto);
+        advancedSettingsDto.setCache(getCacheSettings());
 
         return advancedSettingsDto;
     }
@@ -583,6 +597,7 @@ public class Entity {
         updateBrowsingSettings(advancedSettings);
         updateRestOptions(advancedSettings);
         updateTracking(advancedSettings);
+        updateCacheSettings(advancedSettings.getCache());
     }
 
     protected void updateRestOptions(AdvancedSettingsDto advancedSettings) {
@@ -707,6 +722,29 @@ public class Entity {
         }
     }
 
+    @NotPersistent
+    public CacheSettingsDto getCacheSettings() {
+        CacheSettingsDto dto = new CacheSettingsDto();
+
+        dto.setMode(cacheMode);
+        if (null != cacheMaxSize) {
+            dto.setMaxSize(cacheMaxSize);
+        }
+        if (null != cacheTimeToLive) {
+            dto.setTimeToLive(cacheTimeToLive);
+        }
+
+        return dto;
+    }
+
+    public void updateCacheSettings(CacheSettingsDto cacheSettings) {
+        if (null != cacheSettings) {
+            cacheMode = cacheSettings.getMode();
+            cacheMaxSize = cacheSettings.getMaxSize();
+            cacheTimeToLive = cacheSettings.getTimeToLive();
+        }
+    }
+
     @NotPersistent
     public BrowsingSettings getBrowsingSettings() {
         return new BrowsingSettings(this);
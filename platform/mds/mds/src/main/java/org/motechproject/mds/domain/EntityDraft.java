@@ -69,6 +69,7 @@ public class EntityDraft extends Entity {
         updateBrowsingSettings(advancedSettings, true);
         updateRestOptions(advancedSettings);
         updateTracking(advancedSettings);
+        updateCacheSettings(advancedSettings.getCache());
     }
 
     public String getDraftOwnerUsername() {
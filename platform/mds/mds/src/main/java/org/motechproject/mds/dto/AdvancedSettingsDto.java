@@ -19,6 +19,7 @@ public class AdvancedSettingsDto {
     private List<LookupDto> indexes = new ArrayList<>();
     private RestOptionsDto restOptions = new RestOptionsDto();
     private BrowsingSettingsDto browsing = new BrowsingSettingsDto();
+    private CacheSettingsDto cache = new CacheSettingsDto();
     private UserPreferencesDto userPreferences;
 
     public Long getId() {
@@ -79,6 +80,14 @@ public class AdvancedSettingsDto {
         this.browsing = browsing;
     }
 
+    public CacheSettingsDto getCache() {
+        return cache;
+    }
+
+    public void setCache(CacheSettingsDto cache) {
+        this.cache = null != cache ? cache : new CacheSettingsDto();
+    }
+
     public UserPreferencesDto getUserPreferences() {
         return userPreferences;
     }
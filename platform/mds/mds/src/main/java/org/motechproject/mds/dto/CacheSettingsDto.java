@@ -0,0 +1,94 @@
+package org.motechproject.mds.dto;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.motechproject.mds.util.CacheMode;
+
+/**
+ * The <code>CacheSettingsDto</code> contains properties that describe how instances of an Entity
+ * are kept in the second level cache.
+ */
+public class CacheSettingsDto {
+
+    /**
+     * The default maximum number of cached instances of an entity.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private CacheMode mode;
+    private int maxSize;
+    private int timeToLive;
+
+    public CacheSettingsDto() {
+        this(CacheMode.OFF, DEFAULT_MAX_SIZE, 0);
+    }
+
+    public CacheSettingsDto(CacheMode mode, int maxSize, int timeToLive) {
+        this.mode = mode;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    public CacheMode getMode() {
+        return mode;
+    }
+
+    public void setMode(CacheMode mode) {
+        this.mode = null != mode ? mode : CacheMode.OFF;
+    }
+
+    /**
+     * @return the maximum number of cached instances, the least recently used ones are dropped once it is exceeded
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the number of seconds after which a cached instance is reloaded from the database,
+     * 0 if cached instances do not expire
+     */
+    public int getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(int timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    @JsonIgnore
+    public boolean isEnabled() {
+        return mode != CacheMode.OFF && maxSize > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return EqualsBuilder.reflectionEquals(this, obj);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+    }
+}
@@ -2,6 +2,9 @@ package org.motechproject.mds.dto;
 
 import org.apache.commons.lang.StringUtils;
 import org.motechproject.mds.exception.entity.EntityNotFoundException;
+import org.motechproject.mds.exception.lookup.LookupNotFoundException;
+import org.motechproject.mds.util.Constants;
+import org.motechproject.mds.util.LookupName;
 import org.motechproject.mds.util.TypeHelper;
 
 import java.lang.annotation.Annotation;
@@ -13,7 +16,9 @@ import java.util.Objects;
 
 /**
  * A class that holds the MDS schema - entities, types, fields, lookups, advanced settings and so on.
- * Used during MDS processing in order to avoid repeatedly querying the database.
+ * Used during MDS processing in order to avoid repeatedly querying the database. Once built, the holder
+ * is not modified, so the schema used for the latest generation of the entities bundle can be safely
+ * shared and used at runtime instead of the schema database.
  */
 public class SchemaHolder {
 
@@ -84,6 +89,46 @@ public class SchemaHolder {
         return entityHolder == null ? null : entityHolder.getLookups();
     }
 
+    public LookupDto getLookupByName(EntityDto entity, String lookupName) {
+        return getLookupByName(entity.getClassName(), lookupName);
+    }
+
+    public LookupDto getLookupByName(String entityClassName, String lookupName) {
+        List<LookupDto> lookups = getLookups(entityClassName);
+
+        if (lookups == null) {
+            throw new EntityNotFoundException(entityClassName);
+        }
+
+        for (LookupDto lookup : lookups) {
+            if (StringUtils.equals(lookupName, lookup.getLookupName())) {
+                return lookup;
+            }
+        }
+
+        return null;
+    }
+
+    public Map<String, FieldDto> getLookupFieldsMapping(EntityDto entity, String lookupName) {
+        LookupDto lookup = getLookupByName(entity, lookupName);
+
+        if (lookup == null) {
+            throw new LookupNotFoundException(entity.getName(), lookupName);
+        }
+
+        Map<String, FieldDto> fieldMap = new HashMap<>();
+        for (String lookupFieldName : lookup.getFieldsOrder()) {
+            FieldDto field = getFieldByName(entity, LookupName.getFieldName(lookupFieldName));
+            if (lookupFieldName.contains(".")) {
+                String relatedClass = field.getMetadataValue(Constants.MetadataKeys.RELATED_CLASS);
+                field = getFieldByName(relatedClass, LookupName.getRelatedFieldName(lookupFieldName));
+            }
+            fieldMap.put(lookupFieldName, field);
+        }
+
+        return fieldMap;
+    }
+
     public FieldDto getFieldByName(EntityDto entity, String fieldName) {
         return getFieldByName(entity.getClassName(), fieldName);
     }
@@ -5,6 +5,7 @@ import org.apache.commons.collections.Predicate;
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.jackson.annotate.JsonIgnore;
 import org.motechproject.mds.dto.AdvancedSettingsDto;
+import org.motechproject.mds.dto.CacheSettingsDto;
 import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.dto.LookupDto;
@@ -139,6 +140,11 @@ public class EntityInfo {
         return advancedSettings.getTracking().isAllowDeleteEvent();
     }
 
+    @JsonIgnore
+    public CacheSettingsDto getCacheSettings() {
+        return advancedSettings.getCache();
+    }
+
     @JsonIgnore
     public boolean isRestCreateEnabled() {
         return advancedSettings.getRestOptions().isCreate();
@@ -9,11 +9,36 @@ public class CsvImportException extends MdsException {
 
     private static final long serialVersionUID = -982424055742014159L;
 
+    private final int lastImportedRow;
+
     public CsvImportException(String message) {
         super(message);
+        this.lastImportedRow = 0;
     }
 
     public CsvImportException(String message, Throwable cause) {
+        this(message, cause, 0);
+    }
+
+    /**
+     * Constructs a new exception for an import that failed after some of the rows were imported.
+     *
+     * @param message the error message for the logs
+     * @param cause the cause of the exception
+     * @param lastImportedRow the number of the last row imported before the failure
+     */
+    public CsvImportException(String message, Throwable cause, int lastImportedRow) {
         super(message, cause);
+        this.lastImportedRow = lastImportedRow;
+    }
+
+    /**
+     * Returns the number of the last row, not counting the header, which was imported before the failure.
+     * Rows up to this one stay in the database, so this number of rows can be skipped when resuming the import.
+     *
+     * @return the number of the last imported row, 0 if no rows were imported
+     */
+    public int getLastImportedRow() {
+        return lastImportedRow;
     }
 }
@@ -0,0 +1,79 @@
+package org.motechproject.mds.jdo;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Represents statistics of the second level cache of a single entity.
+ */
+public class EntityCacheStatistics {
+
+    private final String className;
+    private final String mode;
+    private final int size;
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long evictionCount;
+
+    @ConstructorProperties({"className", "mode", "size", "hitCount", "missCount", "putCount", "evictionCount"})
+    public EntityCacheStatistics(String className, String mode, int size, long hitCount, long missCount,
+                                 long putCount, long evictionCount) {
+        this.className = className;
+        this.mode = mode;
+        this.size = size;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * @return the class name of the entity
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return the cache mode of the entity
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the number of instances currently in the cache
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of instances found in the cache
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of instances looked up in the cache, but not found there or expired
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of instances put into the cache
+     */
+    public long getPutCount() {
+        return putCount;
+    }
+
+    /**
+     * @return the number of instances removed from the cache, because it was full or they were changed,
+     * expired instances are not included, since they are only counted as misses
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+}
@@ -0,0 +1,27 @@
+package org.motechproject.mds.jdo;
+
+import java.util.List;
+
+/**
+ * JMX interface exposing statistics about the second level cache of MDS entities, broken down by entity.
+ * It is registered in the platform MBean server under the {@link #OBJECT_NAME} name.
+ */
+public interface EntityCacheStatisticsMXBean {
+
+    /**
+     * The name under which the statistics are registered in the platform MBean server.
+     */
+    String OBJECT_NAME = "org.motechproject.mds:type=EntityCacheStatistics";
+
+    /**
+     * Returns the statistics for all entities with the cache enabled.
+     *
+     * @return the list of statistics, one for each entity
+     */
+    List<EntityCacheStatistics> getEntityCacheStatistics();
+
+    /**
+     * Clears all collected statistics. Cached instances are kept.
+     */
+    void resetStatistics();
+}
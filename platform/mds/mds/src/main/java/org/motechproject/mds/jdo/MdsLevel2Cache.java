@@ -0,0 +1,274 @@
+package org.motechproject.mds.jdo;
+
+import org.datanucleus.NucleusContext;
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.SoftLevel2Cache;
+import org.datanucleus.identity.SingleFieldId;
+import org.motechproject.commons.api.MBeanUtils;
+import org.motechproject.commons.date.util.DateUtil;
+import org.motechproject.mds.dto.CacheSettingsDto;
+import org.motechproject.mds.util.CacheMode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The second level cache used by the MDS data persistence manager factory, registered in DataNucleus under
+ * the <code>mds</code> name. Only instances of entities with the cache enabled in their advanced settings
+ * are cached. The number of cached instances of every entity is bounded, the least recently used ones are
+ * dropped once the limit is exceeded, and instances can expire after the configured time. Instances are kept
+ * using soft references, so they can still be reclaimed by the garbage collector under memory pressure.
+ * Hit and miss statistics of every entity are exposed through JMX.
+ *
+ * @see org.motechproject.mds.dto.CacheSettingsDto
+ */
+public class MdsLevel2Cache extends SoftLevel2Cache implements EntityCacheStatisticsMXBean {
+
+    private static final long serialVersionUID = -4396381092513384512L;
+
+    private final transient ConcurrentMap<String, Region> regions = new ConcurrentHashMap<>();
+
+    public MdsLevel2Cache(NucleusContext nucleusCtx) {
+        super(nucleusCtx);
+        // replaces the cache of a previous persistence manager factory, there is only one for MDS data at a time
+        MBeanUtils.registerMBean(this, OBJECT_NAME);
+    }
+
+    /**
+     * Applies the cache settings of an entity. Instances of entities without settings are not cached.
+     *
+     * @param className the class name of the entity
+     * @param settings the cache settings of the entity
+     */
+    public void configure(String className, CacheSettingsDto settings) {
+        if (settings.isEnabled()) {
+            regions.put(className, new Region(settings));
+        } else {
+            regions.remove(className);
+        }
+    }
+
+    /**
+     * Removes the given instances of an entity from the cache.
+     *
+     * @param className the class name of the entity
+     * @param ids the ids of the instances to remove
+     */
+    public void evictInstances(String className, Collection<Long> ids) {
+        Region region = regions.get(className);
+
+        if (region != null) {
+            for (Object oid : region.findOids(new HashSet<Object>(ids))) {
+                evict(oid);
+            }
+        }
+    }
+
+    /**
+     * Removes all instances of an entity from the cache.
+     *
+     * @param className the class name of the entity
+     */
+    public void evictEntity(String className) {
+        Region region = regions.get(className);
+
+        if (region != null) {
+            for (Object oid : region.getOids()) {
+                evict(oid);
+            }
+        }
+    }
+
+    @Override
+    public CachedPC get(Object oid) {
+        Region region = getRegion(oid);
+        if (region == null) {
+            return null;
+        }
+
+        CachedPC pc = region.isLive(oid) ? super.get(oid) : null;
+
+        if (pc == null) {
+            region.misses.increment();
+            // drops the expired instance, or the bookkeeping of an instance reclaimed by the garbage collector,
+            // these are counted as misses only
+            region.remove(oid);
+            super.evict(oid);
+        } else {
+            region.hits.increment();
+        }
+
+        return pc;
+    }
+
+    @Override
+    public CachedPC put(Object oid, CachedPC pc) {
+        Region region = getRegion(oid);
+        if (region == null || pc == null) {
+            return null;
+        }
+
+        Object eldest = region.add(oid);
+        if (eldest != null) {
+            region.evictions.increment();
+            super.evict(eldest);
+        }
+
+        region.puts.increment();
+        return super.put(oid, pc);
+    }
+
+    @Override
+    public void putAll(Map<Object, CachedPC> objs) {
+        for (Map.Entry<Object, CachedPC> entry : objs.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void evict(Object oid) {
+        Region region = getRegion(oid);
+        if (region != null && region.remove(oid)) {
+            region.evictions.increment();
+        }
+
+        super.evict(oid);
+    }
+
+    @Override
+    public void evictAll() {
+        super.evictAll();
+
+        for (Region region : regions.values()) {
+            region.clear();
+        }
+    }
+
+    @Override
+    public void evictAll(Class pcClass, boolean subclasses) {
+        super.evictAll(pcClass, subclasses);
+
+        Region region = regions.get(pcClass.getName());
+        if (region != null) {
+            region.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        MBeanUtils.unregisterMBean(OBJECT_NAME);
+        super.close();
+    }
+
+    @Override
+    public List<EntityCacheStatistics> getEntityCacheStatistics() {
+        List<EntityCacheStatistics> statistics = new ArrayList<>();
+
+        for (Map.Entry<String, Region> entry : regions.entrySet()) {
+            Region region = entry.getValue();
+
+            statistics.add(new EntityCacheStatistics(entry.getKey(), region.mode.name(), region.size(),
+                    region.hits.sum(), region.misses.sum(), region.puts.sum(), region.evictions.sum()));
+        }
+
+        return statistics;
+    }
+
+    @Override
+    public void resetStatistics() {
+        for (Region region : regions.values()) {
+            region.hits.reset();
+            region.misses.reset();
+            region.puts.reset();
+            region.evictions.reset();
+        }
+    }
+
+    private Region getRegion(Object oid) {
+        return oid instanceof SingleFieldId
+                ? regions.get(((SingleFieldId) oid).getTargetClassName())
+                : null;
+    }
+
+    /**
+     * Keeps track of the cached instances of a single entity, in the order of their use, together with their
+     * expiration times. The instances themselves are stored by the parent cache.
+     */
+    private static final class Region {
+        private final CacheMode mode;
+        private final int maxSize;
+        private final long timeToLive;
+        private final LinkedHashMap<Object, Long> expirationTimes = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder puts = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        Region(CacheSettingsDto settings) {
+            this.mode = settings.getMode();
+            this.maxSize = settings.getMaxSize();
+            this.timeToLive = TimeUnit.SECONDS.toMillis(settings.getTimeToLive());
+        }
+
+        synchronized boolean isLive(Object oid) {
+            Long expirationTime = expirationTimes.get(oid);
+            return expirationTime != null && expirationTime > DateUtil.now().getMillis();
+        }
+
+        /**
+         * Adds the instance, returns the least recently used one if it had to be dropped in order to
+         * stay within the size limit.
+         */
+        synchronized Object add(Object oid) {
+            expirationTimes.put(oid, timeToLive > 0 ? DateUtil.now().getMillis() + timeToLive : Long.MAX_VALUE);
+
+            if (expirationTimes.size() > maxSize) {
+                Iterator<Object> it = expirationTimes.keySet().iterator();
+                Object eldest = it.next();
+                it.remove();
+                return eldest;
+            }
+
+            return null;
+        }
+
+        synchronized boolean remove(Object oid) {
+            return expirationTimes.remove(oid) != null;
+        }
+
+        synchronized Set<Object> findOids(Set<Object> ids) {
+            Set<Object> oids = new HashSet<>();
+
+            for (Object oid : expirationTimes.keySet()) {
+                if (ids.contains(((SingleFieldId) oid).getKeyAsObject())) {
+                    oids.add(oid);
+                }
+            }
+
+            return oids;
+        }
+
+        synchronized Set<Object> getOids() {
+            return new HashSet<>(expirationTimes.keySet());
+        }
+
+        synchronized int size() {
+            return expirationTimes.size();
+        }
+
+        synchronized void clear() {
+            expirationTimes.clear();
+        }
+    }
+}
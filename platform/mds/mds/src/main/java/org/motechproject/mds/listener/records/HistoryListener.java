@@ -8,7 +8,8 @@ import javax.jdo.listener.StoreLifecycleListener;
 /**
  * The history listener which listens to store events.
  * After the object gets stored this listener will create its history
- * using the {@link org.motechproject.mds.service.HistoryService}. Listener
+ * using the {@link org.motechproject.mds.service.HistoryService}. Before the object gets
+ * stored the listener passes it to the service, so that its changed fields can be captured. Listener
  * operations are executed in one transaction with the actual store.
  */
 public class HistoryListener extends BaseListener<HistoryService> implements StoreLifecycleListener {
@@ -17,6 +18,9 @@ public class HistoryListener extends BaseListener<HistoryService> implements Sto
     public void preStore(InstanceLifecycleEvent event) {
         Object instance = event.getSource();
         getLogger().trace("Pre-store event received for {}", instance);
+
+        // changes are flushed once the instance gets stored, so they have to be captured before
+        getService().beforeStore(instance);
     }
 
     @Override
@@ -1,5 +1,6 @@
 package org.motechproject.mds.lookup;
 
+import org.apache.commons.lang.ClassUtils;
 import org.apache.commons.lang.reflect.MethodUtils;
 import org.motechproject.commons.api.Range;
 import org.motechproject.mds.domain.ComboboxHolder;
@@ -9,6 +10,7 @@ import org.motechproject.mds.dto.LookupFieldDto;
 import org.motechproject.mds.dto.LookupFieldType;
 import org.motechproject.mds.exception.field.FieldNotFoundException;
 import org.motechproject.mds.exception.lookup.LookupExecutorException;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.util.LookupName;
@@ -18,11 +20,20 @@ import org.datanucleus.store.query.QueryNotUniqueException;
 
 import javax.jdo.JDOUserException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class allows executing lookups by providing the lookup name
@@ -30,15 +41,24 @@ import java.util.Set;
  * by the REST api and the Databrowser UI for executing lookups based
  * on only metadata. The dataservice and metadata must be provided during
  * construction.
+ * <p/>
+ * The executor compiles the lookup once, when it is executed for the first time: the types and converters
+ * of the lookup arguments are resolved, and the lookup methods of the data service are bound to method handles.
+ * Executors should therefore be reused for subsequent executions of the same lookup.
  */
 public class LookupExecutor {
 
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
     private final MotechDataService dataService;
     private final LookupDto lookup;
     private final Map<String, FieldDto> fieldsByName;
     private final Class entityClass;
     private final ClassLoader classLoader;
 
+    private volatile List<LookupArgument> arguments;
+    private final ConcurrentMap<LookupMethod, BoundLookupMethod> methods = new ConcurrentHashMap<>();
+
     public LookupExecutor(MotechDataService dataService, LookupDto lookup, Map<String, FieldDto> fieldsByName) {
         this.dataService = dataService;
         this.lookup = lookup;
@@ -53,19 +73,17 @@ public class LookupExecutor {
 
     public Object execute(Map<String, ?> lookupMap, QueryParams queryParams) {
         List<Object> args = getLookupArgs(lookupMap);
-        List<Class> argTypes = buildArgTypes();
         String lookupExceptionMessage = "Unable to execute lookup ";
         String lookupExceptionMessageKey = "mds.error.lookupExecError";
 
+        LookupMethod lookupMethod = LookupMethod.LOOKUP;
         if (queryParams != null) {
             args.add(queryParams);
-            argTypes.add(QueryParams.class);
+            lookupMethod = LookupMethod.LOOKUP_WITH_PARAMS;
         }
 
         try {
-            return MethodUtils.invokeMethod(dataService, lookup.getMethodName(),
-                    args.toArray(new Object[args.size()]),
-                    argTypes.toArray(new Class[argTypes.size()]));
+            return invoke(lookupMethod, args);
         } catch (NoSuchMethodException | IllegalAccessException e) {
             throw new LookupExecutorException(lookupExceptionMessage + lookup.getLookupName() + ".", e, null);
         } catch (InvocationTargetException e) {
@@ -82,49 +100,159 @@ public class LookupExecutor {
         }
     }
 
-    public long executeCount(Map<String, ?> lookupMap) {
+    /**
+     * Executes the lookup streaming its results to the given callback. Only multi-return lookups can be streamed.
+     *
+     * @param lookupMap the lookup parameters
+     * @param queryParams query parameters to be used retrieving instances, may be null
+     * @param callback the callback processing the instances
+     * @return the number of processed instances
+     */
+    public long executeForEach(Map<String, ?> lookupMap, QueryParams queryParams, InstanceCallback callback) {
         List<Object> args = getLookupArgs(lookupMap);
-        List<Class> argTypes = buildArgTypes();
 
-        String countMethodName = LookupName.lookupCountMethod(lookup.getMethodName());
+        args.add(queryParams);
+        args.add(callback);
+
+        try {
+            return (long) invoke(LookupMethod.LOOKUP_FOR_EACH, args);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new LookupExecutorException("Unable to execute lookup " + lookup.getLookupName() + ".", e, null);
+        }
+    }
+
+    public boolean isSingleObjectReturn() {
+        return lookup.isSingleObjectReturn();
+    }
+
+    /**
+     * Returns the data service used for executing the lookup.
+     *
+     * @return the data service
+     */
+    public MotechDataService getDataService() {
+        return dataService;
+    }
+
+    public long executeCount(Map<String, ?> lookupMap) {
+        List<Object> args = getLookupArgs(lookupMap);
 
         try {
-            return (long) MethodUtils.invokeMethod(dataService, countMethodName,
-                    args.toArray(new Object[args.size()]),
-                    argTypes.toArray(new Class[argTypes.size()]));
+            return (long) invoke(LookupMethod.COUNT, args);
         } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
             throw new LookupExecutorException("Unable to execute count lookup " + lookup.getLookupName() + ".", e, null);
         }
     }
 
+    private Object invoke(LookupMethod lookupMethod, List<Object> args)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        BoundLookupMethod method = getMethod(lookupMethod);
+        Object[] argArray = args.toArray(new Object[args.size()]);
 
-    private List<Object> getLookupArgs(Map<String, ?> paramMap) {
-        List<Object> args = new ArrayList<>();
-        for (LookupFieldDto lookupField : lookup.getLookupFields()) {
-            FieldDto field = fieldsByName.get(lookupField.getLookupFieldName());
-            if (field == null) {
-                throw new FieldNotFoundException(entityClass.getName(), lookupField.getName());
-            }
+        method.checkArguments(argArray);
 
-            Object val = paramMap.get(lookupField.getLookupFieldName());
+        try {
+            return (Object) method.handle.invokeExact(argArray);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // the arguments have been checked, so the exception comes from the lookup itself
+            throw new InvocationTargetException(e);
+        }
+    }
 
-            String typeClass = getTypeClass(field);
-            String genericType = getGenericTypeClass(field);
+    private BoundLookupMethod getMethod(LookupMethod lookupMethod) throws NoSuchMethodException, IllegalAccessException {
+        BoundLookupMethod boundMethod = methods.get(lookupMethod);
 
-            Object arg;
-            if (lookupField.getType() == LookupFieldType.RANGE) {
-                arg = TypeHelper.toRange(val, typeClass);
-            } else if (lookupField.getType() == LookupFieldType.SET) {
-                arg = TypeHelper.toSet(val, typeClass, classLoader);
-            } else {
-                arg = TypeHelper.parse(val, lookupField.isUseGenericParam() ? genericType : typeClass, classLoader);
+        if (boundMethod == null) {
+            List<Class> argTypes = new ArrayList<>();
+            for (LookupArgument argument : getArguments()) {
+                argTypes.add(argument.argType);
             }
+            argTypes.addAll(lookupMethod.extraArgTypes);
+
+            String methodName = lookupMethod.getMethodName(lookup);
+            Class[] parameterTypes = argTypes.toArray(new Class[argTypes.size()]);
 
-            args.add(arg);
+            Method method = MethodUtils.getMatchingAccessibleMethod(dataService.getClass(), methodName, parameterTypes);
+            if (method == null) {
+                throw new NoSuchMethodException("No such accessible method: " + methodName + "() on object: "
+                        + dataService.getClass().getName());
+            }
+
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(method)
+                    .bindTo(dataService)
+                    .asSpreader(Object[].class, parameterTypes.length)
+                    .asType(INVOKER_TYPE);
+            boundMethod = new BoundLookupMethod(handle, method.getParameterTypes());
+            methods.put(lookupMethod, boundMethod);
         }
+
+        return boundMethod;
+    }
+
+    private List<Object> getLookupArgs(Map<String, ?> paramMap) {
+        List<LookupArgument> lookupArguments = getArguments();
+        List<Object> args = new ArrayList<>(lookupArguments.size() + 2);
+
+        for (LookupArgument argument : lookupArguments) {
+            args.add(argument.convert(paramMap.get(argument.lookupFieldName), classLoader));
+        }
+
         return args;
     }
 
+    private List<LookupArgument> getArguments() {
+        List<LookupArgument> compiled = arguments;
+
+        if (compiled == null) {
+            compiled = new ArrayList<>();
+            for (LookupFieldDto lookupField : lookup.getLookupFields()) {
+                compiled.add(compileArgument(lookupField));
+            }
+            compiled = Collections.unmodifiableList(compiled);
+            arguments = compiled;
+        }
+
+        return compiled;
+    }
+
+    private LookupArgument compileArgument(LookupFieldDto lookupField) {
+        FieldDto field = fieldsByName.get(lookupField.getLookupFieldName());
+        if (field == null) {
+            throw new FieldNotFoundException(entityClass.getName(), lookupField.getName());
+        }
+
+        String typeClass = getTypeClass(field);
+
+        switch (lookupField.getType()) {
+            case RANGE:
+                return new LookupArgument(lookupField, typeClass, Range.class, null);
+            case SET:
+                return new LookupArgument(lookupField, typeClass, Set.class, null);
+            default:
+                String valueClass = lookupField.isUseGenericParam() ? getGenericTypeClass(field) : typeClass;
+                Class<?> argType = loadClass(getTypeClassName(lookupField, field));
+                // values which are already of the parameter type don't have to be parsed
+                Class<?> passedType = (valueClass != null && valueClass.equals(argType.getName())
+                        && !Collection.class.isAssignableFrom(argType)) ? argType : null;
+
+                return new LookupArgument(lookupField, valueClass, argType, passedType);
+        }
+    }
+
+    private Class<?> loadClass(String typeClassName) {
+        try {
+            ClassLoader safeClassLoader = null == classLoader
+                    ? MDSClassLoader.getInstance()
+                    : classLoader;
+
+            return safeClassLoader.loadClass(typeClassName);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Type not found " + typeClassName, e);
+        }
+    }
+
     private String getTypeClass(FieldDto field) {
         String typeClass;
 
@@ -152,41 +280,6 @@ public class LookupExecutor {
         return genericType;
     }
 
-    private List<Class> buildArgTypes() {
-        List<Class> argTypes = new ArrayList<>();
-
-        for (LookupFieldDto lookupField : lookup.getLookupFields()) {
-
-            switch (lookupField.getType()) {
-                case RANGE:
-                    argTypes.add(Range.class);
-                    break;
-                case SET:
-                    argTypes.add(Set.class);
-                    break;
-                default:
-                    FieldDto field = fieldsByName.get(lookupField.getLookupFieldName());
-                    if (field == null) {
-                        throw new FieldNotFoundException(entityClass.getName(), lookupField.getName());
-                    }
-
-                    String typeClassName = getTypeClassName(lookupField, field);
-
-                    try {
-                        ClassLoader safeClassLoader = null == classLoader
-                                ? MDSClassLoader.getInstance()
-                                : classLoader;
-
-                        argTypes.add(safeClassLoader.loadClass(typeClassName));
-                    } catch (ClassNotFoundException e) {
-                        throw new IllegalStateException("Type not found " + typeClassName, e);
-                    }
-            }
-        }
-
-        return argTypes;
-    }
-
     private String getTypeClassName(LookupFieldDto lookupField, FieldDto field) {
         String typeClassName = (field.getType().isTextArea()) ? "java.lang.String" : field.getType().getTypeClass();
 
@@ -202,4 +295,97 @@ public class LookupExecutor {
 
         return typeClassName;
     }
+
+    /**
+     * A compiled argument of the lookup, converting the passed value to the type expected by the lookup method.
+     */
+    private static final class LookupArgument {
+        private final String lookupFieldName;
+        private final LookupFieldType type;
+        private final String valueClass;
+        private final Class<?> argType;
+        private final Class<?> passedType;
+
+        private LookupArgument(LookupFieldDto lookupField, String valueClass, Class<?> argType, Class<?> passedType) {
+            this.lookupFieldName = lookupField.getLookupFieldName();
+            this.type = lookupField.getType();
+            this.valueClass = valueClass;
+            this.argType = argType;
+            this.passedType = passedType;
+        }
+
+        private Object convert(Object val, ClassLoader classLoader) {
+            if (type == LookupFieldType.RANGE) {
+                return TypeHelper.toRange(val, valueClass);
+            } else if (type == LookupFieldType.SET) {
+                return TypeHelper.toSet(val, valueClass, classLoader);
+            } else if (passedType != null && passedType.isInstance(val)) {
+                return val;
+            } else {
+                return TypeHelper.parse(val, valueClass, classLoader);
+            }
+        }
+    }
+
+    /**
+     * The methods of the data service which are used for executing the lookup.
+     */
+    private enum LookupMethod {
+        LOOKUP,
+        LOOKUP_WITH_PARAMS(QueryParams.class),
+        LOOKUP_FOR_EACH(QueryParams.class, InstanceCallback.class),
+        COUNT {
+            @Override
+            String getMethodName(LookupDto lookup) {
+                return LookupName.lookupCountMethod(lookup.getMethodName());
+            }
+        };
+
+        private final List<Class> extraArgTypes;
+
+        LookupMethod(Class... extraArgTypes) {
+            this.extraArgTypes = Arrays.<Class>asList(extraArgTypes);
+        }
+
+        String getMethodName(LookupDto lookup) {
+            return lookup.getMethodName();
+        }
+    }
+
+    /**
+     * A lookup method of the data service, bound to a method handle taking the arguments as an array.
+     */
+    private static final class BoundLookupMethod {
+        private final MethodHandle handle;
+        private final Class[] parameterTypes;
+
+        private BoundLookupMethod(MethodHandle handle, Class[] parameterTypes) {
+            this.handle = handle;
+            this.parameterTypes = parameterTypes;
+        }
+
+        /**
+         * Checks the given arguments against the parameters of the method, the same way a reflective call does, so
+         * that a mismatch is not mistaken for an exception thrown by the lookup.
+         *
+         * @param args the arguments
+         * @throws IllegalArgumentException if the arguments don't match the parameters
+         */
+        private void checkArguments(Object[] args) {
+            if (args.length != parameterTypes.length) {
+                throw new IllegalArgumentException("wrong number of arguments");
+            }
+
+            for (int i = 0; i < args.length; ++i) {
+                Class type = parameterTypes[i];
+                boolean matches = (args[i] == null)
+                        ? !type.isPrimitive()
+                        : ClassUtils.primitiveToWrapper(type).isInstance(args[i]);
+
+                if (!matches) {
+                    throw new IllegalArgumentException("argument type mismatch");
+                }
+            }
+        }
+    }
 }
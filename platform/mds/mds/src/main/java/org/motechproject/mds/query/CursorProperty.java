@@ -0,0 +1,109 @@
+package org.motechproject.mds.query;
+
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.mds.util.Constants;
+import org.motechproject.mds.util.Order;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The <code>CursorProperty</code> class represents a property that will be used in JDO query
+ * and restricts the results to instances placed after the given {@link QueryCursor}, in the given order.
+ * For an order on fields f1, f2 and the id, the generated filter has the following form:
+ * {@code (f1 > v1) || (f1 == v1 && f2 > v2) || (f1 == v1 && f2 == v2 && id > lastId)}, where the comparison
+ * is reversed for descending orders.
+ */
+public class CursorProperty extends Property<QueryCursor> {
+
+    private final List<Order> orderList = new ArrayList<>();
+
+    public CursorProperty(QueryCursor cursor, List<Order> orderList) {
+        super(Constants.Util.ID_FIELD_NAME, cursor, Long.class.getName());
+
+        this.orderList.addAll(getOrderWithId(orderList));
+
+        if (this.orderList.size() - 1 != cursor.getValues().size()) {
+            throw new IllegalArgumentException(String.format("The cursor has %d values, but the query is ordered by %d fields",
+                    cursor.getValues().size(), this.orderList.size() - 1));
+        }
+    }
+
+    /**
+     * Returns the order of a query using a cursor. The id is always the last key, so that positions are unique,
+     * it is added in ascending order if the given order does not contain it.
+     *
+     * @param orderList the order requested for the query
+     * @return the order of the query, ending with the id
+     * @throws IllegalArgumentException if the given order contains the id, but not as the last key
+     */
+    static List<Order> getOrderWithId(List<Order> orderList) {
+        List<Order> orderWithId = new ArrayList<>(orderList);
+
+        for (int i = 0; i < orderList.size() - 1; ++i) {
+            if (Constants.Util.ID_FIELD_NAME.equals(orderList.get(i).getField())) {
+                throw new IllegalArgumentException("The id must be the last order of a query using a cursor");
+            }
+        }
+
+        if (orderList.isEmpty() || !Constants.Util.ID_FIELD_NAME.equals(orderList.get(orderList.size() - 1).getField())) {
+            orderWithId.add(new Order(Constants.Util.ID_FIELD_NAME, Order.Direction.ASC));
+        }
+
+        return orderWithId;
+    }
+
+    @Override
+    protected CharSequence generateFilter(int idx) {
+        List<String> alternatives = new ArrayList<>(orderList.size());
+
+        for (int key = 0; key < orderList.size(); ++key) {
+            List<String> conditions = new ArrayList<>(key + 1);
+
+            for (int previous = 0; previous < key; ++previous) {
+                conditions.add(String.format("%s == %s", orderList.get(previous).getField(), paramName(idx, previous)));
+            }
+
+            Order order = orderList.get(key);
+            String operator = order.getDirection() == Order.Direction.DESC ? "<" : ">";
+            conditions.add(String.format("%s %s %s", order.getField(), operator, paramName(idx, key)));
+
+            alternatives.add("(" + StringUtils.join(conditions, " && ") + ")");
+        }
+
+        return "(" + StringUtils.join(alternatives, " || ") + ")";
+    }
+
+    @Override
+    protected CharSequence generateDeclareParameter(int idx) {
+        List<Object> keys = keys();
+        List<String> declarations = new ArrayList<>(keys.size());
+
+        for (int key = 0; key < keys.size(); ++key) {
+            declarations.add(String.format("%s %s", keys.get(key).getClass().getName(), paramName(idx, key)));
+        }
+
+        return StringUtils.join(declarations, ", ");
+    }
+
+    @Override
+    public Collection unwrap() {
+        return shouldIgnoreThisProperty() ? null : keys();
+    }
+
+    @Override
+    protected boolean shouldIgnoreThisProperty() {
+        return getValue() == null;
+    }
+
+    private List<Object> keys() {
+        List<Object> keys = new ArrayList<>(getValue().getValues());
+        keys.add(getValue().getId());
+        return keys;
+    }
+
+    private static String paramName(int idx, int key) {
+        return String.format("param%dc%d", idx, key);
+    }
+}
@@ -0,0 +1,18 @@
+package org.motechproject.mds.query;
+
+/**
+ * Receives entity instances streamed by Motech Data Services one at a time, instead of in a
+ * fully materialized list. Instances are evicted from the persistence manager once they are
+ * processed, so implementations should neither keep nor modify them after this method returns.
+ *
+ * @param <T> the type of the streamed instances
+ */
+public interface InstanceCallback<T> {
+
+    /**
+     * Processes a single instance retrieved by the query.
+     *
+     * @param instance the retrieved instance
+     */
+    void process(T instance);
+}
@@ -0,0 +1,304 @@
+package org.motechproject.mds.query;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.joda.time.DateTime;
+import org.motechproject.mds.util.Constants;
+import org.motechproject.mds.util.Order;
+import org.motechproject.mds.util.PropertyUtil;
+
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The <code>QueryCursor</code> class represents the position of the last instance of a page, used for keyset
+ * (seek) pagination. Instead of skipping a number of rows, a query using the cursor only retrieves instances
+ * placed after that position in the order of the query, so retrieving deep pages is as fast as retrieving
+ * the first one. The position is made of the values of the ordered fields of the last instance, followed by its id,
+ * which is always used as the last order in order to keep the positions unique.
+ * <p/>
+ * A cursor can be converted to an opaque token, so that it can be passed to clients, for example over REST.
+ * Only the values of strings, numbers, booleans and dates can be stored in a token.
+ *
+ * @see org.motechproject.mds.query.QueryParams
+ */
+public final class QueryCursor implements Serializable {
+    private static final long serialVersionUID = -1856934279521958433L;
+
+    private static final String SEPARATOR = ",";
+    private static final char TYPE_SEPARATOR = ':';
+
+    private final Long id;
+    private final List<Object> values;
+
+    /**
+     * Creates a cursor placed after the instance with the given id, for queries ordered only by id.
+     *
+     * @param id the id of the last retrieved instance
+     */
+    public QueryCursor(Long id) {
+        this(id, Collections.emptyList());
+    }
+
+    /**
+     * Creates a cursor placed after the instance with the given values of the ordered fields and the given id.
+     *
+     * @param id the id of the last retrieved instance
+     * @param values the values of the ordered fields of the last retrieved instance, other than the id,
+     *               in the order of the query
+     */
+    public QueryCursor(Long id, List<Object> values) {
+        if (id == null) {
+            throw new IllegalArgumentException("The id of the last instance is required for a cursor");
+        }
+
+        List<Object> copy = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value == null) {
+                throw new IllegalArgumentException("Keyset pagination requires values of all ordered fields, "
+                        + "null values cannot be used in a cursor");
+            }
+            // persistent dates are wrapped by the persistence layer, they are used as query parameters as plain dates
+            copy.add(value instanceof Date ? new Date(((Date) value).getTime()) : value);
+        }
+
+        this.id = id;
+        this.values = Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Creates a cursor placed after the given instance, in a query with the given order.
+     *
+     * @param instance the last retrieved instance
+     * @param orderList the order of the query
+     * @return the cursor placed after the instance
+     */
+    public static QueryCursor after(Object instance, List<Order> orderList) {
+        List<Object> values = new ArrayList<>();
+
+        for (Order order : orderList) {
+            if (!Constants.Util.ID_FIELD_NAME.equals(order.getField())) {
+                values.add(PropertyUtil.safeGetProperty(instance, order.getField()));
+            }
+        }
+
+        Object id = PropertyUtil.safeGetProperty(instance, Constants.Util.ID_FIELD_NAME);
+
+        return new QueryCursor(id == null ? null : ((Number) id).longValue(), values);
+    }
+
+    /**
+     * Reads a cursor from the token created by {@link #toToken()}.
+     *
+     * @param token the token
+     * @return the cursor stored in the token
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    public static QueryCursor fromToken(String token) {
+        try {
+            String decoded = new String(Base64.decodeBase64(token), StandardCharsets.UTF_8);
+            String[] parts = StringUtils.splitPreserveAllTokens(decoded, SEPARATOR);
+
+            List<Object> values = new ArrayList<>();
+            for (int i = 1; i < parts.length; ++i) {
+                values.add(decodeValue(URLDecoder.decode(parts[i], StandardCharsets.UTF_8.name())));
+            }
+
+            return new QueryCursor(Long.valueOf(parts[0]), values);
+        } catch (UnsupportedEncodingException | RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor token: " + token, e);
+        }
+    }
+
+    /**
+     * Converts this cursor to an opaque, URL safe token.
+     *
+     * @return the token
+     * @throws IllegalArgumentException if one of the values cannot be stored in a token
+     */
+    public String toToken() {
+        StringBuilder sb = new StringBuilder(id.toString());
+
+        try {
+            for (Object value : values) {
+                sb.append(SEPARATOR).append(URLEncoder.encode(encodeValue(value), StandardCharsets.UTF_8.name()));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+
+        return Base64.encodeBase64URLSafeString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public List<Object> getValues() {
+        return values;
+    }
+
+    private static String encodeValue(Object value) {
+        ValueType type = ValueType.of(value);
+
+        if (type == null) {
+            throw new IllegalArgumentException("Values of type " + value.getClass().getName()
+                    + " cannot be stored in a cursor token");
+        }
+
+        return type.name() + TYPE_SEPARATOR + type.format(value);
+    }
+
+    private static Object decodeValue(String str) {
+        int separator = str.indexOf(TYPE_SEPARATOR);
+        return ValueType.valueOf(str.substring(0, separator)).parse(str.substring(separator + 1));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (o instanceof QueryCursor) {
+            QueryCursor other = (QueryCursor) o;
+
+            return ObjectUtils.equals(id, other.id) && ObjectUtils.equals(values, other.values);
+        }
+
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(id)
+                .append(values)
+                .toHashCode();
+    }
+
+    /**
+     * Types of values that can be stored in a token.
+     */
+    private enum ValueType {
+        STRING(String.class) {
+            @Override
+            Object parse(String str) {
+                return str;
+            }
+        },
+        INTEGER(Integer.class) {
+            @Override
+            Object parse(String str) {
+                return Integer.valueOf(str);
+            }
+        },
+        LONG(Long.class) {
+            @Override
+            Object parse(String str) {
+                return Long.valueOf(str);
+            }
+        },
+        SHORT(Short.class) {
+            @Override
+            Object parse(String str) {
+                return Short.valueOf(str);
+            }
+        },
+        DOUBLE(Double.class) {
+            @Override
+            Object parse(String str) {
+                return Double.valueOf(str);
+            }
+        },
+        FLOAT(Float.class) {
+            @Override
+            Object parse(String str) {
+                return Float.valueOf(str);
+            }
+        },
+        DECIMAL(BigDecimal.class) {
+            @Override
+            Object parse(String str) {
+                return new BigDecimal(str);
+            }
+        },
+        BOOLEAN(Boolean.class) {
+            @Override
+            Object parse(String str) {
+                return Boolean.valueOf(str);
+            }
+        },
+        DATE(Date.class) {
+            @Override
+            String format(Object value) {
+                return String.valueOf(((Date) value).getTime());
+            }
+
+            @Override
+            Object parse(String str) {
+                return new Date(Long.parseLong(str));
+            }
+        },
+        DATE_TIME(DateTime.class) {
+            @Override
+            String format(Object value) {
+                return String.valueOf(((DateTime) value).getMillis());
+            }
+
+            @Override
+            Object parse(String str) {
+                return new DateTime(Long.parseLong(str));
+            }
+        },
+        LOCAL_DATE(org.joda.time.LocalDate.class) {
+            @Override
+            Object parse(String str) {
+                return org.joda.time.LocalDate.parse(str);
+            }
+        },
+        JAVA_LOCAL_DATE(java.time.LocalDate.class) {
+            @Override
+            Object parse(String str) {
+                return java.time.LocalDate.parse(str);
+            }
+        },
+        JAVA_LOCAL_DATE_TIME(java.time.LocalDateTime.class) {
+            @Override
+            Object parse(String str) {
+                return java.time.LocalDateTime.parse(str);
+            }
+        };
+
+        private final Class<?> valueClass;
+
+        ValueType(Class<?> valueClass) {
+            this.valueClass = valueClass;
+        }
+
+        String format(Object value) {
+            return value.toString();
+        }
+
+        abstract Object parse(String str);
+
+        static ValueType of(Object value) {
+            for (ValueType type : values()) {
+                if (type.valueClass.isInstance(value)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+}
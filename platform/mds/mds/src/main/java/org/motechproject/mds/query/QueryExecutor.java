@@ -79,6 +79,13 @@ public final class QueryExecutor {
         return executeWithArray(query, filters.valuesForQuery(), restriction, QueryType.RETRIEVE);
     }
 
+    public static Object executeWithFilters(Query query, Filters filters, List<Property> properties,
+                                            InstanceSecurityRestriction restriction) {
+        // the values of properties follow the values of filters, as declared by QueryUtil#useFilters
+        Object[] values = ArrayUtils.addAll(filters.valuesForQuery(), properties.toArray());
+        return executeWithArray(query, values, restriction, QueryType.RETRIEVE);
+    }
+
     private static Object[] unwrap(Object[] values) {
         List<Object> unwrapped = new ArrayList<>();
 
@@ -12,7 +12,10 @@ import java.util.List;
 
 /**
  * Utility class containing parameters which control order and size of query results.
- * Used mainly for paging/ordering queries from the UI.
+ * Used mainly for paging/ordering queries from the UI. Results can be paged either by the page number,
+ * or by a {@link QueryCursor} placed after the last instance of the previous page. The latter (keyset pagination)
+ * does not require the database to skip the rows of the previous pages, so it should be used for browsing
+ * large data sets.
  */
 public class QueryParams implements Serializable {
     private static final long serialVersionUID = 8635166802886633897L;
@@ -20,6 +23,7 @@ public class QueryParams implements Serializable {
     private final Integer page;
     private final Integer pageSize;
     private final List<Order> orderList;
+    private final QueryCursor cursor;
 
     /**
      * Constant query parameter, that orders records ascending by ID.
@@ -65,6 +69,7 @@ public class QueryParams implements Serializable {
         this.page = page;
         this.pageSize = pageSize;
         this.orderList = new ArrayList<>();
+        this.cursor = null;
         if (order != null) {
             orderList.add(order);
         }
@@ -78,9 +83,23 @@ public class QueryParams implements Serializable {
      * @param orderList the list of order instructions that will be applied to the query
      */
     public QueryParams(Integer page, Integer pageSize, List<Order> orderList) {
+        this(page, pageSize, orderList, null);
+    }
+
+    /**
+     * Creates query parameters. If the cursor is given, the results will start after the position of the cursor
+     * and the page number will be ignored.
+     *
+     * @param page number of page
+     * @param pageSize amount of entries to include, per page
+     * @param orderList the list of order instructions that will be applied to the query
+     * @param cursor the position after which the results should start, null to use the page number
+     */
+    public QueryParams(Integer page, Integer pageSize, List<Order> orderList, QueryCursor cursor) {
         this.page = page;
         this.pageSize = pageSize;
         this.orderList = (orderList == null) ? new ArrayList<Order>() : orderList;
+        this.cursor = cursor;
     }
 
     public Integer getPage() {
@@ -95,6 +114,10 @@ public class QueryParams implements Serializable {
         return orderList;
     }
 
+    public QueryCursor getCursor() {
+        return cursor;
+    }
+
     public boolean isOrderSet() {
         return !orderList.isEmpty();
     }
@@ -103,6 +126,10 @@ public class QueryParams implements Serializable {
         return page != null && pageSize != null;
     }
 
+    public boolean isCursorSet() {
+        return cursor != null;
+    }
+
     public void addOrder(Order order) {
         orderList.add(order);
     }
@@ -147,7 +174,8 @@ public class QueryParams implements Serializable {
 
             return ObjectUtils.equals(page, other.page)
                     && ObjectUtils.equals(pageSize, other.pageSize)
-                    && ObjectUtils.equals(orderList, other.orderList);
+                    && ObjectUtils.equals(orderList, other.orderList)
+                    && ObjectUtils.equals(cursor, other.cursor);
         }
 
         return false;
@@ -159,6 +187,7 @@ public class QueryParams implements Serializable {
                 .append(page)
                 .append(pageSize)
                 .append(orderList)
+                .append(cursor)
                 .toHashCode();
     }
 }
@@ -4,10 +4,12 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.motechproject.mds.filter.Filters;
 import org.motechproject.mds.util.InstanceSecurityRestriction;
+import org.motechproject.mds.util.Order;
 
 import javax.jdo.Query;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +24,7 @@ import static org.motechproject.mds.util.SecurityUtil.getUsername;
 public final class QueryUtil {
 
     private static final String QUERY_CANNOT_BE_NULL = "Query cannot be null";
+    private static final String RESULTS_CACHED_EXTENSION = "datanucleus.query.results.cached";
 
     private QueryUtil() {
     }
@@ -32,7 +35,12 @@ public final class QueryUtil {
         }
 
         if (queryParams != null) {
-            if (queryParams.isPagingSet()) {
+            if (queryParams.isCursorSet()) {
+                // the cursor filter skips the previous pages, so only the size of the page is used
+                if (queryParams.getPageSize() != null) {
+                    query.setRange(0, queryParams.getPageSize());
+                }
+            } else if (queryParams.isPagingSet()) {
                 long page = queryParams.getPage();
                 long pageSize = queryParams.getPageSize();
 
@@ -42,21 +50,64 @@ public final class QueryUtil {
 
                 query.setRange(fromIncl, toExcl);
             }
-            if (queryParams.isOrderSet()) {
-                String order = StringUtils.join(queryParams.getOrderList(), ", ");
+            if (queryParams.isOrderSet() || queryParams.isCursorSet()) {
+                String order = StringUtils.join(getOrderList(queryParams), ", ");
                 query.setOrdering(order);
             }
         }
     }
 
+    /**
+     * Returns the properties extended with the filter of the cursor from the given query params, if it is set.
+     * The cursor filter is placed before the security restriction, so that it can be used with
+     * {@link #useFilter(javax.jdo.Query, java.util.List, org.motechproject.mds.util.InstanceSecurityRestriction)}.
+     *
+     * @param properties the properties used by the query
+     * @param queryParams the query params, may be null
+     * @return the properties including the cursor filter
+     */
+    public static List<Property> withCursor(List<Property> properties, QueryParams queryParams) {
+        if (queryParams == null || !queryParams.isCursorSet()) {
+            return properties;
+        }
+
+        List<Property> copy = new ArrayList<>(properties);
+        copy.add(new CursorProperty(queryParams.getCursor(), queryParams.getOrderList()));
+
+        return copy;
+    }
+
     public static void useFilters(Query query, Filters filters) {
+        useFilters(query, filters, Collections.<Property>emptyList());
+    }
+
+    /**
+     * Sets the filters on the query, joined with the given properties. If the filters do not require filtering,
+     * the query is left untouched, so that the filter of the properties set before is kept.
+     *
+     * @param query the query
+     * @param filters the filters
+     * @param properties the properties, such as the cursor filter, which values follow the values of the filters
+     */
+    public static void useFilters(Query query, Filters filters, List<Property> properties) {
         if (query == null) {
             throw new IllegalArgumentException(QUERY_CANNOT_BE_NULL);
         }
 
         if (filters != null && filters.requiresFiltering()) {
-            query.setFilter(filters.filterForQuery());
-            query.declareParameters(filters.paramsDeclarationForQuery());
+            Collection<CharSequence> filter = new ArrayList<>();
+            Collection<CharSequence> declareParameter = new ArrayList<>();
+
+            filter.add(filters.filterForQuery());
+            declareParameter.add(filters.paramsDeclarationForQuery());
+
+            for (int idx = 0; idx < properties.size(); ++idx) {
+                CollectionUtils.addIgnoreNull(filter, properties.get(idx).asFilter(idx));
+                CollectionUtils.addIgnoreNull(declareParameter, properties.get(idx).asDeclareParameter(idx));
+            }
+
+            query.setFilter(StringUtils.join(filter, " && "));
+            query.declareParameters(StringUtils.join(declareParameter, ", "));
         }
     }
 
@@ -141,6 +192,42 @@ public final class QueryUtil {
         return StringUtils.isNotEmpty(string) ? String.format(".*%s.*", string) : string;
     }
 
+    /**
+     * Sets whether the results of the query are kept in the query results cache of the persistence
+     * manager factory, so that executing the same query again does not hit the database.
+     *
+     * @param query the query to prepare
+     * @param cached true if the results should be cached
+     */
+    public static void useResultsCache(Query query, boolean cached) {
+        if (query == null) {
+            throw new IllegalArgumentException(QUERY_CANNOT_BE_NULL);
+        }
+
+        query.addExtension(RESULTS_CACHED_EXTENSION, String.valueOf(cached));
+    }
+
+    /**
+     * Prepares the query for streaming its results. The results are read from a forward-only result set
+     * in chunks of the given size and are not cached by the query, so that they can be processed one by one
+     * without keeping all of them in memory.
+     *
+     * @param query the query to prepare
+     * @param fetchSize the number of rows fetched from the database at once
+     */
+    public static void useStreaming(Query query, int fetchSize) {
+        if (query == null) {
+            throw new IllegalArgumentException(QUERY_CANNOT_BE_NULL);
+        }
+
+        query.getFetchPlan().setFetchSize(fetchSize);
+        query.addExtension("datanucleus.rdbms.query.resultSetType", "forward-only");
+        query.addExtension("datanucleus.rdbms.query.fetchDirection", "forward");
+        query.addExtension("datanucleus.query.resultCacheType", "none");
+        query.addExtension("datanucleus.query.loadResultsAtCommit", "false");
+        query.addExtension(RESULTS_CACHED_EXTENSION, "false");
+    }
+
     public static void setCountResult(Query query) {
         if (query == null) {
             throw new IllegalArgumentException(QUERY_CANNOT_BE_NULL);
@@ -148,6 +235,13 @@ public final class QueryUtil {
         query.setResult("count(this)");
     }
 
+    private static List<Order> getOrderList(QueryParams queryParams) {
+        // the query must be ordered the same way the cursor compares positions
+        return queryParams.isCursorSet()
+                ? CursorProperty.getOrderWithId(queryParams.getOrderList())
+                : queryParams.getOrderList();
+    }
+
     private static String getFieldType(String property, Map<String, String> fieldTypeMap, Object value) {
         String type = null;
 
@@ -1,6 +1,7 @@
 package org.motechproject.mds.repository;
 
 import org.motechproject.mds.filter.Filters;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.Property;
 import org.motechproject.mds.query.QueryExecutor;
 import org.motechproject.mds.query.QueryParams;
@@ -9,6 +10,7 @@ import org.motechproject.mds.util.InstanceSecurityRestriction;
 import org.motechproject.mds.util.PropertyUtil;
 import org.springframework.stereotype.Repository;
 
+import javax.jdo.FetchGroup;
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
 import java.util.ArrayList;
@@ -28,9 +30,13 @@ import java.util.Map;
 @Repository
 public abstract class MotechDataRepository<T> extends AbstractRepository {
 
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final String FETCH_FIELDS_GROUP = "mds.fetchFields";
+
     private Class<T> classType;
     private Integer fetchDepth;
     private Map<String, String> fieldTypeMap;
+    private boolean cacheQueryResults;
 
     protected MotechDataRepository(Class<T> classType) {
         this.classType = classType;
@@ -49,6 +55,17 @@ public abstract class MotechDataRepository<T> extends AbstractRepository {
         this.fieldTypeMap = fieldTypeMap;
     }
 
+    /**
+     * Sets whether the results of queries executed by this repository should be kept in the query results cache.
+     * They should be cached only for entities whose instances rarely change, since all cached results are
+     * dropped every time an instance changes.
+     *
+     * @param cacheQueryResults true if query results should be cached
+     */
+    public void setCacheQueryResults(boolean cacheQueryResults) {
+        this.cacheQueryResults = cacheQueryResults;
+    }
+
     @Override
     public PersistenceManager getPersistenceManager() {
         PersistenceManager pm = super.getPersistenceManager();
@@ -93,6 +110,10 @@ public abstract class MotechDataRepository<T> extends AbstractRepository {
         return getPersistenceManager().makePersistent(object);
     }
 
+    public List<T> createAll(Collection<T> objects) {
+        return new ArrayList<>(getPersistenceManager().makePersistentAll(objects));
+    }
+
     public List<T> retrieveAll() {
         return retrieveAll(new String[0], new Object[0], null);
     }
@@ -127,9 +148,10 @@ public abstract class MotechDataRepository<T> extends AbstractRepository {
     }
 
     public List<T> retrieveAll(QueryParams queryParams, InstanceSecurityRestriction restriction) {
-        Query query = createQuery(new String[0], new Object[0], restriction);
+        List<Property> properties = QueryUtil.withCursor(new ArrayList<Property>(), queryParams);
+        Query query = createQuery(properties, restriction);
         QueryUtil.setQueryParams(query, queryParams);
-        Collection collection = (Collection) QueryExecutor.execute(query, restriction);
+        Collection collection = (Collection) QueryExecutor.executeWithArray(query, properties.toArray(), restriction);
 
         return new ArrayList<>(collection);
     }
@@ -143,14 +165,43 @@ public abstract class MotechDataRepository<T> extends AbstractRepository {
     }
 
     public List<T> retrieveAll(List<Property> properties, QueryParams queryParams, InstanceSecurityRestriction restriction) {
-        Query query = createQuery(properties, restriction);
+        List<Property> filtered = QueryUtil.withCursor(properties, queryParams);
+        Query query = createQuery(filtered, restriction);
         QueryUtil.setQueryParams(query, queryParams);
 
-        Collection collection = (Collection) QueryExecutor.executeWithArray(query, properties);
+        Collection collection = (Collection) QueryExecutor.executeWithArray(query, filtered);
 
         return new ArrayList<>(collection);
     }
 
+    public long forEach(QueryParams queryParams, InstanceSecurityRestriction restriction, InstanceCallback<T> callback) {
+        List<Property> properties = QueryUtil.withCursor(new ArrayList<Property>(), queryParams);
+        Query query = createQuery(properties, restriction);
+        QueryUtil.setQueryParams(query, queryParams);
+        QueryUtil.useStreaming(query, STREAM_FETCH_SIZE);
+
+        return stream(query, QueryExecutor.executeWithArray(query, properties.toArray(), restriction), callback);
+    }
+
+    public long forEach(List<Property> properties, QueryParams queryParams, InstanceSecurityRestriction restriction,
+                        InstanceCallback<T> callback) {
+        List<Property> filtered = QueryUtil.withCursor(properties, queryParams);
+        Query query = createQuery(filtered, restriction);
+        QueryUtil.setQueryParams(query, queryParams);
+        QueryUtil.useStreaming(query, STREAM_FETCH_SIZE);
+
+        return stream(query, QueryExecutor.executeWithArray(query, filtered), callback);
+    }
+
+    public long forEach(Filters filters, QueryParams queryParams, InstanceSecurityRestriction restriction,
+                        InstanceCallback<T> callback) {
+        List<Property> properties = QueryUtil.withCursor(new ArrayList<Property>(), queryParams);
+        Query query = queryForFilters(filters, properties, queryParams, restriction);
+        QueryUtil.useStreaming(query, STREAM_FETCH_SIZE);
+
+        return stream(query, QueryExecutor.executeWithFilters(query, filters, properties, restriction), callback);
+    }
+
     public T retrieve(String property, Object value) {
         return retrieve(new String[]{property}, new Object[]{value}, null);
     }
@@ -189,10 +240,18 @@ public abstract class MotechDataRepository<T> extends AbstractRepository {
         return getPersistenceManager().makePersistent(object);
     }
 
+    public List<T> updateAll(Collection<T> objects) {
+        return new ArrayList<>(getPersistenceManager().makePersistentAll(objects));
+    }
+
     public void delete(T object) {
         getPersistenceManager().deletePersistent(object);
     }
 
+    public void deleteAll(Collection<T> objects) {
+        getPersistenceManager().deletePersistentAll(objects);
+    }
+
     public long delete(String property, Object value) {
         return delete(new String[]{property}, new Object[]{value}, null);
     }
@@ -215,6 +274,18 @@ public abstract class MotechDataRepository<T> extends AbstractRepository {
         return PropertyUtil.safeGetProperty(attached, field);
     }
 
+    public void addFetchFields(Collection<String> fields) {
+        if (!fields.isEmpty()) {
+            PersistenceManager pm = getPersistenceManager();
+
+            // the group is scoped to the persistence manager, so it is dropped once the transaction completes
+            FetchGroup fetchGroup = pm.getFetchGroup(classType, FETCH_FIELDS_GROUP);
+            fetchGroup.addMembers(fields.toArray(new String[fields.size()]));
+
+            pm.getFetchPlan().addGroup(FETCH_FIELDS_GROUP);
+        }
+    }
+
     public long count(InstanceSecurityRestriction restriction) {
         return count(new String[0], new Object[0], restriction);
     }
@@ -226,15 +297,16 @@ public abstract class MotechDataRepository<T> extends AbstractRepository {
     }
 
     public List<T> filter(Filters filters, QueryParams queryParams, InstanceSecurityRestriction restriction) {
-        Query query = queryForFilters(filters, queryParams, restriction);
+        List<Property> properties = QueryUtil.withCursor(new ArrayList<Property>(), queryParams);
+        Query query = queryForFilters(filters, properties, queryParams, restriction);
 
-        Collection collection = (Collection) QueryExecutor.executeWithFilters(query, filters, restriction);
+        Collection collection = (Collection) QueryExecutor.executeWithFilters(query, filters, properties, restriction);
 
         return new ArrayList<>(collection);
     }
 
     public long countForFilters(Filters filters, InstanceSecurityRestriction restriction) {
-        Query query = queryForFilters(filters, null, restriction);
+        Query query = queryForFilters(filters, new ArrayList<Property>(), null, restriction);
         QueryUtil.setCountResult(query);
 
         return (long) QueryExecutor.executeWithFilters(query, filters, restriction);
@@ -247,9 +319,28 @@ public abstract class MotechDataRepository<T> extends AbstractRepository {
         return (long) QueryExecutor.executeWithArray(query, properties);
     }
 
+    private long stream(Query query, Object result, InstanceCallback<T> callback) {
+        PersistenceManager pm = getPersistenceManager();
+        long count = 0;
+
+        try {
+            for (Object instance : (Collection) result) {
+                callback.process((T) instance);
+                // the instance was consumed, so there is no need to keep its state in the persistence manager
+                pm.evict(instance);
+                ++count;
+            }
+        } finally {
+            query.closeAll();
+        }
+
+        return count;
+    }
+
     private Query createQuery(String[] properties, Object[] values, InstanceSecurityRestriction restriction) {
         Query query = getPersistenceManager().newQuery(classType);
         QueryUtil.useFilter(query, properties, values, fieldTypeMap, restriction);
+        QueryUtil.useResultsCache(query, cacheQueryResults);
 
         return query;
     }
@@ -257,14 +348,16 @@ public abstract class MotechDataRepository<T> extends AbstractRepository {
     private Query createQuery(List<Property> properties, InstanceSecurityRestriction restriction) {
         Query query = getPersistenceManager().newQuery(classType);
         QueryUtil.useFilter(query, properties, restriction);
+        QueryUtil.useResultsCache(query, cacheQueryResults);
 
         return query;
     }
 
-    private Query queryForFilters(Filters filters, QueryParams queryParams, InstanceSecurityRestriction restriction) {
-        Query query = createQuery(new String[0], new Object[0], restriction);
+    private Query queryForFilters(Filters filters, List<Property> properties, QueryParams queryParams,
+                                  InstanceSecurityRestriction restriction) {
+        Query query = createQuery(properties, restriction);
         QueryUtil.setQueryParams(query, queryParams);
-        QueryUtil.useFilters(query, filters);
+        QueryUtil.useFilters(query, filters, properties);
 
         return query;
     }
@@ -100,5 +100,7 @@ public class AllEntityDrafts extends MotechDataRepository<EntityDraft> {
             tracking.setEntity(draft);
             draft.setTracking(tracking);
         }
+
+        draft.updateCacheSettings(entity.getCacheSettings());
     }
 }
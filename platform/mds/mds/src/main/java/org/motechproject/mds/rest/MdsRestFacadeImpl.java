@@ -20,10 +20,13 @@ import org.motechproject.mds.exception.rest.RestLookupNotFoundException;
 import org.motechproject.mds.exception.rest.RestNoLookupResultException;
 import org.motechproject.mds.exception.rest.RestOperationNotSupportedException;
 import org.motechproject.mds.lookup.LookupExecutor;
+import org.motechproject.mds.query.InstanceCallback;
+import org.motechproject.mds.query.QueryCursor;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.util.BlobDeserializer;
 import org.motechproject.mds.util.Constants;
+import org.motechproject.mds.util.Order;
 import org.motechproject.mds.util.PropertyUtil;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -96,15 +99,19 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
         if (!restOptions.isRead()) {
             throw operationNotSupportedEx("READ");
         }
-        List<T> values = dataService.retrieveAll(queryParams);
-        if (includeBlob) {
-            for (T value : values) {
-                getBlobs(value);
-            }
-        }
 
-        return new RestResponse(entityName, entityClass.getName(), moduleName, namespace, dataService.count(), queryParams,
-                RestProjection.createProjectionCollection(values, restFields, blobFields));
+        addIdOrder(queryParams);
+        fetchBlobs(includeBlob);
+
+        ProjectionCollector collector = new ProjectionCollector(queryParams);
+        dataService.forEach(queryParams, collector);
+
+        Long totalCount = getTotalCount(queryParams, collector.projections.size());
+        RestResponse response = new RestResponse(entityName, entityClass.getName(), moduleName, namespace,
+                totalCount == null ? dataService.count() : totalCount, queryParams, collector.projections);
+        response.getMetadata().setNextPageToken(collector.nextPageToken);
+
+        return response;
     }
 
     @Override
@@ -113,11 +120,9 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
         if (!restOptions.isRead()) {
             throw operationNotSupportedEx("READ");
         }
-        T value = dataService.findById(id);
+        fetchBlobs(includeBlob);
 
-        if (includeBlob) {
-            getBlobs(value);
-        }
+        T value = dataService.findById(id);
 
         if (value != null) {
             return new RestResponse(entityName, entityClass.getName(), moduleName, namespace, 1l, new QueryParams(1, 1),
@@ -181,22 +186,26 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
     public Object executeLookup(String lookupName, Map<String, String> lookupMap, QueryParams queryParams, boolean includeBlob) {
         if (lookupExecutors.containsKey(lookupName)) {
             LookupExecutor executor = lookupExecutors.get(lookupName);
+            addIdOrder(queryParams);
+            fetchBlobs(includeBlob);
+
             Object result = executor.execute(lookupMap, queryParams);
             if (result instanceof Collection) {
-                if (includeBlob) {
-                    for (T value : ((Collection<T>) result)) {
-                        getBlobs(value);
-                    }
+                ProjectionCollector collector = new ProjectionCollector(queryParams);
+                for (T value : ((Collection<T>) result)) {
+                    collector.process(value);
                 }
-                return new RestResponse(entityName, entityClass.getName(), moduleName, namespace, executor.executeCount(lookupMap),
-                        queryParams, RestProjection.createProjectionCollection((Collection) result, restFields, blobFields));
+
+                Long totalCount = getTotalCount(queryParams, collector.projections.size());
+                RestResponse response = new RestResponse(entityName, entityClass.getName(), moduleName, namespace,
+                        totalCount == null ? executor.executeCount(lookupMap) : totalCount, queryParams, collector.projections);
+                response.getMetadata().setNextPageToken(collector.nextPageToken);
+
+                return response;
             } else {
                 if (result == null) {
                     throw new RestNoLookupResultException("No result for lookup:" + lookupName);
                 }
-                if (includeBlob) {
-                    getBlobs((T) result);
-                }
                 return new RestResponse(entityName, entityClass.getName(), moduleName, namespace, 1l, new QueryParams(1, 1),
                         RestProjection.createProjection(result, restFields, blobFields));
             }
@@ -207,9 +216,71 @@ public class MdsRestFacadeImpl<T> implements MdsRestFacade<T> {
         }
     }
 
-    private void getBlobs(T value) {
-        for (String field : blobFields) {
-            PropertyUtil.safeSetProperty(value, field, dataService.getDetachedField(value, field));
+    private void addIdOrder(QueryParams queryParams) {
+        // the id keeps the order unique, which is required by the cursors of the next pages
+        if (queryParams != null && !queryParams.containsOrderOnField(Constants.Util.ID_FIELD_NAME)) {
+            queryParams.addOrder(new Order(Constants.Util.ID_FIELD_NAME, Order.Direction.ASC));
+        }
+    }
+
+    private void fetchBlobs(boolean includeBlob) {
+        // blob fields are loaded by the queries retrieving instances, instead of one query per instance and field
+        if (includeBlob) {
+            dataService.addFetchFields(blobFields);
+        }
+    }
+
+    /**
+     * Returns the total number of instances matching the query, if it can be determined from the retrieved page.
+     * This is the case for the last page retrieved using the page number, or when all instances are retrieved.
+     *
+     * @param queryParams the query params used to retrieve the page
+     * @param retrieved the number of retrieved instances
+     * @return the total number of instances, or null if it has to be counted
+     */
+    private static Long getTotalCount(QueryParams queryParams, int retrieved) {
+        if (queryParams == null || queryParams.getPageSize() == null) {
+            return (long) retrieved;
+        }
+
+        Integer page = queryParams.getPage();
+        int pageSize = queryParams.getPageSize();
+
+        // an empty page past the last one doesn't tell how many instances are before it
+        boolean offsetKnown = !queryParams.isCursorSet() && page != null && (retrieved > 0 || page == 1);
+
+        return offsetKnown && retrieved < pageSize ? (long) (page - 1) * pageSize + retrieved : null;
+    }
+
+    /**
+     * Builds projections of the streamed instances, so that the instances themselves are not kept.
+     * If the page is full, the token of the cursor placed after its last instance is created.
+     */
+    private class ProjectionCollector implements InstanceCallback<T> {
+        private final QueryParams queryParams;
+        private final List<RestProjection> projections = new ArrayList<>();
+        private String nextPageToken;
+
+        ProjectionCollector(QueryParams queryParams) {
+            this.queryParams = queryParams;
+        }
+
+        @Override
+        public void process(T value) {
+            projections.add(RestProjection.createProjection(value, restFields, blobFields));
+
+            if (queryParams != null && queryParams.getPageSize() != null && projections.size() == queryParams.getPageSize()) {
+                nextPageToken = createPageToken(value);
+            }
+        }
+
+        private String createPageToken(T value) {
+            try {
+                return QueryCursor.after(value, queryParams.getOrderList()).toToken();
+            } catch (IllegalArgumentException e) {
+                // ordered by a field which cannot be used by a cursor, the next page can be retrieved by its number only
+                return null;
+            }
         }
     }
 
@@ -26,6 +26,8 @@ public class RestMetadata {
 
     private int pageSize;
 
+    private String nextPageToken;
+
     /**
      * Default constructor.
      */
@@ -149,4 +151,19 @@ public class RestMetadata {
     public void setPageSize(int pageSize) {
         this.pageSize = pageSize;
     }
+
+    /**
+     * @return the token of the cursor placed after the last returned instance, which can be used to retrieve the next
+     * page without skipping the rows of the previous ones; null if the page is not full
+     */
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    /**
+     * @param nextPageToken the token of the cursor placed after the last returned instance
+     */
+    public void setNextPageToken(String nextPageToken) {
+        this.nextPageToken = nextPageToken;
+    }
 }
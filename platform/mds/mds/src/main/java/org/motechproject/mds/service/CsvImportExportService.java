@@ -200,7 +200,8 @@ public interface CsvImportExportService {
      * @param fileName the name of the CSV file
      * @param continueOnError if true, import will continue with next row if exception was encountered,
      *                        if false, import process will stop and rethrow the exception
-     * @param clearData if true, import will clear instances from table
+     * @param clearData if true, import will clear instances from table, the cleared instances are not restored
+     *                  if the import fails
      * @return IDs of instances updated/added during import
      */
     CsvImportResults importCsv(long entityId, Reader reader, String fileName, boolean continueOnError, boolean clearData);
@@ -213,11 +214,32 @@ public interface CsvImportExportService {
      * @param importCustomizer the customizer that will be used during import
      * @param continueOnError if true, import will continue with next row if exception was encountered,
      *                        if false, import process will stop and rethrow the exception
-     * @param clearData if true, import will clear instances from table
+     * @param clearData if true, import will clear instances from table, the cleared instances are not restored
+     *                  if the import fails
      * @return IDs of instances updated/added during import
      */
     CsvImportResults importCsv(long entityId, Reader reader, String fileName, CsvImportCustomizer importCustomizer, boolean continueOnError, boolean clearData);
 
+    /**
+     * Import instances from a CSV file, skipping the given number of rows. Rows are imported in chunks, each
+     * in its own transaction, so this allows resuming an import which failed after some of the chunks were
+     * imported.
+     * @param entityId id of the entity for which the instances will be imported
+     * @param reader the reader that will be used for reading the file contents
+     * @param fileName the name of the CSV file
+     * @param importCustomizer the customizer that will be used during import
+     * @param continueOnError if true, import will continue with next row if exception was encountered,
+     *                        if false, import process will stop and rethrow the exception
+     * @param clearData if true, import will clear instances from table, the cleared instances are not restored
+     *                  if the import fails, must be false when rows are skipped
+     * @param skipRows the number of rows, not counting the header, which will not be imported
+     * @return IDs of instances updated/added during import
+     * @throws IllegalArgumentException if rows are skipped and the data is to be cleared
+     * @see org.motechproject.mds.exception.csv.CsvImportException#getLastImportedRow()
+     */
+    CsvImportResults importCsv(long entityId, Reader reader, String fileName, CsvImportCustomizer importCustomizer,
+                               boolean continueOnError, boolean clearData, int skipRows);
+
     /**
      * Import instances from a CSV file
      * @param entityClassName class name of the entity for which the instances will be imported
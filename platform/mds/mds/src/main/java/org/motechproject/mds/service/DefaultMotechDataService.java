@@ -3,6 +3,7 @@ package org.motechproject.mds.service;
 import org.apache.commons.lang.StringUtils;
 import org.motechproject.commons.date.util.DateUtil;
 import org.motechproject.mds.domain.EntityType;
+import org.motechproject.mds.dto.CacheSettingsDto;
 import org.motechproject.mds.entityinfo.EntityInfo;
 import org.motechproject.mds.entityinfo.EntityInfoReader;
 import org.motechproject.mds.entityinfo.FieldInfo;
@@ -14,11 +15,14 @@ import org.motechproject.mds.exception.object.ObjectNotFoundException;
 import org.motechproject.mds.exception.object.ObjectUpdateException;
 import org.motechproject.mds.exception.object.SecurityException;
 import org.motechproject.mds.filter.Filters;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.Property;
+import org.motechproject.mds.query.QueryCursor;
 import org.motechproject.mds.query.QueryExecution;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.query.SqlQueryExecution;
 import org.motechproject.mds.repository.MotechDataRepository;
+import org.motechproject.mds.util.CacheMode;
 import org.motechproject.mds.util.Constants;
 import org.motechproject.mds.util.InstanceSecurityRestriction;
 import org.motechproject.mds.util.PropertyUtil;
@@ -45,13 +49,17 @@ import javax.jdo.ObjectState;
 import javax.jdo.Query;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import static org.apache.commons.lang.StringUtils.defaultIfBlank;
+import static org.motechproject.mds.event.CrudEventBuilder.buildBatchEventParams;
 import static org.motechproject.mds.event.CrudEventBuilder.buildEventParams;
+import static org.motechproject.mds.event.CrudEventBuilder.createBatchSubject;
 import static org.motechproject.mds.event.CrudEventBuilder.createSubject;
 import static org.motechproject.mds.event.CrudEventType.CREATE;
 import static org.motechproject.mds.event.CrudEventType.DELETE;
@@ -76,6 +84,8 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
 
     private static final Logger MDS_LOGGER = LoggerFactory.getLogger(DefaultMotechDataService.class);
 
+    private static final int DELETE_CHUNK_SIZE = 500;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private MotechDataRepository<T> repository;
@@ -85,6 +95,7 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     private JdoTransactionManager transactionManager;
     private ApplicationContext applicationContext;
     private EntityInfoReader entityInfoReader;
+    private EntityCacheService entityCacheService;
 
     private SecurityMode securityMode;
     private Long schemaVersion;
@@ -92,6 +103,7 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     private boolean allowCreateEvent;
     private boolean allowUpdateEvent;
     private boolean allowDeleteEvent;
+    private boolean cacheEnabled;
     private String module;
     private String entityName;
     private String namespace;
@@ -124,6 +136,13 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
 
         repository.setFieldTypeMap(fieldTypeMap);
 
+        CacheSettingsDto cacheSettings = entityInfo.getCacheSettings();
+        if (entityCacheService != null) {
+            entityCacheService.configure(getClassType().getName(), cacheSettings);
+            cacheEnabled = cacheSettings.isEnabled();
+        }
+        repository.setCacheQueryResults(cacheEnabled && cacheSettings.getMode() == CacheMode.READ_MOSTLY);
+
         debug("{} ready", getClass().getName());
     }
 
@@ -137,9 +156,7 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
         TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
             @Override
             public void afterCommit() {
-                if (allowCreateEvent) {
-                    sendEvent((Long) getId(createdInstance), CREATE);
-                }
+                instancesChanged((Long) getId(createdInstance), CREATE);
             }
         });
 
@@ -183,9 +200,7 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
             TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
                 @Override
                 public void afterCommit() {
-                    if (allowUpdateEvent) {
-                        sendEvent((Long) getId(updatedInstance), UPDATE);
-                    }
+                    instancesChanged((Long) getId(updatedInstance), UPDATE);
                 }
             });
 
@@ -235,9 +250,7 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
             TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
                 @Override
                 public void afterCommit() {
-                    if (allowUpdateEvent) {
-                        sendEvent((Long) getId(fromDbInstance), UPDATE);
-                    }
+                    instancesChanged((Long) getId(fromDbInstance), UPDATE);
                 }
             });
             result = fromDbInstance;
@@ -260,7 +273,7 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
 
         validateCredentials(object);
 
-        Long deletedInstanceId = doInTransaction(new TransactionCallback<Long>() {
+        final Long deletedInstanceId = doInTransaction(new TransactionCallback<Long>() {
             @Override
             public Long doInTransaction(TransactionStatus status) {
                 // independent of trash mode remove object. If trash mode is active then the same object
@@ -274,9 +287,12 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
             }
         });
 
-        if (allowDeleteEvent) {
-            sendEvent(deletedInstanceId, DELETE);
-        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                instancesChanged(deletedInstanceId, DELETE);
+            }
+        });
     }
 
     @Override
@@ -385,6 +401,12 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
         return repository.getDetachedField(instance, fieldName);
     }
 
+    @Override
+    @Transactional
+    public void addFetchFields(Collection<String> fieldNames) {
+        repository.addFetchFields(fieldNames);
+    }
+
     @Override
     @Transactional
     public List<T> filter(Filters filters, QueryParams queryParams) {
@@ -392,6 +414,20 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
         return repository.filter(filters, queryParams, securityRestriction);
     }
 
+    @Override
+    @Transactional
+    public long forEach(QueryParams queryParams, InstanceCallback<T> callback) {
+        InstanceSecurityRestriction securityRestriction = validateCredentials();
+        return repository.forEach(queryParams, securityRestriction, callback);
+    }
+
+    @Override
+    @Transactional
+    public long forEach(Filters filters, QueryParams queryParams, InstanceCallback<T> callback) {
+        InstanceSecurityRestriction securityRestriction = validateCredentials();
+        return repository.forEach(filters, queryParams, securityRestriction, callback);
+    }
+
     @Override
     @Transactional
     public long countForFilters(Filters filters) {
@@ -404,6 +440,110 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     public void deleteAll() {
         InstanceSecurityRestriction securityRestriction = validateCredentials();
         repository.delete(new String[0], new Object[0], securityRestriction);
+
+        if (cacheEnabled) {
+            // the deleted instances are not known, so the whole entity is dropped from the cache
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    entityCacheService.entityChanged(getClassType().getName());
+                }
+            });
+        }
+    }
+
+    @Override
+    @Transactional
+    public List<T> createAll(Collection<T> objects) {
+        validateCredentials();
+
+        if (objects == null || objects.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<T> createdInstances = repository.createAll(objects);
+
+        if (isChangeTracked(CREATE)) {
+            instancesChangedAfterCommit(createdInstances, CREATE);
+        }
+
+        return createdInstances;
+    }
+
+    @Override
+    @Transactional
+    public List<T> updateAll(Collection<T> objects) {
+        InstanceSecurityRestriction securityRestriction = validateCredentials();
+
+        if (objects == null || objects.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<T> instances = new ArrayList<>(objects);
+        List<Integer> persistentPositions = new ArrayList<>();
+        Map<Long, Integer> transientPositions = getPositionsById(instances, persistentPositions);
+
+        List<T> updatedInstances = new ArrayList<>();
+        updatedInstances.addAll(updateTransient(instances, transientPositions, securityRestriction));
+        updatedInstances.addAll(updatePersistent(instances, persistentPositions, securityRestriction));
+
+        // instances without an id or without a stored counterpart are created, the same as with update
+        List<T> createdInstances = replaceAll(instances, getTransientPositions(instances), true);
+
+        if (isChangeTracked(CREATE) && !createdInstances.isEmpty()) {
+            instancesChangedAfterCommit(createdInstances, CREATE);
+        }
+        if (isChangeTracked(UPDATE) && !updatedInstances.isEmpty()) {
+            instancesChangedAfterCommit(updatedInstances, UPDATE);
+        }
+
+        return instances;
+    }
+
+    @Override
+    @Transactional
+    public long deleteByIds(Collection<Long> ids) {
+        InstanceSecurityRestriction securityRestriction = validateCredentials();
+
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+
+        List<T> instances = repository.retrieveAll(ids);
+        for (T instance : instances) {
+            verifyInstanceAccess(instance, securityRestriction);
+        }
+
+        return deleteInstances(instances);
+    }
+
+    @Override
+    @Transactional
+    public long deleteForFilters(Filters filters) {
+        InstanceSecurityRestriction securityRestriction = validateCredentials();
+        List<Long> deletedInstanceIds = new ArrayList<>();
+        QueryCursor cursor = null;
+        List<T> instances;
+
+        // instances are retrieved in chunks ordered by id, each one starting after the last instance of the previous
+        // one, so that only a single chunk is held in memory. The security restriction is already a part of the query
+        do {
+            QueryParams queryParams = new QueryParams(1, DELETE_CHUNK_SIZE, QueryParams.ORDER_ID_ASC.getOrderList(),
+                    cursor);
+            instances = repository.filter(filters, queryParams, securityRestriction);
+
+            if (!instances.isEmpty()) {
+                List<Long> ids = getIds(instances);
+                cursor = new QueryCursor(ids.get(ids.size() - 1));
+
+                repository.deleteAll(instances);
+                deletedInstanceIds.addAll(ids);
+            }
+        } while (instances.size() == DELETE_CHUNK_SIZE);
+
+        deletedAfterCommit(deletedInstanceIds);
+
+        return deletedInstanceIds.size();
     }
 
     @Override
@@ -437,6 +577,10 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     @Override
     public void evictEntityCache(boolean withSubclasses) {
         repository.evictEntity(withSubclasses);
+
+        if (cacheEnabled) {
+            entityCacheService.entityChanged(getClassType().getName());
+        }
     }
 
     @Override
@@ -499,6 +643,11 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
         return repository.retrieveAll(properties, queryParams, securityRestriction);
     }
 
+    protected long forEach(List<Property> properties, QueryParams queryParams, InstanceCallback<T> callback) {
+        InstanceSecurityRestriction securityRestriction = validateCredentials();
+        return repository.forEach(properties, queryParams, securityRestriction, callback);
+    }
+
     protected long count(List<Property> properties) {
         InstanceSecurityRestriction securityRestriction = validateCredentials();
         return repository.count(properties, securityRestriction);
@@ -536,6 +685,16 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     private InstanceSecurityRestriction checkInstanceAccess(T instance, InstanceSecurityRestriction restriction) {
         T fromDb = repository.retrieve(getId(instance));
 
+        verifyInstanceAccess(fromDb, restriction);
+
+        return restriction;
+    }
+
+    private void verifyInstanceAccess(T fromDb, InstanceSecurityRestriction restriction) {
+        if (restriction.isEmpty()) {
+            return;
+        }
+
         String creator = (String) PropertyUtil.safeGetProperty(fromDb, CREATOR_FIELD_NAME);
         String owner = (String) PropertyUtil.safeGetProperty(fromDb, OWNER_FIELD_NAME);
 
@@ -552,8 +711,195 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
         if (!authorized) {
             throw new SecurityException();
         }
+    }
 
-        return restriction;
+    /**
+     * Returns the positions of the transient instances with ids, by their ids, and adds the positions of the
+     * persistent instances to the given list.
+     *
+     * @throws IllegalArgumentException if more than one instance has the same id
+     */
+    private Map<Long, Integer> getPositionsById(List<T> instances, List<Integer> persistentPositions) {
+        Map<Long, Integer> transientPositions = new HashMap<>();
+        Set<Long> ids = new HashSet<>();
+
+        for (int i = 0; i < instances.size(); ++i) {
+            T instance = instances.get(i);
+            Long id = (Long) getId(instance);
+
+            if (id != null && !ids.add(id)) {
+                throw new IllegalArgumentException("Unable to update more than one instance with id " + id);
+            }
+
+            if (JDOHelper.getObjectState(instance) != ObjectState.TRANSIENT) {
+                persistentPositions.add(i);
+            } else if (id != null) {
+                transientPositions.put(id, i);
+            }
+        }
+
+        return transientPositions;
+    }
+
+    private List<T> updateTransient(List<T> instances, Map<Long, Integer> positions,
+                                    InstanceSecurityRestriction restriction) {
+        List<T> updatedInstances = new ArrayList<>();
+
+        if (positions.isEmpty()) {
+            return updatedInstances;
+        }
+
+        // transient instances are matched with the stored ones using a single query
+        for (T fromDbInstance : repository.retrieveAll(positions.keySet())) {
+            int position = positions.get((Long) getId(fromDbInstance));
+            verifyInstanceAccess(fromDbInstance, restriction);
+
+            PropertyUtil.copyProperties(fromDbInstance, instances.get(position), null, null);
+            if (versionFieldName != null) {
+                StateManagerUtil.setTransactionVersion(fromDbInstance, versionFieldName);
+            }
+
+            updateModificationData(fromDbInstance);
+            instances.set(position, fromDbInstance);
+            updatedInstances.add(fromDbInstance);
+        }
+
+        return updatedInstances;
+    }
+
+    private List<T> updatePersistent(List<T> instances, List<Integer> positions,
+                                     InstanceSecurityRestriction restriction) {
+        for (int position : positions) {
+            T instance = instances.get(position);
+
+            if (!restriction.isEmpty()) {
+                checkInstanceAccess(instance, restriction);
+            }
+            updateModificationData(instance);
+        }
+
+        return replaceAll(instances, positions, false);
+    }
+
+    private List<Integer> getTransientPositions(List<T> instances) {
+        List<Integer> positions = new ArrayList<>();
+
+        for (int i = 0; i < instances.size(); ++i) {
+            if (JDOHelper.getObjectState(instances.get(i)) == ObjectState.TRANSIENT) {
+                positions.add(i);
+            }
+        }
+
+        return positions;
+    }
+
+    /**
+     * Creates or updates the instances at the given positions using a single call to the repository and replaces
+     * them with the instances returned by it.
+     */
+    private List<T> replaceAll(List<T> instances, List<Integer> positions, boolean create) {
+        if (positions.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<T> toStore = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            toStore.add(instances.get(position));
+        }
+
+        List<T> stored = create ? repository.createAll(toStore) : repository.updateAll(toStore);
+        for (int i = 0; i < positions.size(); ++i) {
+            instances.set(positions.get(i), stored.get(i));
+        }
+
+        return stored;
+    }
+
+    private long deleteInstances(List<T> instances) {
+        if (instances.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> deletedInstanceIds = getIds(instances);
+
+        repository.deleteAll(instances);
+        deletedAfterCommit(deletedInstanceIds);
+
+        return instances.size();
+    }
+
+    private void deletedAfterCommit(final List<Long> deletedInstanceIds) {
+        if (isChangeTracked(DELETE) && !deletedInstanceIds.isEmpty()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    instancesChanged(deletedInstanceIds, DELETE);
+                }
+            });
+        }
+    }
+
+    private void instancesChangedAfterCommit(final List<T> instances, final CrudEventType action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                // ids of created instances are only known once they are flushed
+                instancesChanged(getIds(instances), action);
+            }
+        });
+    }
+
+    private boolean isChangeTracked(CrudEventType action) {
+        return cacheEnabled || isEventFired(action);
+    }
+
+    private boolean isEventFired(CrudEventType action) {
+        switch (action) {
+            case CREATE:
+                return allowCreateEvent;
+            case UPDATE:
+                return allowUpdateEvent;
+            case DELETE:
+                return allowDeleteEvent;
+            default:
+                return false;
+        }
+    }
+
+    private void instancesChanged(Long id, CrudEventType action) {
+        if (isEventFired(action)) {
+            sendEvent(id, action);
+        }
+        if (cacheEnabled) {
+            entityCacheService.instancesChanged(getClassType().getName(), Collections.singletonList(id));
+        }
+    }
+
+    private void instancesChanged(List<Long> ids, CrudEventType action) {
+        if (isEventFired(action)) {
+            // listeners of single instances, such as task triggers, are notified the same way as without batches
+            for (Long id : ids) {
+                sendEvent(id, action);
+            }
+            sendBatchEvent(ids, action);
+        }
+        if (cacheEnabled) {
+            entityCacheService.instancesChanged(getClassType().getName(), ids);
+        }
+    }
+
+    private void sendBatchEvent(List<Long> ids, CrudEventType action) {
+        String subject = createBatchSubject(module, namespace, entityName, action);
+        Map<String, Object> params = buildBatchEventParams(module, namespace, entityName, getClassType().getName(), ids);
+        osgiEventProxy.sendEvent(subject, params);
+    }
+
+    private List<Long> getIds(List<T> instances) {
+        List<Long> ids = new ArrayList<>(instances.size());
+        for (T instance : instances) {
+            ids.add((Long) getId(instance));
+        }
+        return ids;
     }
 
     private void sendEvent(Long id, CrudEventType action) {
@@ -616,4 +962,9 @@ public abstract class DefaultMotechDataService<T> implements MotechDataService<T
     public void setEntityInfoReader(EntityInfoReader entityInfoReader) {
         this.entityInfoReader = entityInfoReader;
     }
+
+    @Autowired(required = false)
+    public void setEntityCacheService(EntityCacheService entityCacheService) {
+        this.entityCacheService = entityCacheService;
+    }
 }
@@ -0,0 +1,44 @@
+package org.motechproject.mds.service;
+
+import org.motechproject.mds.dto.CacheSettingsDto;
+
+import java.util.Collection;
+
+/**
+ * The <code>EntityCacheService</code> manages the second level cache of MDS entities. It applies the cache
+ * settings of entities and keeps the caches of all Motech instances consistent, by commanding them to drop
+ * instances changed by this instance.
+ *
+ * @see org.motechproject.mds.dto.CacheSettingsDto
+ */
+public interface EntityCacheService {
+
+    String EVICT_ENTITY_CACHE = "org_motechproject_mds_evict_entity_cache";
+
+    /**
+     * Applies the cache settings of the given entity on this Motech instance.
+     *
+     * @param className the class name of the entity
+     * @param settings the cache settings of the entity
+     */
+    void configure(String className, CacheSettingsDto settings);
+
+    /**
+     * Notifies the cache about created, updated or deleted instances of the given entity. Cached lookup results
+     * of read-mostly entities are dropped on this instance, and other Motech instances are commanded to drop
+     * the changed instances and lookup results from their caches.
+     *
+     * @param className the class name of the entity
+     * @param ids the ids of the changed instances
+     */
+    void instancesChanged(String className, Collection<Long> ids);
+
+    /**
+     * Notifies the cache about changes of any instances of the given entity, made without knowing which
+     * instances were affected. All cached instances and lookup results of the entity are dropped on this
+     * instance, and other Motech instances are commanded to drop them as well.
+     *
+     * @param className the class name of the entity
+     */
+    void entityChanged(String className);
+}
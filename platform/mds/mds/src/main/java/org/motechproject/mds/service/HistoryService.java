@@ -20,6 +20,16 @@ public interface HistoryService {
      */
     void record(Object instance);
 
+    /**
+     * Notifies the service that the given instance of entity is about to be stored. This allows
+     * the service to capture the fields that were changed on the instance, so that
+     * {@link #record(Object)} can skip instances without changes without querying historical data.
+     * Must be called in the same transaction in which the instance gets stored.
+     *
+     * @param instance an instance created from the given entity definition.
+     */
+    void beforeStore(Object instance);
+
     /**
      * Returns the historical data for the given instance. This method return historical data only
      * for objects that are not in the MDS trash. For trash instances the return value will be
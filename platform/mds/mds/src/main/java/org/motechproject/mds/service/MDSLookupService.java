@@ -1,5 +1,6 @@
 package org.motechproject.mds.service;
 
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.QueryParams;
 
 import java.util.List;
@@ -106,6 +107,23 @@ public interface MDSLookupService {
     <T> List<T> findMany(String entityClassName, String lookupName, Map<String, ?> lookupParams,
                          QueryParams queryParams);
 
+    /**
+     * Executes multi-return lookup for the given entity class name, lookup name and parameters, streaming
+     * the retrieved instances to the given callback one at a time, instead of returning them in a list. It will
+     * fail, if lookup parameters do not match the parameters specified in the lookup or if the lookup of given
+     * name does not exist for the retrieved entity.
+     *
+     * @param entityClassName entity class name
+     * @param lookupName name of the lookup from entity
+     * @param lookupParams parameters to use, when executing the lookup
+     * @param queryParams parameters to use, retrieving the instances
+     * @param callback the callback processing the instances
+     * @param <T> entity class
+     * @return the number of processed instances
+     */
+    <T> long forEach(String entityClassName, String lookupName, Map<String, ?> lookupParams,
+                     QueryParams queryParams, InstanceCallback<T> callback);
+
     /**
      * Retrieves all instances for the given entity class.
      *
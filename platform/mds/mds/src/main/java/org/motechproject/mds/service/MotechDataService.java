@@ -3,6 +3,7 @@ package org.motechproject.mds.service;
 import org.motechproject.mds.exception.audit.HistoryInstanceNotFoundException;
 import org.motechproject.mds.exception.audit.TrashInstanceNotFoundException;
 import org.motechproject.mds.filter.Filters;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.QueryExecution;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.query.SqlQueryExecution;
@@ -171,6 +172,15 @@ public interface MotechDataService<T> {
      */
     Object getDetachedField(T instance, String fieldName);
 
+    /**
+     * Adds the given fields to the fetch plan of the current transaction, so that instances retrieved
+     * by subsequent calls in this transaction are loaded together with values of these fields, even if
+     * the fields are loaded lazily by default, like binary object fields. Must be called within a transaction.
+     *
+     * @param fieldNames names of the fields to retrieve together with instances
+     */
+    void addFetchFields(Collection<String> fieldNames);
+
     /**
      * Retrieves all instances of type {@param <T>} from MDS, filtered using specified filters
      * and query params.
@@ -181,6 +191,28 @@ public interface MotechDataService<T> {
      */
     List<T> filter(Filters filters, QueryParams queryParams);
 
+    /**
+     * Streams instances of type {@param <T>} from MDS to the given callback, one at a time. Unlike
+     * {@link #retrieveAll(QueryParams)} the instances are read from the database in chunks and evicted once processed,
+     * so all instances of an entity can be processed in constant memory.
+     *
+     * @param queryParams query parameters to be used retrieving instances, may be null
+     * @param callback the callback processing the instances
+     * @return the number of processed instances
+     */
+    long forEach(QueryParams queryParams, InstanceCallback<T> callback);
+
+    /**
+     * Streams instances of type {@param <T>} matching the given filters from MDS to the given callback, one at a time.
+     * The instances are read from the database in chunks and evicted once processed.
+     *
+     * @param filters filters to use
+     * @param queryParams query parameters to be used retrieving instances, may be null
+     * @param callback the callback processing the instances
+     * @return the number of processed instances
+     */
+    long forEach(Filters filters, QueryParams queryParams, InstanceCallback<T> callback);
+
     /**
      * Gets a total number of instances, after being filtered by the given filter.
      *
@@ -194,10 +226,56 @@ public interface MotechDataService<T> {
      */
     void deleteAll();
 
+    /**
+     * Creates the given instances of type {@param <T>} in MDS. All instances are stored in a single
+     * transaction and, if create events are enabled for the entity, a CRUD event for each created instance,
+     * followed by a single batch CRUD event carrying the ids of all of them, are sent after the transaction is
+     * committed. Listeners should handle either the instance or the batch events, not both.
+     *
+     * @param objects instances to create
+     * @return the created instances, in the order they were given
+     */
+    List<T> createAll(Collection<T> objects);
+
+    /**
+     * Updates the given instances of type {@param <T>} in MDS. Transient instances are matched with the stored
+     * ones using a single query and their values are copied, instances which do not exist yet are created, the
+     * same as with {@link #update(Object)}. If update or create events are enabled for the entity, a CRUD event
+     * for each updated (or created) instance, followed by a single batch CRUD event carrying the ids of all of them,
+     * are sent after the transaction is committed.
+     *
+     * @param objects instances to update
+     * @return the updated instances, in the order they were given
+     * @throws IllegalArgumentException if more than one of the given instances has the same id
+     */
+    List<T> updateAll(Collection<T> objects);
+
+    /**
+     * Removes instances of type {@param <T>} with the given ids from MDS. Ids for which no instance exists are
+     * ignored. If delete events are enabled for the entity, a CRUD event for each removed instance, followed by a
+     * single batch CRUD event carrying the ids of all of them, are sent after the transaction is committed.
+     *
+     * @param ids ids of instances to remove
+     * @return the number of removed instances
+     */
+    long deleteByIds(Collection<Long> ids);
+
+    /**
+     * Removes all instances of type {@param <T>}, matching the given filters from MDS. The instances are retrieved
+     * and removed in chunks, so that they are not all held in memory at once. If delete events are enabled for the
+     * entity, a CRUD event for each removed instance, followed by a single batch CRUD event carrying the ids of all
+     * of them, are sent after the transaction is committed.
+     *
+     * @param filters filters to use
+     * @return the number of removed instances
+     */
+    long deleteForFilters(Filters filters);
+
     /**
      * Allows to execute custom query in MDS. Users are supposed to implement the {@link QueryExecution}
      * interface and override its {@link QueryExecution#execute(javax.jdo.Query, org.motechproject.mds.util.InstanceSecurityRestriction)}
-     * method with their custom behaviour.
+     * method with their custom behaviour. Instances changed or deleted by the query are not dropped from the
+     * second level cache, so {@link #evictEntityCache(boolean)} should be called once such a query commits.
      *
      * @param queryExecution implementation of the {@link QueryExecution}, with custom behaviour
      * @param <R> type that should be returned from the custom query
@@ -218,7 +296,8 @@ public interface MotechDataService<T> {
     void evictCacheForInstance(T instance);
 
     /**
-     * Evicts cache for the entity class of this data service.
+     * Evicts cache for the entity class of this data service. If the cache of the entity is enabled in its
+     * advanced settings, other Motech instances evict it as well.
      * @param withSubclasses if true, the cache for subclasses of the entity will be also cleared
      */
     void evictEntityCache(boolean withSubclasses);
@@ -255,7 +334,9 @@ public interface MotechDataService<T> {
 
     /**
      * Allows to execute custom SQL query in MDS. Users should implement the {@link SqlQueryExecution} interface
-     * and override its methods, defining their custom query.
+     * and override its methods, defining their custom query. Instances changed or deleted by the query are not
+     * dropped from the second level cache, so {@link #evictEntityCache(boolean)} should be called once such
+     * a query commits.
      *
      * @param queryExecution implementation of the {@link SqlQueryExecution}
      * @param <R> type that should be returned by the custom sql query
@@ -1,5 +1,6 @@
 package org.motechproject.mds.service;
 
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.Property;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.util.InstanceSecurityRestriction;
@@ -49,6 +50,18 @@ public abstract class TransactionalMotechDataService<T> extends DefaultMotechDat
         });
     }
 
+    @Override
+    protected long forEach(final List<Property> properties, final QueryParams queryParams,
+                           final InstanceCallback<T> callback) {
+        return doInTransaction(new TransactionCallback<Long>() {
+            @Override
+            public Long doInTransaction(TransactionStatus status) {
+                InstanceSecurityRestriction securityRestriction = validateCredentials();
+                return getRepository().forEach(properties, queryParams, securityRestriction, callback);
+            }
+        });
+    }
+
     protected T retrieveUnique(final List<Property> properties, final QueryParams queryParams) {
         return retrieveUnique(properties);
     }
@@ -0,0 +1,154 @@
+package org.motechproject.mds.service.impl;
+
+import org.datanucleus.api.jdo.JDODataStoreCache;
+import org.datanucleus.api.jdo.JDOPersistenceManagerFactory;
+import org.datanucleus.cache.Level2Cache;
+import org.motechproject.mds.dto.CacheSettingsDto;
+import org.motechproject.mds.jdo.MdsLevel2Cache;
+import org.motechproject.mds.service.EntityCacheService;
+import org.motechproject.mds.util.CacheMode;
+import org.motechproject.mds.util.Constants;
+import org.motechproject.server.osgi.event.OsgiEventProxy;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.jdo.PersistenceManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Default implementation of the <code>EntityCacheService</code> interface. The settings are applied on the
+ * {@link org.motechproject.mds.jdo.MdsLevel2Cache} of the given persistence manager factory. Changes are
+ * broadcast to other Motech instances using the {@link OsgiEventProxy}, since CRUD events are delivered
+ * to only one instance.
+ */
+public class EntityCacheServiceImpl implements EntityCacheService, EventHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityCacheServiceImpl.class);
+
+    private static final String ORIGIN_EVENT_PARAM = "origin";
+
+    private final String origin = UUID.randomUUID().toString();
+    private final Map<String, CacheMode> modes = new ConcurrentHashMap<>();
+
+    private PersistenceManagerFactory persistenceManagerFactory;
+    private OsgiEventProxy osgiEventProxy;
+
+    public EntityCacheServiceImpl(PersistenceManagerFactory persistenceManagerFactory) {
+        this.persistenceManagerFactory = persistenceManagerFactory;
+    }
+
+    @Override
+    public void configure(String className, CacheSettingsDto settings) {
+        MdsLevel2Cache cache = getLevel2Cache();
+
+        if (null == cache) {
+            LOGGER.warn("The MDS second level cache is not in use, ignoring cache settings of {}", className);
+        } else {
+            cache.configure(className, settings);
+
+            if (settings.isEnabled()) {
+                modes.put(className, settings.getMode());
+            } else {
+                modes.remove(className);
+            }
+        }
+    }
+
+    @Override
+    public void instancesChanged(String className, Collection<Long> ids) {
+        if (!modes.containsKey(className)) {
+            return;
+        }
+
+        evictQueryResults(className);
+
+        Map<String, Object> params = new HashMap<>();
+        params.put(Constants.MDSEvents.ENTITY_CLASS, className);
+        params.put(Constants.MDSEvents.OBJECT_IDS, new ArrayList<>(ids));
+        params.put(ORIGIN_EVENT_PARAM, origin);
+
+        osgiEventProxy.broadcastEvent(EVICT_ENTITY_CACHE, params, true);
+    }
+
+    @Override
+    public void entityChanged(String className) {
+        if (!modes.containsKey(className)) {
+            return;
+        }
+
+        evictEntity(className);
+
+        // without ids, other instances drop all instances of the entity
+        Map<String, Object> params = new HashMap<>();
+        params.put(Constants.MDSEvents.ENTITY_CLASS, className);
+        params.put(ORIGIN_EVENT_PARAM, origin);
+
+        osgiEventProxy.broadcastEvent(EVICT_ENTITY_CACHE, params, true);
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        if (!EVICT_ENTITY_CACHE.equals(event.getTopic())) {
+            throw new IllegalStateException("Received an event with an unknown subject/topic: " + event.getTopic());
+        }
+
+        if (origin.equals(event.getProperty(ORIGIN_EVENT_PARAM))) {
+            return;
+        }
+
+        String className = (String) event.getProperty(Constants.MDSEvents.ENTITY_CLASS);
+        Collection<Long> ids = (Collection<Long>) event.getProperty(Constants.MDSEvents.OBJECT_IDS);
+
+        if (null == className) {
+            return;
+        }
+
+        if (null == ids) {
+            evictEntity(className);
+        } else {
+            MdsLevel2Cache cache = getLevel2Cache();
+            if (null != cache) {
+                cache.evictInstances(className, ids);
+            }
+            evictQueryResults(className);
+        }
+    }
+
+    private void evictEntity(String className) {
+        MdsLevel2Cache cache = getLevel2Cache();
+        if (null != cache) {
+            cache.evictEntity(className);
+        }
+        evictQueryResults(className);
+    }
+
+    private void evictQueryResults(String className) {
+        // lookup results are cached only for read-mostly entities, the query cache cannot drop the results of
+        // a single candidate class, so all of them are dropped
+        if (modes.get(className) == CacheMode.READ_MOSTLY
+                && persistenceManagerFactory instanceof JDOPersistenceManagerFactory) {
+            ((JDOPersistenceManagerFactory) persistenceManagerFactory).getQueryCache().evictAll();
+        }
+    }
+
+    private MdsLevel2Cache getLevel2Cache() {
+        if (persistenceManagerFactory.getDataStoreCache() instanceof JDODataStoreCache) {
+            Level2Cache cache = ((JDODataStoreCache) persistenceManagerFactory.getDataStoreCache()).getLevel2Cache();
+            return cache instanceof MdsLevel2Cache ? (MdsLevel2Cache) cache : null;
+        }
+        return null;
+    }
+
+    @Autowired
+    public void setOsgiEventProxy(OsgiEventProxy osgiEventProxy) {
+        this.osgiEventProxy = osgiEventProxy;
+    }
+}
@@ -5,6 +5,7 @@ import org.motechproject.mds.dto.LookupDto;
 import org.motechproject.mds.exception.lookup.SingleResultFromLookupExpectedException;
 import org.motechproject.mds.javassist.MotechClassPool;
 import org.motechproject.mds.lookup.LookupExecutor;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.service.EntityService;
 import org.motechproject.mds.service.MDSLookupService;
@@ -73,6 +74,25 @@ public class MdsLookupServiceImpl implements MDSLookupService {
         return returnListResult(result);
     }
 
+    @Override
+    public <T> long forEach(String entityClassName, String lookupName, Map<String, ?> lookupParams,
+                            QueryParams queryParams, InstanceCallback<T> callback) {
+        LookupExecutor lookupExecutor = buildLookupExecutor(entityClassName, lookupName);
+
+        if (lookupExecutor.isSingleObjectReturn()) {
+            // there is nothing to stream, the single result is simply passed to the callback
+            T result = (T) lookupExecutor.execute(lookupParams);
+            if (result == null) {
+                return 0;
+            }
+
+            callback.process(result);
+            return 1;
+        }
+
+        return lookupExecutor.executeForEach(lookupParams, queryParams, callback);
+    }
+
     @Override
     public <T> List<T> retrieveAll(Class<T> entityClass) {
         return retrieveAll(entityClass.getName(), null);
@@ -8,6 +8,7 @@ import org.motechproject.mds.entityinfo.EntityInfoReader;
 import org.motechproject.mds.exception.csv.DataExportException;
 import org.motechproject.mds.exception.entity.EntityNotFoundException;
 import org.motechproject.mds.helper.DataServiceHelper;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.service.CsvExportCustomizer;
 import org.motechproject.mds.service.DefaultCsvExportCustomizer;
@@ -67,19 +68,16 @@ public abstract class AbstractMdsExporter {
         try {
             writer.writeHeader(orderedHeaders);
 
-            long rowsExported = 0;
-            Map<String, String> row = new HashMap<>();
+            // instances are streamed, so that the whole table is never held in memory
+            RowWriter rowWriter = new RowWriter(writer, fieldMap, orderedHeaders, exportCustomizer);
 
-            List<Object> instances = StringUtils.isBlank(lookupName) ? dataService.retrieveAll(params) :
-                    mdsLookupService.findMany(entityInfo.getClassName(), lookupName, lookupFields, params);
-
-            for (Object instance : instances) {
-                buildCsvRow(row, fieldMap, instance, orderedHeaders, exportCustomizer);
-                writer.writeRow(row, orderedHeaders);
-                rowsExported++;
+            if (StringUtils.isBlank(lookupName)) {
+                dataService.forEach(params, rowWriter);
+            } else {
+                mdsLookupService.forEach(entityInfo.getClassName(), lookupName, lookupFields, params, rowWriter);
             }
 
-            return rowsExported;
+            return rowWriter.rowsExported;
         } catch (IOException e) {
             throw new DataExportException("IO Error when writing data", e);
         }
@@ -142,6 +140,36 @@ public abstract class AbstractMdsExporter {
         }
     }
 
+    private class RowWriter implements InstanceCallback<Object> {
+        private final TableWriter writer;
+        private final Map<String, FieldDto> fieldMap;
+        private final String[] headers;
+        private final CsvExportCustomizer exportCustomizer;
+        private final Map<String, String> row = new HashMap<>();
+        private long rowsExported;
+
+        RowWriter(TableWriter writer, Map<String, FieldDto> fieldMap, String[] headers,
+                  CsvExportCustomizer exportCustomizer) {
+            this.writer = writer;
+            this.fieldMap = fieldMap;
+            this.headers = headers;
+            this.exportCustomizer = exportCustomizer;
+        }
+
+        @Override
+        public void process(Object instance) {
+            buildCsvRow(row, fieldMap, instance, headers, exportCustomizer);
+
+            try {
+                writer.writeRow(row, headers);
+            } catch (IOException e) {
+                throw new DataExportException("IO Error when writing data", e);
+            }
+
+            rowsExported++;
+        }
+    }
+
     protected BundleContext getBundleContext() {
         return bundleContext;
     }
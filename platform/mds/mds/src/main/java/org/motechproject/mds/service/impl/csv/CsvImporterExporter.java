@@ -23,7 +23,9 @@ import org.motechproject.mds.util.PropertyUtil;
 import org.motechproject.mds.util.TypeHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
 import org.supercsv.io.CsvMapReader;
 import org.supercsv.prefs.CsvPreference;
 
@@ -34,21 +36,33 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.motechproject.mds.util.Constants.MetadataKeys.MAP_KEY_TYPE;
 import static org.motechproject.mds.util.Constants.MetadataKeys.MAP_VALUE_TYPE;
 
 /**
  * Component used for importing CSV records to the database.
- * The reason for separating import logic is keeping the db transaction and sending the MOTECH event at completion separate.
+ * The reason for separating import logic is keeping the db transactions and sending the MOTECH event at completion separate.
+ * Rows are imported in chunks, each chunk in its own transaction, so that importing large files does not hold
+ * a single long transaction with all imported instances in memory. The instances related to the rows of a chunk
+ * are retrieved with a single query for each related entity.
  * This bean lives in the context of the generated MDS entities bundle.
  */
 public class CsvImporterExporter extends AbstractMdsExporter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CsvImporterExporter.class);
 
+    /**
+     * The default number of rows imported in a single transaction.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
     /**
      * Imports instances of the given entity to the database.
      * @param entityId the ID of the entity for which instances will be imported
@@ -57,7 +71,6 @@ public class CsvImporterExporter extends AbstractMdsExporter {
      *                        if false, import process will stop and rethrow the exception
      * @return IDs of instances updated/added during import
      */
-    @Transactional
     public CsvImportResults importCsv(final long entityId, final Reader reader, boolean continueOnError, boolean clearData) {
         EntityInfo entityInfo = getEntity(entityId);
         return importCsv(entityInfo, reader, continueOnError, clearData);
@@ -70,13 +83,34 @@ public class CsvImporterExporter extends AbstractMdsExporter {
      * @param importCustomizer the customizer that will be used during instance import from rows
      * @param continueOnError if true, import will continue with next row if exception was encountered,
      *                        if false, import process will stop and rethrow the exception
-     * @param clearData if true, import will clear instances from table
+     * @param clearData if true, import will clear instances from table, the cleared instances are not restored
+     *                  if the import fails
      * @return IDs of instances updated/added during import
      */
-    @Transactional
     public CsvImportResults importCsv(final long entityId, final Reader reader, CsvImportCustomizer importCustomizer, boolean continueOnError, boolean clearData) {
+        return importCsv(entityId, reader, importCustomizer, continueOnError, clearData, 0);
+    }
+
+    /**
+     * Imports instances of the given entity to the database, skipping the given number of rows. This allows resuming
+     * an import that failed, since rows are imported in chunks and rows of chunks imported before the failure stay
+     * in the database.
+     * @param entityId the ID of the entity for which instances will be imported
+     * @param reader reader from which the csv file will be read
+     * @param importCustomizer the customizer that will be used during instance import from rows
+     * @param continueOnError if true, import will continue with next row if exception was encountered,
+     *                        if false, import process will stop and rethrow the exception
+     * @param clearData if true, import will clear instances from table, the cleared instances are not restored
+     *                  if the import fails, must be false when rows are skipped
+     * @param skipRows the number of rows, not counting the header, which will not be imported
+     * @return IDs of instances updated/added during import
+     * @throws IllegalArgumentException if rows are skipped and the data is to be cleared
+     * @see CsvImportException#getLastImportedRow()
+     */
+    public CsvImportResults importCsv(final long entityId, final Reader reader, CsvImportCustomizer importCustomizer,
+                                      boolean continueOnError, boolean clearData, int skipRows) {
         EntityInfo entityInfo = getEntity(entityId);
-        return importCsv(entityInfo, reader, importCustomizer, continueOnError, clearData);
+        return importCsv(entityInfo, reader, importCustomizer, continueOnError, clearData, skipRows);
     }
 
     /**
@@ -87,7 +121,6 @@ public class CsvImporterExporter extends AbstractMdsExporter {
      *                        if false, import process will stop and rethrow the exception
      * @return IDs of instances updated/added during import
      */
-    @Transactional
     public CsvImportResults importCsv(final String entityClassName, final Reader reader, boolean continueOnError) {
         EntityInfo entityInfo = getEntity(entityClassName);
         return importCsv(entityInfo, reader, continueOnError, false);
@@ -227,62 +260,141 @@ public class CsvImporterExporter extends AbstractMdsExporter {
         }
     }
 
+    /**
+     * Sets the number of rows imported in a single transaction.
+     * @param chunkSize the number of rows in a chunk, must be positive
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
     private CsvImportResults importCsv(final EntityInfo entityInfo, final Reader reader, boolean continueOnError, boolean clearData) {
-        return importCsv(entityInfo, reader, new DefaultCsvImportCustomizer(), continueOnError, clearData);
+        return importCsv(entityInfo, reader, new DefaultCsvImportCustomizer(), continueOnError, clearData, 0);
     }
 
     private CsvImportResults importCsv(final EntityInfo entityInfo, final Reader reader, CsvImportCustomizer importCustomizer,
-                                       boolean continueOnError, boolean clearData) {
-        final MotechDataService dataService = DataServiceHelper.getDataService(getBundleContext(), entityInfo.getClassName());
+                                       boolean continueOnError, boolean clearData, int skipRows) {
+        if (clearData && skipRows > 0) {
+            // the instances imported before the failure would be cleared along with the rest
+            throw new IllegalArgumentException("Unable to clear the data of entity " + entityInfo.getClassName()
+                    + " when resuming an import");
+        }
 
-        Map<String, FieldDto> fieldCacheMap = new HashMap<>();
+        final MotechDataService dataService = DataServiceHelper.getDataService(getBundleContext(), entityInfo.getClassName());
 
         if (clearData) {
+            // clearing is committed on its own, before the rows are imported in chunks
             dataService.deleteAll();
         }
 
         try (CsvMapReader csvMapReader = new CsvMapReader(reader, CsvPreference.STANDARD_PREFERENCE)) {
+            final String headers[] = csvMapReader.getHeader(true);
 
-            List<Long> newInstanceIDs = new ArrayList<>();
-            List<Long> updatedInstanceIDs = new ArrayList<>();
-
-            Map <Integer, String> exceptions = new HashMap<>();
+            ImportContext context = new ImportContext(entityInfo, headers, dataService, importCustomizer, continueOnError,
+                    skipRows);
+            List<CsvRow> chunk = new ArrayList<>();
 
             Map<String, String> row;
             int rowNum = 0;
 
-            final String headers[] = csvMapReader.getHeader(true);
-
             while ((row = csvMapReader.read(headers)) != null) {
                 rowNum++;
-                try {
-                    // import a row
-                    RowImportResult rowImportResult = importInstanceFromRow(entityInfo.getEntity(), row, headers, fieldCacheMap, entityInfo.getFieldDtos(), dataService, importCustomizer);
-                    Long id = rowImportResult.getId();
-
-                    // put its ID in the correct list
-                    if (rowImportResult.isNewInstance()) {
-                        newInstanceIDs.add(id);
-                    } else {
-                        updatedInstanceIDs.add(id);
-                    }
-                } catch (RuntimeException e){
-                    if (continueOnError) {
-                        exceptions.put(rowNum, e.getMessage());
-                    } else {
-                        throw e;
-                    }
+                // rows imported by a previous, interrupted import are skipped when resuming it
+                if (rowNum <= skipRows) {
+                    continue;
+                }
+
+                chunk.add(new CsvRow(rowNum, row));
+
+                if (chunk.size() >= chunkSize) {
+                    importChunk(context, chunk);
+                    chunk = new ArrayList<>();
                 }
             }
 
-            return new CsvImportResults(entityInfo.getEntity(), newInstanceIDs, updatedInstanceIDs, exceptions);
+            if (!chunk.isEmpty()) {
+                importChunk(context, chunk);
+            }
+
+            return new CsvImportResults(entityInfo.getEntity(), context.newInstanceIDs, context.updatedInstanceIDs,
+                    context.rowErrors);
         } catch (IOException e) {
             throw new CsvImportException("IO Error when importing CSV", e);
         }
     }
 
-    private RowImportResult importInstanceFromRow(EntityDto entityDto, Map<String, String> row, String[] headers, Map<String, FieldDto> fieldMap, List<FieldDto> fields,
-                                                  MotechDataService dataService, CsvImportCustomizer importCustomizer) {
+    private void importChunk(final ImportContext context, final List<CsvRow> chunk) {
+        final int firstRow = chunk.get(0).getNumber();
+        final int lastRow = chunk.get(chunk.size() - 1).getNumber();
+        final Map<Integer, String> chunkErrors = new HashMap<>();
+
+        List<RowImportResult> results;
+        try {
+            results = (List<RowImportResult>) context.dataService.doInTransaction(new TransactionCallback<List<RowImportResult>>() {
+                @Override
+                public List<RowImportResult> doInTransaction(TransactionStatus status) {
+                    return importRows(context, chunk, chunkErrors);
+                }
+            });
+        } catch (RuntimeException e) {
+            if (!context.continueOnError) {
+                throw new CsvImportException(String.format("Unable to import rows %d-%d, the first %d rows were imported: %s",
+                        firstRow, lastRow, context.lastImportedRow, e.getMessage()), e, context.lastImportedRow);
+            }
+
+            // the whole chunk was rolled back, so rows imported without errors have to be reported as well
+            results = new ArrayList<>();
+            for (CsvRow row : chunk) {
+                if (!chunkErrors.containsKey(row.getNumber())) {
+                    chunkErrors.put(row.getNumber(), e.getMessage());
+                }
+            }
+        }
+
+        for (RowImportResult result : results) {
+            // put its ID in the correct list
+            if (result.isNewInstance()) {
+                context.newInstanceIDs.add(result.getId());
+            } else {
+                context.updatedInstanceIDs.add(result.getId());
+            }
+        }
+
+        context.rowErrors.putAll(chunkErrors);
+        context.lastImportedRow = lastRow;
+
+        LOGGER.info("Imported rows {}-{} of {} CSV file, {} instances imported, {} rows failed so far",
+                firstRow, lastRow, context.entityInfo.getClassName(),
+                context.newInstanceIDs.size() + context.updatedInstanceIDs.size(), context.rowErrors.size());
+    }
+
+    private List<RowImportResult> importRows(ImportContext context, List<CsvRow> chunk, Map<Integer, String> chunkErrors) {
+        Map<String, Map<Long, Object>> relatedInstances = findRelatedInstances(context, chunk);
+        List<RowImportResult> results = new ArrayList<>(chunk.size());
+
+        for (CsvRow row : chunk) {
+            try {
+                // import a row
+                results.add(importInstanceFromRow(context, row.getValues(), relatedInstances));
+            } catch (RuntimeException e) {
+                if (context.continueOnError) {
+                    chunkErrors.put(row.getNumber(), e.getMessage());
+                } else {
+                    throw e;
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private RowImportResult importInstanceFromRow(ImportContext context, Map<String, String> row,
+                                                  Map<String, Map<Long, Object>> relatedInstances) {
+        MotechDataService dataService = context.dataService;
+        CsvImportCustomizer importCustomizer = context.importCustomizer;
         Class entityClass = dataService.getClassType();
 
         boolean isNewInstance = true;
@@ -300,8 +412,8 @@ public class CsvImporterExporter extends AbstractMdsExporter {
             throw new CsvImportException("Unable to create instance of " + entityClass.getName(), e);
         }
 
-        for (String fieldName : headers) {
-            FieldDto field = findField(fieldName, fields, fieldMap, importCustomizer);
+        for (String fieldName : context.headers) {
+            FieldDto field = context.findField(fieldName);
 
             if (field == null) {
                 LOGGER.warn("No field with name {} in entity {}, however such row exists in CSV. Ignoring.",
@@ -312,7 +424,8 @@ public class CsvImporterExporter extends AbstractMdsExporter {
             if (row.containsKey(fieldName)) {
                 String csvValue = row.get(fieldName);
 
-                Object parsedValue = parseValue(entityDto, csvValue, field, entityClass.getClassLoader());
+                Object parsedValue = parseValue(context.entityInfo.getEntity(), csvValue, field,
+                        entityClass.getClassLoader(), relatedInstances);
 
                 try {
                     PropertyUtil.setProperty(instance, StringUtils.uncapitalize(field.getBasic().getName()), parsedValue);
@@ -336,6 +449,74 @@ public class CsvImporterExporter extends AbstractMdsExporter {
         return new RowImportResult(importedId, isNewInstance);
     }
 
+    /**
+     * Retrieves the instances referenced by relationship fields in all rows of the chunk, with a single query
+     * for each related entity.
+     *
+     * @return the map of related instances by their IDs, keyed by the class name of the related entity
+     */
+    private Map<String, Map<Long, Object>> findRelatedInstances(ImportContext context, List<CsvRow> chunk) {
+        Map<String, Set<Long>> relatedIds = new HashMap<>();
+
+        for (String fieldName : context.headers) {
+            FieldDto field = context.findField(fieldName);
+
+            if (field != null && field.getType().isRelationship()) {
+                RelationshipHolder relationshipHolder = new RelationshipHolder(field);
+
+                Set<Long> ids = relatedIds.get(relationshipHolder.getRelatedClass());
+                if (ids == null) {
+                    ids = new HashSet<>();
+                    relatedIds.put(relationshipHolder.getRelatedClass(), ids);
+                }
+
+                for (CsvRow row : chunk) {
+                    ids.addAll(parseRelatedIds(row.getValues().get(fieldName), relationshipHolder));
+                }
+            }
+        }
+
+        Map<String, Map<Long, Object>> relatedInstances = new HashMap<>();
+
+        for (Map.Entry<String, Set<Long>> entry : relatedIds.entrySet()) {
+            Map<Long, Object> instances = new HashMap<>();
+
+            if (!entry.getValue().isEmpty()) {
+                MotechDataService dataService = context.getDataService(entry.getKey());
+                for (Object instance : dataService.findByIds(entry.getValue())) {
+                    instances.put((Long) PropertyUtil.safeGetProperty(instance, Constants.Util.ID_FIELD_NAME), instance);
+                }
+            }
+
+            relatedInstances.put(entry.getKey(), instances);
+        }
+
+        return relatedInstances;
+    }
+
+    private List<Long> parseRelatedIds(String csvValue, RelationshipHolder relationshipHolder) {
+        List<Long> ids = new ArrayList<>();
+
+        try {
+            if (relationshipHolder.isManyToMany() || relationshipHolder.isOneToMany()) {
+                List<Long> parsed = (List<Long>) TypeHelper.parse(csvValue, List.class.getName(), Long.class.getName());
+                if (parsed != null) {
+                    ids.addAll(parsed);
+                }
+            } else {
+                Long id = (Long) TypeHelper.parse(csvValue, Long.class);
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+        } catch (RuntimeException e) {
+            // the row will fail with the same error when it is imported
+            LOGGER.debug("Unable to parse related instance IDs from {}", csvValue, e);
+        }
+
+        return ids;
+    }
+
     private FieldDto findField(String fieldName, List<FieldDto> fields, Map<String, FieldDto> fieldMap, CsvImportCustomizer importCustomizer) {
         if (!fieldMap.containsKey(fieldName)) {
             FieldDto field = importCustomizer.findField(fieldName, fields);
@@ -344,14 +525,15 @@ public class CsvImporterExporter extends AbstractMdsExporter {
         return fieldMap.get(fieldName);
     }
 
-    private Object parseValue(EntityDto entityDto, String csvValue, FieldDto field, ClassLoader entityCl) {
+    private Object parseValue(EntityDto entityDto, String csvValue, FieldDto field, ClassLoader entityCl,
+                              Map<String, Map<Long, Object>> relatedInstances) {
         final TypeDto type = field.getType();
 
         Object value;
         if (type.isCombobox()) {
             value = parseComboboxValue(entityDto, csvValue, field, entityCl);
         } else if (type.isRelationship()) {
-            value = parseRelationshipValue(csvValue, field);
+            value = parseRelationshipValue(csvValue, field, relatedInstances);
         } else if (type.isMap()) {
             MetadataDto keyMetadata = field.getMetadata(MAP_KEY_TYPE);
             MetadataDto valueMetadata = field.getMetadata(MAP_VALUE_TYPE);
@@ -381,15 +563,17 @@ public class CsvImporterExporter extends AbstractMdsExporter {
         }
     }
 
-    private Object parseRelationshipValue(String csvValue, FieldDto field) {
+    private Object parseRelationshipValue(String csvValue, FieldDto field, Map<String, Map<Long, Object>> relatedInstances) {
         RelationshipHolder relationshipHolder = new RelationshipHolder(field);
+        Map<Long, Object> instances = relatedInstances.get(relationshipHolder.getRelatedClass());
+
         if (relationshipHolder.isManyToMany() || relationshipHolder.isOneToMany()) {
             List<Long> ids = (List<Long>) TypeHelper.parse(csvValue, List.class.getName(), Long.class.getName());
 
             Collection<Object> relatedObjects = buildRelationshipCollection(relationshipHolder);
             if (ids != null) {
                 for (Long id : ids) {
-                    Object relatedObj = getRelatedObject(id, relationshipHolder.getRelatedClass());
+                    Object relatedObj = getRelatedObject(id, relationshipHolder.getRelatedClass(), instances);
                     if (relatedObj != null) {
                         relatedObjects.add(relatedObj);
                     }
@@ -398,7 +582,7 @@ public class CsvImporterExporter extends AbstractMdsExporter {
             return relatedObjects;
         } else {
             Long id = (Long) TypeHelper.parse(csvValue, Long.class);
-            return getRelatedObject(id, relationshipHolder.getRelatedClass());
+            return id == null ? null : getRelatedObject(id, relationshipHolder.getRelatedClass(), instances);
         }
     }
 
@@ -416,9 +600,8 @@ public class CsvImporterExporter extends AbstractMdsExporter {
         }
     }
 
-    private Object getRelatedObject(Long id, String entityClass) {
-        MotechDataService dataService = DataServiceHelper.getDataService(getBundleContext(), entityClass);
-        Object obj = dataService.findById(id);
+    private Object getRelatedObject(Long id, String entityClass, Map<Long, Object> instances) {
+        Object obj = instances == null ? null : instances.get(id);
 
         if (obj == null) {
             LOGGER.warn("Unable to find {} instance with id {}. Ignoring, you will have to create this relationship manually",
@@ -428,6 +611,68 @@ public class CsvImporterExporter extends AbstractMdsExporter {
         return obj;
     }
 
+    /**
+     * Holds the state of a single import, shared by all chunks of rows.
+     */
+    private class ImportContext {
+        private final EntityInfo entityInfo;
+        private final String[] headers;
+        private final MotechDataService dataService;
+        private final CsvImportCustomizer importCustomizer;
+        private final boolean continueOnError;
+
+        private final Map<String, FieldDto> fieldMap = new HashMap<>();
+        private final Map<String, MotechDataService> relatedDataServices = new HashMap<>();
+
+        private final List<Long> newInstanceIDs = new ArrayList<>();
+        private final List<Long> updatedInstanceIDs = new ArrayList<>();
+        private final Map<Integer, String> rowErrors = new HashMap<>();
+        private int lastImportedRow;
+
+        public ImportContext(EntityInfo entityInfo, String[] headers, MotechDataService dataService,
+                             CsvImportCustomizer importCustomizer, boolean continueOnError, int skipRows) {
+            this.entityInfo = entityInfo;
+            this.headers = headers;
+            this.dataService = dataService;
+            this.importCustomizer = importCustomizer;
+            this.continueOnError = continueOnError;
+            // the skipped rows were imported by the import being resumed
+            this.lastImportedRow = skipRows;
+        }
+
+        public FieldDto findField(String fieldName) {
+            return CsvImporterExporter.this.findField(fieldName, entityInfo.getFieldDtos(), fieldMap, importCustomizer);
+        }
+
+        public MotechDataService getDataService(String entityClass) {
+            if (!relatedDataServices.containsKey(entityClass)) {
+                relatedDataServices.put(entityClass, DataServiceHelper.getDataService(getBundleContext(), entityClass));
+            }
+            return relatedDataServices.get(entityClass);
+        }
+    }
+
+    /**
+     * Represents a single row read from the CSV file, together with its number.
+     */
+    private static class CsvRow {
+        private final int number;
+        private final Map<String, String> values;
+
+        public CsvRow(int number, Map<String, String> values) {
+            this.number = number;
+            this.values = values;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public Map<String, String> getValues() {
+            return values;
+        }
+    }
+
     /**
      * This class represents a result of a single row import.
      * It contains the ID of the created instance, it also contains information about whether it is a
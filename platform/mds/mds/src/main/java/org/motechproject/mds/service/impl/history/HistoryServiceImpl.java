@@ -1,5 +1,6 @@
 package org.motechproject.mds.service.impl.history;
 
+import org.datanucleus.api.jdo.NucleusJDOHelper;
 import org.motechproject.mds.domain.EntityType;
 import org.motechproject.mds.service.HistoryTrashClassHelper;
 import org.motechproject.mds.query.Property;
@@ -20,11 +21,16 @@ import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static org.motechproject.mds.util.Constants.Util.ID_FIELD_NAME;
 
 /**
  * Default implementation of {@link org.motechproject.mds.service.HistoryService} interface.
+ * Changes of instances are detected using the fields marked as dirty by the persistence layer,
+ * captured before the instances get stored. The latest historical revision is queried only when
+ * the dirty fields are not known. Historical records created during a transaction are persisted
+ * together, right before the transaction commits, after its pending changes are flushed.
  */
 public class HistoryServiceImpl extends BasePersistenceService implements HistoryService {
     private static final Logger LOGGER = LoggerFactory.getLogger(HistoryServiceImpl.class);
@@ -60,6 +66,22 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
         }
     }
 
+    @Override
+    @Transactional
+    public void beforeStore(Object instance) {
+        // new instances are always recorded, so there is no need to check their changes
+        if (JDOHelper.isPersistent(instance) && !JDOHelper.isNew(instance)) {
+            // the captured fields must be cleared once the TX completes
+            registerPreCommitTxSync();
+
+            String[] dirtyFields = NucleusJDOHelper.getDirtyFields(instance, JDOHelper.getPersistenceManager(instance));
+
+            if (null != dirtyFields) {
+                getRecordRepository().addDirtyFields(instance, dirtyFields);
+            }
+        }
+    }
+
     @Override
     @Transactional
     public List getHistoryForInstance(Object instance, QueryParams queryParams) {
@@ -117,12 +139,16 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
         // we don't want duplicate history instances
         // this checks will prevent double history being recorder from cascade events etc.
         Long instanceId = getInstanceId(instance);
+        Set<String> dirtyFields = getRecordRepository().removeDirtyFields(instance);
         if (JDOHelper.isNew(instance)) {
             // always record for new instances, no need for db query
             return true;
         } else if (getRecordRepository().contains(historyClass.getName(), instanceId)) {
             // if it was already recorded in this tx, then we want to update it
             return true;
+        } else if (dirtyFields != null) {
+            // the fields changed on the instance were captured before it got stored, no need for db query
+            return !dirtyFields.isEmpty();
         } else {
             // check if there are any changes, this will prevent double history in case of cascading etc.
             Object latestHistoryRev = getLatestRevision(historyClass, instanceId);
@@ -142,10 +168,8 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
 
         setHistoryProperties(currentHistoryInstance, instance);
 
-        PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
-
+        // the record will be persisted together with other records created in this TX, before it commits
         LOGGER.debug("Create a new history entry for {}", instance.getClass().getName());
-        manager.makePersistent(currentHistoryInstance);
 
         return currentHistoryInstance;
     }
@@ -203,10 +227,30 @@ public class HistoryServiceImpl extends BasePersistenceService implements Histor
     }
 
     /**
-     * This TX sync does history related cleanup once a TX completes.
-     * It clears the repository of the records we have stored in this TX.
+     * This TX sync persists the history records created in a TX, right before it commits.
+     * Pending changes are flushed first, since instances stored during the flush are recorded
+     * as well, and this is repeated until the flush creates no new records. It also does history
+     * related cleanup once a TX completes, it clears the repository of the records we have
+     * stored in this TX.
      */
     private class HistoryPersistSynchronization extends TransactionSynchronizationAdapter {
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            PersistenceManager manager = getPersistenceManagerFactory().getPersistenceManager();
+
+            manager.flush();
+            List<Object> records = getRecordRepository().takeUnpersistedRecords();
+
+            while (!records.isEmpty()) {
+                LOGGER.debug("Persisting {} history records", records.size());
+
+                manager.makePersistentAll(records);
+                manager.flush();
+
+                records = getRecordRepository().takeUnpersistedRecords();
+            }
+        }
+
         @Override
         public void afterCompletion(int status) {
             getRecordRepository().clear();
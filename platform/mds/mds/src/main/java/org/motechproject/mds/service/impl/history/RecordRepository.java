@@ -1,12 +1,21 @@
 package org.motechproject.mds.service.impl.history;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class is responsible for storing records persisted in history during a single TX.
  * The purpose is updating records in case one record gets multiple store events, which may
- * happen in case of relationship trees.
+ * happen in case of relationship trees. The records are persisted together, once the TX
+ * is about to commit. The repository also keeps the fields which were changed on the
+ * stored instances, captured before they got stored.
  */
 class RecordRepository {
 
@@ -15,6 +24,12 @@ class RecordRepository {
     // the value is the historical record
     private Map<String, Map<Long, Object>> recordMap = new HashMap<>();
 
+    // instances are compared by identity, since entities might not implement equals
+    private Map<Object, Set<String>> dirtyFieldsMap = new IdentityHashMap<>();
+
+    // the records already passed to the persistence manager in this TX
+    private Set<Object> persistedRecords = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
     void store(Long id, Object object) {
         String className = object.getClass().getName();
         getMapForEntityClass(className).put(id, object);
@@ -28,8 +43,45 @@ class RecordRepository {
         return getMapForEntityClass(className).containsKey(id);
     }
 
+    List<Object> getRecords() {
+        List<Object> records = new ArrayList<>();
+        for (Map<Long, Object> mapForEntity : recordMap.values()) {
+            records.addAll(mapForEntity.values());
+        }
+        return records;
+    }
+
+    /**
+     * Returns the records which were not returned by this method before in this TX, so that
+     * records created while the previous ones were being persisted can be persisted as well.
+     */
+    List<Object> takeUnpersistedRecords() {
+        List<Object> records = new ArrayList<>();
+        for (Object record : getRecords()) {
+            if (persistedRecords.add(record)) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    void addDirtyFields(Object instance, String[] dirtyFields) {
+        Set<String> fields = dirtyFieldsMap.get(instance);
+        if (fields == null) {
+            fields = new HashSet<>();
+            dirtyFieldsMap.put(instance, fields);
+        }
+        fields.addAll(Arrays.asList(dirtyFields));
+    }
+
+    Set<String> removeDirtyFields(Object instance) {
+        return dirtyFieldsMap.remove(instance);
+    }
+
     void clear() {
         recordMap.clear();
+        dirtyFieldsMap.clear();
+        persistedRecords.clear();
     }
 
     private Map<Long, Object> getMapForEntityClass(String className) {
@@ -28,9 +28,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Class responsible for all actions connected with registering MDS data provider in Task module.
+ * Lookups are executed using the schema the entities bundle was generated from, which gets replaced
+ * every time the bundle is regenerated, so that they don't have to query the schema database.
  */
 @Component("mdsDataProvider")
 public class MDSDataProvider extends AbstractDataProvider {
@@ -43,6 +47,7 @@ public class MDSDataProvider extends AbstractDataProvider {
     private BundleContext bundleContext;
     private ServiceRegistration serviceRegistration;
     private EntityService entityService;
+    private volatile LookupSchema lookupSchema = new LookupSchema(null);
 
     @Autowired
     public MDSDataProvider(ResourceLoader resourceLoader) {
@@ -66,7 +71,7 @@ public class MDSDataProvider extends AbstractDataProvider {
 
     @Override
     public boolean supports(String type) {
-        return entityService.getEntityByClassName(type) != null;
+        return getEntity(type) != null;
     }
 
     @Override
@@ -76,7 +81,8 @@ public class MDSDataProvider extends AbstractDataProvider {
 
     @Override
     public List<Class<?>> getSupportClasses() {
-        List<EntityDto> dtos = entityService.listEntities();
+        SchemaHolder schema = lookupSchema.schemaHolder;
+        List<EntityDto> dtos = (schema == null) ? entityService.listEntities() : schema.getAllEntities();
         List<Class<?>> classes = new ArrayList<>();
 
         for (EntityDto dto : dtos) {
@@ -91,6 +97,9 @@ public class MDSDataProvider extends AbstractDataProvider {
     }
 
     public void updateDataProvider(SchemaHolder schemaHolder) {
+        // the new schema replaces the old one at once, lookups in progress keep using the one they started with
+        this.lookupSchema = new LookupSchema(schemaHolder);
+
         setBody(mdsDataProviderBuilder.generateDataProvider(schemaHolder));
         // we unregister the service, then register again
         if (serviceRegistration != null) {
@@ -113,10 +122,12 @@ public class MDSDataProvider extends AbstractDataProvider {
     private Object findUsingLookup(String type, String lookupName, Map<String, String> lookupMap) {
         Object obj = null;
 
+        LookupSchema current = lookupSchema;
+        SchemaHolder schema = current.schemaHolder;
         LookupDto lookup = null;
-        EntityDto entity = entityService.getEntityByClassName(type);
+        EntityDto entity = getEntity(schema, type);
         if (entity != null) {
-            lookup = entityService.getLookupByName(entity.getId(), lookupName);
+            lookup = getLookup(schema, entity, lookupName);
         }
 
         if (entity != null && lookup != null) {
@@ -124,9 +135,7 @@ public class MDSDataProvider extends AbstractDataProvider {
             MotechDataService service = OSGiServiceUtils.findService(bundleContext, serviceName);
 
             if (service != null) {
-                Map<String, FieldDto> fieldsByName = entityService.getLookupFieldsMapping(entity.getId(), lookupName);
-
-                LookupExecutor executor = new LookupExecutor(service, lookup, fieldsByName);
+                LookupExecutor executor = getLookupExecutor(current, service, entity, lookup);
 
                 obj = executor.execute(lookupMap);
             } else {
@@ -153,6 +162,43 @@ public class MDSDataProvider extends AbstractDataProvider {
         return result;
     }
 
+    private EntityDto getEntity(String type) {
+        return getEntity(lookupSchema.schemaHolder, type);
+    }
+
+    private EntityDto getEntity(SchemaHolder schema, String type) {
+        // the schema is not available until the entities bundle gets generated for the first time
+        return (schema == null) ? entityService.getEntityByClassName(type) : schema.getEntityByClassName(type);
+    }
+
+    private LookupDto getLookup(SchemaHolder schema, EntityDto entity, String lookupName) {
+        return (schema == null)
+                ? entityService.getLookupByName(entity.getId(), lookupName)
+                : schema.getLookupByName(entity, lookupName);
+    }
+
+    private LookupExecutor getLookupExecutor(LookupSchema current, MotechDataService service, EntityDto entity,
+                                             LookupDto lookup) {
+        String key = entity.getClassName() + '#' + lookup.getLookupName();
+        LookupExecutor executor = current.lookupExecutors.get(key);
+
+        // the services are registered again once the entities bundle gets regenerated
+        if (executor == null || executor.getDataService() != service) {
+            Map<String, FieldDto> fieldsByName = getLookupFieldsMapping(current.schemaHolder, entity, lookup.getLookupName());
+
+            executor = new LookupExecutor(service, lookup, fieldsByName);
+            current.lookupExecutors.put(key, executor);
+        }
+
+        return executor;
+    }
+
+    private Map<String, FieldDto> getLookupFieldsMapping(SchemaHolder schema, EntityDto entity, String lookupName) {
+        return (schema == null)
+                ? entityService.getLookupFieldsMapping(entity.getId(), lookupName)
+                : schema.getLookupFieldsMapping(entity, lookupName);
+    }
+
     private Object findById(String type, String idParam) {
         Long id = parseId(idParam);
         String serviceName = MotechClassPool.getInterfaceName(type);
@@ -194,4 +240,16 @@ public class MDSDataProvider extends AbstractDataProvider {
     public void setEntityService(EntityService entityService) {
         this.entityService = entityService;
     }
+
+    /**
+     * The schema used for executing lookups, together with the executors of the lookups compiled for it.
+     */
+    private static final class LookupSchema {
+        private final SchemaHolder schemaHolder;
+        private final ConcurrentMap<String, LookupExecutor> lookupExecutors = new ConcurrentHashMap<>();
+
+        private LookupSchema(SchemaHolder schemaHolder) {
+            this.schemaHolder = schemaHolder;
+        }
+    }
 }
@@ -0,0 +1,22 @@
+package org.motechproject.mds.util;
+
+/**
+ * This enum describes how instances of an entity are kept in the second level cache.
+ */
+public enum CacheMode {
+    /**
+     * Instances of the entity are not cached, every retrieval hits the database.
+     */
+    OFF,
+    /**
+     * Instances of the entity and the results of its lookups are cached. Cached lookup results are dropped
+     * every time an instance of the entity changes, so this mode fits entities which are rarely modified,
+     * such as reference data.
+     */
+    READ_MOSTLY,
+    /**
+     * Instances of the entity are cached and updated in the cache when they change. Lookups are always
+     * executed against the database.
+     */
+    READ_WRITE
+}
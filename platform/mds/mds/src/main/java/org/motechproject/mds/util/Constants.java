@@ -568,6 +568,7 @@ public final class Constants {
         public static final String NAMESPACE = "namespace";
         public static final String ENTITY_CLASS = "entity_class";
         public static final String OBJECT_ID = "object_id";
+        public static final String OBJECT_IDS = "object_ids";
 
         private static final String CSV_IMPORT_PREFIX = "csv-import.";
         public static final String CSV_IMPORT_CREATED_IDS = CSV_IMPORT_PREFIX + "created_ids";
@@ -581,6 +582,7 @@ public final class Constants {
 
         // subject
         public static final String BASE_SUBJECT = "mds.crud.";
+        public static final String BATCH_SUFFIX = "_BATCH";
         public static final String CSV_IMPORT_SUCCESS = "csv-import.success";
         public static final String CSV_IMPORT_FAILURE = "csv-import.failure";
     }
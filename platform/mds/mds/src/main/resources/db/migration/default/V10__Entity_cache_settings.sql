@@ -0,0 +1,5 @@
+-- add second level cache settings to the Entity table --
+
+ALTER TABLE "Entity" ADD "cacheMode" varchar(255) DEFAULT NULL;
+ALTER TABLE "Entity" ADD "cacheMaxSize" integer DEFAULT NULL;
+ALTER TABLE "Entity" ADD "cacheTimeToLive" integer DEFAULT NULL;
@@ -0,0 +1,5 @@
+-- add second level cache settings to the Entity table --
+
+ALTER TABLE Entity ADD cacheMode varchar(255) CHARACTER SET latin1 COLLATE latin1_bin DEFAULT NULL;
+ALTER TABLE Entity ADD cacheMaxSize int(11) DEFAULT NULL;
+ALTER TABLE Entity ADD cacheTimeToLive int(11) DEFAULT NULL;
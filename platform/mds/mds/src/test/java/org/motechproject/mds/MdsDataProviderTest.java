@@ -5,10 +5,13 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.mds.builder.MDSDataProviderBuilder;
+import org.motechproject.mds.dto.AdvancedSettingsDto;
 import org.motechproject.mds.dto.EntityDto;
 import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.dto.LookupDto;
 import org.motechproject.mds.dto.LookupFieldDto;
+import org.motechproject.mds.dto.SchemaHolder;
 import org.motechproject.mds.javassist.MotechClassPool;
 import org.motechproject.mds.service.EntityService;
 import org.motechproject.mds.service.DefaultMotechDataService;
@@ -27,6 +30,7 @@ import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -54,6 +58,9 @@ public class MdsDataProviderTest {
     @Mock
     private EntityDto entity;
 
+    @Mock
+    private MDSDataProviderBuilder mdsDataProviderBuilder;
+
     private MDSDataProvider dataProvider;
 
     @Before
@@ -91,6 +98,7 @@ public class MdsDataProviderTest {
         dataProvider = new MDSDataProvider(resourceLoader);
         dataProvider.setEntityService(entityService);
         dataProvider.setBundleContext(bundleContext);
+        dataProvider.setMdsDataProviderBuilder(mdsDataProviderBuilder);
 
         MotechClassPool.registerServiceInterface(Record.class.getName(), LookupService.class.getName());
     }
@@ -148,6 +156,34 @@ public class MdsDataProviderTest {
         assertEquals("found by related field", record.getValue());
     }
 
+    @Test
+    public void shouldUseSchemaOfEntitiesBundleForLookups() {
+        EntityDto entityDto = new EntityDto(ENTITY_ID, Record.class.getName());
+        FieldDto fieldDto = FieldTestHelper.fieldDto(1L, "field", String.class.getName(), "disp", null);
+
+        LookupFieldDto lookupField = FieldTestHelper.lookupFieldDto(1L, "field");
+        LookupDto singleLookup = new LookupDto("singleLookup", true, false, asList(lookupField), false, null, asList("field"));
+
+        AdvancedSettingsDto advancedSettings = new AdvancedSettingsDto();
+        advancedSettings.setIndexes(asList(singleLookup));
+
+        SchemaHolder schemaHolder = new SchemaHolder();
+        schemaHolder.addEntity(entityDto, advancedSettings, asList(fieldDto));
+
+        dataProvider.updateDataProvider(schemaHolder);
+
+        Map<String, String> lookupMap = new HashMap<>();
+        lookupMap.put("field", PARAM_VALUE);
+
+        assertTrue(dataProvider.supports(Record.class.getName()));
+
+        Object result = dataProvider.lookup(Record.class.getName(), "singleLookup", lookupMap);
+
+        assertNotNull(result);
+        assertEquals("single", ((Record) result).getValue());
+        verifyZeroInteractions(entityService);
+    }
+
     public static class LookupService extends DefaultMotechDataService<Record> {
 
         public Record singleLookup(String field) {
@@ -2,10 +2,17 @@ package org.motechproject.mds.event;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.motechproject.mds.util.Constants.MDSEvents.BASE_SUBJECT;
+import static org.motechproject.mds.util.Constants.MDSEvents.ENTITY_NAME;
+import static org.motechproject.mds.util.Constants.MDSEvents.OBJECT_IDS;
 import static org.motechproject.mds.event.CrudEventType.CREATE;
+import static org.motechproject.mds.event.CrudEventType.DELETE;
 
 public class CrudEventBuilderTest {
 
@@ -36,4 +43,21 @@ public class CrudEventBuilderTest {
 
         assertThat(subject, equalTo(expected));
     }
+
+    @Test
+    public void shouldReturnValidBatchSubject() {
+        String subject = CrudEventBuilder.createBatchSubject(MODULE, NAMESPACE, ENTITY, DELETE);
+        String expected = BASE_SUBJECT + MODULE + "." + NAMESPACE + "." + ENTITY + "." + DELETE + "_BATCH";
+
+        assertThat(subject, equalTo(expected));
+    }
+
+    @Test
+    public void shouldBuildBatchEventParams() {
+        List<Long> ids = Arrays.asList(1L, 2L, 3L);
+        Map<String, Object> params = CrudEventBuilder.buildBatchEventParams(MODULE, NAMESPACE, ENTITY, "a.b.Entity", ids);
+
+        assertThat(params.get(OBJECT_IDS), equalTo((Object) ids));
+        assertThat(params.get(ENTITY_NAME), equalTo((Object) ENTITY));
+    }
 }
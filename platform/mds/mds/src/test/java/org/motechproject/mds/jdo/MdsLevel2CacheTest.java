@@ -0,0 +1,173 @@
+package org.motechproject.mds.jdo;
+
+import org.datanucleus.NucleusContext;
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.identity.LongId;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.mds.dto.CacheSettingsDto;
+import org.motechproject.mds.testutil.records.Record;
+import org.motechproject.mds.testutil.records.Record2;
+import org.motechproject.mds.util.CacheMode;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.motechproject.testing.utils.TimeFaker.fakeNow;
+import static org.motechproject.testing.utils.TimeFaker.stopFakingTime;
+
+public class MdsLevel2CacheTest {
+
+    private static final DateTime NOW = DateTime.now();
+
+    private MdsLevel2Cache cache;
+
+    @Before
+    public void setUp() {
+        NucleusContext nucleusContext = mock(NucleusContext.class, RETURNS_DEEP_STUBS);
+        // no limit in the parent cache, the limits are applied by regions of entities
+        when(nucleusContext.getConfiguration().getIntProperty(anyString())).thenReturn(-1);
+
+        cache = new MdsLevel2Cache(nucleusContext);
+        cache.configure(Record.class.getName(), new CacheSettingsDto(CacheMode.READ_WRITE, 2, 60));
+
+        fakeNow(NOW);
+    }
+
+    @After
+    public void tearDown() {
+        stopFakingTime();
+        cache.close();
+    }
+
+    @Test
+    public void shouldDropLeastRecentlyUsedInstancesAboveLimit() {
+        CachedPC first = mock(CachedPC.class);
+        CachedPC second = mock(CachedPC.class);
+        CachedPC third = mock(CachedPC.class);
+
+        cache.put(oid(1), first);
+        cache.put(oid(2), second);
+        // the first instance becomes the most recently used one
+        assertSame(first, cache.get(oid(1)));
+        cache.put(oid(3), third);
+
+        assertNull(cache.get(oid(2)));
+        assertSame(first, cache.get(oid(1)));
+        assertSame(third, cache.get(oid(3)));
+
+        EntityCacheStatistics statistics = getStatistics();
+        assertEquals(2, statistics.getSize());
+        assertEquals(3, statistics.getPutCount());
+        assertEquals(3, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(1, statistics.getEvictionCount());
+    }
+
+    @Test
+    public void shouldExpireInstancesAfterTimeToLive() {
+        CachedPC pc = mock(CachedPC.class);
+        cache.put(oid(1), pc);
+
+        fakeNow(NOW.plusSeconds(59));
+        assertSame(pc, cache.get(oid(1)));
+
+        fakeNow(NOW.plusSeconds(61));
+        assertNull(cache.get(oid(1)));
+
+        EntityCacheStatistics statistics = getStatistics();
+        assertEquals(0, statistics.getSize());
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(0, statistics.getEvictionCount());
+    }
+
+    @Test
+    public void shouldNotCacheInstancesOfEntitiesWithoutRegion() {
+        LongId oid = new LongId(Record2.class, 1);
+
+        assertNull(cache.put(oid, mock(CachedPC.class)));
+        assertNull(cache.get(oid));
+
+        List<EntityCacheStatistics> statistics = cache.getEntityCacheStatistics();
+        assertEquals(1, statistics.size());
+        assertEquals(Record.class.getName(), statistics.get(0).getClassName());
+        assertEquals(0, statistics.get(0).getPutCount());
+    }
+
+    @Test
+    public void shouldEvictGivenInstances() {
+        CachedPC second = mock(CachedPC.class);
+
+        cache.configure(Record.class.getName(), new CacheSettingsDto(CacheMode.READ_WRITE, 10, 0));
+        cache.put(oid(1), mock(CachedPC.class));
+        cache.put(oid(2), second);
+        cache.put(oid(3), mock(CachedPC.class));
+
+        cache.evictInstances(Record.class.getName(), asList(1L, 3L));
+
+        assertNull(cache.get(oid(1)));
+        assertSame(second, cache.get(oid(2)));
+        assertNull(cache.get(oid(3)));
+
+        EntityCacheStatistics statistics = getStatistics();
+        assertEquals(1, statistics.getSize());
+        assertEquals(2, statistics.getEvictionCount());
+    }
+
+    @Test
+    public void shouldEvictAllInstancesOfEntity() {
+        cache.put(oid(1), mock(CachedPC.class));
+        cache.put(oid(2), mock(CachedPC.class));
+
+        cache.evictEntity(Record.class.getName());
+
+        assertNull(cache.get(oid(1)));
+        assertNull(cache.get(oid(2)));
+        assertEquals(0, getStatistics().getSize());
+        assertEquals(2, getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void shouldResetStatistics() {
+        cache.put(oid(1), mock(CachedPC.class));
+        cache.get(oid(1));
+        cache.get(oid(2));
+
+        cache.resetStatistics();
+
+        EntityCacheStatistics statistics = getStatistics();
+        assertEquals(1, statistics.getSize());
+        assertEquals(0, statistics.getHitCount());
+        assertEquals(0, statistics.getMissCount());
+        assertEquals(0, statistics.getPutCount());
+        assertEquals(0, statistics.getEvictionCount());
+    }
+
+    @Test
+    public void shouldStopCachingEntityOnceCacheIsDisabled() {
+        cache.configure(Record.class.getName(), new CacheSettingsDto());
+
+        assertNull(cache.put(oid(1), mock(CachedPC.class)));
+        assertNull(cache.get(oid(1)));
+        assertTrue(cache.getEntityCacheStatistics().isEmpty());
+    }
+
+    private LongId oid(long id) {
+        return new LongId(Record.class, id);
+    }
+
+    private EntityCacheStatistics getStatistics() {
+        return cache.getEntityCacheStatistics().get(0);
+    }
+}
@@ -7,12 +7,16 @@ import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.dto.LookupDto;
 import org.motechproject.mds.dto.LookupFieldDto;
 import org.motechproject.mds.dto.LookupFieldType;
+import org.motechproject.mds.exception.lookup.LookupExecutorException;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.service.DefaultMotechDataService;
 import org.motechproject.mds.testutil.FieldTestHelper;
 import org.motechproject.mds.util.LookupName;
 import org.motechproject.mds.util.Order;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -22,6 +26,8 @@ import java.util.Objects;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class LookupExecutorTest {
 
@@ -104,6 +110,26 @@ public class LookupExecutorTest {
         assertEquals(dataService.find(STR_ARG, INT_ARG, TEXTAREA_ARG, queryParams), result);
     }
 
+    @Test
+    public void shouldStreamLookupResults() {
+        Map<String, Object> lookupMap = new HashMap<>();
+        lookupMap.put(STR_FIELD_NAME, STR_ARG);
+        lookupMap.put(INT_FIELD_NAME, INT_ARG);
+        lookupMap.put(TEXTAREA_FIELD_NAME, TEXTAREA_ARG);
+        QueryParams queryParams = new QueryParams(PAGE, PAGE_SIZE, new Order(SORT_FIELD, DIRECTION));
+
+        final List<Object> processed = new ArrayList<>();
+        long result = lookupExecutor1.executeForEach(lookupMap, queryParams, new InstanceCallback() {
+            @Override
+            public void process(Object instance) {
+                processed.add(instance);
+            }
+        });
+
+        assertEquals(1, result);
+        assertEquals(dataService.find(STR_ARG, INT_ARG, TEXTAREA_ARG, queryParams), processed);
+    }
+
     @Test
     public void shouldExecuteCountLookup() {
         Map<String, Object> lookupMap = new HashMap<>();
@@ -129,6 +155,71 @@ public class LookupExecutorTest {
         assertEquals(dataService.findByRelationFields(STR_ARG, LONG_ARG, INT_ARG, STR_ARG_2), result);
     }
 
+    @Test
+    public void shouldReuseCompiledLookupForSubsequentExecutions() {
+        Map<String, Object> lookupMap = new HashMap<>();
+        lookupMap.put(STR_FIELD_NAME, STR_ARG);
+        lookupMap.put(INT_FIELD_NAME, String.valueOf(INT_ARG));
+        lookupMap.put(TEXTAREA_FIELD_NAME, TEXTAREA_ARG);
+
+        List expected = dataService.find(STR_ARG, INT_ARG, TEXTAREA_ARG);
+
+        assertEquals(expected, lookupExecutor1.execute(lookupMap));
+        assertEquals(COUNT, lookupExecutor1.executeCount(lookupMap));
+
+        lookupMap.put(INT_FIELD_NAME, INT_ARG);
+
+        assertEquals(expected, lookupExecutor1.execute(lookupMap));
+        assertEquals(COUNT, lookupExecutor1.executeCount(lookupMap));
+    }
+
+    @Test(expected = LookupExecutorException.class)
+    public void shouldThrowLookupExecutorExceptionIfLookupMethodDoesNotExist() {
+        LookupExecutor lookupExecutor = stringLookupExecutor("missingLookup");
+
+        Map<String, Object> lookupMap = new HashMap<>();
+        lookupMap.put(STR_FIELD_NAME, STR_ARG);
+
+        lookupExecutor.execute(lookupMap);
+    }
+
+    @Test
+    public void shouldWrapExceptionsThrownByTheLookup() {
+        LookupExecutor lookupExecutor = stringLookupExecutor("failingFind");
+
+        Map<String, Object> lookupMap = new HashMap<>();
+        lookupMap.put(STR_FIELD_NAME, STR_ARG);
+
+        try {
+            lookupExecutor.execute(lookupMap);
+            fail("Expected LookupExecutorException");
+        } catch (LookupExecutorException e) {
+            assertTrue(e.getCause() instanceof InvocationTargetException);
+            assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test(expected = LinkageError.class)
+    public void shouldNotWrapErrorsThrownByTheLookup() {
+        LookupExecutor lookupExecutor = stringLookupExecutor("brokenFind");
+
+        Map<String, Object> lookupMap = new HashMap<>();
+        lookupMap.put(STR_FIELD_NAME, STR_ARG);
+
+        lookupExecutor.execute(lookupMap);
+    }
+
+    private LookupExecutor stringLookupExecutor(String methodName) {
+        LookupDto lookupDto = new LookupDto(LOOKUP_NAME, false, false,
+                asList(new LookupFieldDto(1L, STR_FIELD_NAME, LookupFieldType.VALUE)),
+                false, methodName, asList(STR_FIELD_NAME));
+
+        List<FieldDto> fields = Arrays.asList(
+                FieldTestHelper.fieldDto(1L, STR_FIELD_NAME, String.class.getName(), "strFieldDisp", null));
+
+        return new LookupExecutor(dataService, lookupDto, DtoHelper.asFieldMapByName(fields));
+    }
+
     private Map<String, FieldDto> getFieldMapping() {
         Map<String, FieldDto> mapping = new HashMap<>();
         mapping.put(STR_FIELD_NAME, FieldTestHelper.fieldDto(1L, STR_FIELD_NAME, String.class.getName(), "strFieldDisp", null));
@@ -182,6 +273,23 @@ public class LookupExecutorTest {
             return asList(new TestClass(1, "firstRecord", "textArea"));
         }
 
+        public long find(String strField, Integer intField, String textAreaField, QueryParams queryParams,
+                         InstanceCallback<TestClass> callback) {
+            List<TestClass> instances = find(strField, intField, textAreaField, queryParams);
+            for (TestClass instance : instances) {
+                callback.process(instance);
+            }
+            return instances.size();
+        }
+
+        public List<TestClass> failingFind(String strField) {
+            throw new IllegalStateException("Lookup failed");
+        }
+
+        public List<TestClass> brokenFind(String strField) {
+            throw new LinkageError("Lookup broken");
+        }
+
         public long countFind(String strField, Integer intField, String textAreaField) {
             assertParams(strField, intField, textAreaField);
             return COUNT;
@@ -0,0 +1,67 @@
+package org.motechproject.mds.query;
+
+import org.junit.Test;
+import org.motechproject.mds.util.Order;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class CursorPropertyTest extends PropertyTest {
+
+    @Override
+    protected Property getProperty() {
+        return new CursorProperty(new QueryCursor(7L, Arrays.<Object>asList("name", 3)),
+                asList(new Order("name", Order.Direction.ASC), new Order("count", Order.Direction.DESC)));
+    }
+
+    @Override
+    protected int getIdx() {
+        return 2;
+    }
+
+    @Override
+    protected String expectedFilter() {
+        return "((name > param2c0) || (name == param2c0 && count < param2c1)"
+                + " || (name == param2c0 && count == param2c1 && id > param2c2))";
+    }
+
+    @Override
+    protected String expectedDeclareParameter() {
+        return "java.lang.String param2c0, java.lang.Integer param2c1, java.lang.Long param2c2";
+    }
+
+    @Override
+    protected Collection expectedUnwrap() {
+        return Arrays.asList("name", 3, 7L);
+    }
+
+    @Override
+    protected boolean isRelationSupported() {
+        return false;
+    }
+
+    @Test
+    public void shouldUseTheDirectionOfTheIdOrder() {
+        CursorProperty property = new CursorProperty(new QueryCursor(7L),
+                asList(new Order("id", Order.Direction.DESC)));
+
+        assertEquals("((id < param0c0))", property.asFilter(0));
+        assertEquals("java.lang.Long param0c0", property.asDeclareParameter(0));
+        assertEquals(asList(7L), property.unwrap());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectCursorNotMatchingTheOrder() {
+        new CursorProperty(new QueryCursor(7L), Collections.singletonList(new Order("name")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOrderWithIdBeforeOtherFields() {
+        new CursorProperty(new QueryCursor(7L, Arrays.<Object>asList("name")),
+                asList(new Order("id", Order.Direction.ASC), new Order("name", Order.Direction.ASC)));
+    }
+}
@@ -0,0 +1,52 @@
+package org.motechproject.mds.query;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.motechproject.mds.testutil.records.Record;
+import org.motechproject.mds.util.Order;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class QueryCursorTest {
+
+    @Test
+    public void shouldConvertCursorToTokenAndBack() {
+        QueryCursor cursor = new QueryCursor(15L, Arrays.<Object>asList("a, b: c", 3, 4L, 2.5, new BigDecimal("1.25"),
+                true, new Date(1000), new DateTime(2000), new LocalDate(2016, 1, 12)));
+
+        String token = cursor.toToken();
+
+        assertFalse(token.contains(","));
+        assertEquals(cursor, QueryCursor.fromToken(token));
+    }
+
+    @Test
+    public void shouldCreateCursorAfterInstance() {
+        Record record = new Record();
+        record.setId(4L);
+        record.setValue("value");
+
+        QueryCursor cursor = QueryCursor.after(record, asList(new Order("value", Order.Direction.DESC),
+                new Order("id", Order.Direction.ASC)));
+
+        assertEquals(Long.valueOf(4L), cursor.getId());
+        assertEquals(asList("value"), cursor.getValues());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNullValues() {
+        new QueryCursor(4L, Arrays.<Object>asList("value", null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidToken() {
+        QueryCursor.fromToken("not a token");
+    }
+}
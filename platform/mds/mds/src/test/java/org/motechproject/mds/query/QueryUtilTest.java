@@ -5,6 +5,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.motechproject.commons.api.Range;
+import org.motechproject.mds.filter.Filter;
+import org.motechproject.mds.filter.FilterValue;
+import org.motechproject.mds.filter.Filters;
 import org.motechproject.mds.util.InstanceSecurityRestriction;
 import org.motechproject.mds.util.Order;
 import org.motechproject.mds.util.SecurityUtil;
@@ -12,6 +15,8 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import javax.jdo.Query;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -119,6 +124,52 @@ public class QueryUtilTest {
         verify(query).setOrdering("field1 descending, field2 ascending, field3 ascending");
     }
 
+    @Test
+    public void shouldUseCursorInsteadOfPageOffset() {
+        QueryParams queryParams = new QueryParams(5, 20, singletonList(new Order("name", Order.Direction.ASC)),
+                new QueryCursor(9L, Arrays.<Object>asList("abc")));
+
+        QueryUtil.setQueryParams(query, queryParams);
+
+        verify(query).setRange(0, 20);
+        verify(query).setOrdering("name ascending, id ascending");
+
+        List<Property> properties = QueryUtil.withCursor(new ArrayList<Property>(), queryParams);
+
+        assertEquals(1, properties.size());
+        assertEquals(asList("abc", 9L), properties.get(0).unwrap());
+    }
+
+    @Test
+    public void shouldKeepIdAsLastOrderOfCursorQuery() {
+        QueryParams queryParams = new QueryParams(null, 20, asList(new Order("name", Order.Direction.ASC),
+                new Order("id", Order.Direction.DESC)), new QueryCursor(9L, Arrays.<Object>asList("abc")));
+
+        QueryUtil.setQueryParams(query, queryParams);
+
+        verify(query).setOrdering("name ascending, id descending");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectCursorQueryWithIdBeforeOtherOrders() {
+        QueryParams queryParams = new QueryParams(null, 20, asList(new Order("id", Order.Direction.DESC),
+                new Order("name", Order.Direction.ASC)), new QueryCursor(9L, Arrays.<Object>asList("abc")));
+
+        QueryUtil.setQueryParams(query, queryParams);
+    }
+
+    @Test
+    public void shouldJoinFiltersWithCursor() {
+        Filters filters = new Filters(new Filter("date", FilterValue.THIS_YEAR));
+        List<Property> properties = QueryUtil.withCursor(new ArrayList<Property>(),
+                new QueryParams(null, 10, null, new QueryCursor(9L)));
+
+        QueryUtil.useFilters(query, filters, properties);
+
+        verify(query).setFilter(filters.filterForQuery() + " && ((id > param0c0))");
+        verify(query).declareParameters(filters.paramsDeclarationForQuery() + ", java.lang.Long param0c0");
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void shouldThrowIllegalArgumentExceptionForNullQueriesWhenSettingCountResult() {
         QueryUtil.setCountResult(null);
@@ -11,7 +11,9 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.motechproject.mds.entityinfo.EntityInfo;
 import org.motechproject.mds.domain.Field;
 import org.motechproject.mds.dto.AdvancedSettingsDto;
@@ -25,6 +27,8 @@ import org.motechproject.mds.exception.rest.RestLookupExecutionForbiddenExceptio
 import org.motechproject.mds.exception.rest.RestLookupNotFoundException;
 import org.motechproject.mds.exception.rest.RestNoLookupResultException;
 import org.motechproject.mds.exception.rest.RestOperationNotSupportedException;
+import org.motechproject.mds.query.InstanceCallback;
+import org.motechproject.mds.query.QueryCursor;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.testutil.FieldTestHelper;
@@ -50,9 +54,14 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -136,12 +145,25 @@ public class MdsRestFacadeTest {
         recordOne = testRecord();
 
         //set up data service
-        when(dataService.retrieveAll(any(QueryParams.class))).thenReturn(asList(recordOne));
+        doAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                InstanceCallback<Record> callback = (InstanceCallback<Record>) invocation.getArguments()[1];
+                callback.process(recordOne);
+                return 1L;
+            }
+        }).when(dataService).forEach(any(QueryParams.class), any(InstanceCallback.class));
         when(dataService.retrieveAll()).thenReturn(asList(recordOne));
         when(dataService.findById(1l)).thenReturn(recordOne);
         when(dataService.create(recordOne)).thenReturn(recordOne);
-        when(dataService.getDetachedField(recordOne, BLOB_FIELD))
-                .thenReturn(blobFieldValue);
+        // the blob is loaded by the queries only if it was added to the fetch plan
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                recordOne.setBlob(blobFieldValue);
+                return null;
+            }
+        }).when(dataService).addFetchFields(asList(BLOB_FIELD));
 
         // do the initialization, normally called by Spring as @PostConstruct
         mdsRestFacade.init();
@@ -156,7 +178,8 @@ public class MdsRestFacadeTest {
 
         RestResponse result = mdsRestFacade.get(queryParams, false);
 
-        verify(dataService).retrieveAll(queryParams);
+        verify(dataService).forEach(eq(queryParams), any(InstanceCallback.class));
+        verify(dataService, never()).addFetchFields(anyCollection());
 
         assertEquals(1, result.getData().size());
         assertEquals(3, result.getData().get(0).size());
@@ -165,6 +188,23 @@ public class MdsRestFacadeTest {
         assertNull(result.getData().get(0).get(BLOB_FIELD));
     }
 
+    @Test
+    public void shouldReturnTokenOfNextPageWhenPageIsFull() {
+        setUpCrudAccess(false, true, false, false);
+        QueryParams queryParams = new QueryParams(1, 1, new Order("value", Order.Direction.DESC));
+
+        RestResponse result = mdsRestFacade.get(queryParams, false);
+
+        assertEquals(asList(new Order("value", Order.Direction.DESC), new Order("id", Order.Direction.ASC)).toString(),
+                queryParams.getOrderList().toString());
+        assertEquals(new QueryCursor(recordOne.getId(), Arrays.<Object>asList(recordOne.getValue())),
+                QueryCursor.fromToken(result.getMetadata().getNextPageToken()));
+
+        result = mdsRestFacade.get(new QueryParams(1, 2, new Order("value", Order.Direction.DESC)), false);
+
+        assertNull(result.getMetadata().getNextPageToken());
+    }
+
     @Test
     public void shouldGetByIdWithoutBlobField() {
         setUpCrudAccess(false, true, false, false);
@@ -191,6 +231,9 @@ public class MdsRestFacadeTest {
 
         RestResponse result = mdsRestFacade.get(queryParams, false);
 
+        // the last page was retrieved, so the total count is known without counting
+        verify(dataService, never()).count();
+
         assertNotNull(result.getMetadata());
         assertEquals(ENTITY_NAME, result.getMetadata().getEntity());
         assertEquals(TEST_MODULE, result.getMetadata().getModule());
@@ -201,6 +244,21 @@ public class MdsRestFacadeTest {
         assertEquals(81l, result.getMetadata().getTotalCount());
     }
 
+    @Test
+    public void shouldCountInstancesWhenPageIsFull() {
+        setUpCrudAccess(false, true, false, false);
+        when(dataService.count()).thenReturn(81l);
+
+        RestResponse result = mdsRestFacade.get(new QueryParams(5, 1, new Order("value", Order.Direction.DESC)), false);
+        assertEquals(81l, result.getMetadata().getTotalCount());
+
+        // the number of instances before the cursor is unknown
+        result = mdsRestFacade.get(new QueryParams(1, 2, null, new QueryCursor(0L)), false);
+        assertEquals(81l, result.getMetadata().getTotalCount());
+
+        verify(dataService, times(2)).count();
+    }
+
     @Test
     public void shouldAppendMetadataWhenIdParamWasSpecified() {
         setUpCrudAccess(false, true, false, false);
@@ -225,7 +283,9 @@ public class MdsRestFacadeTest {
 
         RestResponse result = mdsRestFacade.get(queryParams, true);
 
-        verify(dataService).retrieveAll(queryParams);
+        verify(dataService).forEach(eq(queryParams), any(InstanceCallback.class));
+        verify(dataService).addFetchFields(asList(BLOB_FIELD));
+        verify(dataService, never()).getDetachedField(any(Record.class), anyString());
 
         assertEquals(1, result.getData().size());
         assertEquals(3, result.getData().get(0).size());
@@ -336,6 +396,7 @@ public class MdsRestFacadeTest {
         assertEquals(recordOne.getDate(), result.getData().get(0).get(DATE_FIELD));
         assertArrayEquals((byte[]) result.getData().get(0).get(BLOB_FIELD), encodedBlobField);
 
+        verify(dataService).addFetchFields(asList(BLOB_FIELD));
         verify(dataService).supportedLookup(null, 44, queryParams);
     }
 
@@ -350,6 +411,8 @@ public class MdsRestFacadeTest {
 
         RestResponse result = (RestResponse) mdsRestFacade.executeLookup(SUPPORTED_LOOKUP_NAME, lookupMap, queryParams, false);
 
+        verify(dataService, never()).countSupportedLookup(anyString(), anyInt());
+
         assertNotNull(result.getMetadata());
         assertEquals(ENTITY_NAME, result.getMetadata().getEntity());
         assertEquals(TEST_MODULE, result.getMetadata().getModule());
@@ -0,0 +1,315 @@
+package org.motechproject.mds.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.mds.dto.CacheSettingsDto;
+import org.motechproject.mds.entityinfo.EntityInfo;
+import org.motechproject.mds.entityinfo.EntityInfoReader;
+import org.motechproject.mds.entityinfo.FieldInfo;
+import org.motechproject.mds.event.CrudEventType;
+import org.motechproject.mds.filter.Filters;
+import org.motechproject.mds.query.QueryCursor;
+import org.motechproject.mds.query.QueryParams;
+import org.motechproject.mds.repository.MotechDataRepository;
+import org.motechproject.mds.testutil.records.Record;
+import org.motechproject.mds.util.InstanceSecurityRestriction;
+import org.motechproject.mds.util.SecurityMode;
+import org.motechproject.server.osgi.event.OsgiEventProxy;
+import org.springframework.orm.jdo.JdoTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.spi.JDOImplHelper;
+import javax.jdo.spi.StateInterrogation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.motechproject.mds.event.CrudEventBuilder.buildBatchEventParams;
+import static org.motechproject.mds.event.CrudEventBuilder.buildEventParams;
+import static org.motechproject.mds.event.CrudEventBuilder.createBatchSubject;
+import static org.motechproject.mds.event.CrudEventBuilder.createSubject;
+import static org.motechproject.mds.event.CrudEventType.CREATE;
+import static org.motechproject.mds.event.CrudEventType.DELETE;
+import static org.motechproject.mds.event.CrudEventType.UPDATE;
+import static org.motechproject.mds.util.Constants.Util.ID_FIELD_NAME;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultMotechDataServiceTest {
+
+    private static final String MODULE = "module";
+    private static final String ENTITY_NAME = "Record";
+    private static final int DELETE_CHUNK_SIZE = 500;
+
+    @Mock
+    private MotechDataRepository<Record> repository;
+
+    @Mock
+    private EntityInfoReader entityInfoReader;
+
+    @Mock
+    private EntityInfo entityInfo;
+
+    @Mock
+    private OsgiEventProxy osgiEventProxy;
+
+    @Mock
+    private Filters filters;
+
+    @Mock
+    private JdoTransactionManager transactionManager;
+
+    private RecordDataService dataService = new RecordDataService();
+
+    private StoredInstances storedInstances = new StoredInstances();
+
+    @Before
+    public void setUp() {
+        when(repository.getClassType()).thenReturn(Record.class);
+        when(entityInfoReader.getEntityInfo(Record.class.getName())).thenReturn(entityInfo);
+        when(entityInfo.getSecurityMode()).thenReturn(SecurityMode.EVERYONE);
+        when(entityInfo.isCreateEventFired()).thenReturn(true);
+        when(entityInfo.isUpdateEventFired()).thenReturn(true);
+        when(entityInfo.isDeleteEventFired()).thenReturn(true);
+        when(entityInfo.getModule()).thenReturn(MODULE);
+        when(entityInfo.getEntityName()).thenReturn(ENTITY_NAME);
+        when(entityInfo.getFieldsInfo()).thenReturn(new ArrayList<FieldInfo>());
+        when(entityInfo.getCacheSettings()).thenReturn(new CacheSettingsDto());
+
+        dataService.setRepository(repository);
+        dataService.setEntityInfoReader(entityInfoReader);
+        dataService.setOsgiEventProxy(osgiEventProxy);
+        dataService.setTransactionManager(transactionManager);
+        dataService.init();
+
+        JDOImplHelper.getInstance().addStateInterrogation(storedInstances);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @After
+    public void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+        JDOImplHelper.getInstance().removeStateInterrogation(storedInstances);
+    }
+
+    @Test
+    public void shouldCreateInstancesAndSendEventsAfterCommit() {
+        List<Record> records = asList(record(null, "first"), record(null, "second"));
+        List<Record> created = asList(record(1L, "first"), record(2L, "second"));
+        when(repository.createAll(records)).thenReturn(created);
+
+        assertEquals(created, dataService.createAll(records));
+        verify(osgiEventProxy, never()).sendEvent(anyString(), anyMap());
+
+        commit();
+
+        verifyEvents(CREATE, asList(1L, 2L));
+    }
+
+    @Test
+    public void shouldUpdateInstancesAndCreateMissingOnes() {
+        Record stored = storedInstances.add(record(1L, "stored"));
+        Record persistent = storedInstances.add(record(2L, "persistent"));
+        Record transientRecord = record(1L, "updated");
+        Record missing = record(3L, "missing");
+        Record withoutId = record(null, "withoutId");
+        Record createdMissing = record(3L, "missing");
+        Record createdWithoutId = record(4L, "withoutId");
+
+        when(repository.retrieveAll(new HashSet<>(asList(1L, 3L)))).thenReturn(asList(stored));
+        when(repository.updateAll(asList(persistent))).thenReturn(asList(persistent));
+        when(repository.createAll(asList(missing, withoutId))).thenReturn(asList(createdMissing, createdWithoutId));
+
+        List<Record> result = dataService.updateAll(asList(transientRecord, persistent, missing, withoutId));
+
+        assertEquals(asList(stored, persistent, createdMissing, createdWithoutId), result);
+        assertEquals("updated", stored.getValue());
+
+        commit();
+
+        verifyEvents(UPDATE, asList(1L, 2L));
+        verifyEvents(CREATE, asList(3L, 4L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotUpdateInstancesWithDuplicateIds() {
+        dataService.updateAll(asList(record(1L, "first"), record(2L, "second"), record(1L, "third")));
+    }
+
+    @Test
+    public void shouldSendDeleteEventAfterCommit() {
+        Record record = record(1L, "first");
+        when(repository.retrieve(ID_FIELD_NAME, 1L)).thenReturn(record);
+
+        dataService.delete(record);
+
+        verify(repository).delete(record);
+        verify(osgiEventProxy, never()).sendEvent(anyString(), anyMap());
+
+        commit();
+
+        verify(osgiEventProxy).sendEvent(createSubject(MODULE, null, ENTITY_NAME, DELETE),
+                buildEventParams(MODULE, null, ENTITY_NAME, Record.class.getName(), 1L));
+    }
+
+    @Test
+    public void shouldDeleteInstancesByIds() {
+        List<Record> records = asList(record(1L, "first"), record(3L, "third"));
+        when(repository.retrieveAll(asList(1L, 3L, 5L))).thenReturn(records);
+
+        assertEquals(2, dataService.deleteByIds(asList(1L, 3L, 5L)));
+        verify(repository).deleteAll(records);
+        verify(osgiEventProxy, never()).sendEvent(anyString(), anyMap());
+
+        commit();
+
+        verifyEvents(DELETE, asList(1L, 3L));
+    }
+
+    @Test
+    public void shouldDeleteInstancesForFiltersInChunks() {
+        List<Record> firstChunk = records(1, DELETE_CHUNK_SIZE);
+        List<Record> secondChunk = records(DELETE_CHUNK_SIZE + 1, 1);
+        when(repository.filter(eq(filters), any(QueryParams.class), any(InstanceSecurityRestriction.class)))
+                .thenReturn(firstChunk, secondChunk);
+
+        assertEquals(DELETE_CHUNK_SIZE + 1, dataService.deleteForFilters(filters));
+
+        ArgumentCaptor<QueryParams> captor = ArgumentCaptor.forClass(QueryParams.class);
+        verify(repository, times(2)).filter(eq(filters), captor.capture(), any(InstanceSecurityRestriction.class));
+        assertNull(captor.getAllValues().get(0).getCursor());
+        assertEquals(new QueryCursor((long) DELETE_CHUNK_SIZE), captor.getAllValues().get(1).getCursor());
+
+        verify(repository).deleteAll(firstChunk);
+        verify(repository).deleteAll(secondChunk);
+
+        commit();
+
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= DELETE_CHUNK_SIZE + 1; ++id) {
+            ids.add(id);
+        }
+        verifyEvents(DELETE, ids);
+    }
+
+    private void verifyEvents(CrudEventType action, List<Long> ids) {
+        for (Long id : ids) {
+            verify(osgiEventProxy).sendEvent(createSubject(MODULE, null, ENTITY_NAME, action),
+                    buildEventParams(MODULE, null, ENTITY_NAME, Record.class.getName(), id));
+        }
+        verify(osgiEventProxy).sendEvent(createBatchSubject(MODULE, null, ENTITY_NAME, action),
+                buildBatchEventParams(MODULE, null, ENTITY_NAME, Record.class.getName(), ids));
+    }
+
+    private void commit() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+    }
+
+    private Record record(Long id, String value) {
+        Record record = new Record();
+        record.setId(id);
+        record.setValue(value);
+        return record;
+    }
+
+    private List<Record> records(long firstId, int count) {
+        List<Record> records = new ArrayList<>();
+        for (long id = firstId; id < firstId + count; ++id) {
+            records.add(record(id, "value" + id));
+        }
+        return records;
+    }
+
+    private static class RecordDataService extends DefaultMotechDataService<Record> {
+    }
+
+    /**
+     * Makes the given instances persistent in the eyes of {@link javax.jdo.JDOHelper}, the same way the ones
+     * retrieved from the database are.
+     */
+    private static class StoredInstances implements StateInterrogation {
+        private final Set<Object> instances = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+        Record add(Record record) {
+            instances.add(record);
+            return record;
+        }
+
+        @Override
+        public Boolean isPersistent(Object pc) {
+            return instances.contains(pc) ? Boolean.TRUE : null;
+        }
+
+        @Override
+        public Boolean isTransactional(Object pc) {
+            return instances.contains(pc) ? Boolean.FALSE : null;
+        }
+
+        @Override
+        public Boolean isDirty(Object pc) {
+            return instances.contains(pc) ? Boolean.FALSE : null;
+        }
+
+        @Override
+        public Boolean isNew(Object pc) {
+            return instances.contains(pc) ? Boolean.FALSE : null;
+        }
+
+        @Override
+        public Boolean isDeleted(Object pc) {
+            return instances.contains(pc) ? Boolean.FALSE : null;
+        }
+
+        @Override
+        public Boolean isDetached(Object pc) {
+            return instances.contains(pc) ? Boolean.FALSE : null;
+        }
+
+        @Override
+        public PersistenceManager getPersistenceManager(Object pc) {
+            return null;
+        }
+
+        @Override
+        public Object getObjectId(Object pc) {
+            return null;
+        }
+
+        @Override
+        public Object getTransactionalObjectId(Object pc) {
+            return null;
+        }
+
+        @Override
+        public Object getVersion(Object pc) {
+            return null;
+        }
+
+        @Override
+        public boolean makeDirty(Object pc, String fieldName) {
+            return false;
+        }
+    }
+}
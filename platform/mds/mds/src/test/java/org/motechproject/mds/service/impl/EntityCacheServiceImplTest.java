@@ -0,0 +1,179 @@
+package org.motechproject.mds.service.impl;
+
+import org.datanucleus.api.jdo.JDODataStoreCache;
+import org.datanucleus.api.jdo.JDOPersistenceManagerFactory;
+import org.datanucleus.api.jdo.JDOQueryCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.mds.dto.CacheSettingsDto;
+import org.motechproject.mds.jdo.MdsLevel2Cache;
+import org.motechproject.mds.service.EntityCacheService;
+import org.motechproject.mds.testutil.records.Record;
+import org.motechproject.mds.util.CacheMode;
+import org.motechproject.mds.util.Constants;
+import org.motechproject.server.osgi.event.OsgiEventProxy;
+import org.osgi.service.event.Event;
+
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EntityCacheServiceImplTest {
+
+    private static final String CLASS_NAME = Record.class.getName();
+
+    @Mock
+    private JDOPersistenceManagerFactory persistenceManagerFactory;
+
+    @Mock
+    private JDODataStoreCache dataStoreCache;
+
+    @Mock
+    private JDOQueryCache queryCache;
+
+    @Mock
+    private MdsLevel2Cache level2Cache;
+
+    @Mock
+    private OsgiEventProxy osgiEventProxy;
+
+    private EntityCacheServiceImpl entityCacheService;
+
+    private EntityCacheServiceImpl entityCacheServiceOnOtherInstance;
+
+    @Before
+    public void setUp() {
+        when(persistenceManagerFactory.getDataStoreCache()).thenReturn(dataStoreCache);
+        when(persistenceManagerFactory.getQueryCache()).thenReturn(queryCache);
+        when(dataStoreCache.getLevel2Cache()).thenReturn(level2Cache);
+
+        entityCacheService = new EntityCacheServiceImpl(persistenceManagerFactory);
+        entityCacheService.setOsgiEventProxy(osgiEventProxy);
+
+        entityCacheServiceOnOtherInstance = new EntityCacheServiceImpl(persistenceManagerFactory);
+        entityCacheServiceOnOtherInstance.setOsgiEventProxy(osgiEventProxy);
+    }
+
+    @Test
+    public void shouldConfigureLevel2Cache() {
+        CacheSettingsDto settings = new CacheSettingsDto(CacheMode.READ_WRITE, 100, 60);
+
+        entityCacheService.configure(CLASS_NAME, settings);
+
+        verify(level2Cache).configure(CLASS_NAME, settings);
+    }
+
+    @Test
+    public void shouldNotBroadcastChangesOfEntitiesWithoutCache() {
+        entityCacheService.configure(CLASS_NAME, new CacheSettingsDto());
+
+        entityCacheService.instancesChanged(CLASS_NAME, asList(1L, 2L));
+
+        verifyZeroInteractions(osgiEventProxy, queryCache);
+    }
+
+    @Test
+    public void shouldBroadcastChangesAndDropQueryResultsOfReadMostlyEntities() {
+        entityCacheService.configure(CLASS_NAME, new CacheSettingsDto(CacheMode.READ_MOSTLY, 100, 0));
+
+        entityCacheService.instancesChanged(CLASS_NAME, asList(1L, 2L));
+
+        verify(queryCache).evictAll();
+
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(osgiEventProxy).broadcastEvent(eq(EntityCacheService.EVICT_ENTITY_CACHE), captor.capture(), eq(true));
+
+        assertEquals(CLASS_NAME, captor.getValue().get(Constants.MDSEvents.ENTITY_CLASS));
+        assertEquals(asList(1L, 2L), captor.getValue().get(Constants.MDSEvents.OBJECT_IDS));
+    }
+
+    @Test
+    public void shouldKeepQueryResultsOnChangesOfReadWriteEntities() {
+        entityCacheService.configure(CLASS_NAME, new CacheSettingsDto(CacheMode.READ_WRITE, 100, 0));
+
+        entityCacheService.instancesChanged(CLASS_NAME, asList(1L));
+
+        verify(osgiEventProxy).broadcastEvent(eq(EntityCacheService.EVICT_ENTITY_CACHE), anyMap(), eq(true));
+        verify(queryCache, never()).evictAll();
+    }
+
+    @Test
+    public void shouldEvictInstancesChangedOnOtherInstance() {
+        CacheSettingsDto settings = new CacheSettingsDto(CacheMode.READ_MOSTLY, 100, 0);
+        entityCacheService.configure(CLASS_NAME, settings);
+        entityCacheServiceOnOtherInstance.configure(CLASS_NAME, settings);
+
+        entityCacheServiceOnOtherInstance.instancesChanged(CLASS_NAME, asList(3L));
+
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(osgiEventProxy).broadcastEvent(anyString(), captor.capture(), anyBoolean());
+
+        entityCacheService.handleEvent(new Event(EntityCacheService.EVICT_ENTITY_CACHE, captor.getValue()));
+
+        verify(level2Cache).evictInstances(CLASS_NAME, asList(3L));
+    }
+
+    @Test
+    public void shouldIgnoreChangesBroadcastByThisInstance() {
+        entityCacheService.configure(CLASS_NAME, new CacheSettingsDto(CacheMode.READ_WRITE, 100, 0));
+
+        entityCacheService.instancesChanged(CLASS_NAME, asList(3L));
+
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(osgiEventProxy).broadcastEvent(anyString(), captor.capture(), anyBoolean());
+
+        entityCacheService.handleEvent(new Event(EntityCacheService.EVICT_ENTITY_CACHE, captor.getValue()));
+
+        verify(level2Cache, never()).evictInstances(anyString(), anyCollection());
+    }
+
+    @Test
+    public void shouldEvictWholeEntityAndBroadcastChangeWithoutIds() {
+        entityCacheService.configure(CLASS_NAME, new CacheSettingsDto(CacheMode.READ_MOSTLY, 100, 0));
+
+        entityCacheService.entityChanged(CLASS_NAME);
+
+        verify(level2Cache).evictEntity(CLASS_NAME);
+        verify(queryCache).evictAll();
+
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(osgiEventProxy).broadcastEvent(eq(EntityCacheService.EVICT_ENTITY_CACHE), captor.capture(), eq(true));
+
+        assertEquals(CLASS_NAME, captor.getValue().get(Constants.MDSEvents.ENTITY_CLASS));
+        assertFalse(captor.getValue().containsKey(Constants.MDSEvents.OBJECT_IDS));
+    }
+
+    @Test
+    public void shouldEvictWholeEntityChangedOnOtherInstance() {
+        CacheSettingsDto settings = new CacheSettingsDto(CacheMode.READ_WRITE, 100, 0);
+        entityCacheService.configure(CLASS_NAME, settings);
+        entityCacheServiceOnOtherInstance.configure(CLASS_NAME, settings);
+
+        entityCacheServiceOnOtherInstance.entityChanged(CLASS_NAME);
+
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(osgiEventProxy).broadcastEvent(anyString(), captor.capture(), anyBoolean());
+
+        entityCacheService.handleEvent(new Event(EntityCacheService.EVICT_ENTITY_CACHE, captor.getValue()));
+
+        verify(level2Cache, times(2)).evictEntity(CLASS_NAME);
+        verify(level2Cache, never()).evictInstances(anyString(), anyCollection());
+    }
+}
@@ -110,6 +110,19 @@ public class CsvImportExportServiceTest {
         verifyImportSuccessEvent();
     }
 
+    @Test
+    public void shouldResumeImportOfInstancesById() {
+        CsvImportResults importResults = new CsvImportResults(entityDto, NEW_IDS, UPDATED_IDS, null);
+        DefaultCsvImportCustomizer importCustomizer = new DefaultCsvImportCustomizer();
+        when(csvImporterExporter.importCsv(ENTITY_ID, reader, importCustomizer, false, false, 100))
+                .thenReturn(importResults);
+
+        csvImportExportService.importCsv(ENTITY_ID, reader, FILE_NAME, importCustomizer, false, false, 100);
+
+        verify(csvImporterExporter).importCsv(ENTITY_ID, reader, importCustomizer, false, false, 100);
+        verifyImportSuccessEvent();
+    }
+
     @Test
     public void shouldClearTableAndImportInstancesById() {
         CsvImportResults importResults = new CsvImportResults(entityDto, NEW_IDS, UPDATED_IDS, null);
@@ -18,10 +18,13 @@ import org.motechproject.mds.dto.FieldDto;
 import org.motechproject.mds.dto.UIDisplayFieldComparator;
 import org.motechproject.mds.entityinfo.EntityInfo;
 import org.motechproject.mds.entityinfo.EntityInfoReader;
+import org.motechproject.mds.exception.csv.CsvImportException;
 import org.motechproject.mds.javassist.MotechClassPool;
+import org.motechproject.mds.query.InstanceCallback;
 import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.service.CsvImportCustomizer;
 import org.motechproject.mds.service.DefaultCsvExportCustomizer;
+import org.motechproject.mds.service.DefaultCsvImportCustomizer;
 import org.motechproject.mds.service.MDSLookupService;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.testutil.records.Record2;
@@ -29,22 +32,28 @@ import org.motechproject.mds.testutil.records.RecordEnum;
 import org.motechproject.mds.testutil.records.RelatedClass;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
+import org.springframework.transaction.support.TransactionCallback;
 
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -121,8 +130,26 @@ public class CsvImporterExporterTest {
         when(bundleContext.getService(relatedServiceRef)).thenReturn(relatedDataService);
         when(relatedDataService.getClassType()).thenReturn(RelatedClass.class);
 
-        when(relatedDataService.findById(0L)).thenReturn(new RelatedClass(0L));
-        when(relatedDataService.findById(1L)).thenReturn(new RelatedClass(1L));
+        when(relatedDataService.findByIds(anyCollection())).thenAnswer(new Answer<List<RelatedClass>>() {
+            @Override
+            public List<RelatedClass> answer(InvocationOnMock invocation) {
+                List<RelatedClass> related = new ArrayList<>();
+                for (Long id : (Collection<Long>) invocation.getArguments()[0]) {
+                    // only instances with IDs 0 and 1 exist
+                    if (id < 2) {
+                        related.add(new RelatedClass(id));
+                    }
+                }
+                return related;
+            }
+        });
+
+        when(motechDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return ((TransactionCallback) invocation.getArguments()[0]).doInTransaction(null);
+            }
+        });
 
         when(entityInfoReader.getEntityInfo(ENTITY_CLASSNAME)).thenReturn(entityInfo);
         when(entityInfoReader.getEntityInfo(ENTITY_ID)).thenReturn(entityInfo);
@@ -141,7 +168,8 @@ public class CsvImporterExporterTest {
 
     @Test
     public void shouldExportAllInstancesAsCsv() {
-        when(motechDataService.retrieveAll(any(QueryParams.class))).thenReturn(testInstances(IdMode.INCLUDE_ID));
+        doAnswer(streamInstances(testInstances(IdMode.INCLUDE_ID), 1))
+                .when(motechDataService).forEach(any(QueryParams.class), any(InstanceCallback.class));
         StringWriter writer = new StringWriter();
 
         long result = csvImporterExporter.exportCsv(ENTITY_ID, writer);
@@ -152,7 +180,8 @@ public class CsvImporterExporterTest {
 
     @Test
     public void shouldUseExportCustomizer() {
-        when(motechDataService.retrieveAll(any(QueryParams.class))).thenReturn(testInstances(IdMode.INCLUDE_ID));
+        doAnswer(streamInstances(testInstances(IdMode.INCLUDE_ID), 1))
+                .when(motechDataService).forEach(any(QueryParams.class), any(InstanceCallback.class));
         StringWriter writer = new StringWriter();
 
         long result = csvImporterExporter.exportCsv(ENTITY_ID, writer, csvExportCustomizer);
@@ -164,7 +193,8 @@ public class CsvImporterExporterTest {
 
     @Test
     public void shouldExportInstancesFromTableAsCsv() {
-        when(mdsLookupService.<Record2>findMany((any(String.class)), eq("lookup"), any(Map.class), any(QueryParams.class))).thenReturn(testInstances(IdMode.INCLUDE_ID));
+        doAnswer(streamInstances(testInstances(IdMode.INCLUDE_ID), 4)).when(mdsLookupService)
+                .forEach(any(String.class), eq("lookup"), any(Map.class), any(QueryParams.class), any(InstanceCallback.class));
         StringWriter writer = new StringWriter();
 
         List<String> headers = Arrays.asList("ID", "Creator", "Owner", "Modified By", "Creation date", "Modification date",
@@ -254,6 +284,81 @@ public class CsvImporterExporterTest {
         assertTrue(thrown);
     }
 
+    @Test
+    public void shouldImportInChunks() {
+        StringReader reader = new StringReader(getTestEntityRecordsAsCsv(IdMode.EMPTY_ID_COLUMN));
+        when(motechDataService.create(any(Record2.class))).thenAnswer(new CreateAnswer());
+
+        csvImporterExporter.setChunkSize(7);
+        CsvImportResults results = csvImporterExporter.importCsv(ENTITY_ID, reader, CONTINUE_ON_ERROR, false);
+
+        // 20 rows are imported in chunks of 7, 7 and 6 rows, related instances are retrieved once per chunk
+        verify(motechDataService, times(3)).doInTransaction(any(TransactionCallback.class));
+        verify(relatedDataService, times(3)).findByIds(anyCollection());
+        verify(relatedDataService, never()).findById(anyLong());
+        verify(motechDataService, times(INSTANCE_COUNT)).create(any(Record2.class));
+
+        assertEquals(listFromRangeInclusive(0, 19), results.getNewInstanceIDs());
+    }
+
+    @Test
+    public void shouldReportLastImportedRowWhenImportFails() {
+        // the first invalid row is the 4th one
+        StringReader reader = new StringReader(getTestEntityRecordsAsCsv(IdMode.INVALID));
+        when(motechDataService.create(any(Record2.class))).thenAnswer(new CreateAnswer());
+
+        csvImporterExporter.setChunkSize(3);
+        try {
+            csvImporterExporter.importCsv(ENTITY_ID, reader, false, false);
+            fail("The import should fail on the invalid row");
+        } catch (CsvImportException e) {
+            assertEquals(3, e.getLastImportedRow());
+        }
+    }
+
+    @Test
+    public void shouldSkipRowsWhenResumingImport() {
+        StringReader reader = new StringReader(getTestEntityRecordsAsCsv(IdMode.EMPTY_ID_COLUMN));
+        when(motechDataService.create(any(Record2.class))).thenAnswer(new CreateAnswer());
+
+        CsvImportResults results = csvImporterExporter.importCsv(ENTITY_ID, reader, new DefaultCsvImportCustomizer(),
+                CONTINUE_ON_ERROR, false, 15);
+
+        ArgumentCaptor<Record2> captor = ArgumentCaptor.forClass(Record2.class);
+        verify(motechDataService, times(5)).create(captor.capture());
+
+        assertEquals(5, results.newInstanceCount());
+        assertEquals(testInstances(IdMode.EMPTY_ID_COLUMN).subList(15, INSTANCE_COUNT), captor.getAllValues());
+    }
+
+    @Test
+    public void shouldReportLastImportedRowWhenResumedImportFails() {
+        // the rows after the 5th one are imported, the first invalid row among them is the 8th one
+        StringReader reader = new StringReader(getTestEntityRecordsAsCsv(IdMode.INVALID));
+        when(motechDataService.create(any(Record2.class))).thenAnswer(new CreateAnswer());
+
+        csvImporterExporter.setChunkSize(3);
+        try {
+            csvImporterExporter.importCsv(ENTITY_ID, reader, new DefaultCsvImportCustomizer(), false, false, 5);
+            fail("The import should fail on the invalid row");
+        } catch (CsvImportException e) {
+            assertEquals(5, e.getLastImportedRow());
+        }
+    }
+
+    @Test
+    public void shouldNotClearDataWhenResumingImport() {
+        StringReader reader = new StringReader(getTestEntityRecordsAsCsv(IdMode.EMPTY_ID_COLUMN));
+
+        try {
+            csvImporterExporter.importCsv(ENTITY_ID, reader, new DefaultCsvImportCustomizer(), CONTINUE_ON_ERROR, true, 5);
+            fail("Clearing the data should not be allowed when resuming an import");
+        } catch (IllegalArgumentException e) {
+            verify(motechDataService, never()).deleteAll();
+            verify(motechDataService, never()).create(any(Record2.class));
+        }
+    }
+
     private void testImport(IdMode idMode, boolean clearData) {
         StringReader reader = new StringReader(getTestEntityRecordsAsCsv(idMode));
         // if id provided, prepare entities that will be updated
@@ -307,6 +412,19 @@ public class CsvImporterExporterTest {
         }
     }
 
+    private Answer<Long> streamInstances(final List<Record2> instances, final int callbackIndex) {
+        return new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                InstanceCallback<Record2> callback = (InstanceCallback<Record2>) invocation.getArguments()[callbackIndex];
+                for (Record2 instance : instances) {
+                    callback.process(instance);
+                }
+                return (long) instances.size();
+            }
+        };
+    }
+
     private List<Record2> testInstances(IdMode idMode) {
         List<Record2> instances = new ArrayList<>();
 
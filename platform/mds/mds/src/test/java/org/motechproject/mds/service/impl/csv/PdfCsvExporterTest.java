@@ -7,13 +7,17 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.motechproject.commons.date.util.DateUtil;
 import org.motechproject.mds.dto.AdvancedSettingsDto;
 import org.motechproject.mds.dto.BrowsingSettingsDto;
 import org.motechproject.mds.entityinfo.EntityInfo;
 import org.motechproject.mds.entityinfo.EntityInfoReader;
 import org.motechproject.mds.javassist.MotechClassPool;
+import org.motechproject.mds.query.InstanceCallback;
+import org.motechproject.mds.query.QueryParams;
 import org.motechproject.mds.service.MotechDataService;
 import org.motechproject.mds.testutil.records.Record2;
 import org.osgi.framework.BundleContext;
@@ -28,6 +32,9 @@ import java.util.List;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -142,7 +149,7 @@ public class PdfCsvExporterTest {
     }
 
     private void setUpTestData(boolean exportSecondRecord) {
-        List<Record2> instances = new ArrayList<>();
+        final List<Record2> instances = new ArrayList<>();
 
         Record2 instance1 = new Record2();
         instance1.setCreationDate(NOW);
@@ -166,7 +173,16 @@ public class PdfCsvExporterTest {
             instances.add(instance2);
         }
 
-        when(dataService.retrieveAll(null)).thenReturn(instances);
+        doAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                InstanceCallback<Record2> callback = (InstanceCallback<Record2>) invocation.getArguments()[1];
+                for (Record2 instance : instances) {
+                    callback.process(instance);
+                }
+                return (long) instances.size();
+            }
+        }).when(dataService).forEach((QueryParams) isNull(), any(InstanceCallback.class));
     }
 
     private void writePdfToFile() {
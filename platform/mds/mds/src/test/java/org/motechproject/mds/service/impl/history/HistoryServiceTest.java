@@ -2,12 +2,15 @@ package org.motechproject.mds.service.impl.history;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.datanucleus.api.jdo.NucleusJDOHelper;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.motechproject.mds.domain.Entity;
 import org.motechproject.mds.domain.Field;
 import org.motechproject.mds.domain.Type;
@@ -26,24 +29,33 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.jdo.JDOHelper;
 import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
 import javax.jdo.Query;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({MDSClassLoader.class, TransactionSynchronizationManager.class})
+@PrepareForTest({MDSClassLoader.class, TransactionSynchronizationManager.class, JDOHelper.class, NucleusJDOHelper.class})
 public class HistoryServiceTest {
 
     @Mock
@@ -85,6 +97,12 @@ public class HistoryServiceTest {
     @Captor
     private ArgumentCaptor<String> stringCaptor;
 
+    @Captor
+    private ArgumentCaptor<List> listCaptor;
+
+    @Captor
+    private ArgumentCaptor<TransactionSynchronization> txSyncCaptor;
+
     @InjectMocks
     private HistoryService historyService = new HistoryServiceImpl();
 
@@ -117,6 +135,101 @@ public class HistoryServiceTest {
 
     @Test
     public void shouldCreateNewRecord() throws Exception {
+        setUpEntity();
+
+        doReturn(null).when(query).execute(anyLong());
+
+        Record instance = new Record();
+        historyService.record(instance);
+
+        verify(manager, never()).makePersistent(any());
+
+        commit();
+
+        verify(manager).makePersistentAll(listCaptor.capture());
+        assertEquals(1, listCaptor.getValue().size());
+
+        Record__History history = (Record__History) listCaptor.getValue().get(0);
+
+        assertEquals(instance.getId(), history.getRecord__HistoryCurrentVersion());
+        assertEquals(Long.valueOf(4), history.getRecord__HistorySchemaVersion());
+        assertEquals(instance.getValue(), history.getValue());
+        assertEquals(instance.getDate(), history.getDate());
+    }
+
+    @Test
+    public void shouldUseDirtyFieldsInsteadOfLatestRevision() throws Exception {
+        setUpEntity();
+
+        Record instance = new Record();
+        instance.setValue("changed");
+        mockDirtyFields(instance, "value");
+
+        historyService.beforeStore(instance);
+        historyService.record(instance);
+
+        commit();
+
+        verify(manager, never()).newQuery(Record__History.class);
+        verify(manager).makePersistentAll(listCaptor.capture());
+        assertEquals(1, listCaptor.getValue().size());
+        assertEquals("changed", ((Record__History) listCaptor.getValue().get(0)).getValue());
+    }
+
+    @Test
+    public void shouldNotRecordIfNoFieldsAreDirty() throws Exception {
+        setUpEntity();
+
+        Record instance = new Record();
+        mockDirtyFields(instance);
+
+        historyService.beforeStore(instance);
+        historyService.record(instance);
+
+        commit();
+
+        verify(manager, never()).newQuery(Record__History.class);
+        verify(manager, never()).makePersistentAll(anyCollection());
+    }
+
+    @Test
+    public void shouldPersistRecordsOfInstancesStoredWhileFlushing() throws Exception {
+        setUpEntity();
+
+        doReturn(null).when(query).execute(anyLong());
+
+        final Record flushedBeforeCommit = new Record();
+        flushedBeforeCommit.setId(2L);
+        final Record flushedWithRecords = new Record();
+        flushedWithRecords.setId(3L);
+
+        doAnswer(new Answer<Void>() {
+            private int flushes;
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                flushes++;
+                if (flushes == 1) {
+                    historyService.record(flushedBeforeCommit);
+                } else if (flushes == 2) {
+                    historyService.record(flushedWithRecords);
+                }
+                return null;
+            }
+        }).when(manager).flush();
+
+        historyService.record(new Record());
+
+        commit();
+
+        verify(manager, times(2)).makePersistentAll(listCaptor.capture());
+        assertEquals(2, listCaptor.getAllValues().get(0).size());
+        assertEquals(1, listCaptor.getAllValues().get(1).size());
+        assertEquals(Long.valueOf(3), ((Record__History) listCaptor.getAllValues().get(1).get(0))
+                .getRecord__HistoryCurrentVersion());
+    }
+
+    private void setUpEntity() {
         Entity entity = mock(Entity.class);
 
         Field idField = mock(Field.class);
@@ -147,23 +260,28 @@ public class HistoryServiceTest {
         doReturn(true).when(entity).isRecordHistory();
         doReturn(Arrays.asList(idField, valueField, dateField)).when(entity).getFields();
 
-        doReturn(null).when(query).execute(anyLong());
-
         final String serviceName = ClassName.getServiceName(Record.class.getName());
         doReturn(true).when(applicationContext).containsBean(serviceName);
         doReturn(dataService).when(applicationContext).getBean(serviceName);
         doReturn(4L).when(dataService).getSchemaVersion();
+    }
 
-        Record instance = new Record();
-        historyService.record(instance);
+    private void mockDirtyFields(Record instance, String... dirtyFields) {
+        PowerMockito.mockStatic(JDOHelper.class);
+        when(JDOHelper.isPersistent(instance)).thenReturn(true);
+        when(JDOHelper.isNew(instance)).thenReturn(false);
+        when(JDOHelper.getPersistenceManager(instance)).thenReturn(manager);
 
-        verify(manager).makePersistent(recordHistoryCaptor.capture());
+        PowerMockito.mockStatic(NucleusJDOHelper.class);
+        when(NucleusJDOHelper.getDirtyFields(instance, manager)).thenReturn(dirtyFields);
+    }
 
-        Record__History history = recordHistoryCaptor.getValue();
+    private void commit() {
+        PowerMockito.verifyStatic();
+        TransactionSynchronizationManager.registerSynchronization(txSyncCaptor.capture());
 
-        assertEquals(instance.getId(), history.getRecord__HistoryCurrentVersion());
-        assertEquals(Long.valueOf(4), history.getRecord__HistorySchemaVersion());
-        assertEquals(instance.getValue(), history.getValue());
-        assertEquals(instance.getDate(), history.getDate());
+        TransactionSynchronization txSync = txSyncCaptor.getValue();
+        txSync.beforeCommit(false);
+        txSync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
     }
 }
@@ -0,0 +1,58 @@
+package org.motechproject.server.web.controller;
+
+import org.motechproject.event.metrics.EventSubjectStatisticsMXBean;
+import org.motechproject.event.metrics.SubjectStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Exposes the per-subject statistics of events published and handled in this MOTECH instance. The subjects are
+ * sorted by the 99th percentile of their handler time, so the slowest ones come first.
+ */
+@Controller
+@PreAuthorize("hasRole('viewUI')")
+public class EventStatisticsController {
+
+    private EventSubjectStatisticsMXBean eventSubjectStatistics;
+
+    @RequestMapping(value = "/web-api/eventStatistics", method = RequestMethod.GET)
+    @ResponseBody
+    public List<SubjectStatistics> getEventStatistics() {
+        List<SubjectStatistics> statistics = eventSubjectStatistics.getSubjectStatistics();
+
+        Collections.sort(statistics, new Comparator<SubjectStatistics>() {
+            @Override
+            public int compare(SubjectStatistics first, SubjectStatistics second) {
+                return Long.compare(second.getHandlerTime().getP99(), first.getHandlerTime().getP99());
+            }
+        });
+
+        return statistics;
+    }
+
+    /**
+     * Resets the statistics of all subjects. Unlike viewing them, this affects every user of the instance, so it
+     * requires the same permission as managing the message queues in the admin module.
+     */
+    @RequestMapping(value = "/web-api/eventStatistics/reset", method = RequestMethod.POST)
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuthorize("hasRole('manageActivemq')")
+    public void resetEventStatistics() {
+        eventSubjectStatistics.resetStatistics();
+    }
+
+    @Autowired
+    public void setEventSubjectStatistics(EventSubjectStatisticsMXBean eventSubjectStatistics) {
+        this.eventSubjectStatistics = eventSubjectStatistics;
+    }
+}
@@ -0,0 +1,77 @@
+package org.motechproject.server.web.controller;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.motechproject.event.metrics.EventSubjectStatisticsMXBean;
+import org.motechproject.event.metrics.LatencySummary;
+import org.motechproject.event.metrics.SubjectStatistics;
+import org.springframework.test.web.server.MockMvc;
+import org.springframework.test.web.server.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.server.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.server.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.server.result.MockMvcResultMatchers.status;
+
+public class EventStatisticsControllerTest {
+
+    @Mock
+    private EventSubjectStatisticsMXBean eventSubjectStatistics;
+
+    @InjectMocks
+    private EventStatisticsController eventStatisticsController = new EventStatisticsController();
+
+    private MockMvc controller;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        controller = MockMvcBuilders.standaloneSetup(eventStatisticsController).build();
+    }
+
+    @Test
+    public void shouldReturnSlowestSubjectsFirst() throws Exception {
+        List<SubjectStatistics> statistics = new ArrayList<>();
+        statistics.add(createStatistics("fast", 10));
+        statistics.add(createStatistics("slow", 5000));
+        statistics.add(createStatistics("medium", 300));
+
+        when(eventSubjectStatistics.getSubjectStatistics()).thenReturn(statistics);
+
+        controller.perform(
+                get("/web-api/eventStatistics")
+        ).andExpect(
+                status().isOk()
+        );
+
+        List<SubjectStatistics> result = eventStatisticsController.getEventStatistics();
+
+        assertEquals("slow", result.get(0).getSubject());
+        assertEquals("medium", result.get(1).getSubject());
+        assertEquals("fast", result.get(2).getSubject());
+    }
+
+    @Test
+    public void shouldResetStatistics() throws Exception {
+        controller.perform(
+                post("/web-api/eventStatistics/reset")
+        ).andExpect(
+                status().isOk()
+        );
+
+        verify(eventSubjectStatistics).resetStatistics();
+    }
+
+    private SubjectStatistics createStatistics(String subject, long p99) {
+        LatencySummary latency = new LatencySummary(p99, p99, p99, p99, p99);
+        return new SubjectStatistics(subject, 1, 0.0, 1, 0, 0, 0, latency, latency);
+    }
+}